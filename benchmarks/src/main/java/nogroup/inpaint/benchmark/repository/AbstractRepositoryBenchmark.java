@@ -0,0 +1,85 @@
+package nogroup.inpaint.benchmark.repository;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+public abstract class AbstractRepositoryBenchmark {
+
+    @Benchmark
+    public SourceImage createSource(RepositoryState state, Cursor cursor) {
+        return state.repository.createSource(new SourceImageBuilder(cursor.uniqueName("created source")).build());
+    }
+
+    @Benchmark
+    public TargetImage createTarget(RepositoryState state, Cursor cursor) {
+        SourceImage source = state.sources[cursor.next(state.sources.length)];
+        return state.repository.createTarget(source, new TargetImageBuilder(cursor.uniqueName("created target")).build());
+    }
+
+    @Benchmark
+    public SourceImage readSourceByName(RepositoryState state, Cursor cursor) {
+        return state.repository.readSource(state.sources[cursor.next(state.sources.length)].getName());
+    }
+
+    @Benchmark
+    public SourceImage readSourceByTarget(RepositoryState state, Cursor cursor) {
+        return state.repository.readSource(state.targets[cursor.next(state.targets.length)]);
+    }
+
+    @Benchmark
+    public Set<SourceImage> readSources(RepositoryState state) {
+        return state.repository.readSources();
+    }
+
+    @Benchmark
+    public List<TargetImage> readTargets(RepositoryState state, Cursor cursor) {
+        return state.repository.readTargets(state.sources[cursor.next(state.sources.length)]);
+    }
+
+    @Benchmark
+    public TargetImage readTarget(RepositoryState state, Cursor cursor) {
+        return state.repository.readTarget(state.targets[cursor.next(state.targets.length)].getName());
+    }
+
+    @Benchmark
+    public SourceImage updateSource(RepositoryState state, Cursor cursor) {
+        SourceImage source = state.sources[cursor.next(state.sources.length)];
+        return state.repository.updateSource(source.toBuilder().description(cursor.uniqueName("updated")).build());
+    }
+
+    @Benchmark
+    public TargetImage updateTarget(RepositoryState state, Cursor cursor) {
+        TargetImage target = state.targets[cursor.next(state.targets.length)];
+        return state.repository.updateTarget(target.toBuilder().description(cursor.uniqueName("updated")).build());
+    }
+
+    @Benchmark
+    public void deleteTarget(RepositoryState state, Cursor cursor, Blackhole blackhole) {
+        // the target is put back right away, so the repository size stays the same between invocations
+        int index = cursor.next(state.targets.length);
+        blackhole.consume(state.repository.deleteTarget(state.targets[index]));
+        blackhole.consume(state.repository.createTarget(state.sourceOf(index), state.targets[index]));
+    }
+
+    @Benchmark
+    public void deleteTargets(RepositoryState state, Cursor cursor, Blackhole blackhole) {
+        int index = cursor.next(state.sources.length);
+        SourceImage source = state.sources[index];
+        blackhole.consume(state.repository.deleteTargets(source));
+        for (int j = 0; j < RepositoryState.TARGETS_PER_SOURCE; j++)
+            blackhole.consume(state.repository.createTarget(source, state.targets[index * RepositoryState.TARGETS_PER_SOURCE + j]));
+    }
+}
@@ -0,0 +1,55 @@
+package nogroup.inpaint.benchmark.repository;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.TargetColumns;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.TargetImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@State(Scope.Benchmark)
+public class ColumnarScanBenchmark {
+    @Param({"100000", "1000000"})
+    public int images;
+
+    private TargetImage[] targets;
+    private TargetColumns columns;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        int sourcesCount = Math.max(1, images / (RepositoryState.TARGETS_PER_SOURCE + 1));
+        SourceImage[] sources = new SourceImage[sourcesCount];
+        targets = new TargetImage[sourcesCount * RepositoryState.TARGETS_PER_SOURCE];
+        for (int i = 0; i < sourcesCount; i++) {
+            sources[i] = RepositoryState.source(i);
+            for (int j = 0; j < RepositoryState.TARGETS_PER_SOURCE; j++)
+                targets[i * RepositoryState.TARGETS_PER_SOURCE + j] = RepositoryState.target(i, j);
+        }
+        InMemoryRepository repository = new InMemoryRepository();
+        RepositoryState.populate(repository, sources, targets);
+        columns = repository.getTargetColumns();
+    }
+
+    @Benchmark
+    public Map<Checkpoint, Integer> objects() {
+        final Map<Checkpoint, Integer> counts = new EnumMap<>(Checkpoint.class);
+        for (TargetImage target : targets)
+            if (target.getRating() >= 3)
+                counts.merge(target.getCheckpoint(), 1, Integer::sum);
+        return counts;
+    }
+
+    @Benchmark
+    public Map<Checkpoint, Integer> columns() {
+        return columns.countByCheckpoint(3, Integer.MAX_VALUE);
+    }
+}
@@ -0,0 +1,7 @@
+package nogroup.inpaint.benchmark.repository;
+
+import org.openjdk.jmh.annotations.Threads;
+
+@Threads(Threads.MAX)
+public class ConcurrentRepositoryBenchmark extends AbstractRepositoryBenchmark {
+}
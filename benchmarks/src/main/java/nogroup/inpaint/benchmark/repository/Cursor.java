@@ -0,0 +1,27 @@
+package nogroup.inpaint.benchmark.repository;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.ThreadParams;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+@State(Scope.Thread)
+public class Cursor {
+    public int thread;
+    public long counter;
+
+    @Setup
+    public void setUp(ThreadParams params) {
+        thread = params.getThreadIndex();
+    }
+
+    public int next(int bound) {
+        return ThreadLocalRandom.current().nextInt(bound);
+    }
+
+    public String uniqueName(String prefix) {
+        return String.format("%s #%d-%d", prefix, thread, counter++);
+    }
+}
@@ -0,0 +1,131 @@
+package nogroup.inpaint.benchmark.repository;
+
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.RepositoryFactory;
+import nogroup.inpaint.image.repository.RepositoryImpl;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JavaSerializationSnapshotFormat;
+import nogroup.inpaint.image.repository.impl.ShardedRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Comparator;
+
+@State(Scope.Benchmark)
+public class RepositoryState {
+    public static final int TARGETS_PER_SOURCE = 9;
+
+    @Param({"IN_MEMORY", "FILE"})
+    public RepositoryImpl impl;
+
+    @Param({"1000", "100000", "1000000"})
+    public int images;
+
+    public Repository repository;
+    public SourceImage[] sources;
+    public TargetImage[] targets;
+    private Path dataDir;
+
+    public static SourceImage source(int index) {
+        return new SourceImageBuilder(String.format("source image #%d", index))
+                .description("benchmark source")
+                .width(512)
+                .height(512)
+                .addTag("tag-" + index % 16)
+                .build();
+    }
+
+    public static TargetImage target(int sourceIndex, int targetIndex) {
+        return new TargetImageBuilder(String.format("target image #%d of source image #%d", targetIndex, sourceIndex))
+                .description("benchmark target")
+                .width(512)
+                .height(512)
+                .rating(targetIndex % 5)
+                .sampler(Sampler.values()[targetIndex % Sampler.values().length])
+                .checkpoint(Checkpoint.values()[sourceIndex % Checkpoint.values().length])
+                .build();
+    }
+
+    public static void populate(Repository repository, SourceImage[] sources, TargetImage[] targets) {
+        for (int i = 0; i < sources.length; i++) {
+            repository.createSource(sources[i]);
+            for (int j = 0; j < TARGETS_PER_SOURCE; j++)
+                repository.createTarget(sources[i], targets[i * TARGETS_PER_SOURCE + j]);
+        }
+    }
+
+    public static void deleteDir(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    public SourceImage sourceOf(int targetIndex) {
+        return sources[targetIndex / TARGETS_PER_SOURCE];
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int sourcesCount = Math.max(1, images / (TARGETS_PER_SOURCE + 1));
+        sources = new SourceImage[sourcesCount];
+        targets = new TargetImage[sourcesCount * TARGETS_PER_SOURCE];
+        for (int i = 0; i < sourcesCount; i++) {
+            sources[i] = source(i);
+            for (int j = 0; j < TARGETS_PER_SOURCE; j++)
+                targets[i * TARGETS_PER_SOURCE + j] = target(i, j);
+        }
+
+        RepositoryFactory factory = new RepositoryFactory();
+        switch (impl) {
+            case FILE:
+                dataDir = Files.createTempDirectory("bench-file-image-repo-dir_");
+                seed(dataDir);
+                repository = factory.create(impl, dataDir.toString());
+                break;
+            case JDBC:
+            case KEY_VALUE:
+            case SHARDED:
+                dataDir = Files.createTempDirectory("bench-" + impl.name().toLowerCase() + "-image-repo-dir_");
+                repository = factory.create(impl, dataDir.toString());
+                populate(repository, sources, targets);
+                break;
+            default:
+                repository = factory.create(impl);
+                populate(repository, sources, targets);
+        }
+    }
+
+    private void seed(Path dir) throws IOException {
+        // populating through FileRepository would journal every image, write a single snapshot instead
+        InMemoryRepository seed = new InMemoryRepository();
+        populate(seed, sources, targets);
+        try (OutputStream out = Files.newOutputStream(Paths.get(dir.toString(), "images-repository.dat"))) {
+            new JavaSerializationSnapshotFormat().write(seed, out);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (repository instanceof Closeable)
+            ((Closeable) repository).close();
+        // the sharded repository leaves its shards to whoever opened them, here that is this state
+        if (repository instanceof ShardedRepository)
+            for (Repository shard : ((ShardedRepository) repository).getShards())
+                ((Closeable) shard).close();
+        if (dataDir != null)
+            deleteDir(dataDir);
+    }
+}
@@ -0,0 +1,18 @@
+package nogroup.inpaint.benchmark.snapshot;
+
+import nogroup.inpaint.image.repository.impl.JavaSerializationSnapshotFormat;
+import nogroup.inpaint.image.repository.impl.SnapshotFormat;
+
+public enum Format {
+    JAVA_SERIALIZATION(new JavaSerializationSnapshotFormat());
+
+    private final SnapshotFormat format;
+
+    Format(SnapshotFormat format) {
+        this.format = format;
+    }
+
+    public SnapshotFormat get() {
+        return format;
+    }
+}
@@ -0,0 +1,55 @@
+package nogroup.inpaint.benchmark.snapshot;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+@Threads(1)
+public class SnapshotBenchmark {
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(SnapshotBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build())
+                .run();
+    }
+
+    @Benchmark
+    public int encode(SnapshotState state, SnapshotCounters counters) throws IOException {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(state.encoded.length);
+        state.format.get().write(state.repository, bos);
+        counters.record(bos.size(), state.imagesCount);
+        return bos.size();
+    }
+
+    @Benchmark
+    public InMemoryRepository decode(SnapshotState state) throws IOException {
+        return state.format.get().read(new ByteArrayInputStream(state.encoded));
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SingleShotTime)
+    @OutputTimeUnit(TimeUnit.MILLISECONDS)
+    @Warmup(iterations = 0)
+    @Measurement(iterations = 5)
+    @Fork(value = 5, jvmArgsAppend = {"-Xms4g", "-Xmx4g"})
+    public SourceImage coldStart(SnapshotState state) throws IOException {
+        try (InputStream in = new BufferedInputStream(Files.newInputStream(state.snapshot))) {
+            return state.format.get().read(in).readSource(state.firstSource);
+        }
+    }
+}
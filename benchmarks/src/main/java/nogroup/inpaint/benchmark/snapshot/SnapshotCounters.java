@@ -0,0 +1,25 @@
+package nogroup.inpaint.benchmark.snapshot;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.EVENTS)
+public class SnapshotCounters {
+    private long bytes;
+    private long images;
+
+    public void record(long bytes, long images) {
+        this.bytes = bytes;
+        this.images = images;
+    }
+
+    public double bytesPerImage() {
+        return images > 0 ? (double) bytes / images : 0;
+    }
+
+    public long snapshotBytes() {
+        return bytes;
+    }
+}
@@ -0,0 +1,59 @@
+package nogroup.inpaint.benchmark.snapshot;
+
+import nogroup.inpaint.benchmark.repository.RepositoryState;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+@State(Scope.Benchmark)
+public class SnapshotState {
+    @Param({"JAVA_SERIALIZATION"})
+    public Format format;
+
+    @Param({"1000", "100000", "1000000"})
+    public int images;
+
+    public InMemoryRepository repository;
+    public byte[] encoded;
+    public Path snapshot;
+    public String firstSource;
+    public int imagesCount;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        int sourcesCount = Math.max(1, images / (RepositoryState.TARGETS_PER_SOURCE + 1));
+        SourceImage[] sources = new SourceImage[sourcesCount];
+        TargetImage[] targets = new TargetImage[sourcesCount * RepositoryState.TARGETS_PER_SOURCE];
+        for (int i = 0; i < sourcesCount; i++) {
+            sources[i] = RepositoryState.source(i);
+            for (int j = 0; j < RepositoryState.TARGETS_PER_SOURCE; j++)
+                targets[i * RepositoryState.TARGETS_PER_SOURCE + j] = RepositoryState.target(i, j);
+        }
+
+        repository = new InMemoryRepository();
+        RepositoryState.populate(repository, sources, targets);
+        firstSource = sources[0].getName();
+        imagesCount = sources.length + targets.length;
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        format.get().write(repository, bos);
+        encoded = bos.toByteArray();
+
+        snapshot = Files.createTempFile("bench-snapshot_", ".dat");
+        try (OutputStream out = Files.newOutputStream(snapshot)) {
+            out.write(encoded);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(snapshot);
+    }
+}
@@ -0,0 +1,233 @@
+package nogroup.inpaint.benchmark.workload;
+
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.RepositoryFactory;
+import nogroup.inpaint.image.repository.RepositoryImpl;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.HdrHistogram.Histogram;
+
+import java.io.Closeable;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class LoadTest {
+    private final Repository repository;
+    private final WorkloadGenerator generator;
+    private final int clients;
+    private final long durationMillis;
+    private final AtomicLong created;
+
+    public LoadTest(Repository repository, Workload workload, int clients, long durationMillis) {
+        this.repository = repository;
+        this.generator = new WorkloadGenerator(workload);
+        this.clients = clients;
+        this.durationMillis = durationMillis;
+        this.created = new AtomicLong();
+    }
+
+    public static void main(String[] args) throws Exception {
+        final Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            if (pair.length != 2)
+                throw new IllegalArgumentException("expected key=value argument: " + arg);
+            options.put(pair[0], pair[1]);
+        }
+
+        RepositoryImpl impl = RepositoryImpl.valueOf(options.getOrDefault("impl", RepositoryImpl.IN_MEMORY.name()));
+        String dir = options.containsKey("dir") || impl == RepositoryImpl.IN_MEMORY
+                ? options.get("dir")
+                : Files.createTempDirectory("load-test-image-repo-dir_").toString();
+        Repository repository = new RepositoryFactory().create(impl, dir);
+
+        WorkloadBuilder builder;
+        switch (options.getOrDefault("mix", "browse")) {
+            case "browse":
+                builder = WorkloadBuilder.browseHeavy();
+                break;
+            case "assign":
+                builder = new WorkloadBuilder()
+                        .weight(Operation.BROWSE_TARGETS, 10)
+                        .weight(Operation.ASSIGN_BURST, 10);
+                break;
+            case "tags":
+                builder = new WorkloadBuilder()
+                        .weight(Operation.BROWSE_SOURCES, 1)
+                        .weight(Operation.BROWSE_TARGETS, 10)
+                        .weight(Operation.TAG_EDIT, 10);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown mix: " + options.get("mix"));
+        }
+        Workload workload = builder
+                .sources(Integer.parseInt(options.getOrDefault("sources", "10000")))
+                .meanTargetsPerSource(Double.parseDouble(options.getOrDefault("targets", "8")))
+                .tagCardinality(Integer.parseInt(options.getOrDefault("tags", "500")))
+                .tagsPerSource(Integer.parseInt(options.getOrDefault("tagsPerSource", "3")))
+                .tagSkew(Double.parseDouble(options.getOrDefault("tagSkew", "1.1")))
+                .checkpointSkew(Double.parseDouble(options.getOrDefault("checkpointSkew", "1.0")))
+                .samplerSkew(Double.parseDouble(options.getOrDefault("samplerSkew", "1.0")))
+                .assignBurst(Integer.parseInt(options.getOrDefault("burst", "50")))
+                .seed(Long.parseLong(options.getOrDefault("seed", "42")))
+                .build();
+
+        int clients = Integer.parseInt(options.getOrDefault("clients", String.valueOf(Runtime.getRuntime().availableProcessors())));
+        long seconds = Long.parseLong(options.getOrDefault("seconds", "30"));
+
+        System.out.printf("repository %s, %d clients for %d s, %s%n", impl, clients, seconds, workload);
+        try {
+            new LoadTest(repository, workload, clients, TimeUnit.SECONDS.toMillis(seconds)).run().print(System.out);
+        } finally {
+            if (repository instanceof Closeable)
+                ((Closeable) repository).close();
+        }
+    }
+
+    public Report run() throws InterruptedException {
+        final WorkloadGenerator.Catalog catalog = generator.populate(repository);
+        final Operation[] operations = weightedOperations(generator.getWorkload().getMix());
+        final Report report = new Report();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> threads = new ArrayList<>(clients);
+
+        for (int i = 0; i < clients; i++) {
+            final long seed = generator.getWorkload().getSeed() + i + 1;
+            Thread thread = new Thread(() -> {
+                Client client = new Client(catalog, new Random(seed));
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+                while (System.nanoTime() < deadline)
+                    client.execute(operations[client.random.nextInt(operations.length)]);
+                report.merge(client);
+            }, "load-test-client-" + i);
+            threads.add(thread);
+            thread.start();
+        }
+
+        long started = System.nanoTime();
+        start.countDown();
+        for (Thread thread : threads)
+            thread.join();
+        report.elapsedNanos = System.nanoTime() - started;
+        return report;
+    }
+
+    private static Operation[] weightedOperations(Map<Operation, Integer> mix) {
+        final List<Operation> operations = new ArrayList<>();
+        for (Map.Entry<Operation, Integer> entry : mix.entrySet())
+            for (int i = 0; i < entry.getValue(); i++)
+                operations.add(entry.getKey());
+        return operations.toArray(new Operation[0]);
+    }
+
+    private class Client {
+        final WorkloadGenerator.Catalog catalog;
+        final Random random;
+        final Map<Operation, Histogram> latencies;
+        final Map<Operation, Long> errors;
+
+        Client(WorkloadGenerator.Catalog catalog, Random random) {
+            this.catalog = catalog;
+            this.random = random;
+            this.latencies = new EnumMap<>(Operation.class);
+            this.errors = new EnumMap<>(Operation.class);
+            for (Operation operation : Operation.values())
+                latencies.put(operation, new Histogram(3));
+        }
+
+        void execute(Operation operation) {
+            long started = System.nanoTime();
+            try {
+                switch (operation) {
+                    case BROWSE_SOURCES:
+                        repository.readSources();
+                        break;
+                    case BROWSE_TARGETS:
+                        repository.readTargets(repository.readSource(catalog.randomSource(random)));
+                        break;
+                    case READ_TARGET:
+                        repository.readTarget(catalog.randomTarget(random));
+                        break;
+                    case READ_SOURCE_BY_TARGET:
+                        repository.readSource(new TargetImageBuilder(catalog.randomTarget(random)).build());
+                        break;
+                    case ASSIGN_BURST:
+                        SourceImage source = repository.readSource(catalog.randomSource(random));
+                        for (int i = 0; i < generator.getWorkload().getAssignBurst(); i++)
+                            repository.createTarget(source, generator.target(
+                                    String.format("load test target #%d", created.incrementAndGet()), random));
+                        break;
+                    case TAG_EDIT:
+                        SourceImage edited = repository.readSource(catalog.randomSource(random));
+                        List<String> tags = new ArrayList<>(edited.getTags());
+                        if (!tags.isEmpty() && random.nextBoolean())
+                            tags.remove(random.nextInt(tags.size()));
+                        else
+                            tags.add(generator.randomTag(random));
+                        repository.updateSource(edited.toBuilder().tags(tags).build());
+                        break;
+                }
+            } catch (RuntimeException e) {
+                errors.merge(operation, 1L, Long::sum);
+            }
+            latencies.get(operation).recordValue(Math.max(1, System.nanoTime() - started));
+        }
+    }
+
+    public static class Report {
+        private final Map<Operation, Histogram> latencies = new EnumMap<>(Operation.class);
+        private final Map<Operation, Long> errors = new EnumMap<>(Operation.class);
+        private long elapsedNanos;
+
+        private synchronized void merge(Client client) {
+            for (Map.Entry<Operation, Histogram> entry : client.latencies.entrySet()) {
+                Histogram histogram = latencies.get(entry.getKey());
+                if (histogram == null)
+                    latencies.put(entry.getKey(), entry.getValue().copy());
+                else
+                    histogram.add(entry.getValue());
+            }
+            for (Map.Entry<Operation, Long> entry : client.errors.entrySet())
+                errors.merge(entry.getKey(), entry.getValue(), Long::sum);
+        }
+
+        public Histogram getLatencies(Operation operation) {
+            return latencies.get(operation);
+        }
+
+        public long getErrors(Operation operation) {
+            return errors.getOrDefault(operation, 0L);
+        }
+
+        public double getThroughput(Operation operation) {
+            Histogram histogram = latencies.get(operation);
+            return histogram == null ? 0 : histogram.getTotalCount() / (elapsedNanos / 1e9);
+        }
+
+        public void print(PrintStream out) {
+            out.printf("%-22s %12s %8s %10s %10s %10s %10s %10s%n",
+                    "operation", "ops/s", "errors", "p50 us", "p90 us", "p99 us", "p99.9 us", "max us");
+            for (Operation operation : Operation.values()) {
+                Histogram histogram = latencies.get(operation);
+                if (histogram == null || histogram.getTotalCount() == 0)
+                    continue;
+                out.printf("%-22s %12.1f %8d %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                        operation, getThroughput(operation), getErrors(operation),
+                        histogram.getValueAtPercentile(50) / 1e3,
+                        histogram.getValueAtPercentile(90) / 1e3,
+                        histogram.getValueAtPercentile(99) / 1e3,
+                        histogram.getValueAtPercentile(99.9) / 1e3,
+                        histogram.getMaxValue() / 1e3);
+            }
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package nogroup.inpaint.benchmark.workload;
+
+public enum Operation {
+    BROWSE_SOURCES,
+    BROWSE_TARGETS,
+    READ_TARGET,
+    READ_SOURCE_BY_TARGET,
+    ASSIGN_BURST,
+    TAG_EDIT,
+}
@@ -0,0 +1,89 @@
+package nogroup.inpaint.benchmark.workload;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+public class Workload {
+    private final int sources;
+    private final double meanTargetsPerSource;
+    private final int tagCardinality;
+    private final int tagsPerSource;
+    private final double tagSkew;
+    private final double checkpointSkew;
+    private final double samplerSkew;
+    private final Map<Operation, Integer> mix;
+    private final int assignBurst;
+    private final long seed;
+
+    public Workload(int sources, double meanTargetsPerSource, int tagCardinality, int tagsPerSource, double tagSkew,
+                    double checkpointSkew, double samplerSkew, Map<Operation, Integer> mix, int assignBurst, long seed) {
+        this.sources = sources;
+        this.meanTargetsPerSource = meanTargetsPerSource;
+        this.tagCardinality = tagCardinality;
+        this.tagsPerSource = tagsPerSource;
+        this.tagSkew = tagSkew;
+        this.checkpointSkew = checkpointSkew;
+        this.samplerSkew = samplerSkew;
+        this.mix = Collections.unmodifiableMap(new EnumMap<>(mix));
+        this.assignBurst = assignBurst;
+        this.seed = seed;
+    }
+
+    public int getSources() {
+        return sources;
+    }
+
+    public double getMeanTargetsPerSource() {
+        return meanTargetsPerSource;
+    }
+
+    public int getTagCardinality() {
+        return tagCardinality;
+    }
+
+    public int getTagsPerSource() {
+        return tagsPerSource;
+    }
+
+    public double getTagSkew() {
+        return tagSkew;
+    }
+
+    public double getCheckpointSkew() {
+        return checkpointSkew;
+    }
+
+    public double getSamplerSkew() {
+        return samplerSkew;
+    }
+
+    public Map<Operation, Integer> getMix() {
+        return mix;
+    }
+
+    public int getAssignBurst() {
+        return assignBurst;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Workload{");
+        sb.append("sources=").append(sources);
+        sb.append(", meanTargetsPerSource=").append(meanTargetsPerSource);
+        sb.append(", tagCardinality=").append(tagCardinality);
+        sb.append(", tagsPerSource=").append(tagsPerSource);
+        sb.append(", tagSkew=").append(tagSkew);
+        sb.append(", checkpointSkew=").append(checkpointSkew);
+        sb.append(", samplerSkew=").append(samplerSkew);
+        sb.append(", mix=").append(mix);
+        sb.append(", assignBurst=").append(assignBurst);
+        sb.append(", seed=").append(seed);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,87 @@
+package nogroup.inpaint.benchmark.workload;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+public class WorkloadBuilder {
+    private int sources = 10_000;
+    private double meanTargetsPerSource = 8;
+    private int tagCardinality = 500;
+    private int tagsPerSource = 3;
+    private double tagSkew = 1.1;
+    private double checkpointSkew = 1.0;
+    private double samplerSkew = 1.0;
+    private final Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+    private int assignBurst = 50;
+    private long seed = 42;
+
+    public static WorkloadBuilder browseHeavy() {
+        return new WorkloadBuilder()
+                .weight(Operation.BROWSE_SOURCES, 2)
+                .weight(Operation.BROWSE_TARGETS, 50)
+                .weight(Operation.READ_TARGET, 30)
+                .weight(Operation.READ_SOURCE_BY_TARGET, 15)
+                .weight(Operation.ASSIGN_BURST, 1)
+                .weight(Operation.TAG_EDIT, 2);
+    }
+
+    public WorkloadBuilder sources(int sources) {
+        this.sources = sources;
+        return this;
+    }
+
+    public WorkloadBuilder meanTargetsPerSource(double meanTargetsPerSource) {
+        this.meanTargetsPerSource = meanTargetsPerSource;
+        return this;
+    }
+
+    public WorkloadBuilder tagCardinality(int tagCardinality) {
+        this.tagCardinality = tagCardinality;
+        return this;
+    }
+
+    public WorkloadBuilder tagsPerSource(int tagsPerSource) {
+        this.tagsPerSource = tagsPerSource;
+        return this;
+    }
+
+    public WorkloadBuilder tagSkew(double tagSkew) {
+        this.tagSkew = tagSkew;
+        return this;
+    }
+
+    public WorkloadBuilder checkpointSkew(double checkpointSkew) {
+        this.checkpointSkew = checkpointSkew;
+        return this;
+    }
+
+    public WorkloadBuilder samplerSkew(double samplerSkew) {
+        this.samplerSkew = samplerSkew;
+        return this;
+    }
+
+    public WorkloadBuilder weight(Operation operation, int weight) {
+        if (weight > 0)
+            mix.put(operation, weight);
+        else
+            mix.remove(operation);
+        return this;
+    }
+
+    public WorkloadBuilder assignBurst(int assignBurst) {
+        this.assignBurst = assignBurst;
+        return this;
+    }
+
+    public WorkloadBuilder seed(long seed) {
+        this.seed = seed;
+        return this;
+    }
+
+    public Workload build() {
+        if (mix.isEmpty())
+            throw new IllegalArgumentException("no operations in workload mix");
+        return new Workload(sources, meanTargetsPerSource, tagCardinality, tagsPerSource, tagSkew,
+                checkpointSkew, samplerSkew, mix, assignBurst, seed);
+    }
+}
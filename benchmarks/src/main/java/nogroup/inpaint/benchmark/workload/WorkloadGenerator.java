@@ -0,0 +1,114 @@
+package nogroup.inpaint.benchmark.workload;
+
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+public class WorkloadGenerator {
+    private final Workload workload;
+    private final Zipf tags;
+    private final Zipf checkpoints;
+    private final Zipf samplers;
+
+    public WorkloadGenerator(Workload workload) {
+        this.workload = workload;
+        this.tags = new Zipf(Math.max(1, workload.getTagCardinality()), workload.getTagSkew());
+        this.checkpoints = new Zipf(Checkpoint.values().length, workload.getCheckpointSkew());
+        this.samplers = new Zipf(Sampler.values().length, workload.getSamplerSkew());
+    }
+
+    public static String tag(int index) {
+        return "tag-" + index;
+    }
+
+    public String randomTag(Random random) {
+        return tag(tags.next(random));
+    }
+
+    public int targetsCount(Random random) {
+        // geometric distribution with the configured mean
+        double p = 1.0 / (workload.getMeanTargetsPerSource() + 1.0);
+        return (int) Math.floor(Math.log(1.0 - random.nextDouble()) / Math.log(1.0 - p));
+    }
+
+    public SourceImage source(int index, Random random) {
+        SourceImageBuilder builder = new SourceImageBuilder(String.format("workload source #%d", index))
+                .description("generated source")
+                .width(512 + 64 * random.nextInt(8))
+                .height(512 + 64 * random.nextInt(8));
+        if (workload.getTagCardinality() > 0)
+            for (int i = 0; i < workload.getTagsPerSource(); i++)
+                builder.addTag(randomTag(random));
+        return builder.build();
+    }
+
+    public TargetImage target(String name, Random random) {
+        return new TargetImageBuilder(name)
+                .description("generated target")
+                .width(512)
+                .height(512)
+                .rating(random.nextInt(6))
+                .checkpoint(Checkpoint.values()[checkpoints.next(random)])
+                .sampler(Sampler.values()[samplers.next(random)])
+                .build();
+    }
+
+    public Catalog populate(Repository repository) {
+        final Random random = new Random(workload.getSeed());
+        final String[] sources = new String[workload.getSources()];
+        final List<String> targets = new ArrayList<>();
+
+        for (int i = 0; i < sources.length; i++) {
+            SourceImage source = source(i, random);
+            repository.createSource(source);
+            sources[i] = source.getName();
+
+            int count = targetsCount(random);
+            for (int j = 0; j < count; j++) {
+                TargetImage target = target(String.format("workload target #%d of %s", j, source.getName()), random);
+                repository.createTarget(source, target);
+                targets.add(target.getName());
+            }
+        }
+
+        return new Catalog(sources, targets.toArray(new String[0]));
+    }
+
+    public Workload getWorkload() {
+        return workload;
+    }
+
+    public static class Catalog {
+        private final String[] sources;
+        private final String[] targets;
+
+        public Catalog(String[] sources, String[] targets) {
+            this.sources = sources;
+            this.targets = targets;
+        }
+
+        public String randomSource(Random random) {
+            return sources[random.nextInt(sources.length)];
+        }
+
+        public String randomTarget(Random random) {
+            return targets[random.nextInt(targets.length)];
+        }
+
+        public int getSourcesCount() {
+            return sources.length;
+        }
+
+        public int getTargetsCount() {
+            return targets.length;
+        }
+    }
+}
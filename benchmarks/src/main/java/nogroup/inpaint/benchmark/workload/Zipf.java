@@ -0,0 +1,38 @@
+package nogroup.inpaint.benchmark.workload;
+
+import java.util.Random;
+
+public class Zipf {
+    private final double[] cumulative;
+
+    public Zipf(int size, double skew) {
+        if (size < 1)
+            throw new IllegalArgumentException(String.format("wrong zipf size: %d", size));
+        cumulative = new double[size];
+        double sum = 0;
+        for (int i = 0; i < size; i++) {
+            sum += 1.0 / Math.pow(i + 1, skew);
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < size; i++)
+            cumulative[i] /= sum;
+    }
+
+    public int next(Random random) {
+        double value = random.nextDouble();
+        int low = 0;
+        int high = cumulative.length - 1;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (cumulative[middle] < value)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return low;
+    }
+
+    public int size() {
+        return cumulative.length;
+    }
+}
@@ -0,0 +1,260 @@
+package nogroup.inpaint.dataset;
+
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+public class DatasetExporter {
+    public static final long DEFAULT_SHARD_BYTES = 1L << 30;
+    private final Repository repository;
+    private final DatasetFormat format;
+    private final long shardBytes;
+    private final int threads;
+
+    public DatasetExporter(Repository repository) {
+        this(repository, DatasetFormat.TAR, DEFAULT_SHARD_BYTES, Runtime.getRuntime().availableProcessors());
+    }
+
+    public DatasetExporter(Repository repository, DatasetFormat format, long shardBytes, int threads) {
+        if (shardBytes < 1 || threads < 1)
+            throw new IllegalArgumentException(String.format("invalid shard size %d or threads %d", shardBytes, threads));
+        this.repository = repository;
+        this.format = format;
+        this.shardBytes = shardBytes;
+        this.threads = threads;
+    }
+
+    public static class Result {
+        private final List<Path> shards;
+        private final long samples;
+        private final long bytes;
+        private final long missing;
+
+        Result(List<Path> shards, long samples, long bytes, long missing) {
+            this.shards = Collections.unmodifiableList(shards);
+            this.samples = samples;
+            this.bytes = bytes;
+            this.missing = missing;
+        }
+
+        public List<Path> getShards() {
+            return shards;
+        }
+
+        public long getSamples() {
+            return samples;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getMissing() {
+            return missing;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Result{");
+            sb.append("shards=").append(shards.size());
+            sb.append(", samples=").append(samples);
+            sb.append(", bytes=").append(bytes);
+            sb.append(", missing=").append(missing);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    private static class Sample {
+        private final String key;
+        private final Path image;
+        private final long size;
+        private final long modified;
+        private final byte[] caption;
+
+        Sample(String key, Path image, long size, long modified, byte[] caption) {
+            this.key = key;
+            this.image = image;
+            this.size = size;
+            this.modified = modified;
+            this.caption = caption;
+        }
+    }
+
+    public Result export(DatasetQuery query, Path dir, String prefix) throws IOException {
+        Files.createDirectories(dir);
+        List<List<Sample>> shards = new ArrayList<>();
+        List<Sample> shard = new ArrayList<>();
+        long shardSize = 0;
+        long samples = 0;
+        long bytes = 0;
+        long missing = 0;
+        for (SourceImage source : repository.readSources()) {
+            if (!query.matches(source))
+                continue;
+            List<TargetImage> targets;
+            try {
+                targets = repository.readTargets(source);
+            } catch (NotFoundException e) {
+                continue;
+            }
+            for (TargetImage target : targets) {
+                if (!query.matches(target))
+                    continue;
+                Path image = Paths.get(target.getName());
+                if (!Files.isRegularFile(image)) {
+                    missing++;
+                    continue;
+                }
+                long size = Files.size(image);
+                if (!shard.isEmpty() && shardSize + size > shardBytes) {
+                    shards.add(shard);
+                    shard = new ArrayList<>();
+                    shardSize = 0;
+                }
+                String caption = target.getDescription() != null ? target.getDescription() : source.getDescription();
+                shard.add(new Sample(String.format("%09d", samples), image, size, Files.getLastModifiedTime(image).toMillis(),
+                        (caption == null ? "" : caption).getBytes(StandardCharsets.UTF_8)));
+                shardSize += size;
+                samples++;
+                bytes += size;
+            }
+        }
+        if (!shard.isEmpty())
+            shards.add(shard);
+
+        List<Path> files = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++)
+            files.add(dir.resolve(String.format("%s-%05d.%s", prefix, i, format.getExtension())));
+        write(shards, files);
+        return new Result(files, samples, bytes, missing);
+    }
+
+    private void write(List<List<Sample>> shards, List<Path> files) throws IOException {
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, shards.size())), runnable -> {
+            Thread thread = new Thread(runnable, "dataset-export");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Future<?>> futures = new ArrayList<>(shards.size());
+            for (int i = 0; i < shards.size(); i++) {
+                List<Sample> shard = shards.get(i);
+                Path file = files.get(i);
+                futures.add(executor.submit(() -> {
+                    writeShard(shard, file);
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures)
+                future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("export interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private void writeShard(List<Sample> shard, Path file) throws IOException {
+        if (format == DatasetFormat.TAR) {
+            try (TarWriter tar = new TarWriter(file)) {
+                for (Sample sample : shard) {
+                    tar.add(sample.key + extension(sample.image), sample.image, sample.modified);
+                    tar.add(sample.key + ".txt", sample.caption, sample.modified);
+                }
+            }
+            return;
+        }
+        // entries are STORED, which needs size and CRC up front, so every image is read once for the CRC and once to copy it
+        try (ZipOutputStream zip = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+            for (Sample sample : shard) {
+                zip.putNextEntry(stored(sample.key + extension(sample.image), sample.modified, Files.size(sample.image), crc(sample.image)));
+                Files.copy(sample.image, zip);
+                zip.closeEntry();
+                CRC32 crc = new CRC32();
+                crc.update(sample.caption, 0, sample.caption.length);
+                zip.putNextEntry(stored(sample.key + ".txt", sample.modified, sample.caption.length, crc.getValue()));
+                zip.write(sample.caption);
+                zip.closeEntry();
+            }
+        }
+    }
+
+    private static ZipEntry stored(String name, long modified, long size, long crc) {
+        ZipEntry entry = new ZipEntry(name);
+        entry.setMethod(ZipEntry.STORED);
+        entry.setTime(modified);
+        entry.setSize(size);
+        entry.setCompressedSize(size);
+        entry.setCrc(crc);
+        return entry;
+    }
+
+    private static long crc(Path file) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            byte[] buffer = new byte[1 << 16];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                crc.update(buffer, 0, read);
+        }
+        return crc.getValue();
+    }
+
+    private static String extension(Path image) {
+        String name = image.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? "" : name.substring(dot).toLowerCase(Locale.ROOT);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public DatasetFormat getFormat() {
+        return format;
+    }
+
+    public long getShardBytes() {
+        return shardBytes;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DatasetExporter{");
+        sb.append("repository=").append(repository);
+        sb.append(", format=").append(format);
+        sb.append(", shardBytes=").append(shardBytes);
+        sb.append(", threads=").append(threads);
+        sb.append('}');
+        return sb.toString();
+    }
+}
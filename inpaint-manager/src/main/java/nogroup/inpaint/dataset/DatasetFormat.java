@@ -0,0 +1,16 @@
+package nogroup.inpaint.dataset;
+
+public enum DatasetFormat {
+    TAR("tar"),
+    ZIP("zip");
+
+    private final String extension;
+
+    DatasetFormat(String extension) {
+        this.extension = extension;
+    }
+
+    public String getExtension() {
+        return extension;
+    }
+}
@@ -0,0 +1,85 @@
+package nogroup.inpaint.dataset;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.*;
+
+public class DatasetQuery {
+    private int minRating;
+    private final Set<Checkpoint> checkpoints;
+    private final Set<Sampler> samplers;
+    private final Set<String> tags;
+
+    public DatasetQuery() {
+        this.minRating = Integer.MIN_VALUE;
+        this.checkpoints = EnumSet.noneOf(Checkpoint.class);
+        this.samplers = EnumSet.noneOf(Sampler.class);
+        this.tags = new HashSet<>();
+    }
+
+    public DatasetQuery minRating(int minRating) {
+        this.minRating = minRating;
+        return this;
+    }
+
+    public DatasetQuery checkpoint(Checkpoint... checkpoints) {
+        this.checkpoints.addAll(Arrays.asList(checkpoints));
+        return this;
+    }
+
+    public DatasetQuery sampler(Sampler... samplers) {
+        this.samplers.addAll(Arrays.asList(samplers));
+        return this;
+    }
+
+    public DatasetQuery tag(String... tags) {
+        this.tags.addAll(Arrays.asList(tags));
+        return this;
+    }
+
+    public boolean matches(SourceImage source) {
+        if (tags.isEmpty())
+            return true;
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                if (tags.contains(tag))
+                    return true;
+        return false;
+    }
+
+    public boolean matches(TargetImage target) {
+        return target.getRating() >= minRating
+                && (checkpoints.isEmpty() || checkpoints.contains(target.getCheckpoint()))
+                && (samplers.isEmpty() || samplers.contains(target.getSampler()));
+    }
+
+    public int getMinRating() {
+        return minRating;
+    }
+
+    public Set<Checkpoint> getCheckpoints() {
+        return Collections.unmodifiableSet(checkpoints);
+    }
+
+    public Set<Sampler> getSamplers() {
+        return Collections.unmodifiableSet(samplers);
+    }
+
+    public Set<String> getTags() {
+        return Collections.unmodifiableSet(tags);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DatasetQuery{");
+        sb.append("minRating=").append(minRating);
+        sb.append(", checkpoints=").append(checkpoints);
+        sb.append(", samplers=").append(samplers);
+        sb.append(", tags=").append(tags);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,95 @@
+package nogroup.inpaint.dataset;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class TarWriter implements Closeable {
+    private static final int BLOCK = 512;
+    private final FileChannel out;
+
+    TarWriter(Path file) throws IOException {
+        this.out = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+
+    void add(String name, Path file, long modified) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = in.size();
+            write(header(name, size, modified));
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(position, size - position, out);
+                // the header already promised size bytes, a file that shrank cannot be archived
+                if (transferred <= 0)
+                    throw new IOException(String.format("file shrank while archiving: %s, %d of %d bytes", file, position, size));
+                position += transferred;
+            }
+            pad(size);
+        }
+    }
+
+    void add(String name, byte[] data, long modified) throws IOException {
+        write(header(name, data.length, modified));
+        write(ByteBuffer.wrap(data));
+        pad(data.length);
+    }
+
+    private static ByteBuffer header(String name, long size, long modified) {
+        byte[] header = new byte[BLOCK];
+        byte[] encoded = name.getBytes(StandardCharsets.UTF_8);
+        if (encoded.length > 100)
+            throw new IllegalArgumentException(String.format("tar entry name too long: %s", name));
+        System.arraycopy(encoded, 0, header, 0, encoded.length);
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, modified / 1000);
+        header[156] = '0';
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        // the checksum is computed with its own field filled with spaces
+        for (int i = 148; i < 156; i++)
+            header[i] = ' ';
+        long checksum = 0;
+        for (byte b : header)
+            checksum += b & 0xff;
+        octal(header, 148, 7, checksum);
+        return ByteBuffer.wrap(header);
+    }
+
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        if (digits.length() > length - 1)
+            throw new IllegalArgumentException(String.format("value too large for tar header: %d", value));
+        int start = offset + length - 1 - digits.length();
+        for (int i = offset; i < start; i++)
+            header[i] = '0';
+        for (int i = 0; i < digits.length(); i++)
+            header[start + i] = (byte) digits.charAt(i);
+        header[offset + length - 1] = 0;
+    }
+
+    private void pad(long size) throws IOException {
+        int padding = (int) ((BLOCK - size % BLOCK) % BLOCK);
+        if (padding > 0)
+            write(ByteBuffer.allocate(padding));
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            out.write(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            write(ByteBuffer.allocate(2 * BLOCK));
+        } finally {
+            out.close();
+        }
+    }
+}
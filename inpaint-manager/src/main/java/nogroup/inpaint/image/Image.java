@@ -1,15 +1,26 @@
 package nogroup.inpaint.image;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.Objects;
 
 public abstract class Image implements Serializable {
+    // pinned to the value computed before perceptual hashes, snapshots written earlier stay readable
+    private static final long serialVersionUID = 5992538859675507501L;
     protected final String name;
     protected final String description;
     protected final int width;
     protected final int height;
+    protected final long perceptualHash;
+    // not final, readObject fills it in for snapshots written before it existed
+    private boolean perceptualHashed;
 
     public Image(String name, String description, int width, int height) {
+        this(name, description, width, height, null);
+    }
+
+    public Image(String name, String description, int width, int height, Long perceptualHash) {
         if (name == null) {
             throw new IllegalArgumentException("no name provided");
         }
@@ -17,6 +28,8 @@ public abstract class Image implements Serializable {
         this.description = description;
         this.width = width;
         this.height = height;
+        this.perceptualHash = perceptualHash == null ? 0 : perceptualHash;
+        this.perceptualHashed = perceptualHash != null;
     }
 
     public String getName() {
@@ -35,10 +48,18 @@ public abstract class Image implements Serializable {
         return description;
     }
 
+    public long getPerceptualHash() {
+        return perceptualHash;
+    }
+
+    public boolean hasPerceptualHash() {
+        return perceptualHashed;
+    }
+
     public abstract ImageBuilder toBuilder();
 
     protected void fillBuilder(ImageBuilder builder) {
-        builder.height(this.height).width(this.width).description(this.description);
+        builder.height(this.height).width(this.width).description(this.description).perceptualHash(this.perceptualHashed ? this.perceptualHash : null);
     }
 
     public abstract Image copy();
@@ -48,12 +69,12 @@ public abstract class Image implements Serializable {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Image image = (Image) o;
-        return width == image.width && height == image.height && name.equals(image.name) && Objects.equals(description, image.description);
+        return width == image.width && height == image.height && perceptualHash == image.perceptualHash && perceptualHashed == image.perceptualHashed && name.equals(image.name) && Objects.equals(description, image.description);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, description, width, height);
+        return Objects.hash(name, description, width, height, perceptualHash, perceptualHashed);
     }
 
     @Override
@@ -63,8 +84,16 @@ public abstract class Image implements Serializable {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(perceptualHashed ? perceptualHash : null);
         sb.append('}');
         return sb.toString();
     }
 
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        // older snapshots only ever stored a hash when one was computed, and used 0 for none
+        if (perceptualHash != 0)
+            perceptualHashed = true;
+    }
+
 }
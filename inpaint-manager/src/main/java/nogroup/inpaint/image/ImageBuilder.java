@@ -7,6 +7,7 @@ public abstract class ImageBuilder {
     protected String description;
     protected int width;
     protected int height;
+    protected Long perceptualHash;
 
     public ImageBuilder(String name) {
         this.name = name;
@@ -27,6 +28,11 @@ public abstract class ImageBuilder {
         return this;
     }
 
+    public ImageBuilder perceptualHash(Long perceptualHash) {
+        this.perceptualHash = perceptualHash;
+        return this;
+    }
+
     public abstract Image build();
 
     @Override
@@ -34,12 +40,12 @@ public abstract class ImageBuilder {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         ImageBuilder that = (ImageBuilder) o;
-        return width == that.width && height == that.height && Objects.equals(name, that.name) && Objects.equals(description, that.description);
+        return width == that.width && height == that.height && Objects.equals(perceptualHash, that.perceptualHash) && Objects.equals(name, that.name) && Objects.equals(description, that.description);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name, description, width, height);
+        return Objects.hash(name, description, width, height, perceptualHash);
     }
 
     @Override
@@ -49,6 +55,7 @@ public abstract class ImageBuilder {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(perceptualHash);
         sb.append('}');
         return sb.toString();
     }
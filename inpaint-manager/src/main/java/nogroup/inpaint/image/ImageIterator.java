@@ -0,0 +1,149 @@
+package nogroup.inpaint.image;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.*;
+
+public class ImageIterator implements Iterator<BufferedImage>, Closeable {
+    public static final int DEFAULT_PREFETCH = 4;
+    private static final ExecutorService defaultExecutor = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors() / 2), runnable -> {
+                Thread thread = new Thread(runnable, "image-prefetch");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private Closeable files;
+    private final Iterator<Path> paths;
+    private final int prefetch;
+    private final Executor executor;
+    private final Deque<CompletableFuture<BufferedImage>> pending;
+    private boolean closed;
+
+    public ImageIterator(Iterator<Path> paths, int prefetch, Executor executor) {
+        this(paths, null, prefetch, executor);
+    }
+
+    ImageIterator(Iterator<Path> paths, Closeable files, int prefetch, Executor executor) {
+        if (prefetch < 1)
+            throw new IllegalArgumentException(String.format("wrong prefetch count: %d", prefetch));
+        this.files = files;
+        this.paths = paths;
+        this.prefetch = prefetch;
+        this.executor = executor;
+        this.pending = new ArrayDeque<>(prefetch);
+        fill();
+    }
+
+    public static ImageIterator of(String dir) throws IllegalArgumentException, IOException {
+        return of(dir, DEFAULT_PREFETCH, defaultExecutor);
+    }
+
+    public static ImageIterator of(String dir, int prefetch, Executor executor) throws IllegalArgumentException, IOException {
+        Path path = Paths.get(dir);
+        if (!Files.isDirectory(path))
+            throw new IllegalArgumentException(String.format("not a dir: %s", dir));
+
+        DirectoryStream<Path> stream = Files.newDirectoryStream(path, ImageIterator::isImage);
+        return new ImageIterator(stream.iterator(), stream, prefetch, executor);
+    }
+
+    public static boolean isImage(Path file) {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        return Files.isRegularFile(file) && (name.endsWith(".png") || name.endsWith(".jpeg") || name.endsWith(".jpg"));
+    }
+
+    private static BufferedImage decode(Path file) {
+        try {
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null)
+                throw new IOException("unsupported image: " + file);
+            return image;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private synchronized void fill() {
+        while (!closed && pending.size() < prefetch) {
+            if (!paths.hasNext()) {
+                // callers that iterate to the end without closing must not leak the directory handle
+                closeFiles();
+                return;
+            }
+            final Path file = paths.next();
+            pending.addLast(CompletableFuture.supplyAsync(() -> decode(file), executor));
+        }
+    }
+
+    private void closeFiles() {
+        if (files == null)
+            return;
+        try {
+            files.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            files = null;
+        }
+    }
+
+    @Override
+    public synchronized boolean hasNext() {
+        return !pending.isEmpty();
+    }
+
+    public synchronized CompletableFuture<BufferedImage> nextAsync() {
+        CompletableFuture<BufferedImage> head = pending.pollFirst();
+        if (head == null)
+            throw new NoSuchElementException();
+        fill();
+        return head;
+    }
+
+    @Override
+    public BufferedImage next() {
+        try {
+            return nextAsync().get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted while loading image", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        for (CompletableFuture<BufferedImage> future : pending)
+            future.cancel(false);
+        pending.clear();
+        Closeable files = this.files;
+        this.files = null;
+        if (files != null)
+            files.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ImageIterator{");
+        sb.append("prefetch=").append(prefetch);
+        sb.append(", pending=").append(pending.size());
+        sb.append(", closed=").append(closed);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -1,5 +1,7 @@
 package nogroup.inpaint.image;
 
+import nogroup.inpaint.image.hash.PerceptualHash;
+
 import javax.imageio.ImageIO;
 import java.awt.image.BufferedImage;
 import java.io.IOException;
@@ -16,8 +18,8 @@ public abstract class ImageLoader {
             throw new IllegalArgumentException("not a file: " + filename);
         if (Files.notExists(file))
             throw new IllegalArgumentException("unknown (non existing) file: " + filename);
-        if (!file.endsWith(".png") || !file.endsWith(".jpeg"))
-            throw new IllegalArgumentException(String.format("not an image [%s], allowed extensions: png, jpeg", filename));
+        if (!ImageIterator.isImage(file))
+            throw new IllegalArgumentException(String.format("not an image [%s], allowed extensions: png, jpeg, jpg", filename));
     }
 
     public BufferedImage load(ImageBuilder builder) throws IllegalArgumentException, IOException {
@@ -27,6 +29,7 @@ public abstract class ImageLoader {
         BufferedImage image = ImageIO.read(file.toFile());
         builder.width(image.getWidth());
         builder.height(image.getHeight());
+        builder.perceptualHash(PerceptualHash.dHash(image));
         return image;
     }
 
@@ -0,0 +1,125 @@
+package nogroup.inpaint.image.hash;
+
+import java.io.Serializable;
+import java.util.*;
+
+public class BkTree implements Serializable {
+    private Node root;
+    private int size;
+
+    public synchronized void add(long hash, String name) {
+        if (root == null) {
+            root = new Node(hash);
+            root.names.add(name);
+            size++;
+            return;
+        }
+
+        Node node = root;
+        while (true) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                if (node.names.add(name))
+                    size++;
+                return;
+            }
+            Node child = node.child(distance);
+            if (child == null) {
+                child = new Node(hash);
+                child.names.add(name);
+                node.addChild(distance, child);
+                size++;
+                return;
+            }
+            node = child;
+        }
+    }
+
+    public synchronized boolean remove(long hash, String name) {
+        Node node = root;
+        while (node != null) {
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance == 0) {
+                // the node is kept even if empty, it still routes to its children
+                if (node.names.remove(name)) {
+                    size--;
+                    return true;
+                }
+                return false;
+            }
+            node = node.child(distance);
+        }
+        return false;
+    }
+
+    public synchronized Map<String, Integer> search(long hash, int maxDistance) {
+        final Map<String, Integer> found = new HashMap<>();
+        if (root == null)
+            return found;
+
+        final Deque<Node> queue = new ArrayDeque<>();
+        queue.push(root);
+        while (!queue.isEmpty()) {
+            Node node = queue.pop();
+            int distance = PerceptualHash.distance(node.hash, hash);
+            if (distance <= maxDistance)
+                for (String name : node.names)
+                    found.put(name, distance);
+
+            for (int i = 0; i < node.childCount; i++)
+                if (Math.abs(node.distances[i] - distance) <= maxDistance)
+                    queue.push(node.children[i]);
+        }
+        return found;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized void clear() {
+        root = null;
+        size = 0;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("BkTree{");
+        sb.append("size=").append(size);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class Node implements Serializable {
+        final long hash;
+        final Set<String> names;
+        byte[] distances;
+        Node[] children;
+        int childCount;
+
+        Node(long hash) {
+            this.hash = hash;
+            this.names = new HashSet<>(2);
+        }
+
+        Node child(int distance) {
+            for (int i = 0; i < childCount; i++)
+                if (distances[i] == distance)
+                    return children[i];
+            return null;
+        }
+
+        void addChild(int distance, Node child) {
+            if (children == null) {
+                distances = new byte[2];
+                children = new Node[2];
+            } else if (childCount == children.length) {
+                distances = Arrays.copyOf(distances, childCount * 2);
+                children = Arrays.copyOf(children, childCount * 2);
+            }
+            distances[childCount] = (byte) distance;
+            children[childCount] = child;
+            childCount++;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package nogroup.inpaint.image.hash;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.List;
+
+public class PerceptualHash {
+    private static final int SIZE = 8;
+    public static final int CHUNKS = 4;
+    private static final int CHUNK_BITS = Long.SIZE / CHUNKS;
+    // wider chunk radii enumerate more probes than a scan over the hashes costs
+    public static final int MAX_CHUNK_RADIUS = 3;
+
+    private PerceptualHash() {
+    }
+
+    public static long dHash(BufferedImage image) {
+        BufferedImage gray = new BufferedImage(SIZE + 1, SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Graphics2D graphics = gray.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, SIZE + 1, SIZE, null);
+        } finally {
+            graphics.dispose();
+        }
+
+        Raster raster = gray.getRaster();
+        long hash = 0;
+        for (int y = 0; y < SIZE; y++)
+            for (int x = 0; x < SIZE; x++) {
+                hash <<= 1;
+                if (raster.getSample(x, y, 0) > raster.getSample(x + 1, y, 0))
+                    hash |= 1;
+            }
+        return hash;
+    }
+
+    public static int distance(long first, long second) {
+        return Long.bitCount(first ^ second);
+    }
+
+    public static int chunk(long hash, int index) {
+        return (int) (hash >>> (index * CHUNK_BITS)) & ((1 << CHUNK_BITS) - 1);
+    }
+
+    public static int chunkRadius(int maxDistance) {
+        // a hash within maxDistance differs in at most maxDistance / CHUNKS bits on at least one chunk
+        return Math.max(0, maxDistance) / CHUNKS;
+    }
+
+    public static int[] chunkProbes(int chunk, int radius) {
+        final List<Integer> probes = new ArrayList<>();
+        probe(chunk, 0, Math.min(radius, CHUNK_BITS), probes);
+        final int[] values = new int[probes.size()];
+        for (int i = 0; i < values.length; i++)
+            values[i] = probes.get(i);
+        return values;
+    }
+
+    private static void probe(int value, int from, int flips, List<Integer> probes) {
+        probes.add(value);
+        if (flips == 0)
+            return;
+        for (int bit = from; bit < CHUNK_BITS; bit++)
+            probe(value ^ (1 << bit), bit + 1, flips - 1, probes);
+    }
+}
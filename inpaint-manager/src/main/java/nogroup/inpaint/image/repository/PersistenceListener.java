@@ -0,0 +1,5 @@
+package nogroup.inpaint.image.repository;
+
+public interface PersistenceListener {
+    void onPersist(long bytes, long nanos);
+}
@@ -1,33 +1,142 @@
 package nogroup.inpaint.image.repository;
 
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
 import nogroup.inpaint.image.source.SourceImage;
 import nogroup.inpaint.image.target.TargetImage;
 
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 public interface Repository {
     SourceImage createSource(SourceImage source) throws AlreadyExistsException;
 
     TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException;
 
+    // bulk creates skip names that already exist, whatever their content, and return what was created
+    default List<SourceImage> createSources(Collection<SourceImage> sources) {
+        final List<SourceImage> created = new ArrayList<>();
+        for (SourceImage source : sources) {
+            try {
+                SourceImage result = createSource(source);
+                if (result != null)
+                    created.add(result);
+            } catch (AlreadyExistsException ignored) {
+            }
+        }
+        return created;
+    }
+
+    default List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        readSource(source.getName());
+        final List<TargetImage> created = new ArrayList<>();
+        for (TargetImage target : targets) {
+            try {
+                TargetImage result = createTarget(source, target);
+                if (result != null)
+                    created.add(result);
+            } catch (AlreadyExistsException ignored) {
+            }
+        }
+        return created;
+    }
+
     SourceImage readSource(TargetImage target) throws NotFoundException;
 
     SourceImage readSource(String name) throws NotFoundException;
 
     Set<SourceImage> readSources();
 
+    default Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (SourceImage source : readSources())
+            if (contentHash.equals(source.getContentHash()))
+                sources.add(source);
+        return sources;
+    }
+
+    default Set<SourceImage> readSourcesByTag(String tag) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (SourceImage source : readSources())
+            if (source.getTags() != null && source.getTags().contains(tag))
+                sources.add(source);
+        return sources;
+    }
+
     List<TargetImage> readTargets(SourceImage source) throws NotFoundException;
 
     TargetImage readTarget(String name) throws NotFoundException;
 
+    // targets whose perceptual hash is within maxDistance of hash, nearest first and then by name
+    List<TargetImage> readSimilarTargets(long hash, int maxDistance);
+
+    default List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        final TargetImage existing = readTarget(target.getName());
+        final List<TargetImage> similar = new ArrayList<>();
+        if (!existing.hasPerceptualHash())
+            return similar;
+        for (TargetImage candidate : readSimilarTargets(existing.getPerceptualHash(), maxDistance))
+            if (!candidate.getName().equals(target.getName()))
+                similar.add(candidate);
+        return similar;
+    }
+
     SourceImage updateSource(SourceImage source) throws NotFoundException;
 
+    default List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        for (SourceImage source : sources)
+            readSource(source.getName());
+        final List<SourceImage> updated = new ArrayList<>();
+        for (SourceImage source : sources) {
+            SourceImage result = updateSource(source);
+            if (result != null)
+                updated.add(result);
+        }
+        return updated;
+    }
+
     TargetImage updateTarget(TargetImage target) throws NotFoundException;
 
     SourceImage deleteSource(SourceImage source);
 
+    default SourceImage deleteSourceCascade(SourceImage source) {
+        try {
+            deleteTargets(source);
+        } catch (NotFoundException e) {
+            return null;
+        }
+        return deleteSource(source);
+    }
+
     TargetImage deleteTarget(TargetImage target);
 
     List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException;
+
+    default List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        readSource(to.getName());
+        final Map<String, TargetImage> existing = new LinkedHashMap<>();
+        for (TargetImage target : targets) {
+            if (!readSource(target).getName().equals(from.getName()))
+                throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                        target, from));
+            existing.put(target.getName(), readTarget(target.getName()));
+        }
+        final List<TargetImage> moved = new ArrayList<>(existing.size());
+        if (from.getName().equals(to.getName()))
+            return moved;
+        for (TargetImage target : existing.values()) {
+            deleteTarget(target);
+            createTarget(to, target);
+            moved.add(target);
+        }
+        return moved;
+    }
+
+    default Subscription subscribe(RepositorySubscriber subscriber) {
+        return subscribe(subscriber, Subscription.DEFAULT_CAPACITY, Subscription.Overflow.BLOCK);
+    }
+
+    Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow);
+
+    // removes the targets left behind by deleteSource and returns them
+    List<TargetImage> sweepOrphans();
 }
@@ -1,7 +1,15 @@
 package nogroup.inpaint.image.repository;
 
+import nogroup.inpaint.image.repository.cache.CachingRepository;
 import nogroup.inpaint.image.repository.impl.FileRepository;
 import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JdbcRepository;
+import nogroup.inpaint.image.repository.impl.KeyValueRepository;
+import nogroup.inpaint.image.repository.impl.OffHeapRepository;
+import nogroup.inpaint.image.repository.impl.ShardedRepository;
+import nogroup.inpaint.image.repository.metrics.InstrumentedRepository;
+import nogroup.inpaint.image.repository.metrics.JmxRepositoryMetrics;
+import nogroup.inpaint.image.repository.metrics.RepositoryMetrics;
 
 import java.io.IOException;
 
@@ -12,7 +20,39 @@ public class RepositoryFactory {
                 return FileRepository.getInstance((String) args[0]);
             case IN_MEMORY:
                 return new InMemoryRepository();
+            case JDBC:
+                return JdbcRepository.getInstance((String) args[0]);
+            case KEY_VALUE:
+                return KeyValueRepository.getInstance((String) args[0]);
+            case SHARDED:
+                return ShardedRepository.ofFiles((String) args[0],
+                        args.length > 1 ? (Integer) args[1] : ShardedRepository.DEFAULT_SHARDS);
+            case OFF_HEAP:
+                return new OffHeapRepository();
         }
         throw new IllegalArgumentException("unknown repository implementation: " + implType);
     }
+
+    public Repository createInstrumented(RepositoryImpl implType, Object... args) throws IOException {
+        return instrument(create(implType, args));
+    }
+
+    public Repository instrument(Repository repository) {
+        return instrument(repository, JmxRepositoryMetrics.register(
+                repository.getClass().getSimpleName() + "@" + Integer.toHexString(System.identityHashCode(repository))));
+    }
+
+    public Repository instrument(Repository repository, RepositoryMetrics metrics) {
+        if (repository instanceof FileRepository)
+            ((FileRepository) repository).setPersistenceListener(metrics);
+        return new InstrumentedRepository(repository, metrics);
+    }
+
+    public CachingRepository cache(Repository repository) {
+        return new CachingRepository(repository);
+    }
+
+    public CachingRepository cache(Repository repository, int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        return new CachingRepository(repository, maxEntries, ttlMillis, negativeTtlMillis);
+    }
 }
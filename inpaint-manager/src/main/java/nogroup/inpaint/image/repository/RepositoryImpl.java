@@ -2,5 +2,9 @@ package nogroup.inpaint.image.repository;
 
 public enum RepositoryImpl {
     IN_MEMORY,
-    FILE
+    FILE,
+    JDBC,
+    KEY_VALUE,
+    SHARDED,
+    OFF_HEAP
 }
@@ -0,0 +1,97 @@
+package nogroup.inpaint.image.repository.cache;
+
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+class Cache<V> {
+    private final LinkedHashMap<String, Entry<V>> entries;
+    private final long ttlNanos;
+    private final long negativeTtlNanos;
+    private final AtomicLong generation;
+    final LongAdder hits;
+    final LongAdder negativeHits;
+    final LongAdder misses;
+    final LongAdder evictions;
+    final LongAdder invalidations;
+
+    Cache(final int maxEntries, long ttlNanos, long negativeTtlNanos) {
+        this.ttlNanos = ttlNanos;
+        this.negativeTtlNanos = negativeTtlNanos;
+        this.generation = new AtomicLong();
+        this.hits = new LongAdder();
+        this.negativeHits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+        this.invalidations = new LongAdder();
+        this.entries = new LinkedHashMap<String, Entry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(java.util.Map.Entry<String, Cache.Entry<V>> eldest) {
+                if (size() <= maxEntries)
+                    return false;
+                evictions.increment();
+                return true;
+            }
+        };
+    }
+
+    long generation() {
+        return generation.get();
+    }
+
+    synchronized Entry<V> get(String key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        if (entry.expiresAt - System.nanoTime() < 0) {
+            entries.remove(key);
+            misses.increment();
+            return null;
+        }
+        if (entry.missing != null)
+            negativeHits.increment();
+        else
+            hits.increment();
+        return entry;
+    }
+
+    synchronized void put(String key, V value, long generation) {
+        if (this.generation.get() == generation)
+            entries.put(key, new Entry<>(value, null, System.nanoTime() + ttlNanos));
+    }
+
+    synchronized void putMissing(String key, String message, long generation) {
+        if (this.generation.get() == generation)
+            entries.put(key, new Entry<>(null, message, System.nanoTime() + negativeTtlNanos));
+    }
+
+    synchronized void invalidate(String key) {
+        generation.incrementAndGet();
+        if (entries.remove(key) != null)
+            invalidations.increment();
+    }
+
+    synchronized void invalidateAll() {
+        generation.incrementAndGet();
+        invalidations.add(entries.size());
+        entries.clear();
+    }
+
+    synchronized int size() {
+        return entries.size();
+    }
+
+    static class Entry<V> {
+        final V value;
+        final String missing;
+        final long expiresAt;
+
+        Entry(V value, String missing, long expiresAt) {
+            this.value = value;
+            this.missing = missing;
+            this.expiresAt = expiresAt;
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package nogroup.inpaint.image.repository.cache;
+
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+public class CachingRepository implements Repository {
+    public final static int DEFAULT_MAX_ENTRIES = 10_000;
+    public final static long DEFAULT_TTL_MILLIS = TimeUnit.MINUTES.toMillis(1);
+    public final static long DEFAULT_NEGATIVE_TTL_MILLIS = TimeUnit.SECONDS.toMillis(5);
+
+    private final Repository repository;
+    private final Cache<SourceImage> sources;
+    private final Cache<TargetImage> targets;
+    private final Cache<List<String>> sourceToTargets;
+    private final Cache<String> targetToSource;
+
+    public CachingRepository(Repository repository) {
+        this(repository, DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MILLIS, DEFAULT_NEGATIVE_TTL_MILLIS);
+    }
+
+    public CachingRepository(Repository repository, int maxEntries, long ttlMillis, long negativeTtlMillis) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException(String.format("wrong cache size: %d", maxEntries));
+        this.repository = repository;
+        long ttl = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        long negativeTtl = TimeUnit.MILLISECONDS.toNanos(negativeTtlMillis);
+        this.sources = new Cache<>(maxEntries, ttl, negativeTtl);
+        this.targets = new Cache<>(maxEntries, ttl, negativeTtl);
+        this.sourceToTargets = new Cache<>(maxEntries, ttl, negativeTtl);
+        this.targetToSource = new Cache<>(maxEntries, ttl, negativeTtl);
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        SourceImage result = repository.createSource(source);
+        sources.invalidate(source.getName());
+        sourceToTargets.invalidate(source.getName());
+        return result;
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        TargetImage result = repository.createTarget(source, target);
+        targets.invalidate(target.getName());
+        targetToSource.invalidate(target.getName());
+        sourceToTargets.invalidate(source.getName());
+        return result;
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        List<SourceImage> result = repository.createSources(sources);
+        for (SourceImage source : sources) {
+            this.sources.invalidate(source.getName());
+            sourceToTargets.invalidate(source.getName());
+        }
+        return result;
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        List<TargetImage> result = repository.createTargets(source, targets);
+        for (TargetImage target : targets) {
+            this.targets.invalidate(target.getName());
+            targetToSource.invalidate(target.getName());
+        }
+        sourceToTargets.invalidate(source.getName());
+        return result;
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        Cache.Entry<String> entry = targetToSource.get(target.getName());
+        if (entry != null) {
+            if (entry.missing != null)
+                throw new NotFoundException(entry.missing);
+            return readSource(entry.value);
+        }
+
+        long generation = targetToSource.generation();
+        try {
+            SourceImage source = repository.readSource(target);
+            targetToSource.put(target.getName(), source.getName(), generation);
+            return source;
+        } catch (NotFoundException e) {
+            targetToSource.putMissing(target.getName(), e.getMessage(), generation);
+            throw e;
+        }
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        Cache.Entry<SourceImage> entry = sources.get(name);
+        if (entry != null) {
+            if (entry.missing != null)
+                throw new NotFoundException(entry.missing);
+            return entry.value.copy();
+        }
+
+        long generation = sources.generation();
+        try {
+            SourceImage source = repository.readSource(name);
+            sources.put(name, source.copy(), generation);
+            return source;
+        } catch (NotFoundException e) {
+            sources.putMissing(name, e.getMessage(), generation);
+            throw e;
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        return repository.readSources();
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        return repository.readSourcesByContentHash(contentHash);
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        return repository.readSourcesByTag(tag);
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        Cache.Entry<List<String>> entry = sourceToTargets.get(source.getName());
+        if (entry != null) {
+            if (entry.missing != null)
+                throw new NotFoundException(entry.missing);
+            List<TargetImage> cached = resolve(entry.value);
+            if (cached != null)
+                return cached;
+        }
+
+        long generation = sourceToTargets.generation();
+        long targetsGeneration = targets.generation();
+        try {
+            List<TargetImage> result = repository.readTargets(source);
+            List<String> names = new ArrayList<>(result.size());
+            for (TargetImage target : result) {
+                names.add(target.getName());
+                targets.put(target.getName(), target, targetsGeneration);
+            }
+            sourceToTargets.put(source.getName(), names, generation);
+            return result;
+        } catch (NotFoundException e) {
+            sourceToTargets.putMissing(source.getName(), e.getMessage(), generation);
+            throw e;
+        }
+    }
+
+    private List<TargetImage> resolve(List<String> names) {
+        // a list is only served if every target is still cached, otherwise the caller reloads it
+        final List<TargetImage> resolved = new ArrayList<>(names.size());
+        for (String name : names) {
+            Cache.Entry<TargetImage> entry = targets.get(name);
+            if (entry == null || entry.missing != null)
+                return null;
+            resolved.add(entry.value);
+        }
+        return resolved;
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        Cache.Entry<TargetImage> entry = targets.get(name);
+        if (entry != null) {
+            if (entry.missing != null)
+                throw new NotFoundException(entry.missing);
+            return entry.value;
+        }
+
+        long generation = targets.generation();
+        try {
+            TargetImage target = repository.readTarget(name);
+            targets.put(name, target, generation);
+            return target;
+        } catch (NotFoundException e) {
+            targets.putMissing(name, e.getMessage(), generation);
+            throw e;
+        }
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        return repository.readSimilarTargets(target, maxDistance);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        return repository.readSimilarTargets(hash, maxDistance);
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        SourceImage result = repository.updateSource(source);
+        sources.invalidate(source.getName());
+        return result;
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        List<SourceImage> result = repository.updateSources(sources);
+        for (SourceImage source : sources)
+            this.sources.invalidate(source.getName());
+        return result;
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        TargetImage result = repository.updateTarget(target);
+        targets.invalidate(target.getName());
+        return result;
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        SourceImage result = repository.deleteSource(source);
+        sources.invalidate(source.getName());
+        sourceToTargets.invalidate(source.getName());
+        targetToSource.invalidateAll();
+        return result;
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        SourceImage result = repository.deleteSourceCascade(source);
+        sources.invalidate(source.getName());
+        sourceToTargets.invalidate(source.getName());
+        // the removed targets are not returned, every cached target may belong to the source
+        targets.invalidateAll();
+        targetToSource.invalidateAll();
+        return result;
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        TargetImage result = repository.deleteTarget(target);
+        targets.invalidate(target.getName());
+        targetToSource.invalidate(target.getName());
+        // the owning source is unknown here, a cached list could resurrect the target once it is reassigned
+        sourceToTargets.invalidateAll();
+        return result;
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        List<TargetImage> result = repository.deleteTargets(source);
+        sourceToTargets.invalidate(source.getName());
+        for (TargetImage target : result) {
+            targets.invalidate(target.getName());
+            targetToSource.invalidate(target.getName());
+        }
+        return result;
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        List<TargetImage> result = repository.moveTargets(from, to, targets);
+        sourceToTargets.invalidate(from.getName());
+        sourceToTargets.invalidate(to.getName());
+        for (TargetImage target : targets)
+            targetToSource.invalidate(target.getName());
+        return result;
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        List<TargetImage> result = repository.sweepOrphans();
+        for (TargetImage target : result) {
+            targets.invalidate(target.getName());
+            targetToSource.invalidate(target.getName());
+        }
+        return result;
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return repository.subscribe(subscriber, capacity, overflow);
+    }
+
+    public void invalidateAll() {
+        sources.invalidateAll();
+        targets.invalidateAll();
+        sourceToTargets.invalidateAll();
+        targetToSource.invalidateAll();
+    }
+
+    public CacheStats getStats() {
+        long hits = 0;
+        long negativeHits = 0;
+        long misses = 0;
+        long evictions = 0;
+        long invalidations = 0;
+        int size = 0;
+        for (Cache<?> cache : new Cache<?>[]{sources, targets, sourceToTargets, targetToSource}) {
+            hits += cache.hits.sum();
+            negativeHits += cache.negativeHits.sum();
+            misses += cache.misses.sum();
+            evictions += cache.evictions.sum();
+            invalidations += cache.invalidations.sum();
+            size += cache.size();
+        }
+        return new CacheStats(hits, negativeHits, misses, evictions, invalidations, size);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        CachingRepository that = (CachingRepository) o;
+        return Objects.equals(repository, that.repository);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(repository);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("CachingRepository{");
+        sb.append("repository=").append(repository);
+        sb.append(", stats=").append(getStats());
+        sb.append('}');
+        return sb.toString();
+    }
+}
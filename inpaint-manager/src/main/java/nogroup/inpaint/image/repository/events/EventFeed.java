@@ -0,0 +1,107 @@
+package nogroup.inpaint.image.repository.events;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+public class EventFeed {
+    private final List<Subscription> subscriptions;
+    private final AtomicLong sequence;
+    private final Queue<RepositoryEvent> pending;
+    private final ReentrantLock delivering;
+
+    public EventFeed() {
+        this(false);
+    }
+
+    // a deferred feed only queues what is published, flush() delivers it once the publisher let go of its locks
+    public EventFeed(boolean deferred) {
+        this.subscriptions = new CopyOnWriteArrayList<>();
+        this.sequence = new AtomicLong();
+        this.pending = deferred ? new ConcurrentLinkedQueue<>() : null;
+        this.delivering = new ReentrantLock();
+    }
+
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        final Subscription[] registered = new Subscription[1];
+        registered[0] = new Subscription(subscriber, capacity, overflow, () -> subscriptions.remove(registered[0]));
+        subscriptions.add(registered[0]);
+        return registered[0];
+    }
+
+    public boolean hasSubscribers() {
+        return !subscriptions.isEmpty();
+    }
+
+    public void publish(RepositoryEvent.Type type, SourceImage source, TargetImage target) {
+        if (subscriptions.isEmpty())
+            return;
+        RepositoryEvent event = new RepositoryEvent(sequence.incrementAndGet(), type, source, target);
+        if (pending != null) {
+            pending.add(event);
+            return;
+        }
+        deliver(event);
+    }
+
+    private void deliver(RepositoryEvent event) {
+        for (Subscription subscription : subscriptions)
+            subscription.publish(event);
+    }
+
+    // writers wait for their turn to deliver, that is where a BLOCK subscriber slows them down
+    public void flush() {
+        if (pending == null || pending.isEmpty())
+            return;
+        delivering.lock();
+        drain();
+        tryFlush();
+    }
+
+    // readers leave delivery to the thread already doing it and never wait on a subscriber
+    public void tryFlush() {
+        if (pending == null)
+            return;
+        while (!pending.isEmpty() && delivering.tryLock())
+            drain();
+    }
+
+    private void drain() {
+        // events are queued in the order the publisher's lock admitted them, one thread delivering keeps that order
+        try {
+            RepositoryEvent event;
+            while ((event = pending.poll()) != null)
+                deliver(event);
+        } finally {
+            delivering.unlock();
+        }
+    }
+
+    public void publishAll(RepositoryEvent.Type type, SourceImage source, List<TargetImage> targets) {
+        if (subscriptions.isEmpty())
+            return;
+        for (TargetImage target : targets)
+            publish(type, source, target);
+    }
+
+    public void close() {
+        for (Subscription subscription : subscriptions)
+            subscription.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("EventFeed{");
+        sb.append("subscriptions=").append(subscriptions.size());
+        sb.append(", sequence=").append(sequence.get());
+        sb.append(", pending=").append(pending == null ? 0 : pending.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
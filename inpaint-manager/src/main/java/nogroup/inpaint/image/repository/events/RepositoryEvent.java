@@ -0,0 +1,70 @@
+package nogroup.inpaint.image.repository.events;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.Objects;
+
+public class RepositoryEvent {
+    public enum Type {
+        SOURCE_CREATED,
+        SOURCE_UPDATED,
+        SOURCE_DELETED,
+        TARGET_ASSIGNED,
+        TARGET_UPDATED,
+        TARGET_DELETED,
+        TARGET_MOVED,
+    }
+
+    private final long sequence;
+    private final Type type;
+    private final SourceImage source;
+    private final TargetImage target;
+
+    public RepositoryEvent(long sequence, Type type, SourceImage source, TargetImage target) {
+        this.sequence = sequence;
+        this.type = type;
+        this.source = source;
+        this.target = target;
+    }
+
+    public long getSequence() {
+        return sequence;
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SourceImage getSource() {
+        return source;
+    }
+
+    public TargetImage getTarget() {
+        return target;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        RepositoryEvent that = (RepositoryEvent) o;
+        return sequence == that.sequence && type == that.type && Objects.equals(source, that.source) && Objects.equals(target, that.target);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(sequence, type, source, target);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RepositoryEvent{");
+        sb.append("sequence=").append(sequence);
+        sb.append(", type=").append(type);
+        sb.append(", source=").append(source);
+        sb.append(", target=").append(target);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,7 @@
+package nogroup.inpaint.image.repository.events;
+
+import java.util.List;
+
+public interface RepositorySubscriber {
+    void onEvents(List<RepositoryEvent> events);
+}
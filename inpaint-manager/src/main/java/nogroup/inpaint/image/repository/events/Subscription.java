@@ -0,0 +1,124 @@
+package nogroup.inpaint.image.repository.events;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+public class Subscription implements Closeable {
+    public enum Overflow {
+        BLOCK,
+        DROP,
+    }
+
+    public static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_BATCH = 256;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long FULL_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    private final RepositorySubscriber subscriber;
+    private final EventRing ring;
+    private final Overflow overflow;
+    private final Runnable onClose;
+    private final LongAdder delivered;
+    private final LongAdder dropped;
+    private final Thread dispatcher;
+    private volatile boolean waiting;
+    private volatile boolean closed;
+
+    Subscription(RepositorySubscriber subscriber, int capacity, Overflow overflow, Runnable onClose) {
+        this.subscriber = subscriber;
+        this.ring = new EventRing(capacity);
+        this.overflow = overflow;
+        this.onClose = onClose;
+        this.delivered = new LongAdder();
+        this.dropped = new LongAdder();
+        this.dispatcher = new Thread(this::dispatch, "repository-events");
+        this.dispatcher.setDaemon(true);
+        this.dispatcher.start();
+    }
+
+    void publish(RepositoryEvent event) {
+        while (!ring.offer(event)) {
+            if (closed || overflow == Overflow.DROP || Thread.currentThread() == dispatcher) {
+                dropped.increment();
+                return;
+            }
+            // the subscriber is behind, slow the writer down until it catches up
+            LockSupport.unpark(dispatcher);
+            LockSupport.parkNanos(FULL_PARK_NANOS);
+        }
+        if (waiting)
+            LockSupport.unpark(dispatcher);
+    }
+
+    private void dispatch() {
+        final List<RepositoryEvent> batch = new ArrayList<>(MAX_BATCH);
+        while (!closed) {
+            if (ring.drain(batch, MAX_BATCH) == 0) {
+                waiting = true;
+                if (ring.size() == 0 && !closed)
+                    LockSupport.parkNanos(IDLE_PARK_NANOS);
+                waiting = false;
+                continue;
+            }
+            try {
+                subscriber.onEvents(new ArrayList<>(batch));
+            } catch (RuntimeException e) {
+                e.printStackTrace();
+            }
+            delivered.add(batch.size());
+            batch.clear();
+        }
+    }
+
+    public long getDelivered() {
+        return delivered.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    public int getPending() {
+        return ring.size();
+    }
+
+    public int getCapacity() {
+        return ring.capacity();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public void close() {
+        if (closed)
+            return;
+        closed = true;
+        onClose.run();
+        LockSupport.unpark(dispatcher);
+        if (Thread.currentThread() != dispatcher) {
+            try {
+                dispatcher.join(TimeUnit.SECONDS.toMillis(10));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Subscription{");
+        sb.append("overflow=").append(overflow);
+        sb.append(", capacity=").append(getCapacity());
+        sb.append(", pending=").append(getPending());
+        sb.append(", delivered=").append(getDelivered());
+        sb.append(", dropped=").append(getDropped());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -2,206 +2,501 @@ package nogroup.inpaint.image.repository.impl;
 
 import nogroup.inpaint.image.repository.AlreadyExistsException;
 import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.PersistenceListener;
 import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.repository.replication.JournalBatch;
+import nogroup.inpaint.image.repository.replication.JournalSource;
 import nogroup.inpaint.image.source.SourceImage;
 import nogroup.inpaint.image.target.TargetImage;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
 
-public class FileRepository implements Repository {
+public class FileRepository implements Repository, JournalSource, Closeable {
     private final static String filename = "images-repository.dat";
-    private static Map<String, FileRepository> instances;
+    private final static String journalFilename = "images-repository.journal";
+    private final static String lockFilename = "images-repository.lock";
+    private final static long compactThreshold = 8L * 1024 * 1024;
+    private final static long refreshIntervalNanos = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final ConcurrentMap<Path, Future<FileRepository>> instances = new ConcurrentHashMap<>();
+    private final Path dir;
     private final Path file;
-    private InMemoryRepository inMemRepo;
-    private boolean wasInit;
+    private final SnapshotFormat format;
+    private final Journal journal;
+    private final FileChannel lockChannel;
+    private final EventFeed feed;
+    private volatile InMemoryRepository inMemRepo;
+    private volatile PersistenceListener persistenceListener;
+    private volatile long generation;
+    private volatile long offset;
+    private volatile long refreshed;
+    private volatile boolean closed;
 
-    private FileRepository(Path file) {
+    private FileRepository(Path dir, Path file, SnapshotFormat format, Journal journal, FileChannel lockChannel) {
+        this.dir = dir;
         this.file = file;
-        wasInit = false;
+        this.format = format;
+        this.journal = journal;
+        this.lockChannel = lockChannel;
+        this.feed = new EventFeed(true);
+        this.inMemRepo = new InMemoryRepository();
+        this.refreshed = System.nanoTime() - refreshIntervalNanos;
     }
 
     public static FileRepository getInstance(String dataDir) throws IllegalArgumentException, IOException {
-        if (instances == null)
-            instances = new HashMap<>();
-        if (instances.containsKey(dataDir))
-            return instances.get(dataDir);
-        FileRepository instance = newInstance(dataDir);
-        instances.put(dataDir, instance);
-        return instance;
+        Path dir = Paths.get(dataDir).toAbsolutePath().normalize();
+        Future<FileRepository> instance = instances.get(dir);
+        if (instance == null) {
+            // only the thread that registers the task loads the snapshot, the others wait for it
+            FutureTask<FileRepository> task = new FutureTask<>(() -> newInstance(dir));
+            instance = instances.putIfAbsent(dir, task);
+            if (instance == null) {
+                instance = task;
+                task.run();
+            }
+        }
+        try {
+            return instance.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(String.format("interrupted while opening: %s", dir));
+        } catch (ExecutionException e) {
+            instances.remove(dir, instance);
+            if (e.getCause() instanceof IOException)
+                throw (IOException) e.getCause();
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public static boolean evict(String dataDir) throws IOException {
+        Future<FileRepository> instance = instances.get(Paths.get(dataDir).toAbsolutePath().normalize());
+        FileRepository repository = resolved(instance);
+        if (repository == null)
+            return false;
+        repository.close();
+        return true;
     }
 
-    private static FileRepository newInstance(String dataDir) throws IllegalArgumentException, IOException {
-        Path dir = Paths.get(dataDir);
+    private static FileRepository resolved(Future<FileRepository> instance) {
+        if (instance == null || !instance.isDone())
+            return null;
+        try {
+            return instance.get();
+        } catch (InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    private static FileRepository newInstance(Path dir) throws IllegalArgumentException, IOException {
         if (!Files.isDirectory(dir))
-            throw new IllegalArgumentException(String.format("not a dir: %s", dataDir));
+            throw new IllegalArgumentException(String.format("not a dir: %s", dir));
 
-        Path file = Paths.get(dataDir, filename);
+        Path file = dir.resolve(filename);
 
-        if (!Files.exists(dir))
-            Files.createDirectory(dir);
         if (!Files.exists(file))
             Files.createFile(file);
 
-        FileRepository instance = new FileRepository(file);
+        Journal journal = new Journal(dir.resolve(journalFilename));
+        FileChannel lockChannel = FileChannel.open(dir.resolve(lockFilename),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
 
-        instance.init();
+        FileRepository instance = new FileRepository(dir, file, new JavaSerializationSnapshotFormat(), journal, lockChannel);
+
+        try {
+            instance.init();
+        } catch (IOException | RuntimeException e) {
+            journal.close();
+            lockChannel.close();
+            throw e;
+        }
 
         return instance;
     }
 
-    private void init() throws IOException {
-        inMemRepo = new InMemoryRepository();
-        if (!Files.exists(file))
-            return;
+    private synchronized void init() throws IOException {
+        try (FileLock ignored = lockChannel.lock()) {
+            if (journal.generation() < 0)
+                journal.reset(0);
+            reload();
+        }
+    }
+
+    private static void replay(Mutation mutation, Repository repository) {
+        try {
+            mutation.apply(repository);
+        } catch (IllegalArgumentException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void reload() throws IOException {
+        InMemoryRepository repository = new InMemoryRepository();
         byte[] serialized = Files.readAllBytes(file);
-        if (serialized.length < 1)
+        if (serialized.length > 0)
+            repository = format.read(new ByteArrayInputStream(serialized));
+        final InMemoryRepository replayed = repository;
+        long generation = journal.generation();
+        long offset = journal.read(Journal.HEADER, mutation -> replay(mutation, replayed));
+        replayed.setFeed(feed);
+        this.inMemRepo = replayed;
+        this.generation = generation;
+        this.offset = offset;
+    }
+
+    private void tail() throws IOException {
+        // a new generation means another process compacted the journal into the snapshot
+        if (journal.generation() != generation || journal.size() < offset) {
+            reload();
             return;
-        ByteArrayInputStream bis = new ByteArrayInputStream(serialized);
-        try (ObjectInput in = new ObjectInputStream(bis)) {
-            try {
-                Object o = in.readObject();
-                if (o != null)
-                    inMemRepo = (InMemoryRepository) o;
-            } catch (ClassNotFoundException e) {
-                e.printStackTrace();
+        }
+        final InMemoryRepository repository = inMemRepo;
+        offset = journal.read(offset, mutation -> replay(mutation, repository));
+    }
+
+    private void ensureOpen() {
+        if (closed)
+            throw new IllegalStateException(String.format("repository closed: %s", dir));
+    }
+
+    private void refresh() {
+        ensureOpen();
+        // checking the journal costs two syscalls, reads may lag writes of other processes by the interval
+        // while writes of this one are already in memory and every write tails under the lock anyway
+        long now = System.nanoTime();
+        if (now - refreshed < refreshIntervalNanos)
+            return;
+        refreshed = now;
+        try {
+            if (journal.size() == offset && journal.generation() == generation)
+                return;
+            synchronized (this) {
+                try (FileLock ignored = lockChannel.lock(0, Long.MAX_VALUE, true)) {
+                    tail();
+                }
             }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            feed.tryFlush();
         }
     }
 
-    private void dump() throws IOException {
-        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
-            ObjectOutputStream out = null;
-            out = new ObjectOutputStream(bos);
-            out.writeObject(inMemRepo);
-            out.flush();
-            byte[] serialized = bos.toByteArray();
-            Files.write(file, serialized);
+    private <T> T write(Mutation mutation, Supplier<T> operation, Predicate<T> changed) {
+        // events are delivered once the monitor and the file lock are released, a slow subscriber only holds up this writer
+        try {
+            return commit(mutation, operation, changed);
+        } finally {
+            feed.flush();
         }
     }
 
-    public void reset() throws IOException {
-        this.inMemRepo = new InMemoryRepository();
-        dump();
+    private synchronized <T> T commit(Mutation mutation, Supplier<T> operation, Predicate<T> changed) {
+        ensureOpen();
+        try (FileLock ignored = lockChannel.lock()) {
+            tail();
+            T result = operation.get();
+            if (changed.test(result)) {
+                try {
+                    append(mutation);
+                } catch (IOException e) {
+                    // the change did not make it to the journal, memory goes back to what is on disk
+                    try {
+                        reload();
+                    } catch (IOException suppressed) {
+                        e.addSuppressed(suppressed);
+                    }
+                    throw e;
+                }
+            }
+            return result;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private <T> T write(Mutation mutation, Supplier<T> operation) {
+        return write(mutation, operation, Objects::nonNull);
+    }
+
+    private void append(Mutation mutation) throws IOException {
+        long started = System.nanoTime();
+        long appended = journal.append(offset, mutation);
+        long bytes = appended - offset;
+        offset = appended;
+        PersistenceListener listener = persistenceListener;
+        if (listener != null)
+            listener.onPersist(bytes, System.nanoTime() - started);
+        if (offset > compactThreshold)
+            checkpoint();
+    }
+
+    private void checkpoint() throws IOException {
+        Path temp = Paths.get(file.toString() + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(temp))) {
+            format.write(inMemRepo, out);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        journal.reset(generation + 1);
+        generation = generation + 1;
+        offset = Journal.HEADER;
+    }
+
+    public List<TargetImage> compact() throws IOException {
+        try {
+            return checkpointSwept();
+        } finally {
+            feed.flush();
+        }
+    }
+
+    private synchronized List<TargetImage> checkpointSwept() throws IOException {
+        ensureOpen();
+        try (FileLock ignored = lockChannel.lock()) {
+            tail();
+            // targets left behind by plain source deletes are only reclaimed here, the snapshot makes it durable
+            List<TargetImage> swept = inMemRepo.sweepOrphans();
+            checkpoint();
+            return swept;
+        }
     }
 
     @Override
-    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
-        SourceImage result = inMemRepo.createSource(source);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
+    public List<TargetImage> sweepOrphans() {
+        try {
+            return compact();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return result;
     }
 
     @Override
-    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
-        TargetImage result = inMemRepo.createTarget(source, target);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
+    public JournalBatch ship(long generation, long offset, int maxEntries) throws IOException {
+        try {
+            return batch(generation, offset, maxEntries);
+        } finally {
+            feed.tryFlush();
+        }
+    }
+
+    private synchronized JournalBatch batch(long generation, long offset, int maxEntries) throws IOException {
+        ensureOpen();
+        try (FileLock ignored = lockChannel.lock(0, Long.MAX_VALUE, true)) {
+            tail();
+            // followers on another generation, or ahead of the journal, start over from the current state
+            if (generation != this.generation || offset < Journal.HEADER || offset > this.offset) {
+                try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+                    format.write(inMemRepo, bos);
+                    return new JournalBatch(this.generation, this.offset, this.offset, bos.toByteArray(), Collections.emptyList());
+                }
             }
+            List<Mutation> mutations = new ArrayList<>();
+            long next = journal.read(offset, maxEntries, mutations::add);
+            return new JournalBatch(this.generation, next, this.offset, null, mutations);
+        }
+    }
+
+    public void setPersistenceListener(PersistenceListener persistenceListener) {
+        this.persistenceListener = persistenceListener;
+    }
+
+    public SnapshotFormat getFormat() {
+        return format;
+    }
+
+    public Path getJournalFile() {
+        return journal.getFile();
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public TargetColumns getTargetColumns() {
+        refresh();
+        return inMemRepo.getTargetColumns();
+    }
+
+    public synchronized void reset() throws IOException {
+        ensureOpen();
+        try (FileLock ignored = lockChannel.lock()) {
+            InMemoryRepository repository = new InMemoryRepository();
+            repository.setFeed(feed);
+            this.inMemRepo = repository;
+            checkpoint();
         }
-        return result;
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        ensureOpen();
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        instances.computeIfPresent(dir, (key, instance) -> resolved(instance) == this ? null : instance);
+        inMemRepo = new InMemoryRepository();
+        feed.close();
+        try {
+            journal.close();
+        } finally {
+            lockChannel.close();
+        }
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        return write(new Mutation(Mutation.Type.CREATE_SOURCE, source, null),
+                () -> inMemRepo.createSource(source));
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        return write(new Mutation(Mutation.Type.CREATE_TARGET, source, target),
+                () -> inMemRepo.createTarget(source, target));
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        // one journal entry for the whole batch, replaying it against the same state skips the same names
+        return write(new Mutation(Mutation.Type.CREATE_SOURCES, new ArrayList<>(sources)),
+                () -> inMemRepo.createSources(sources),
+                result -> !result.isEmpty());
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        return write(new Mutation(Mutation.Type.CREATE_TARGETS, source, null, new ArrayList<>(targets)),
+                () -> inMemRepo.createTargets(source, targets),
+                result -> !result.isEmpty());
     }
 
     @Override
     public SourceImage readSource(TargetImage target) throws NotFoundException {
+        refresh();
         return inMemRepo.readSource(target);
     }
 
     @Override
     public SourceImage readSource(String name) throws NotFoundException {
+        refresh();
         return inMemRepo.readSource(name);
     }
 
     @Override
     public Set<SourceImage> readSources() {
+        refresh();
         return inMemRepo.readSources();
     }
 
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        refresh();
+        return inMemRepo.readSourcesByContentHash(contentHash);
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        refresh();
+        return inMemRepo.readSourcesByTag(tag);
+    }
+
     @Override
     public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        refresh();
         return inMemRepo.readTargets(source);
     }
 
     @Override
     public TargetImage readTarget(String name) throws NotFoundException {
+        refresh();
         return inMemRepo.readTarget(name);
     }
 
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        refresh();
+        return inMemRepo.readSimilarTargets(target, maxDistance);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        refresh();
+        return inMemRepo.readSimilarTargets(hash, maxDistance);
+    }
+
     @Override
     public SourceImage updateSource(SourceImage source) throws NotFoundException {
-        SourceImage result = inMemRepo.updateSource(source);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return result;
+        return write(new Mutation(Mutation.Type.UPDATE_SOURCE, source, null),
+                () -> inMemRepo.updateSource(source));
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        return write(new Mutation(Mutation.Type.UPDATE_SOURCES, new ArrayList<>(sources)),
+                () -> inMemRepo.updateSources(sources),
+                result -> !result.isEmpty());
     }
 
     @Override
     public TargetImage updateTarget(TargetImage target) throws NotFoundException {
-        TargetImage result = inMemRepo.updateTarget(target);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return result;
+        return write(new Mutation(Mutation.Type.UPDATE_TARGET, null, target),
+                () -> inMemRepo.updateTarget(target));
     }
 
     @Override
     public SourceImage deleteSource(SourceImage source) {
-        SourceImage result = inMemRepo.deleteSource(source);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return result;
+        return write(new Mutation(Mutation.Type.DELETE_SOURCE, source, null),
+                () -> inMemRepo.deleteSource(source));
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        return write(new Mutation(Mutation.Type.DELETE_SOURCE_CASCADE, source, null),
+                () -> inMemRepo.deleteSourceCascade(source));
     }
 
     @Override
     public TargetImage deleteTarget(TargetImage target) {
-        TargetImage result = inMemRepo.deleteTarget(target);
-        if (result != null) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return result;
+        return write(new Mutation(Mutation.Type.DELETE_TARGET, null, target),
+                () -> inMemRepo.deleteTarget(target));
     }
 
     @Override
     public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
-        List<TargetImage> result = inMemRepo.deleteTargets(source);
-        if (result != null && result.size() > 0) {
-            try {
-                dump();
-            } catch (IOException e) {
-                e.printStackTrace();
-            }
-        }
-        return result;
+        return write(new Mutation(Mutation.Type.DELETE_TARGETS, source, null),
+                () -> inMemRepo.deleteTargets(source),
+                result -> result != null && !result.isEmpty());
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        return write(new Mutation(Mutation.Type.MOVE_TARGETS, from, to, Arrays.asList(targets)),
+                () -> inMemRepo.moveTargets(from, to, targets),
+                result -> !result.isEmpty());
     }
 
     @Override
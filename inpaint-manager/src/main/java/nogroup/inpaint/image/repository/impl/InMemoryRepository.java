@@ -1,24 +1,105 @@
 package nogroup.inpaint.image.repository.impl;
 
+import nogroup.inpaint.image.hash.BkTree;
 import nogroup.inpaint.image.repository.AlreadyExistsException;
 import nogroup.inpaint.image.repository.NotFoundException;
 import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
 import nogroup.inpaint.image.source.SourceImage;
 import nogroup.inpaint.image.target.TargetImage;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class InMemoryRepository implements Repository, Serializable {
+    // pinned to the original value, the serialized form is still just the three maps below
+    private static final long serialVersionUID = -1934312153167140232L;
     private final Map<String, SourceImage> sources;
     private final Map<String, TargetImage> targets;
     private final Map<String, List<String>> sourceToTargets;
+    private transient Map<String, Set<String>> contentHashToSources;
+    private transient BkTree targetHashes;
+    private transient Map<String, Set<String>> tagToSources;
+    private transient Map<String, String> targetToSource;
+    private transient TargetColumns targetColumns;
+    private transient EventFeed feed;
 
     public InMemoryRepository() {
         sources = new ConcurrentHashMap<>();
         targets = new ConcurrentHashMap<>();
         sourceToTargets = new ConcurrentHashMap<>();
+        contentHashToSources = new ConcurrentHashMap<>();
+        targetHashes = new BkTree();
+        tagToSources = new ConcurrentHashMap<>();
+        targetToSource = new ConcurrentHashMap<>();
+        targetColumns = new TargetColumns();
+        feed = new EventFeed();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        contentHashToSources = new ConcurrentHashMap<>();
+        tagToSources = new ConcurrentHashMap<>();
+        for (SourceImage source : sources.values())
+            index(source);
+        targetToSource = new ConcurrentHashMap<>();
+        for (Map.Entry<String, List<String>> entry : sourceToTargets.entrySet())
+            for (String target : entry.getValue())
+                targetToSource.put(target, entry.getKey());
+        targetColumns = new TargetColumns();
+        targetHashes = new BkTree();
+        for (TargetImage target : targets.values())
+            index(target);
+        feed = new EventFeed();
+    }
+
+    public void setFeed(EventFeed feed) {
+        this.feed = feed;
+    }
+
+    private void index(SourceImage source) {
+        if (source.getContentHash() != null)
+            this.contentHashToSources.computeIfAbsent(source.getContentHash(), hash -> ConcurrentHashMap.newKeySet())
+                    .add(source.getName());
+        indexTags(source);
+    }
+
+    private void indexTags(SourceImage source) {
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                this.tagToSources.computeIfAbsent(tag, key -> ConcurrentHashMap.newKeySet()).add(source.getName());
+    }
+
+    private void index(TargetImage target) {
+        this.targetColumns.put(target);
+        if (target.hasPerceptualHash())
+            this.targetHashes.add(target.getPerceptualHash(), target.getName());
+    }
+
+    private void unindex(TargetImage target) {
+        this.targetColumns.remove(target.getName());
+        if (target.hasPerceptualHash())
+            this.targetHashes.remove(target.getPerceptualHash(), target.getName());
+    }
+
+    private void unindex(SourceImage source) {
+        if (source.getContentHash() != null)
+            this.contentHashToSources.computeIfPresent(source.getContentHash(), (hash, names) -> {
+                names.remove(source.getName());
+                return names.isEmpty() ? null : names;
+            });
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                this.tagToSources.computeIfPresent(tag, (key, names) -> {
+                    names.remove(source.getName());
+                    return names.isEmpty() ? null : names;
+                });
     }
 
     @Override
@@ -32,8 +113,11 @@ public class InMemoryRepository implements Repository, Serializable {
 
         this.sources.put(source.getName(), source.copy());
         this.sourceToTargets.put(source.getName(), new ArrayList<>());
+        index(source);
 
-        return this.sources.get(source.getName()).copy();
+        SourceImage created = this.sources.get(source.getName()).copy();
+        feed.publish(RepositoryEvent.Type.SOURCE_CREATED, created, null);
+        return created;
     }
 
     @Override
@@ -45,19 +129,24 @@ public class InMemoryRepository implements Repository, Serializable {
                 throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
                         target, this.targets.get(target.getName())));
 
-            for (Map.Entry<String, List<String>> entry : this.sourceToTargets.entrySet())
-                if (entry.getValue().contains(target.getName()) && !entry.getKey().equals(source.getName()))
-                    throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
-                                    "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
-                            target, source, this.sources.get(entry.getKey())));
+            String assigned = this.targetToSource.get(target.getName());
+            if (assigned != null && !assigned.equals(source.getName()))
+                throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
+                                "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
+                        target, source, this.sources.get(assigned)));
 
             return null;
         }
 
         this.targets.put(target.getName(), target.copy());
         this.sourceToTargets.get(source.getName()).add(target.getName());
+        this.targetToSource.put(target.getName(), source.getName());
+        index(target);
 
-        return this.targets.get(target.getName()).copy();
+        TargetImage created = this.targets.get(target.getName()).copy();
+        if (feed.hasSubscribers())
+            feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, this.sources.get(source.getName()).copy(), created);
+        return created;
     }
 
     @Override
@@ -65,12 +154,11 @@ public class InMemoryRepository implements Repository, Serializable {
         if (!this.targets.containsKey(target.getName()))
             throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
 
-        for (Map.Entry<String, List<String>> entry : this.sourceToTargets.entrySet())
-            if (entry.getValue().contains(target.getName()))
-                return this.sources.get(entry.getKey()).copy();
+        String assigned = this.targetToSource.get(target.getName());
+        if (assigned == null || !this.sources.containsKey(assigned))
+            throw new NotFoundException(String.format("unknown source for target nogroup.inpaint.image: %s", target));
 
-        // unreachable code, stub prevents compilation errors
-        throw new NotFoundException(String.format("unknown source for target nogroup.inpaint.image: %s", target));
+        return this.sources.get(assigned).copy();
     }
 
     @Override
@@ -89,6 +177,30 @@ public class InMemoryRepository implements Repository, Serializable {
         return sources;
     }
 
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        final Set<String> names = this.contentHashToSources.getOrDefault(contentHash, Collections.emptySet());
+        final Set<SourceImage> sources = new HashSet<>(names.size());
+        for (String name : names) {
+            SourceImage source = this.sources.get(name);
+            if (source != null)
+                sources.add(source.copy());
+        }
+        return sources;
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        final Set<String> names = this.tagToSources.getOrDefault(tag, Collections.emptySet());
+        final Set<SourceImage> sources = new HashSet<>(names.size());
+        for (String name : names) {
+            SourceImage source = this.sources.get(name);
+            if (source != null)
+                sources.add(source.copy());
+        }
+        return sources;
+    }
+
     @Override
     public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
         if (!this.sources.containsKey(source.getName()) || !this.sourceToTargets.containsKey(source.getName()))
@@ -109,6 +221,22 @@ public class InMemoryRepository implements Repository, Serializable {
         return this.targets.get(name).copy();
     }
 
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        final Map<String, Integer> found = this.targetHashes.search(hash, maxDistance);
+
+        final List<Map.Entry<String, Integer>> entries = new ArrayList<>(found.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().thenComparing(Map.Entry.comparingByKey()));
+
+        final List<TargetImage> similar = new ArrayList<>(entries.size());
+        for (Map.Entry<String, Integer> entry : entries) {
+            TargetImage candidate = this.targets.get(entry.getKey());
+            if (candidate != null)
+                similar.add(candidate.copy());
+        }
+        return similar;
+    }
+
     @Override
     public SourceImage updateSource(SourceImage source) throws NotFoundException {
         if (!this.sources.containsKey(source.getName()))
@@ -117,9 +245,36 @@ public class InMemoryRepository implements Repository, Serializable {
         if (this.sources.get(source.getName()).equals(source))
             return null;
 
+        unindex(this.sources.get(source.getName()));
         this.sources.put(source.getName(), source.copy());
+        index(source);
+
+        SourceImage updated = this.sources.get(source.getName()).copy();
+        feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, updated, null);
+        return updated;
+    }
 
-        return this.sources.get(source.getName()).copy();
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        for (SourceImage source : sources)
+            if (!this.sources.containsKey(source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+        final List<SourceImage> updated = new ArrayList<>();
+        for (SourceImage source : sources) {
+            SourceImage existing = this.sources.get(source.getName());
+            if (existing.equals(source))
+                continue;
+
+            unindex(existing);
+            this.sources.put(source.getName(), source.copy());
+            index(source);
+
+            SourceImage copy = this.sources.get(source.getName()).copy();
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, copy, null);
+            updated.add(copy);
+        }
+        return updated;
     }
 
     @Override
@@ -130,9 +285,13 @@ public class InMemoryRepository implements Repository, Serializable {
         if (this.targets.get(target.getName()).equals(target))
             return null;
 
+        unindex(this.targets.get(target.getName()));
         this.targets.put(target.getName(), target.copy());
+        index(target);
 
-        return this.targets.get(target.getName()).copy();
+        TargetImage updated = this.targets.get(target.getName()).copy();
+        feed.publish(RepositoryEvent.Type.TARGET_UPDATED, null, updated);
+        return updated;
     }
 
     @Override
@@ -140,9 +299,15 @@ public class InMemoryRepository implements Repository, Serializable {
         if (!this.sources.containsKey(source.getName()))
             return null;
 
-        this.sourceToTargets.remove(source.getName());
+        List<String> orphaned = this.sourceToTargets.remove(source.getName());
+        if (orphaned != null)
+            for (String targetName : orphaned)
+                this.targetToSource.remove(targetName);
+        unindex(this.sources.get(source.getName()));
 
-        return this.sources.remove(source.getName());
+        SourceImage deleted = this.sources.remove(source.getName());
+        feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        return deleted;
     }
 
     @Override
@@ -150,10 +315,14 @@ public class InMemoryRepository implements Repository, Serializable {
         if (!this.targets.containsKey(target.getName()))
             return null;
 
-        for (Map.Entry<String, List<String>> entry : this.sourceToTargets.entrySet())
-            entry.getValue().remove(target.getName());
+        String assigned = this.targetToSource.remove(target.getName());
+        if (assigned != null && this.sourceToTargets.containsKey(assigned))
+            this.sourceToTargets.get(assigned).remove(target.getName());
+        unindex(this.targets.get(target.getName()));
 
-        return this.targets.remove(target.getName());
+        TargetImage deleted = this.targets.remove(target.getName());
+        feed.publish(RepositoryEvent.Type.TARGET_DELETED, null, deleted);
+        return deleted;
     }
 
     @Override
@@ -164,14 +333,102 @@ public class InMemoryRepository implements Repository, Serializable {
         final List<TargetImage> removedTargets = new ArrayList<>(this.sourceToTargets.get(source.getName()).size());
         for (String targetName : this.sourceToTargets.get(source.getName())) {
             TargetImage removedTarget = this.targets.remove(targetName);
-            if (removedTarget != null)
+            this.targetToSource.remove(targetName);
+            if (removedTarget != null) {
+                unindex(removedTarget);
                 removedTargets.add(removedTarget);
+            }
         }
 
         this.sourceToTargets.get(source.getName()).clear();
+        if (feed.hasSubscribers())
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, this.sources.get(source.getName()).copy(), removedTargets);
         return removedTargets;
     }
 
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        if (!this.sources.containsKey(source.getName()))
+            return null;
+
+        final List<String> targetNames = this.sourceToTargets.remove(source.getName());
+        final List<TargetImage> removedTargets = new ArrayList<>(targetNames == null ? 0 : targetNames.size());
+        if (targetNames != null)
+            for (String targetName : targetNames) {
+                this.targetToSource.remove(targetName);
+                TargetImage removedTarget = this.targets.remove(targetName);
+                if (removedTarget != null) {
+                    unindex(removedTarget);
+                    removedTargets.add(removedTarget);
+                }
+            }
+        unindex(this.sources.get(source.getName()));
+
+        SourceImage deleted = this.sources.remove(source.getName());
+        feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, deleted, removedTargets);
+        feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        return deleted;
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        final List<TargetImage> swept = new ArrayList<>();
+        for (String targetName : new ArrayList<>(this.targets.keySet())) {
+            String assigned = this.targetToSource.get(targetName);
+            if (assigned != null && this.sources.containsKey(assigned))
+                continue;
+            this.targetToSource.remove(targetName);
+            TargetImage removedTarget = this.targets.remove(targetName);
+            if (removedTarget != null) {
+                unindex(removedTarget);
+                swept.add(removedTarget);
+            }
+        }
+        feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, null, swept);
+        return swept;
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        if (!this.sources.containsKey(from.getName()))
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", from));
+        if (!this.sources.containsKey(to.getName()))
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", to));
+
+        final Set<String> names = new LinkedHashSet<>(targets.length);
+        for (TargetImage target : targets) {
+            if (!from.getName().equals(this.targetToSource.get(target.getName())))
+                throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                        target, from));
+            names.add(target.getName());
+        }
+
+        final List<TargetImage> moved = new ArrayList<>(names.size());
+        if (from.getName().equals(to.getName()) || names.isEmpty())
+            return moved;
+
+        // one pass over the old list with a hash lookup instead of a list removal per target
+        this.sourceToTargets.get(from.getName()).removeAll(names);
+        this.sourceToTargets.get(to.getName()).addAll(names);
+        for (String name : names) {
+            this.targetToSource.put(name, to.getName());
+            moved.add(this.targets.get(name).copy());
+        }
+
+        if (feed.hasSubscribers())
+            feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, this.sources.get(to.getName()).copy(), moved);
+        return moved;
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    public TargetColumns getTargetColumns() {
+        return targetColumns;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
@@ -0,0 +1,34 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.io.*;
+
+public class JavaSerializationSnapshotFormat implements SnapshotFormat {
+    public final static String name = "java-serialization";
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void write(InMemoryRepository repository, OutputStream out) throws IOException {
+        ObjectOutputStream objectOut = new ObjectOutputStream(out);
+        objectOut.writeObject(repository);
+        objectOut.flush();
+    }
+
+    @Override
+    public InMemoryRepository read(InputStream in) throws IOException {
+        try (ObjectInput objectIn = new RepositoryObjectInputStream(in)) {
+            Object o = objectIn.readObject();
+            return o != null ? (InMemoryRepository) o : new InMemoryRepository();
+        } catch (ClassNotFoundException e) {
+            throw new IOException("unable to read snapshot", e);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "JavaSerializationSnapshotFormat{}";
+    }
+}
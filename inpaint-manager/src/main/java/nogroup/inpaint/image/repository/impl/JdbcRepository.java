@@ -0,0 +1,784 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.Image;
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.h2.jdbcx.JdbcConnectionPool;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.util.*;
+
+public class JdbcRepository implements Repository, Closeable {
+    private final static String filename = "images-repository";
+    private final static String[] schema = {
+            "CREATE TABLE IF NOT EXISTS sources (" +
+                    "name VARCHAR PRIMARY KEY, description VARCHAR, width INT NOT NULL, height INT NOT NULL, " +
+                    "perceptual_hash BIGINT, content_hash VARCHAR)",
+            "CREATE TABLE IF NOT EXISTS source_tags (" +
+                    "source VARCHAR NOT NULL REFERENCES sources(name) ON DELETE CASCADE, position INT NOT NULL, tag VARCHAR, " +
+                    "PRIMARY KEY (source, position))",
+            "CREATE SEQUENCE IF NOT EXISTS target_positions",
+            "CREATE TABLE IF NOT EXISTS targets (" +
+                    "name VARCHAR PRIMARY KEY, source VARCHAR REFERENCES sources(name) ON DELETE SET NULL, position BIGINT NOT NULL, " +
+                    "description VARCHAR, width INT NOT NULL, height INT NOT NULL, perceptual_hash BIGINT, " +
+                    "rating INT NOT NULL, sampler VARCHAR NOT NULL, checkpoint VARCHAR NOT NULL)",
+            // a missing hash is stored as NULL, older databases declared the column NOT NULL
+            "ALTER TABLE sources ALTER COLUMN perceptual_hash SET NULL",
+            "ALTER TABLE targets ALTER COLUMN perceptual_hash SET NULL",
+            "CREATE INDEX IF NOT EXISTS sources_content_hash ON sources(content_hash)",
+            "CREATE INDEX IF NOT EXISTS source_tags_tag ON source_tags(tag)",
+            "CREATE INDEX IF NOT EXISTS targets_source ON targets(source, position)",
+            "CREATE INDEX IF NOT EXISTS targets_checkpoint ON targets(checkpoint)",
+            "CREATE INDEX IF NOT EXISTS targets_sampler ON targets(sampler)",
+            "CREATE INDEX IF NOT EXISTS targets_rating ON targets(rating)",
+            // multi-index hashing, each 16-bit chunk of the perceptual hash is a derived, indexed column
+            "ALTER TABLE targets ADD COLUMN IF NOT EXISTS hash_chunk_0 INT AS (CAST(BITAND(perceptual_hash, 65535) AS INT))",
+            "ALTER TABLE targets ADD COLUMN IF NOT EXISTS hash_chunk_1 INT AS (CAST(BITAND(RSHIFT(perceptual_hash, 16), 65535) AS INT))",
+            "ALTER TABLE targets ADD COLUMN IF NOT EXISTS hash_chunk_2 INT AS (CAST(BITAND(RSHIFT(perceptual_hash, 32), 65535) AS INT))",
+            "ALTER TABLE targets ADD COLUMN IF NOT EXISTS hash_chunk_3 INT AS (CAST(BITAND(RSHIFT(perceptual_hash, 48), 65535) AS INT))",
+            "CREATE INDEX IF NOT EXISTS targets_hash_chunk_0 ON targets(hash_chunk_0)",
+            "CREATE INDEX IF NOT EXISTS targets_hash_chunk_1 ON targets(hash_chunk_1)",
+            "CREATE INDEX IF NOT EXISTS targets_hash_chunk_2 ON targets(hash_chunk_2)",
+            "CREATE INDEX IF NOT EXISTS targets_hash_chunk_3 ON targets(hash_chunk_3)",
+    };
+    private final static String targetColumns = "name, description, width, height, perceptual_hash, rating, sampler, checkpoint";
+    private static Map<String, JdbcRepository> instances;
+    private final String url;
+    private final JdbcConnectionPool pool;
+    private final EventFeed feed;
+
+    private JdbcRepository(String url) {
+        this.url = url;
+        this.pool = JdbcConnectionPool.create(url, "", "");
+        this.feed = new EventFeed();
+    }
+
+    public static synchronized JdbcRepository getInstance(String location) throws IllegalArgumentException, IOException {
+        if (instances == null)
+            instances = new HashMap<>();
+        if (instances.containsKey(location))
+            return instances.get(location);
+        JdbcRepository instance = newInstance(location);
+        instances.put(location, instance);
+        return instance;
+    }
+
+    private static JdbcRepository newInstance(String location) throws IllegalArgumentException, IOException {
+        String url = location;
+        if (!location.startsWith("jdbc:")) {
+            Path dir = Paths.get(location);
+            if (!Files.isDirectory(dir))
+                throw new IllegalArgumentException(String.format("not a dir: %s", location));
+            url = "jdbc:h2:" + dir.resolve(filename).toAbsolutePath();
+        }
+
+        JdbcRepository instance = new JdbcRepository(url);
+        try {
+            instance.init();
+        } catch (SQLException e) {
+            instance.pool.dispose();
+            throw new IOException(String.format("can not init repository schema: %s", url), e);
+        }
+        return instance;
+    }
+
+    private void init() throws SQLException {
+        try (Connection connection = pool.getConnection(); Statement statement = connection.createStatement()) {
+            for (String sql : schema)
+                statement.execute(sql);
+        }
+    }
+
+    private interface Work<T> {
+        T run(Connection connection) throws SQLException;
+    }
+
+    private <T> T inTransaction(Work<T> work) {
+        try (Connection connection = pool.getConnection()) {
+            connection.setAutoCommit(false);
+            try {
+                T result = work.run(connection);
+                connection.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback();
+                throw e;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException(String.format("repository query failed: %s", url), e);
+        }
+    }
+
+    private <T> T inInsertTransaction(Work<T> work) {
+        try {
+            return inTransaction(work);
+        } catch (IllegalStateException e) {
+            // a concurrent insert of the same name won the primary key, the retry reads its record
+            if (!(e.getCause() instanceof SQLException) || !"23505".equals(((SQLException) e.getCause()).getSQLState()))
+                throw e;
+            return inTransaction(work);
+        }
+    }
+
+    public void reset() {
+        inTransaction(connection -> {
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("DELETE FROM targets");
+                statement.executeUpdate("DELETE FROM source_tags");
+                statement.executeUpdate("DELETE FROM sources");
+            }
+            return null;
+        });
+    }
+
+    private static Set<SourceImage> selectSources(Connection connection, String where, Object... params) throws SQLException {
+        final Map<String, SourceImageBuilder> builders = new LinkedHashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT s.name, s.description, s.width, s.height, s.perceptual_hash, s.content_hash FROM sources s" + where)) {
+            bind(statement, params);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next())
+                    builders.put(rs.getString(1), new SourceImageBuilder(rs.getString(1))
+                            .description(rs.getString(2))
+                            .width(rs.getInt(3))
+                            .height(rs.getInt(4))
+                            .perceptualHash(rs.getObject(5, Long.class))
+                            .contentHash(rs.getString(6))
+                            .tags(new ArrayList<>()));
+            }
+        }
+        if (builders.isEmpty())
+            return new HashSet<>();
+
+        final Map<String, List<String>> tags = new HashMap<>();
+        try (PreparedStatement statement = connection.prepareStatement(
+                "SELECT t.source, t.tag FROM source_tags t JOIN sources s ON s.name = t.source" + where +
+                        " ORDER BY t.source, t.position")) {
+            bind(statement, params);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next())
+                    tags.computeIfAbsent(rs.getString(1), name -> new ArrayList<>()).add(rs.getString(2));
+            }
+        }
+
+        final Set<SourceImage> sources = new HashSet<>(builders.size());
+        for (Map.Entry<String, SourceImageBuilder> entry : builders.entrySet())
+            sources.add(entry.getValue().tags(tags.getOrDefault(entry.getKey(), new ArrayList<>())).build());
+        return sources;
+    }
+
+    private static SourceImage selectSource(Connection connection, String name) throws SQLException {
+        Set<SourceImage> sources = selectSources(connection, " WHERE s.name = ?", name);
+        return sources.isEmpty() ? null : sources.iterator().next();
+    }
+
+    private static boolean sourceExists(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM sources WHERE name = ?")) {
+            statement.setString(1, name);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static List<TargetImage> selectTargets(Connection connection, String where, Object... params) throws SQLException {
+        final List<TargetImage> targets = new ArrayList<>();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT " + targetColumns + " FROM targets" + where)) {
+            bind(statement, params);
+            try (ResultSet rs = statement.executeQuery()) {
+                while (rs.next())
+                    targets.add(new TargetImageBuilder(rs.getString(1))
+                            .description(rs.getString(2))
+                            .width(rs.getInt(3))
+                            .height(rs.getInt(4))
+                            .perceptualHash(rs.getObject(5, Long.class))
+                            .rating(rs.getInt(6))
+                            .sampler(Sampler.valueOf(rs.getString(7)))
+                            .checkpoint(Checkpoint.valueOf(rs.getString(8)))
+                            .build());
+            }
+        }
+        return targets;
+    }
+
+    private static TargetImage selectTarget(Connection connection, String name) throws SQLException {
+        List<TargetImage> targets = selectTargets(connection, " WHERE name = ?", name);
+        return targets.isEmpty() ? null : targets.get(0);
+    }
+
+    private static boolean targetExists(Connection connection, String name) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT 1 FROM targets WHERE name = ?")) {
+            statement.setString(1, name);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next();
+            }
+        }
+    }
+
+    private static String selectSourceName(Connection connection, String target) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT source FROM targets WHERE name = ?")) {
+            statement.setString(1, target);
+            try (ResultSet rs = statement.executeQuery()) {
+                return rs.next() ? rs.getString(1) : null;
+            }
+        }
+    }
+
+    private static Long perceptualHash(Image image) {
+        return image.hasPerceptualHash() ? image.getPerceptualHash() : null;
+    }
+
+    private static void bind(PreparedStatement statement, Object... params) throws SQLException {
+        for (int i = 0; i < params.length; i++)
+            statement.setObject(i + 1, params[i]);
+    }
+
+    private static void insertTags(Connection connection, SourceImage source) throws SQLException {
+        if (source.getTags() == null || source.getTags().isEmpty())
+            return;
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO source_tags (source, position, tag) VALUES (?, ?, ?)")) {
+            for (int i = 0; i < source.getTags().size(); i++) {
+                statement.setString(1, source.getName());
+                statement.setInt(2, i);
+                statement.setString(3, source.getTags().get(i));
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        }
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        // events go out after the commit, a rolled back change is never published
+        SourceImage created = inInsertTransaction(connection -> {
+            SourceImage existing = selectSource(connection, source.getName());
+            if (existing != null)
+                if (!existing.equals(source))
+                    throw new AlreadyExistsException(String.format("duplicate source nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            source, existing));
+                else
+                    return null;
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO sources (name, description, width, height, perceptual_hash, content_hash) VALUES (?, ?, ?, ?, ?, ?)")) {
+                statement.setString(1, source.getName());
+                statement.setString(2, source.getDescription());
+                statement.setInt(3, source.getWidth());
+                statement.setInt(4, source.getHeight());
+                statement.setObject(5, perceptualHash(source), Types.BIGINT);
+                statement.setString(6, source.getContentHash());
+                statement.executeUpdate();
+            }
+            insertTags(connection, source);
+
+            return source.copy();
+        });
+        if (created != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, created, null);
+        return created;
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        final SourceImage[] owner = new SourceImage[1];
+        TargetImage created = inInsertTransaction(connection -> {
+            if (!sourceExists(connection, source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            TargetImage existing = selectTarget(connection, target.getName());
+            if (existing != null) {
+                if (!existing.equals(target))
+                    throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            target, existing));
+
+                String assigned = selectSourceName(connection, target.getName());
+                if (assigned != null && !assigned.equals(source.getName()))
+                    throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
+                                    "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
+                            target, source, selectSource(connection, assigned)));
+
+                return null;
+            }
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO targets (source, position, " + targetColumns + ") " +
+                            "VALUES (?, NEXT VALUE FOR target_positions, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                statement.setString(1, source.getName());
+                statement.setString(2, target.getName());
+                statement.setString(3, target.getDescription());
+                statement.setInt(4, target.getWidth());
+                statement.setInt(5, target.getHeight());
+                statement.setObject(6, perceptualHash(target), Types.BIGINT);
+                statement.setInt(7, target.getRating());
+                statement.setString(8, target.getSampler().name());
+                statement.setString(9, target.getCheckpoint().name());
+                statement.executeUpdate();
+            }
+            if (feed.hasSubscribers())
+                owner[0] = selectSource(connection, source.getName());
+
+            return target.copy();
+        });
+        if (created != null && owner[0] != null)
+            feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, owner[0], created);
+        return created;
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        // one transaction and one batched insert for all the names not taken yet
+        List<SourceImage> created = inInsertTransaction(connection -> {
+            final Map<String, SourceImage> missing = new LinkedHashMap<>();
+            for (SourceImage source : sources)
+                if (!missing.containsKey(source.getName()) && !sourceExists(connection, source.getName()))
+                    missing.put(source.getName(), source);
+            if (missing.isEmpty())
+                return new ArrayList<>();
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO sources (name, description, width, height, perceptual_hash, content_hash) VALUES (?, ?, ?, ?, ?, ?)")) {
+                for (SourceImage source : missing.values()) {
+                    statement.setString(1, source.getName());
+                    statement.setString(2, source.getDescription());
+                    statement.setInt(3, source.getWidth());
+                    statement.setInt(4, source.getHeight());
+                    statement.setObject(5, perceptualHash(source), Types.BIGINT);
+                    statement.setString(6, source.getContentHash());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            final List<SourceImage> inserted = new ArrayList<>(missing.size());
+            for (SourceImage source : missing.values()) {
+                insertTags(connection, source);
+                inserted.add(source.copy());
+            }
+            return inserted;
+        });
+        for (SourceImage source : created)
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, source, null);
+        return created;
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        final SourceImage[] owner = new SourceImage[1];
+        List<TargetImage> created = inInsertTransaction(connection -> {
+            if (!sourceExists(connection, source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            final Map<String, TargetImage> missing = new LinkedHashMap<>();
+            for (TargetImage target : targets)
+                if (!missing.containsKey(target.getName()) && !targetExists(connection, target.getName()))
+                    missing.put(target.getName(), target);
+            if (missing.isEmpty())
+                return new ArrayList<>();
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "INSERT INTO targets (source, position, " + targetColumns + ") " +
+                            "VALUES (?, NEXT VALUE FOR target_positions, ?, ?, ?, ?, ?, ?, ?, ?)")) {
+                for (TargetImage target : missing.values()) {
+                    statement.setString(1, source.getName());
+                    statement.setString(2, target.getName());
+                    statement.setString(3, target.getDescription());
+                    statement.setInt(4, target.getWidth());
+                    statement.setInt(5, target.getHeight());
+                    statement.setObject(6, perceptualHash(target), Types.BIGINT);
+                    statement.setInt(7, target.getRating());
+                    statement.setString(8, target.getSampler().name());
+                    statement.setString(9, target.getCheckpoint().name());
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            if (feed.hasSubscribers())
+                owner[0] = selectSource(connection, source.getName());
+
+            final List<TargetImage> inserted = new ArrayList<>(missing.size());
+            for (TargetImage target : missing.values())
+                inserted.add(target.copy());
+            return inserted;
+        });
+        if (owner[0] != null)
+            for (TargetImage target : created)
+                feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, owner[0], target);
+        return created;
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        return inTransaction(connection -> {
+            if (!targetExists(connection, target.getName()))
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            String assigned = selectSourceName(connection, target.getName());
+            if (assigned == null)
+                throw new NotFoundException(String.format("unknown source for target nogroup.inpaint.image: %s", target));
+
+            return selectSource(connection, assigned);
+        });
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        return inTransaction(connection -> {
+            SourceImage source = selectSource(connection, name);
+            if (source == null)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", name));
+            return source;
+        });
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        return inTransaction(connection -> selectSources(connection, ""));
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        return inTransaction(connection -> selectSources(connection, " WHERE s.content_hash = ?", contentHash));
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        return inTransaction(connection -> selectSources(connection,
+                " WHERE s.name IN (SELECT st.source FROM source_tags st WHERE st.tag = ?)", tag));
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        return inTransaction(connection -> {
+            if (!sourceExists(connection, source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            return selectTargets(connection, " WHERE source = ? ORDER BY position", source.getName());
+        });
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        return inTransaction(connection -> {
+            TargetImage target = selectTarget(connection, name);
+            if (target == null)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", name));
+            return target;
+        });
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        return inTransaction(connection -> {
+            TargetImage existing = selectTarget(connection, target.getName());
+            if (existing == null)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+            if (!existing.hasPerceptualHash())
+                return new ArrayList<>();
+
+            return selectSimilarTargets(connection, existing.getPerceptualHash(), maxDistance, existing.getName());
+        });
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        return inTransaction(connection -> selectSimilarTargets(connection, hash, maxDistance, null));
+    }
+
+    private static List<TargetImage> selectSimilarTargets(Connection connection, long hash, int maxDistance, String exclude) throws SQLException {
+        final StringBuilder where = new StringBuilder(" WHERE perceptual_hash IS NOT NULL");
+        final int radius = PerceptualHash.chunkRadius(maxDistance);
+        if (radius <= PerceptualHash.MAX_CHUNK_RADIUS) {
+            // one indexed lookup per chunk, the probes are computed here so they are inlined as literals
+            where.append(" AND name IN (");
+            for (int i = 0; i < PerceptualHash.CHUNKS; i++) {
+                where.append(i == 0 ? "" : " UNION ").append("SELECT name FROM targets WHERE hash_chunk_").append(i).append(" IN (");
+                int[] probes = PerceptualHash.chunkProbes(PerceptualHash.chunk(hash, i), radius);
+                for (int j = 0; j < probes.length; j++)
+                    where.append(j == 0 ? "" : ", ").append(probes[j]);
+                where.append(')');
+            }
+            where.append(')');
+        }
+        where.append(" AND BITCOUNT(BITXOR(perceptual_hash, CAST(? AS BIGINT))) <= ?");
+        if (exclude != null)
+            where.append(" AND name <> ?");
+        where.append(" ORDER BY BITCOUNT(BITXOR(perceptual_hash, CAST(? AS BIGINT))), name");
+        return exclude == null
+                ? selectTargets(connection, where.toString(), hash, maxDistance, hash)
+                : selectTargets(connection, where.toString(), hash, maxDistance, exclude, hash);
+    }
+
+    private static SourceImage updateSource(Connection connection, SourceImage source) throws SQLException {
+        SourceImage existing = selectSource(connection, source.getName());
+        if (existing == null)
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+        if (existing.equals(source))
+            return null;
+
+        try (PreparedStatement statement = connection.prepareStatement(
+                "UPDATE sources SET description = ?, width = ?, height = ?, perceptual_hash = ?, content_hash = ? WHERE name = ?")) {
+            statement.setString(1, source.getDescription());
+            statement.setInt(2, source.getWidth());
+            statement.setInt(3, source.getHeight());
+            statement.setObject(4, perceptualHash(source), Types.BIGINT);
+            statement.setString(5, source.getContentHash());
+            statement.setString(6, source.getName());
+            statement.executeUpdate();
+        }
+        try (PreparedStatement statement = connection.prepareStatement("DELETE FROM source_tags WHERE source = ?")) {
+            statement.setString(1, source.getName());
+            statement.executeUpdate();
+        }
+        insertTags(connection, source);
+
+        return source.copy();
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        SourceImage updated = inTransaction(connection -> updateSource(connection, source));
+        if (updated != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, updated, null);
+        return updated;
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        List<SourceImage> changed = inTransaction(connection -> {
+            final List<SourceImage> updated = new ArrayList<>();
+            for (SourceImage source : sources) {
+                SourceImage result = updateSource(connection, source);
+                if (result != null)
+                    updated.add(result);
+            }
+            return updated;
+        });
+        for (SourceImage source : changed)
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, source, null);
+        return changed;
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        TargetImage updated = inTransaction(connection -> {
+            TargetImage existing = selectTarget(connection, target.getName());
+            if (existing == null)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            if (existing.equals(target))
+                return null;
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE targets SET description = ?, width = ?, height = ?, perceptual_hash = ?, rating = ?, sampler = ?, checkpoint = ? " +
+                            "WHERE name = ?")) {
+                statement.setString(1, target.getDescription());
+                statement.setInt(2, target.getWidth());
+                statement.setInt(3, target.getHeight());
+                statement.setObject(4, perceptualHash(target), Types.BIGINT);
+                statement.setInt(5, target.getRating());
+                statement.setString(6, target.getSampler().name());
+                statement.setString(7, target.getCheckpoint().name());
+                statement.setString(8, target.getName());
+                statement.executeUpdate();
+            }
+
+            return target.copy();
+        });
+        if (updated != null)
+            feed.publish(RepositoryEvent.Type.TARGET_UPDATED, null, updated);
+        return updated;
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        SourceImage deleted = inTransaction(connection -> {
+            SourceImage existing = selectSource(connection, source.getName());
+            if (existing == null)
+                return null;
+
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM sources WHERE name = ?")) {
+                statement.setString(1, source.getName());
+                statement.executeUpdate();
+            }
+            return existing;
+        });
+        if (deleted != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        return deleted;
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        final List<TargetImage> removedTargets = new ArrayList<>();
+        SourceImage deleted = inTransaction(connection -> {
+            SourceImage existing = selectSource(connection, source.getName());
+            if (existing == null)
+                return null;
+
+            if (feed.hasSubscribers())
+                removedTargets.addAll(selectTargets(connection, " WHERE source = ? ORDER BY position", source.getName()));
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM targets WHERE source = ?")) {
+                statement.setString(1, source.getName());
+                statement.executeUpdate();
+            }
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM sources WHERE name = ?")) {
+                statement.setString(1, source.getName());
+                statement.executeUpdate();
+            }
+            return existing;
+        });
+        if (deleted != null) {
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, deleted, removedTargets);
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        List<TargetImage> swept = inTransaction(connection -> {
+            List<TargetImage> orphans = selectTargets(connection, " WHERE source IS NULL ORDER BY position");
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM targets WHERE source IS NULL")) {
+                statement.executeUpdate();
+            }
+            return orphans;
+        });
+        feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, null, swept);
+        return swept;
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        TargetImage deleted = inTransaction(connection -> {
+            TargetImage existing = selectTarget(connection, target.getName());
+            if (existing == null)
+                return null;
+
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM targets WHERE name = ?")) {
+                statement.setString(1, target.getName());
+                statement.executeUpdate();
+            }
+            return existing;
+        });
+        if (deleted != null)
+            feed.publish(RepositoryEvent.Type.TARGET_DELETED, null, deleted);
+        return deleted;
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        final SourceImage[] owner = new SourceImage[1];
+        List<TargetImage> deleted = inTransaction(connection -> {
+            if (!sourceExists(connection, source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            List<TargetImage> removedTargets = selectTargets(connection, " WHERE source = ? ORDER BY position", source.getName());
+            try (PreparedStatement statement = connection.prepareStatement("DELETE FROM targets WHERE source = ?")) {
+                statement.setString(1, source.getName());
+                statement.executeUpdate();
+            }
+            if (feed.hasSubscribers())
+                owner[0] = selectSource(connection, source.getName());
+            return removedTargets;
+        });
+        if (owner[0] != null)
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, owner[0], deleted);
+        return deleted;
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        final SourceImage[] owner = new SourceImage[1];
+        List<TargetImage> result = inTransaction(connection -> {
+            if (!sourceExists(connection, from.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", from));
+            if (!sourceExists(connection, to.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", to));
+
+            final Map<String, TargetImage> moved = new LinkedHashMap<>();
+            for (TargetImage target : targets) {
+                if (!from.getName().equals(selectSourceName(connection, target.getName())))
+                    throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                            target, from));
+                if (!moved.containsKey(target.getName()))
+                    moved.put(target.getName(), selectTarget(connection, target.getName()));
+            }
+            if (from.getName().equals(to.getName()) || moved.isEmpty())
+                return new ArrayList<>();
+
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "UPDATE targets SET source = ?, position = NEXT VALUE FOR target_positions WHERE name = ?")) {
+                for (String name : moved.keySet()) {
+                    statement.setString(1, to.getName());
+                    statement.setString(2, name);
+                    statement.addBatch();
+                }
+                statement.executeBatch();
+            }
+            if (feed.hasSubscribers())
+                owner[0] = selectSource(connection, to.getName());
+            return new ArrayList<>(moved.values());
+        });
+        if (owner[0] != null)
+            feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, owner[0], result);
+        return result;
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    @Override
+    public void close() {
+        synchronized (JdbcRepository.class) {
+            if (instances != null)
+                instances.values().remove(this);
+        }
+        feed.close();
+        pool.dispose();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        JdbcRepository that = (JdbcRepository) o;
+        return Objects.equals(url, that.url);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(url);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("JdbcRepository{");
+        sb.append("url='").append(url).append('\'');
+        sb.append(", activeConnections=").append(pool.getActiveConnections());
+        sb.append('}');
+        return sb.toString();
+    }
+}
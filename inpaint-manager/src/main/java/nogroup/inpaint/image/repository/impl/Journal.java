@@ -0,0 +1,122 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+public class Journal implements Closeable {
+    public static final int MAGIC = 0x494a524e;
+    public static final int HEADER = Integer.BYTES + Long.BYTES;
+    private static final int ENTRY_HEADER = Integer.BYTES + Integer.BYTES;
+    private static final int MAX_ENTRY = 64 * 1024 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+
+    public Journal(Path file) throws IOException {
+        this.file = file;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private static int checksum(byte[] data) {
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        return (int) crc.getValue();
+    }
+
+    private void readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0)
+                throw new IOException(String.format("unexpected end of journal: %s", file));
+        }
+        buffer.flip();
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer, position + buffer.position());
+    }
+
+    public long generation() throws IOException {
+        if (channel.size() < HEADER)
+            return -1;
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        readFully(header, 0);
+        if (header.getInt() != MAGIC)
+            throw new IOException(String.format("not a journal: %s", file));
+        return header.getLong();
+    }
+
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    public void reset(long generation) throws IOException {
+        channel.truncate(HEADER);
+        ByteBuffer header = ByteBuffer.allocate(HEADER);
+        header.putInt(MAGIC).putLong(generation).flip();
+        writeFully(header, 0);
+        channel.truncate(HEADER);
+        channel.force(true);
+    }
+
+    public long read(long offset, Consumer<Mutation> consumer) throws IOException {
+        return read(offset, Integer.MAX_VALUE, consumer);
+    }
+
+    public long read(long offset, int maxEntries, Consumer<Mutation> consumer) throws IOException {
+        final long size = channel.size();
+        final ByteBuffer entryHeader = ByteBuffer.allocate(ENTRY_HEADER);
+        for (int entries = 0; entries < maxEntries && offset + ENTRY_HEADER <= size; entries++) {
+            entryHeader.clear();
+            readFully(entryHeader, offset);
+            int length = entryHeader.getInt();
+            int checksum = entryHeader.getInt();
+            // a torn or corrupted tail ends the readable journal, the next writer truncates it
+            if (length < 0 || length > MAX_ENTRY || offset + ENTRY_HEADER + length > size)
+                break;
+            ByteBuffer payload = ByteBuffer.allocate(length);
+            readFully(payload, offset + ENTRY_HEADER);
+            if (checksum(payload.array()) != checksum)
+                break;
+            consumer.accept(Mutation.decode(payload.array()));
+            offset += ENTRY_HEADER + length;
+        }
+        return offset;
+    }
+
+    public long append(long offset, Mutation mutation) throws IOException {
+        if (channel.size() > offset)
+            channel.truncate(offset);
+        byte[] payload = mutation.encode();
+        ByteBuffer entry = ByteBuffer.allocate(ENTRY_HEADER + payload.length);
+        entry.putInt(payload.length).putInt(checksum(payload)).put(payload).flip();
+        writeFully(entry, offset);
+        // an acknowledged change must survive a crash, not only a process exit
+        channel.force(false);
+        return offset + entry.limit();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Journal{");
+        sb.append("file=").append(file);
+        sb.append('}');
+        return sb.toString();
+    }
+}
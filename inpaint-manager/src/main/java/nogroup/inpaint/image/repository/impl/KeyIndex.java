@@ -0,0 +1,131 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntConsumer;
+
+class KeyIndex {
+    private static final int SLOT = 2 * Integer.BYTES;
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_CAPACITY = 1024;
+    private final Matcher matcher;
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private int used;
+
+    interface Matcher {
+        boolean matches(int id, String key);
+    }
+
+    KeyIndex() {
+        // keyed by int only, the caller confirms candidates itself
+        this(null);
+    }
+
+    KeyIndex(Matcher matcher) {
+        this.matcher = matcher;
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        // slots hold id + 1 and the key hash, a key may map to many ids and an id to many keys
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT).order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.size = 0;
+        this.used = 0;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    void forEach(String key, IntConsumer action) {
+        // equal hashes are confirmed against the record, colliding keys share slots
+        forEach(key.hashCode(), id -> {
+            if (matcher.matches(id, key))
+                action.accept(id);
+        });
+    }
+
+    void forEach(int hash, IntConsumer action) {
+        int mask = capacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int stored = slots.getInt(slot * SLOT);
+            if (stored == EMPTY)
+                return;
+            if (stored != TOMBSTONE && slots.getInt(slot * SLOT + Integer.BYTES) == hash)
+                action.accept(stored - 1);
+        }
+    }
+
+    void put(String key, int id) {
+        put(key.hashCode(), id);
+    }
+
+    void put(int hash, int id) {
+        if ((used + 1) * 3 > capacity * 2)
+            rehash(size * 3 > capacity ? capacity * 2 : capacity);
+        int mask = capacity - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int stored = slots.getInt(slot * SLOT);
+            if (stored == EMPTY || stored == TOMBSTONE)
+                break;
+            slot = (slot + 1) & mask;
+        }
+        if (slots.getInt(slot * SLOT) == EMPTY)
+            used++;
+        slots.putInt(slot * SLOT, id + 1);
+        slots.putInt(slot * SLOT + Integer.BYTES, hash);
+        size++;
+    }
+
+    void remove(String key, int id) {
+        remove(key.hashCode(), id);
+    }
+
+    void remove(int hash, int id) {
+        int mask = capacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int stored = slots.getInt(slot * SLOT);
+            if (stored == EMPTY)
+                return;
+            if (stored == id + 1 && slots.getInt(slot * SLOT + Integer.BYTES) == hash) {
+                slots.putInt(slot * SLOT, TOMBSTONE);
+                size--;
+                return;
+            }
+        }
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer old = this.slots;
+        int oldCapacity = this.capacity;
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int stored = old.getInt(i * SLOT);
+            if (stored == EMPTY || stored == TOMBSTONE)
+                continue;
+            int hash = old.getInt(i * SLOT + Integer.BYTES);
+            int slot = spread(hash) & mask;
+            while (slots.getInt(slot * SLOT) != EMPTY)
+                slot = (slot + 1) & mask;
+            slots.putInt(slot * SLOT, stored);
+            slots.putInt(slot * SLOT + Integer.BYTES, hash);
+            size++;
+            used++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getCapacity() {
+        return (long) capacity * SLOT;
+    }
+}
@@ -0,0 +1,794 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.h2.mvstore.MVMap;
+import org.h2.mvstore.MVStore;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Supplier;
+
+public class KeyValueRepository implements Repository, Closeable {
+    private final static String filename = "images-repository.kv";
+    private final static char separator = '\u0000';
+    private final static int cacheSizeMb = 16;
+    private final static byte NULL_STRING = 0;
+    private final static byte MODIFIED_UTF_STRING = 1;
+    private final static byte PREFIXED_STRING = 2;
+    private static Map<String, KeyValueRepository> instances;
+    private final Path file;
+    private final MVStore store;
+    private final MVMap<String, byte[]> sources;
+    private final MVMap<String, byte[]> targets;
+    private final MVMap<String, String> sourceToTargets;
+    private final MVMap<String, String> targetToSource;
+    private final MVMap<String, String> contentHashToSources;
+    private final MVMap<String, String> tagToSources;
+    private final MVMap<String, String> hashChunks;
+    private final MVMap<String, Long> meta;
+    private final EventFeed feed;
+
+    private KeyValueRepository(Path file, MVStore store) {
+        this.file = file;
+        this.store = store;
+        this.sources = store.openMap("sources");
+        this.targets = store.openMap("targets");
+        this.sourceToTargets = store.openMap("sourceToTargets");
+        this.targetToSource = store.openMap("targetToSource");
+        this.contentHashToSources = store.openMap("contentHashToSources");
+        this.tagToSources = store.openMap("tagToSources");
+        this.hashChunks = store.openMap("hashChunks");
+        this.meta = store.openMap("meta");
+        this.feed = new EventFeed(true);
+        // stores written before the tag index existed get it built once
+        if (!this.meta.containsKey("tagIndex")) {
+            for (Map.Entry<String, byte[]> entry : this.sources.entrySet())
+                indexTags(decodeSource(entry.getKey(), entry.getValue()));
+            this.meta.put("tagIndex", 1L);
+            commit();
+        }
+        // and the same for the perceptual hash index
+        if (!this.meta.containsKey("hashIndex")) {
+            for (Map.Entry<String, byte[]> entry : this.targets.entrySet())
+                index(decodeTarget(entry.getKey(), entry.getValue()));
+            this.meta.put("hashIndex", 1L);
+            commit();
+        }
+    }
+
+    public static synchronized KeyValueRepository getInstance(String dataDir) throws IllegalArgumentException, IOException {
+        if (instances == null)
+            instances = new HashMap<>();
+        if (instances.containsKey(dataDir))
+            return instances.get(dataDir);
+        KeyValueRepository instance = newInstance(dataDir);
+        instances.put(dataDir, instance);
+        return instance;
+    }
+
+    private static KeyValueRepository newInstance(String dataDir) throws IllegalArgumentException, IOException {
+        Path dir = Paths.get(dataDir);
+        if (!Files.isDirectory(dir))
+            throw new IllegalArgumentException(String.format("not a dir: %s", dataDir));
+
+        Path file = Paths.get(dataDir, filename);
+        try {
+            MVStore store = new MVStore.Builder()
+                    .fileName(file.toString())
+                    .cacheSize(cacheSizeMb)
+                    .autoCommitDisabled()
+                    .open();
+            return new KeyValueRepository(file, store);
+        } catch (IllegalStateException e) {
+            throw new IOException(String.format("can not open key-value store: %s", file), e);
+        }
+    }
+
+    private static String key(String prefix, String suffix) {
+        return prefix + separator + suffix;
+    }
+
+    private static String position(long position) {
+        // fixed width keeps lexicographic key order equal to insertion order
+        return String.format("%016x", position);
+    }
+
+    private static String suffix(String key) {
+        return key.substring(key.indexOf(separator) + 1);
+    }
+
+    private List<String> scan(MVMap<String, String> map, String prefix) {
+        final String from = prefix + separator;
+        final List<String> values = new ArrayList<>();
+        Iterator<String> keys = map.keyIterator(from);
+        while (keys.hasNext()) {
+            String key = keys.next();
+            if (!key.startsWith(from))
+                break;
+            String value = map.get(key);
+            if (value != null)
+                values.add(value);
+        }
+        return values;
+    }
+
+    private long nextPosition() {
+        long position = meta.getOrDefault("position", 0L);
+        meta.put("position", position + 1);
+        return position;
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeByte(NULL_STRING);
+            return;
+        }
+        // writeUTF is limited to 64KB, strings are length-prefixed UTF-8 instead
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        out.writeByte(PREFIXED_STRING);
+        out.writeInt(encoded.length);
+        out.write(encoded);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        switch (in.readByte()) {
+            case NULL_STRING:
+                return null;
+            case MODIFIED_UTF_STRING:
+                // records written before the length prefix
+                return in.readUTF();
+            default:
+                byte[] encoded = new byte[in.readInt()];
+                in.readFully(encoded);
+                return new String(encoded, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static boolean readHashed(DataInputStream in, long hash) throws IOException {
+        // records written before the presence flag end here and used 0 for no hash
+        return in.available() > 0 ? in.readBoolean() : hash != 0;
+    }
+
+    private static byte[] encode(SourceImage source) {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); DataOutputStream out = new DataOutputStream(bos)) {
+            writeString(out, source.getDescription());
+            out.writeInt(source.getWidth());
+            out.writeInt(source.getHeight());
+            out.writeLong(source.getPerceptualHash());
+            writeString(out, source.getContentHash());
+            out.writeInt(source.getTags().size());
+            for (String tag : source.getTags())
+                writeString(out, tag);
+            out.writeBoolean(source.hasPerceptualHash());
+            out.flush();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static SourceImage decodeSource(String name, byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            SourceImageBuilder builder = new SourceImageBuilder(name)
+                    .description(readString(in))
+                    .width(in.readInt())
+                    .height(in.readInt());
+            long hash = in.readLong();
+            builder.contentHash(readString(in));
+            int count = in.readInt();
+            final List<String> tags = new ArrayList<>(count);
+            for (int i = 0; i < count; i++)
+                tags.add(readString(in));
+            return builder.perceptualHash(readHashed(in, hash) ? hash : null).tags(tags).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(TargetImage target) {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); DataOutputStream out = new DataOutputStream(bos)) {
+            writeString(out, target.getDescription());
+            out.writeInt(target.getWidth());
+            out.writeInt(target.getHeight());
+            out.writeLong(target.getPerceptualHash());
+            out.writeInt(target.getRating());
+            out.writeUTF(target.getSampler().name());
+            out.writeUTF(target.getCheckpoint().name());
+            out.writeBoolean(target.hasPerceptualHash());
+            out.flush();
+            return bos.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static TargetImage decodeTarget(String name, byte[] record) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(record))) {
+            TargetImageBuilder builder = new TargetImageBuilder(name)
+                    .description(readString(in))
+                    .width(in.readInt())
+                    .height(in.readInt());
+            long hash = in.readLong();
+            builder.rating(in.readInt())
+                    .sampler(Sampler.valueOf(in.readUTF()))
+                    .checkpoint(Checkpoint.valueOf(in.readUTF()));
+            return builder.perceptualHash(readHashed(in, hash) ? hash : null).build();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private SourceImage source(String name) {
+        byte[] record = this.sources.get(name);
+        return record == null ? null : decodeSource(name, record);
+    }
+
+    private TargetImage target(String name) {
+        byte[] record = this.targets.get(name);
+        return record == null ? null : decodeTarget(name, record);
+    }
+
+    private void index(SourceImage source) {
+        if (source.getContentHash() != null)
+            this.contentHashToSources.put(key(source.getContentHash(), source.getName()), source.getName());
+        indexTags(source);
+    }
+
+    private void indexTags(SourceImage source) {
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                this.tagToSources.put(key(tag, source.getName()), source.getName());
+    }
+
+    private void unindex(SourceImage source) {
+        if (source.getContentHash() != null)
+            this.contentHashToSources.remove(key(source.getContentHash(), source.getName()));
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                this.tagToSources.remove(key(tag, source.getName()));
+    }
+
+    private static String chunkKey(int index, int chunk) {
+        return String.format("%d%04x", index, chunk);
+    }
+
+    private void index(TargetImage target) {
+        // multi-index hashing, every 16-bit chunk of the hash is a key of its own
+        if (target.hasPerceptualHash())
+            for (int i = 0; i < PerceptualHash.CHUNKS; i++)
+                this.hashChunks.put(key(chunkKey(i, PerceptualHash.chunk(target.getPerceptualHash(), i)), target.getName()), target.getName());
+    }
+
+    private void unindex(TargetImage target) {
+        if (target.hasPerceptualHash())
+            for (int i = 0; i < PerceptualHash.CHUNKS; i++)
+                this.hashChunks.remove(key(chunkKey(i, PerceptualHash.chunk(target.getPerceptualHash(), i)), target.getName()));
+    }
+
+    private TargetImage removeTarget(String name) {
+        byte[] record = this.targets.remove(name);
+        if (record == null)
+            return null;
+        TargetImage removed = decodeTarget(name, record);
+        unindex(removed);
+        return removed;
+    }
+
+    private void unassign(String target) {
+        String sourceKey = this.targetToSource.remove(target);
+        if (sourceKey != null)
+            this.sourceToTargets.remove(sourceKey);
+    }
+
+    private void commit() {
+        this.store.commit();
+    }
+
+    private <T> T write(Supplier<T> operation) {
+        try {
+            synchronized (this) {
+                try {
+                    return operation.get();
+                } catch (RuntimeException e) {
+                    // a failed operation must not leave half its changes for the next commit
+                    this.store.rollback();
+                    throw e;
+                }
+            }
+        } finally {
+            // events queued under the monitor are delivered once it is released
+            feed.flush();
+        }
+    }
+
+    public synchronized void reset() {
+        this.sources.clear();
+        this.targets.clear();
+        this.sourceToTargets.clear();
+        this.targetToSource.clear();
+        this.contentHashToSources.clear();
+        this.tagToSources.clear();
+        this.hashChunks.clear();
+        this.meta.clear();
+        this.meta.put("tagIndex", 1L);
+        this.meta.put("hashIndex", 1L);
+        commit();
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        return write(() -> {
+            SourceImage existing = source(source.getName());
+            if (existing != null)
+                if (!existing.equals(source))
+                    throw new AlreadyExistsException(String.format("duplicate source nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            source, existing));
+                else
+                    return null;
+
+            this.sources.put(source.getName(), encode(source));
+            index(source);
+            commit();
+
+            SourceImage created = source.copy();
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, created, null);
+            return created;
+        });
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        return write(() -> {
+            if (!this.sources.containsKey(source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            TargetImage existing = target(target.getName());
+            if (existing != null) {
+                if (!existing.equals(target))
+                    throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            target, existing));
+
+                String sourceKey = this.targetToSource.get(target.getName());
+                if (sourceKey != null && !sourceKey.startsWith(source.getName() + separator))
+                    throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
+                                    "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
+                            target, source, source(sourceKey.substring(0, sourceKey.indexOf(separator)))));
+
+                return null;
+            }
+
+            // the record goes first so that concurrent range scans never see a dangling index entry
+            String sourceKey = key(source.getName(), position(nextPosition()));
+            this.targets.put(target.getName(), encode(target));
+            index(target);
+            this.targetToSource.put(target.getName(), sourceKey);
+            this.sourceToTargets.put(sourceKey, target.getName());
+            commit();
+
+            TargetImage created = target.copy();
+            if (feed.hasSubscribers())
+                feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, source(source.getName()), created);
+            return created;
+        });
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        // the whole batch is a single store commit
+        return write(() -> {
+            final List<SourceImage> created = new ArrayList<>();
+            for (SourceImage source : sources) {
+                if (this.sources.containsKey(source.getName()))
+                    continue;
+                this.sources.put(source.getName(), encode(source));
+                index(source);
+                created.add(source.copy());
+            }
+            if (created.isEmpty())
+                return created;
+            commit();
+
+            for (SourceImage source : created)
+                feed.publish(RepositoryEvent.Type.SOURCE_CREATED, source, null);
+            return created;
+        });
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        return write(() -> {
+            if (!this.sources.containsKey(source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            final List<TargetImage> created = new ArrayList<>();
+            for (TargetImage target : targets) {
+                if (this.targets.containsKey(target.getName()))
+                    continue;
+                String sourceKey = key(source.getName(), position(nextPosition()));
+                this.targets.put(target.getName(), encode(target));
+                index(target);
+                this.targetToSource.put(target.getName(), sourceKey);
+                this.sourceToTargets.put(sourceKey, target.getName());
+                created.add(target.copy());
+            }
+            if (created.isEmpty())
+                return created;
+            commit();
+
+            if (feed.hasSubscribers()) {
+                SourceImage owner = source(source.getName());
+                for (TargetImage target : created)
+                    feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, owner, target);
+            }
+            return created;
+        });
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        if (!this.targets.containsKey(target.getName()))
+            throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+        String sourceKey = this.targetToSource.get(target.getName());
+        SourceImage source = sourceKey == null ? null : source(sourceKey.substring(0, sourceKey.indexOf(separator)));
+        if (source == null)
+            throw new NotFoundException(String.format("unknown source for target nogroup.inpaint.image: %s", target));
+
+        return source;
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        SourceImage source = source(name);
+        if (source == null)
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", name));
+
+        return source;
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        final Set<SourceImage> sources = new HashSet<>(this.sources.size());
+        for (Map.Entry<String, byte[]> entry : this.sources.entrySet())
+            sources.add(decodeSource(entry.getKey(), entry.getValue()));
+        return sources;
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (String name : scan(this.contentHashToSources, contentHash)) {
+            SourceImage source = source(name);
+            if (source != null)
+                sources.add(source);
+        }
+        return sources;
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (String name : scan(this.tagToSources, tag)) {
+            SourceImage source = source(name);
+            if (source != null)
+                sources.add(source);
+        }
+        return sources;
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        if (!this.sources.containsKey(source.getName()))
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+        final List<TargetImage> targets = new ArrayList<>();
+        for (String name : scan(this.sourceToTargets, source.getName())) {
+            TargetImage target = target(name);
+            if (target != null)
+                targets.add(target);
+        }
+        return targets;
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        TargetImage target = target(name);
+        if (target == null)
+            throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", name));
+
+        return target;
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        final List<TargetImage> similar = new ArrayList<>();
+        final int radius = PerceptualHash.chunkRadius(maxDistance);
+        if (radius > PerceptualHash.MAX_CHUNK_RADIUS) {
+            for (Map.Entry<String, byte[]> entry : this.targets.entrySet()) {
+                TargetImage candidate = decodeTarget(entry.getKey(), entry.getValue());
+                if (candidate.hasPerceptualHash() && PerceptualHash.distance(hash, candidate.getPerceptualHash()) <= maxDistance)
+                    similar.add(candidate);
+            }
+        } else {
+            final Set<String> seen = new HashSet<>();
+            for (int i = 0; i < PerceptualHash.CHUNKS; i++)
+                for (int probe : PerceptualHash.chunkProbes(PerceptualHash.chunk(hash, i), radius))
+                    for (String name : scan(this.hashChunks, chunkKey(i, probe))) {
+                        if (!seen.add(name))
+                            continue;
+                        TargetImage candidate = target(name);
+                        if (candidate != null && candidate.hasPerceptualHash()
+                                && PerceptualHash.distance(hash, candidate.getPerceptualHash()) <= maxDistance)
+                            similar.add(candidate);
+                    }
+        }
+        similar.sort(Comparator.<TargetImage>comparingInt(candidate -> PerceptualHash.distance(hash, candidate.getPerceptualHash()))
+                .thenComparing(TargetImage::getName));
+        return similar;
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        return write(() -> {
+            SourceImage existing = source(source.getName());
+            if (existing == null)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            if (existing.equals(source))
+                return null;
+
+            unindex(existing);
+            this.sources.put(source.getName(), encode(source));
+            index(source);
+            commit();
+
+            SourceImage updated = source.copy();
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, updated, null);
+            return updated;
+        });
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        return write(() -> {
+            for (SourceImage source : sources)
+                if (!this.sources.containsKey(source.getName()))
+                    throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            final List<SourceImage> updated = new ArrayList<>();
+            for (SourceImage source : sources) {
+                SourceImage existing = source(source.getName());
+                if (existing.equals(source))
+                    continue;
+
+                unindex(existing);
+                this.sources.put(source.getName(), encode(source));
+                index(source);
+                updated.add(source.copy());
+            }
+            if (!updated.isEmpty())
+                commit();
+            for (SourceImage copy : updated)
+                feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, copy, null);
+
+            return updated;
+        });
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        return write(() -> {
+            TargetImage existing = target(target.getName());
+            if (existing == null)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            if (existing.equals(target))
+                return null;
+
+            unindex(existing);
+            this.targets.put(target.getName(), encode(target));
+            index(target);
+            commit();
+
+            TargetImage updated = target.copy();
+            feed.publish(RepositoryEvent.Type.TARGET_UPDATED, null, updated);
+            return updated;
+        });
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        return write(() -> {
+            SourceImage existing = source(source.getName());
+            if (existing == null)
+                return null;
+
+            for (String target : scan(this.sourceToTargets, source.getName()))
+                unassign(target);
+            unindex(existing);
+            this.sources.remove(source.getName());
+            commit();
+
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, existing, null);
+            return existing;
+        });
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        return write(() -> {
+            SourceImage existing = source(source.getName());
+            if (existing == null)
+                return null;
+
+            final List<TargetImage> removedTargets = new ArrayList<>();
+            for (String target : scan(this.sourceToTargets, source.getName())) {
+                unassign(target);
+                TargetImage removed = removeTarget(target);
+                if (removed != null && feed.hasSubscribers())
+                    removedTargets.add(removed);
+            }
+            unindex(existing);
+            this.sources.remove(source.getName());
+            commit();
+
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, existing, removedTargets);
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, existing, null);
+            return existing;
+        });
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        return write(() -> {
+            final List<String> orphans = new ArrayList<>();
+            for (String target : this.targets.keySet()) {
+                String sourceKey = this.targetToSource.get(target);
+                if (sourceKey == null || !this.sources.containsKey(sourceKey.substring(0, sourceKey.indexOf(separator))))
+                    orphans.add(target);
+            }
+            final List<TargetImage> swept = new ArrayList<>(orphans.size());
+            for (String target : orphans) {
+                unassign(target);
+                TargetImage removed = removeTarget(target);
+                if (removed != null)
+                    swept.add(removed);
+            }
+            if (!orphans.isEmpty())
+                commit();
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, null, swept);
+
+            return swept;
+        });
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        return write(() -> {
+            TargetImage existing = target(target.getName());
+            if (existing == null)
+                return null;
+
+            unassign(target.getName());
+            removeTarget(target.getName());
+            commit();
+
+            feed.publish(RepositoryEvent.Type.TARGET_DELETED, null, existing);
+            return existing;
+        });
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        return write(() -> {
+            if (!this.sources.containsKey(source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            final List<TargetImage> removedTargets = new ArrayList<>();
+            for (String name : scan(this.sourceToTargets, source.getName())) {
+                unassign(name);
+                TargetImage removed = removeTarget(name);
+                if (removed != null)
+                    removedTargets.add(removed);
+            }
+            commit();
+            if (feed.hasSubscribers())
+                feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, source(source.getName()), removedTargets);
+
+            return removedTargets;
+        });
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        return write(() -> {
+            if (!this.sources.containsKey(from.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", from));
+            if (!this.sources.containsKey(to.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", to));
+
+            final Set<String> names = new LinkedHashSet<>(targets.length);
+            for (TargetImage target : targets) {
+                String sourceKey = this.targetToSource.get(target.getName());
+                if (sourceKey == null || !sourceKey.startsWith(from.getName() + separator))
+                    throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                            target, from));
+                names.add(target.getName());
+            }
+
+            final List<TargetImage> moved = new ArrayList<>(names.size());
+            if (from.getName().equals(to.getName()) || names.isEmpty())
+                return moved;
+
+            for (String name : names) {
+                unassign(name);
+                String sourceKey = key(to.getName(), position(nextPosition()));
+                this.targetToSource.put(name, sourceKey);
+                this.sourceToTargets.put(sourceKey, name);
+                moved.add(target(name));
+            }
+            commit();
+            if (feed.hasSubscribers())
+                feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, source(to.getName()), moved);
+
+            return moved;
+        });
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public void close() {
+        synchronized (KeyValueRepository.class) {
+            if (instances != null)
+                instances.values().remove(this);
+        }
+        this.feed.close();
+        this.store.close();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        KeyValueRepository that = (KeyValueRepository) o;
+        return Objects.equals(file, that.file);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(file);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("KeyValueRepository{");
+        sb.append("file=").append(file);
+        sb.append(", sources=").append(sources.size());
+        sb.append(", targets=").append(targets.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
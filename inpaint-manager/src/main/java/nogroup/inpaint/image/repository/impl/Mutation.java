@@ -0,0 +1,173 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+public class Mutation implements Serializable {
+    // pinned to the value computed before UPDATE_SOURCES, existing journals stay readable
+    private static final long serialVersionUID = 2751615801515874320L;
+
+    public enum Type {
+        CREATE_SOURCE,
+        CREATE_TARGET,
+        UPDATE_SOURCE,
+        UPDATE_TARGET,
+        DELETE_SOURCE,
+        DELETE_TARGET,
+        DELETE_TARGETS,
+        UPDATE_SOURCES,
+        MOVE_TARGETS,
+        DELETE_SOURCE_CASCADE,
+        CREATE_SOURCES,
+        CREATE_TARGETS,
+    }
+
+    private final Type type;
+    private final SourceImage source;
+    private final TargetImage target;
+    private final List<SourceImage> sources;
+    private final SourceImage destination;
+    private final List<TargetImage> targets;
+
+    public Mutation(Type type, SourceImage source, TargetImage target) {
+        this.type = type;
+        this.source = source;
+        this.target = target;
+        this.sources = null;
+        this.destination = null;
+        this.targets = null;
+    }
+
+    public Mutation(Type type, List<SourceImage> sources) {
+        this.type = type;
+        this.source = null;
+        this.target = null;
+        this.sources = new ArrayList<>(sources);
+        this.destination = null;
+        this.targets = null;
+    }
+
+    public Mutation(Type type, SourceImage source, SourceImage destination, List<TargetImage> targets) {
+        this.type = type;
+        this.source = source;
+        this.target = null;
+        this.sources = null;
+        this.destination = destination;
+        this.targets = new ArrayList<>(targets);
+    }
+
+    public void apply(Repository repository) {
+        switch (type) {
+            case CREATE_SOURCE:
+                repository.createSource(source);
+                break;
+            case CREATE_TARGET:
+                repository.createTarget(source, target);
+                break;
+            case UPDATE_SOURCE:
+                repository.updateSource(source);
+                break;
+            case UPDATE_TARGET:
+                repository.updateTarget(target);
+                break;
+            case DELETE_SOURCE:
+                repository.deleteSource(source);
+                break;
+            case DELETE_TARGET:
+                repository.deleteTarget(target);
+                break;
+            case DELETE_TARGETS:
+                repository.deleteTargets(source);
+                break;
+            case UPDATE_SOURCES:
+                repository.updateSources(sources);
+                break;
+            case MOVE_TARGETS:
+                repository.moveTargets(source, destination, targets.toArray(new TargetImage[0]));
+                break;
+            case DELETE_SOURCE_CASCADE:
+                repository.deleteSourceCascade(source);
+                break;
+            case CREATE_SOURCES:
+                repository.createSources(sources);
+                break;
+            case CREATE_TARGETS:
+                repository.createTargets(source, targets);
+                break;
+        }
+    }
+
+    public byte[] encode() throws IOException {
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream(); ObjectOutputStream out = new ObjectOutputStream(bos)) {
+            out.writeObject(this);
+            out.flush();
+            return bos.toByteArray();
+        }
+    }
+
+    public static Mutation decode(byte[] encoded) throws IOException {
+        try (ObjectInputStream in = new RepositoryObjectInputStream(new ByteArrayInputStream(encoded))) {
+            return (Mutation) in.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("unable to read journal entry", e);
+        }
+    }
+
+    public Type getType() {
+        return type;
+    }
+
+    public SourceImage getSource() {
+        return source;
+    }
+
+    public TargetImage getTarget() {
+        return target;
+    }
+
+    public List<SourceImage> getSources() {
+        return sources;
+    }
+
+    public SourceImage getDestination() {
+        return destination;
+    }
+
+    public List<TargetImage> getTargets() {
+        return targets;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        Mutation mutation = (Mutation) o;
+        return type == mutation.type && Objects.equals(source, mutation.source) && Objects.equals(target, mutation.target)
+                && Objects.equals(sources, mutation.sources) && Objects.equals(destination, mutation.destination)
+                && Objects.equals(targets, mutation.targets);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(type, source, target, sources, destination, targets);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Mutation{");
+        sb.append("type=").append(type);
+        sb.append(", source=").append(source);
+        sb.append(", target=").append(target);
+        sb.append(", sources=").append(sources);
+        sb.append(", destination=").append(destination);
+        sb.append(", targets=").append(targets);
+        sb.append('}');
+        return sb.toString();
+    }
+}
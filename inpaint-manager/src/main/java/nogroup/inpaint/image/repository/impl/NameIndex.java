@@ -0,0 +1,106 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntFunction;
+
+class NameIndex {
+    private static final int SLOT = 2 * Integer.BYTES;
+    private static final int EMPTY = 0;
+    private static final int TOMBSTONE = -1;
+    private static final int MIN_CAPACITY = 1024;
+    private final IntFunction<String> names;
+    private ByteBuffer slots;
+    private int capacity;
+    private int size;
+    private int used;
+
+    NameIndex(IntFunction<String> names) {
+        this.names = names;
+        allocate(MIN_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        // slots hold id + 1 so that a freshly allocated, zeroed buffer is all empty
+        this.slots = ByteBuffer.allocateDirect(capacity * SLOT).order(ByteOrder.nativeOrder());
+        this.capacity = capacity;
+        this.size = 0;
+        this.used = 0;
+    }
+
+    private static int spread(int hash) {
+        int h = hash * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private int find(String name, int hash) {
+        int mask = capacity - 1;
+        for (int slot = spread(hash) & mask; ; slot = (slot + 1) & mask) {
+            int stored = slots.getInt(slot * SLOT);
+            if (stored == EMPTY)
+                return -1;
+            if (stored != TOMBSTONE && slots.getInt(slot * SLOT + Integer.BYTES) == hash && names.apply(stored - 1).equals(name))
+                return slot;
+        }
+    }
+
+    int get(String name) {
+        int slot = find(name, name.hashCode());
+        return slot < 0 ? RecordBuffer.NONE : slots.getInt(slot * SLOT) - 1;
+    }
+
+    void put(String name, int id) {
+        if ((used + 1) * 3 > capacity * 2)
+            rehash(size * 3 > capacity ? capacity * 2 : capacity);
+        int hash = name.hashCode();
+        int mask = capacity - 1;
+        int slot = spread(hash) & mask;
+        while (true) {
+            int stored = slots.getInt(slot * SLOT);
+            if (stored == EMPTY || stored == TOMBSTONE)
+                break;
+            slot = (slot + 1) & mask;
+        }
+        if (slots.getInt(slot * SLOT) == EMPTY)
+            used++;
+        slots.putInt(slot * SLOT, id + 1);
+        slots.putInt(slot * SLOT + Integer.BYTES, hash);
+        size++;
+    }
+
+    void remove(String name) {
+        int slot = find(name, name.hashCode());
+        if (slot < 0)
+            return;
+        slots.putInt(slot * SLOT, TOMBSTONE);
+        size--;
+    }
+
+    private void rehash(int newCapacity) {
+        ByteBuffer old = this.slots;
+        int oldCapacity = this.capacity;
+        allocate(newCapacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldCapacity; i++) {
+            int stored = old.getInt(i * SLOT);
+            if (stored == EMPTY || stored == TOMBSTONE)
+                continue;
+            int hash = old.getInt(i * SLOT + Integer.BYTES);
+            int slot = spread(hash) & mask;
+            while (slots.getInt(slot * SLOT) != EMPTY)
+                slot = (slot + 1) & mask;
+            slots.putInt(slot * SLOT, stored);
+            slots.putInt(slot * SLOT + Integer.BYTES, hash);
+            size++;
+            used++;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    long getCapacity() {
+        return (long) capacity * SLOT;
+    }
+}
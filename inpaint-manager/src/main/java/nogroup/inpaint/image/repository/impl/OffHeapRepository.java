@@ -0,0 +1,728 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+
+import java.util.*;
+import java.util.function.IntConsumer;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+public class OffHeapRepository implements Repository {
+    private static final int RECORDS_PER_CHUNK = 16 * 1024;
+    private static final int ARENA_CHUNK = 1 << 20;
+
+    private static final int NAME = 0;
+    private static final int DESCRIPTION = 8;
+    private static final int WIDTH = 16;
+    private static final int HEIGHT = 20;
+    private static final int PERCEPTUAL_HASH = 24;
+
+    private static final int SOURCE_CONTENT_HASH = 32;
+    private static final int SOURCE_TAGS = 40;
+    private static final int SOURCE_FIRST = 48;
+    private static final int SOURCE_LAST = 52;
+    private static final int SOURCE_LIVE = 56;
+    private static final int SOURCE_HASHED = 57;
+    private static final int SOURCE_RECORD = 64;
+
+    private static final int TARGET_RATING = 32;
+    private static final int TARGET_SAMPLER = 36;
+    private static final int TARGET_CHECKPOINT = 37;
+    private static final int TARGET_LIVE = 38;
+    private static final int TARGET_HASHED = 39;
+    private static final int TARGET_SOURCE = 40;
+    private static final int TARGET_PREV = 44;
+    private static final int TARGET_NEXT = 48;
+    private static final int TARGET_RECORD = 56;
+
+    private static final Sampler[] samplers = Sampler.values();
+    private static final Checkpoint[] checkpoints = Checkpoint.values();
+
+    private StringArena strings;
+    private final RecordBuffer sources;
+    private final RecordBuffer targets;
+    private final NameIndex sourceNames;
+    private final NameIndex targetNames;
+    private final KeyIndex contentHashes;
+    private final KeyIndex tags;
+    private final KeyIndex[] hashChunks;
+    private final ReadWriteLock lock;
+    private final EventFeed feed;
+
+    public OffHeapRepository() {
+        this.strings = new StringArena(ARENA_CHUNK);
+        this.sources = new RecordBuffer(SOURCE_RECORD, RECORDS_PER_CHUNK);
+        this.targets = new RecordBuffer(TARGET_RECORD, RECORDS_PER_CHUNK);
+        this.sourceNames = new NameIndex(id -> strings.get(sources.getLong(id, NAME)));
+        this.targetNames = new NameIndex(id -> strings.get(targets.getLong(id, NAME)));
+        this.contentHashes = new KeyIndex((id, key) -> key.equals(strings.get(sources.getLong(id, SOURCE_CONTENT_HASH))));
+        this.tags = new KeyIndex((id, key) -> {
+            List<String> tags = strings.getList(sources.getLong(id, SOURCE_TAGS));
+            return tags != null && tags.contains(key);
+        });
+        this.hashChunks = new KeyIndex[PerceptualHash.CHUNKS];
+        for (int i = 0; i < hashChunks.length; i++)
+            hashChunks[i] = new KeyIndex();
+        this.lock = new ReentrantReadWriteLock();
+        // events queue up under the write lock and are delivered after it is released
+        this.feed = new EventFeed(true);
+    }
+
+    private SourceImage source(int id) {
+        return new SourceImageBuilder(strings.get(sources.getLong(id, NAME)))
+                .description(strings.get(sources.getLong(id, DESCRIPTION)))
+                .width(sources.getInt(id, WIDTH))
+                .height(sources.getInt(id, HEIGHT))
+                .perceptualHash(sources.getByte(id, SOURCE_HASHED) == 0 ? null : sources.getLong(id, PERCEPTUAL_HASH))
+                .contentHash(strings.get(sources.getLong(id, SOURCE_CONTENT_HASH)))
+                .tags(strings.getList(sources.getLong(id, SOURCE_TAGS)))
+                .build();
+    }
+
+    private TargetImage target(int id) {
+        return new TargetImageBuilder(strings.get(targets.getLong(id, NAME)))
+                .description(strings.get(targets.getLong(id, DESCRIPTION)))
+                .width(targets.getInt(id, WIDTH))
+                .height(targets.getInt(id, HEIGHT))
+                .perceptualHash(targets.getByte(id, TARGET_HASHED) == 0 ? null : targets.getLong(id, PERCEPTUAL_HASH))
+                .rating(targets.getInt(id, TARGET_RATING))
+                .sampler(samplers[targets.getByte(id, TARGET_SAMPLER)])
+                .checkpoint(checkpoints[targets.getByte(id, TARGET_CHECKPOINT)])
+                .build();
+    }
+
+    private void write(int id, SourceImage source) {
+        sources.putLong(id, DESCRIPTION, strings.put(source.getDescription()));
+        sources.putInt(id, WIDTH, source.getWidth());
+        sources.putInt(id, HEIGHT, source.getHeight());
+        sources.putLong(id, PERCEPTUAL_HASH, source.getPerceptualHash());
+        sources.putByte(id, SOURCE_HASHED, (byte) (source.hasPerceptualHash() ? 1 : 0));
+        sources.putLong(id, SOURCE_CONTENT_HASH, strings.put(source.getContentHash()));
+        sources.putLong(id, SOURCE_TAGS, strings.putList(source.getTags()));
+        if (source.getContentHash() != null)
+            contentHashes.put(source.getContentHash(), id);
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                if (tag != null)
+                    tags.put(tag, id);
+    }
+
+    private void write(int id, TargetImage target) {
+        targets.putLong(id, DESCRIPTION, strings.put(target.getDescription()));
+        targets.putInt(id, WIDTH, target.getWidth());
+        targets.putInt(id, HEIGHT, target.getHeight());
+        targets.putLong(id, PERCEPTUAL_HASH, target.getPerceptualHash());
+        targets.putByte(id, TARGET_HASHED, (byte) (target.hasPerceptualHash() ? 1 : 0));
+        targets.putInt(id, TARGET_RATING, target.getRating());
+        targets.putByte(id, TARGET_SAMPLER, (byte) target.getSampler().ordinal());
+        targets.putByte(id, TARGET_CHECKPOINT, (byte) target.getCheckpoint().ordinal());
+        if (target.hasPerceptualHash())
+            for (int i = 0; i < hashChunks.length; i++)
+                hashChunks[i].put(PerceptualHash.chunk(target.getPerceptualHash(), i), id);
+    }
+
+    private void releaseSource(int id) {
+        String contentHash = strings.get(sources.getLong(id, SOURCE_CONTENT_HASH));
+        if (contentHash != null)
+            contentHashes.remove(contentHash, id);
+        List<String> tags = strings.getList(sources.getLong(id, SOURCE_TAGS));
+        if (tags != null)
+            for (String tag : tags)
+                if (tag != null)
+                    this.tags.remove(tag, id);
+        strings.free(sources.getLong(id, DESCRIPTION));
+        strings.free(sources.getLong(id, SOURCE_CONTENT_HASH));
+        strings.freeList(sources.getLong(id, SOURCE_TAGS));
+    }
+
+    private void releaseTarget(int id) {
+        if (targets.getByte(id, TARGET_HASHED) != 0)
+            for (int i = 0; i < hashChunks.length; i++)
+                hashChunks[i].remove(PerceptualHash.chunk(targets.getLong(id, PERCEPTUAL_HASH), i), id);
+        strings.free(targets.getLong(id, DESCRIPTION));
+    }
+
+    private void compactStrings() {
+        // the arena is append-only, replaced and deleted strings are reclaimed by copying the live ones once they dominate
+        if (strings.getGarbage() < ARENA_CHUNK || strings.getGarbage() < strings.getBytes() / 2)
+            return;
+
+        final StringArena compacted = new StringArena(ARENA_CHUNK);
+        for (int id = 0; id < sources.getHighWater(); id++) {
+            if (sources.getByte(id, SOURCE_LIVE) == 0)
+                continue;
+            sources.putLong(id, NAME, compacted.put(strings.get(sources.getLong(id, NAME))));
+            sources.putLong(id, DESCRIPTION, compacted.put(strings.get(sources.getLong(id, DESCRIPTION))));
+            sources.putLong(id, SOURCE_CONTENT_HASH, compacted.put(strings.get(sources.getLong(id, SOURCE_CONTENT_HASH))));
+            sources.putLong(id, SOURCE_TAGS, compacted.putList(strings.getList(sources.getLong(id, SOURCE_TAGS))));
+        }
+        for (int id = 0; id < targets.getHighWater(); id++) {
+            if (targets.getByte(id, TARGET_LIVE) == 0)
+                continue;
+            targets.putLong(id, NAME, compacted.put(strings.get(targets.getLong(id, NAME))));
+            targets.putLong(id, DESCRIPTION, compacted.put(strings.get(targets.getLong(id, DESCRIPTION))));
+        }
+        strings = compacted;
+    }
+
+    private void link(int target, int source) {
+        int last = sources.getInt(source, SOURCE_LAST);
+        targets.putInt(target, TARGET_SOURCE, source);
+        targets.putInt(target, TARGET_PREV, last);
+        targets.putInt(target, TARGET_NEXT, RecordBuffer.NONE);
+        if (last == RecordBuffer.NONE)
+            sources.putInt(source, SOURCE_FIRST, target);
+        else
+            targets.putInt(last, TARGET_NEXT, target);
+        sources.putInt(source, SOURCE_LAST, target);
+    }
+
+    private void unlink(int target) {
+        int source = targets.getInt(target, TARGET_SOURCE);
+        if (source == RecordBuffer.NONE)
+            return;
+        int prev = targets.getInt(target, TARGET_PREV);
+        int next = targets.getInt(target, TARGET_NEXT);
+        if (prev == RecordBuffer.NONE)
+            sources.putInt(source, SOURCE_FIRST, next);
+        else
+            targets.putInt(prev, TARGET_NEXT, next);
+        if (next == RecordBuffer.NONE)
+            sources.putInt(source, SOURCE_LAST, prev);
+        else
+            targets.putInt(next, TARGET_PREV, prev);
+        targets.putInt(target, TARGET_SOURCE, RecordBuffer.NONE);
+        targets.putInt(target, TARGET_PREV, RecordBuffer.NONE);
+        targets.putInt(target, TARGET_NEXT, RecordBuffer.NONE);
+    }
+
+    private void freeTarget(int id) {
+        targetNames.remove(strings.get(targets.getLong(id, NAME)));
+        strings.free(targets.getLong(id, NAME));
+        releaseTarget(id);
+        targets.putByte(id, TARGET_LIVE, (byte) 0);
+        targets.free(id);
+    }
+
+    private void freeSource(int id) {
+        sourceNames.remove(strings.get(sources.getLong(id, NAME)));
+        strings.free(sources.getLong(id, NAME));
+        releaseSource(id);
+        sources.putByte(id, SOURCE_LIVE, (byte) 0);
+        sources.free(id);
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        lock.writeLock().lock();
+        try {
+            int existing = sourceNames.get(source.getName());
+            if (existing != RecordBuffer.NONE)
+                if (!source(existing).equals(source))
+                    throw new AlreadyExistsException(String.format("duplicate source nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            source, source(existing)));
+                else
+                    return null;
+
+            int id = sources.allocate();
+            sources.putLong(id, NAME, strings.put(source.getName()));
+            write(id, source);
+            sources.putInt(id, SOURCE_FIRST, RecordBuffer.NONE);
+            sources.putInt(id, SOURCE_LAST, RecordBuffer.NONE);
+            sources.putByte(id, SOURCE_LIVE, (byte) 1);
+            sourceNames.put(source.getName(), id);
+
+            SourceImage created = source(id);
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, created, null);
+            return created;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        lock.writeLock().lock();
+        try {
+            int sourceId = sourceNames.get(source.getName());
+            if (sourceId == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            int existing = targetNames.get(target.getName());
+            if (existing != RecordBuffer.NONE) {
+                if (!target(existing).equals(target))
+                    throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            target, target(existing)));
+
+                int assigned = targets.getInt(existing, TARGET_SOURCE);
+                if (assigned != RecordBuffer.NONE && assigned != sourceId)
+                    throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
+                                    "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
+                            target, source, source(assigned)));
+
+                return null;
+            }
+
+            int id = targets.allocate();
+            targets.putLong(id, NAME, strings.put(target.getName()));
+            write(id, target);
+            link(id, sourceId);
+            targets.putByte(id, TARGET_LIVE, (byte) 1);
+            targetNames.put(target.getName(), id);
+
+            TargetImage created = target(id);
+            if (feed.hasSubscribers())
+                feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, source(sourceId), created);
+            return created;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        lock.readLock().lock();
+        try {
+            int id = targetNames.get(target.getName());
+            if (id == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            int source = targets.getInt(id, TARGET_SOURCE);
+            if (source == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source for target nogroup.inpaint.image: %s", target));
+
+            return source(source);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        lock.readLock().lock();
+        try {
+            int id = sourceNames.get(name);
+            if (id == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", name));
+
+            return source(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        lock.readLock().lock();
+        try {
+            final Set<SourceImage> sources = new HashSet<>(this.sources.getLive());
+            for (int id = 0; id < this.sources.getHighWater(); id++)
+                if (this.sources.getByte(id, SOURCE_LIVE) != 0)
+                    sources.add(source(id));
+            return sources;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        lock.readLock().lock();
+        try {
+            final Set<SourceImage> sources = new HashSet<>();
+            contentHashes.forEach(contentHash, id -> sources.add(source(id)));
+            return sources;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        lock.readLock().lock();
+        try {
+            final Set<SourceImage> sources = new HashSet<>();
+            tags.forEach(tag, id -> sources.add(source(id)));
+            return sources;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        lock.readLock().lock();
+        try {
+            int sourceId = sourceNames.get(source.getName());
+            if (sourceId == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            final List<TargetImage> targets = new ArrayList<>();
+            for (int id = sources.getInt(sourceId, SOURCE_FIRST); id != RecordBuffer.NONE; id = this.targets.getInt(id, TARGET_NEXT))
+                targets.add(target(id));
+            return targets;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        lock.readLock().lock();
+        try {
+            int id = targetNames.get(name);
+            if (id == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", name));
+
+            return target(id);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        lock.readLock().lock();
+        try {
+            int self = targetNames.get(target.getName());
+            if (self == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            if (targets.getByte(self, TARGET_HASHED) == 0)
+                return new ArrayList<>();
+            return similar(targets.getLong(self, PERCEPTUAL_HASH), maxDistance, self);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        lock.readLock().lock();
+        try {
+            return similar(hash, maxDistance, RecordBuffer.NONE);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private List<TargetImage> similar(long hash, int maxDistance, int self) {
+        final List<TargetImage> similar = new ArrayList<>();
+        final IntConsumer match = id -> {
+            if (id != self && PerceptualHash.distance(hash, targets.getLong(id, PERCEPTUAL_HASH)) <= maxDistance)
+                similar.add(target(id));
+        };
+        final int radius = PerceptualHash.chunkRadius(maxDistance);
+        if (radius > PerceptualHash.MAX_CHUNK_RADIUS) {
+            // the scan only touches the fixed-width hash column, records are materialized for matches only
+            for (int id = 0; id < targets.getHighWater(); id++)
+                if (targets.getByte(id, TARGET_LIVE) != 0 && targets.getByte(id, TARGET_HASHED) != 0)
+                    match.accept(id);
+        } else {
+            final BitSet seen = new BitSet(targets.getHighWater());
+            for (int i = 0; i < hashChunks.length; i++)
+                for (int probe : PerceptualHash.chunkProbes(PerceptualHash.chunk(hash, i), radius))
+                    hashChunks[i].forEach(probe, id -> {
+                        if (!seen.get(id)) {
+                            seen.set(id);
+                            match.accept(id);
+                        }
+                    });
+        }
+        similar.sort(Comparator.<TargetImage>comparingInt(candidate -> PerceptualHash.distance(hash, candidate.getPerceptualHash()))
+                .thenComparing(TargetImage::getName));
+        return similar;
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        lock.writeLock().lock();
+        try {
+            int id = sourceNames.get(source.getName());
+            if (id == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            if (source(id).equals(source))
+                return null;
+
+            releaseSource(id);
+            write(id, source);
+            compactStrings();
+
+            SourceImage updated = source(id);
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, updated, null);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        lock.writeLock().lock();
+        try {
+            final int[] ids = new int[sources.size()];
+            int i = 0;
+            for (SourceImage source : sources) {
+                ids[i] = sourceNames.get(source.getName());
+                if (ids[i++] == RecordBuffer.NONE)
+                    throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            }
+
+            final List<SourceImage> updated = new ArrayList<>();
+            i = 0;
+            for (SourceImage source : sources) {
+                int id = ids[i++];
+                if (source(id).equals(source))
+                    continue;
+                releaseSource(id);
+                write(id, source);
+                SourceImage copy = source(id);
+                feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, copy, null);
+                updated.add(copy);
+            }
+            compactStrings();
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        lock.writeLock().lock();
+        try {
+            int id = targetNames.get(target.getName());
+            if (id == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+            if (target(id).equals(target))
+                return null;
+
+            releaseTarget(id);
+            write(id, target);
+            compactStrings();
+
+            TargetImage updated = target(id);
+            feed.publish(RepositoryEvent.Type.TARGET_UPDATED, null, updated);
+            return updated;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        lock.writeLock().lock();
+        try {
+            int id = sourceNames.get(source.getName());
+            if (id == RecordBuffer.NONE)
+                return null;
+
+            SourceImage removed = source(id);
+            // targets survive their source as orphans, same as in InMemoryRepository
+            while (sources.getInt(id, SOURCE_FIRST) != RecordBuffer.NONE)
+                unlink(sources.getInt(id, SOURCE_FIRST));
+            freeSource(id);
+            compactStrings();
+
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, removed, null);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        lock.writeLock().lock();
+        try {
+            int id = sourceNames.get(source.getName());
+            if (id == RecordBuffer.NONE)
+                return null;
+
+            SourceImage removed = source(id);
+            final List<TargetImage> removedTargets = new ArrayList<>();
+            while (sources.getInt(id, SOURCE_FIRST) != RecordBuffer.NONE) {
+                int target = sources.getInt(id, SOURCE_FIRST);
+                if (feed.hasSubscribers())
+                    removedTargets.add(target(target));
+                unlink(target);
+                freeTarget(target);
+            }
+            freeSource(id);
+            compactStrings();
+
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, removed, removedTargets);
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, removed, null);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        lock.writeLock().lock();
+        try {
+            int id = targetNames.get(target.getName());
+            if (id == RecordBuffer.NONE)
+                return null;
+
+            TargetImage removed = target(id);
+            unlink(id);
+            freeTarget(id);
+            compactStrings();
+
+            feed.publish(RepositoryEvent.Type.TARGET_DELETED, null, removed);
+            return removed;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        lock.writeLock().lock();
+        try {
+            int sourceId = sourceNames.get(source.getName());
+            if (sourceId == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+            final List<TargetImage> removedTargets = new ArrayList<>();
+            while (sources.getInt(sourceId, SOURCE_FIRST) != RecordBuffer.NONE) {
+                int id = sources.getInt(sourceId, SOURCE_FIRST);
+                removedTargets.add(target(id));
+                unlink(id);
+                freeTarget(id);
+            }
+            compactStrings();
+            if (feed.hasSubscribers())
+                feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, source(sourceId), removedTargets);
+            return removedTargets;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        lock.writeLock().lock();
+        try {
+            int fromId = sourceNames.get(from.getName());
+            if (fromId == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", from));
+            int toId = sourceNames.get(to.getName());
+            if (toId == RecordBuffer.NONE)
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", to));
+
+            final Set<Integer> ids = new LinkedHashSet<>(targets.length);
+            for (TargetImage target : targets) {
+                int id = targetNames.get(target.getName());
+                if (id == RecordBuffer.NONE || this.targets.getInt(id, TARGET_SOURCE) != fromId)
+                    throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                            target, from));
+                ids.add(id);
+            }
+
+            final List<TargetImage> moved = new ArrayList<>(ids.size());
+            if (fromId == toId)
+                return moved;
+
+            for (int id : ids) {
+                unlink(id);
+                link(id, toId);
+                moved.add(target(id));
+            }
+            if (feed.hasSubscribers())
+                feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, source(toId), moved);
+            return moved;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        lock.writeLock().lock();
+        try {
+            final List<TargetImage> swept = new ArrayList<>();
+            for (int id = 0; id < targets.getHighWater(); id++) {
+                if (targets.getByte(id, TARGET_LIVE) == 0 || targets.getInt(id, TARGET_SOURCE) != RecordBuffer.NONE)
+                    continue;
+                swept.add(target(id));
+                freeTarget(id);
+            }
+            compactStrings();
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, null, swept);
+            return swept;
+        } finally {
+            lock.writeLock().unlock();
+            feed.flush();
+        }
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    public long getOffHeapBytes() {
+        lock.readLock().lock();
+        try {
+            return strings.getCapacity() + sources.getCapacity() + targets.getCapacity()
+                    + sourceNames.getCapacity() + targetNames.getCapacity()
+                    + contentHashes.getCapacity() + tags.getCapacity() + chunkCapacity();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private long chunkCapacity() {
+        long capacity = 0;
+        for (KeyIndex index : hashChunks)
+            capacity += index.getCapacity();
+        return capacity;
+    }
+
+    public long getStringBytes() {
+        lock.readLock().lock();
+        try {
+            return strings.getBytes();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("OffHeapRepository{");
+        sb.append("sources=").append(sources.getLive());
+        sb.append(", targets=").append(targets.getLive());
+        sb.append(", offHeapBytes=").append(getOffHeapBytes());
+        sb.append('}');
+        return sb.toString();
+    }
+}
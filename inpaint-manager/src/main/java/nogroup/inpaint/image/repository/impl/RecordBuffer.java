@@ -0,0 +1,86 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+class RecordBuffer {
+    static final int NONE = -1;
+    private final int recordSize;
+    private final int recordsPerChunk;
+    private final List<ByteBuffer> chunks;
+    private int highWater;
+    private int freeHead;
+    private int live;
+
+    RecordBuffer(int recordSize, int recordsPerChunk) {
+        this.recordSize = recordSize;
+        this.recordsPerChunk = recordsPerChunk;
+        this.chunks = new ArrayList<>();
+        this.freeHead = NONE;
+    }
+
+    int allocate() {
+        live++;
+        if (freeHead != NONE) {
+            int id = freeHead;
+            freeHead = getInt(id, 0);
+            return id;
+        }
+        if (highWater == chunks.size() * recordsPerChunk)
+            chunks.add(ByteBuffer.allocateDirect(recordSize * recordsPerChunk).order(ByteOrder.nativeOrder()));
+        return highWater++;
+    }
+
+    void free(int id) {
+        // freed slots are chained through their first field
+        live--;
+        putInt(id, 0, freeHead);
+        freeHead = id;
+    }
+
+    private ByteBuffer chunk(int id) {
+        return chunks.get(id / recordsPerChunk);
+    }
+
+    private int offset(int id, int field) {
+        return (id % recordsPerChunk) * recordSize + field;
+    }
+
+    int getInt(int id, int field) {
+        return chunk(id).getInt(offset(id, field));
+    }
+
+    void putInt(int id, int field, int value) {
+        chunk(id).putInt(offset(id, field), value);
+    }
+
+    long getLong(int id, int field) {
+        return chunk(id).getLong(offset(id, field));
+    }
+
+    void putLong(int id, int field, long value) {
+        chunk(id).putLong(offset(id, field), value);
+    }
+
+    byte getByte(int id, int field) {
+        return chunk(id).get(offset(id, field));
+    }
+
+    void putByte(int id, int field, byte value) {
+        chunk(id).put(offset(id, field), value);
+    }
+
+    int getHighWater() {
+        return highWater;
+    }
+
+    int getLive() {
+        return live;
+    }
+
+    long getCapacity() {
+        return (long) chunks.size() * recordsPerChunk * recordSize;
+    }
+}
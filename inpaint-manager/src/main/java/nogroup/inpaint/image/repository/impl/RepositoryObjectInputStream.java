@@ -0,0 +1,80 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.Image;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectStreamClass;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.AbstractOwnableSynchronizer;
+import java.util.concurrent.locks.AbstractQueuedSynchronizer;
+import java.util.concurrent.locks.ReentrantLock;
+
+class RepositoryObjectInputStream extends ObjectInputStream {
+    // snapshots and journal entries also arrive from the network, only the classes they are made of may be read
+    private static final Set<String> allowed = new HashSet<>(Arrays.asList(
+            InMemoryRepository.class.getName(),
+            Mutation.class.getName(),
+            Mutation.Type.class.getName(),
+            Image.class.getName(),
+            SourceImage.class.getName(),
+            TargetImage.class.getName(),
+            Sampler.class.getName(),
+            Checkpoint.class.getName(),
+            String.class.getName(),
+            Enum.class.getName(),
+            Number.class.getName(),
+            Integer.class.getName(),
+            Long.class.getName(),
+            Object.class.getName(),
+            ArrayList.class.getName(),
+            LinkedList.class.getName(),
+            HashMap.class.getName(),
+            LinkedHashMap.class.getName(),
+            HashSet.class.getName(),
+            LinkedHashSet.class.getName(),
+            ConcurrentHashMap.class.getName(),
+            ConcurrentHashMap.class.getName() + "$Segment",
+            // the segments ConcurrentHashMap still writes for compatibility are locks
+            ReentrantLock.class.getName(),
+            ReentrantLock.class.getName() + "$Sync",
+            ReentrantLock.class.getName() + "$NonfairSync",
+            AbstractQueuedSynchronizer.class.getName(),
+            AbstractOwnableSynchronizer.class.getName(),
+            "java.util.Arrays$ArrayList",
+            "java.util.Collections$EmptyList",
+            "java.util.Collections$SingletonList",
+            "java.util.Collections$UnmodifiableCollection",
+            "java.util.Collections$UnmodifiableList",
+            "java.util.Collections$UnmodifiableRandomAccessList"
+    ));
+
+    RepositoryObjectInputStream(InputStream in) throws IOException {
+        super(in);
+    }
+
+    private static boolean isAllowed(String name) {
+        if (name.startsWith("[["))
+            return isAllowed(name.substring(1));
+        if (name.startsWith("[L"))
+            return isAllowed(name.substring(2, name.length() - 1));
+        // arrays of primitives
+        if (name.startsWith("["))
+            return true;
+        return allowed.contains(name);
+    }
+
+    @Override
+    protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+        if (!isAllowed(desc.getName()))
+            throw new InvalidClassException(desc.getName(), "not allowed in repository data");
+        return super.resolveClass(desc);
+    }
+}
@@ -0,0 +1,480 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.hash.XxHash64;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Function;
+
+public class ShardedRepository implements Repository, Closeable {
+    public static final int DEFAULT_SHARDS = 4;
+    private static final int VIRTUAL_NODES = 128;
+    private static final int LOCK_STRIPES = 64;
+    private static final ExecutorService defaultExecutor = Executors.newFixedThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors()), runnable -> {
+                Thread thread = new Thread(runnable, "shard-fan-out");
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    private final List<Repository> shards;
+    private final TreeMap<Long, Integer> ring;
+    private final ExecutorService executor;
+    private final Object[] targetLocks;
+    private final Map<String, Repository> targetShards;
+    private final EventFeed feed;
+
+    public ShardedRepository(List<Repository> shards) {
+        this(shards, defaultExecutor);
+    }
+
+    public ShardedRepository(List<Repository> shards, ExecutorService executor) {
+        if (shards.isEmpty())
+            throw new IllegalArgumentException("no shards provided");
+        this.shards = Collections.unmodifiableList(new ArrayList<>(shards));
+        this.executor = executor;
+        this.ring = new TreeMap<>();
+        for (int i = 0; i < shards.size(); i++)
+            for (int v = 0; v < VIRTUAL_NODES; v++)
+                this.ring.put(hash(String.format("shard-%d#%d", i, v)), i);
+        this.targetLocks = new Object[LOCK_STRIPES];
+        for (int i = 0; i < LOCK_STRIPES; i++)
+            this.targetLocks[i] = new Object();
+        this.targetShards = new ConcurrentHashMap<>();
+        fanOut(shard -> {
+            for (SourceImage source : shard.readSources())
+                for (TargetImage target : shard.readTargets(source))
+                    this.targetShards.put(target.getName(), shard);
+            return null;
+        });
+        this.feed = new EventFeed();
+    }
+
+    public static ShardedRepository ofFiles(String dataDir, int shards) throws IllegalArgumentException, IOException {
+        Path dir = Paths.get(dataDir);
+        if (!Files.isDirectory(dir))
+            throw new IllegalArgumentException(String.format("not a dir: %s", dataDir));
+        if (shards < 1)
+            throw new IllegalArgumentException(String.format("wrong shards count: %d", shards));
+
+        final List<Repository> repositories = new ArrayList<>(shards);
+        for (int i = 0; i < shards; i++) {
+            Path shardDir = dir.resolve(String.format("shard-%d", i));
+            if (!Files.exists(shardDir))
+                Files.createDirectory(shardDir);
+            repositories.add(FileRepository.getInstance(shardDir.toString()));
+        }
+        return new ShardedRepository(repositories);
+    }
+
+    private static long hash(String value) {
+        return XxHash64.hash(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private Repository shardOf(String sourceName) {
+        Map.Entry<Long, Integer> entry = this.ring.ceilingEntry(hash(sourceName));
+        if (entry == null)
+            entry = this.ring.firstEntry();
+        return this.shards.get(entry.getValue());
+    }
+
+    private Object lockOf(String targetName) {
+        return this.targetLocks[Math.floorMod(targetName.hashCode(), LOCK_STRIPES)];
+    }
+
+    private <T> List<T> fanOut(Function<Repository, T> call) {
+        if (this.shards.size() == 1)
+            return Collections.singletonList(call.apply(this.shards.get(0)));
+
+        final List<CompletableFuture<T>> futures = new ArrayList<>(this.shards.size());
+        for (Repository shard : this.shards)
+            futures.add(CompletableFuture.supplyAsync(() -> call.apply(shard), this.executor));
+
+        final List<T> results = new ArrayList<>(futures.size());
+        try {
+            for (CompletableFuture<T> future : futures)
+                results.add(future.join());
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException)
+                throw (RuntimeException) e.getCause();
+            throw e;
+        }
+        return results;
+    }
+
+    private Repository locate(String targetName) {
+        Repository indexed = this.targetShards.get(targetName);
+        if (indexed != null)
+            return indexed;
+
+        // the index is built from the sources on startup, targets orphaned before that are only found by asking every shard
+        List<Boolean> found = fanOut(shard -> {
+            try {
+                shard.readTarget(targetName);
+                return true;
+            } catch (NotFoundException e) {
+                return false;
+            }
+        });
+        for (int i = 0; i < found.size(); i++)
+            if (found.get(i)) {
+                this.targetShards.putIfAbsent(targetName, this.shards.get(i));
+                return this.shards.get(i);
+            }
+        return null;
+    }
+
+    private static boolean hasSource(Repository shard, String name) {
+        try {
+            shard.readSource(name);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    private static boolean hasTarget(Repository shard, String name) {
+        try {
+            shard.readTarget(name);
+            return true;
+        } catch (NotFoundException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        SourceImage created = shardOf(source.getName()).createSource(source);
+        if (created != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, created, null);
+        return created;
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        // targets keep the default per-target creates, their names are checked across shards one by one
+        final Map<Repository, List<SourceImage>> byShard = new LinkedHashMap<>();
+        for (SourceImage source : sources)
+            byShard.computeIfAbsent(shardOf(source.getName()), key -> new ArrayList<>()).add(source);
+
+        final List<SourceImage> created = new ArrayList<>();
+        for (Map.Entry<Repository, List<SourceImage>> entry : byShard.entrySet())
+            created.addAll(entry.getKey().createSources(entry.getValue()));
+        for (SourceImage source : created)
+            feed.publish(RepositoryEvent.Type.SOURCE_CREATED, source, null);
+        return created;
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        final Repository owner = shardOf(source.getName());
+        if (!hasSource(owner, source.getName()))
+            throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+
+        synchronized (lockOf(target.getName())) {
+            // target names are global, a target stored on another shard must be rejected like a local duplicate
+            Repository located = locate(target.getName());
+            if (located != null && located != owner && !hasTarget(located, target.getName())) {
+                // the shard was changed behind our back, look again
+                this.targetShards.remove(target.getName(), located);
+                located = locate(target.getName());
+            }
+            if (located != null && located != owner) {
+                TargetImage existing = located.readTarget(target.getName());
+                if (!existing.equals(target))
+                    throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image: provided [%s], existing [%s]; use update to replace it",
+                            target, existing));
+                final SourceImage assigned;
+                try {
+                    assigned = located.readSource(target);
+                } catch (NotFoundException e) {
+                    return null;
+                }
+                throw new AlreadyExistsException(String.format("target nogroup.inpaint.image assigned to another source nogroup.inpaint.image: target [%s], " +
+                                "provided source [%s], assigned source [%s]; delete target before reassignment it to another source",
+                        target, source, assigned));
+            }
+
+            TargetImage created = owner.createTarget(source, target);
+            this.targetShards.put(target.getName(), owner);
+            if (created != null)
+                feed.publish(RepositoryEvent.Type.TARGET_ASSIGNED, source, created);
+            return created;
+        }
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        Repository located = locate(target.getName());
+        if (located == null)
+            throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+        return located.readSource(target);
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        return shardOf(name).readSource(name);
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (Set<SourceImage> shardSources : fanOut(Repository::readSources))
+            sources.addAll(shardSources);
+        return sources;
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (Set<SourceImage> shardSources : fanOut(shard -> shard.readSourcesByContentHash(contentHash)))
+            sources.addAll(shardSources);
+        return sources;
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        final Set<SourceImage> sources = new HashSet<>();
+        for (Set<SourceImage> shardSources : fanOut(shard -> shard.readSourcesByTag(tag)))
+            sources.addAll(shardSources);
+        return sources;
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        return shardOf(source.getName()).readTargets(source);
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        Repository located = locate(name);
+        if (located == null)
+            throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", name));
+
+        return located.readTarget(name);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        final List<TargetImage> similar = new ArrayList<>();
+        for (List<TargetImage> shardSimilar : fanOut(shard -> shard.readSimilarTargets(hash, maxDistance)))
+            similar.addAll(shardSimilar);
+        similar.sort(Comparator.<TargetImage>comparingInt(candidate -> PerceptualHash.distance(hash, candidate.getPerceptualHash()))
+                .thenComparing(TargetImage::getName));
+        return similar;
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        SourceImage updated = shardOf(source.getName()).updateSource(source);
+        if (updated != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, updated, null);
+        return updated;
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        final Map<Repository, List<SourceImage>> byShard = new LinkedHashMap<>();
+        for (SourceImage source : sources) {
+            Repository shard = shardOf(source.getName());
+            if (!hasSource(shard, source.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", source));
+            byShard.computeIfAbsent(shard, key -> new ArrayList<>()).add(source);
+        }
+
+        final List<SourceImage> updated = new ArrayList<>();
+        for (Map.Entry<Repository, List<SourceImage>> entry : byShard.entrySet())
+            updated.addAll(entry.getKey().updateSources(entry.getValue()));
+        for (SourceImage source : updated)
+            feed.publish(RepositoryEvent.Type.SOURCE_UPDATED, source, null);
+        return updated;
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        Repository located = locate(target.getName());
+        if (located == null)
+            throw new NotFoundException(String.format("unknown target nogroup.inpaint.image: %s", target));
+
+        TargetImage updated = located.updateTarget(target);
+        if (updated != null)
+            feed.publish(RepositoryEvent.Type.TARGET_UPDATED, null, updated);
+        return updated;
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        SourceImage deleted = shardOf(source.getName()).deleteSource(source);
+        if (deleted != null)
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        return deleted;
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        final Repository shard = shardOf(source.getName());
+        List<TargetImage> targets;
+        try {
+            targets = shard.readTargets(source);
+        } catch (NotFoundException e) {
+            return null;
+        }
+        SourceImage deleted = shard.deleteSourceCascade(source);
+        if (deleted != null) {
+            for (TargetImage target : targets)
+                this.targetShards.remove(target.getName(), shard);
+            feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, deleted, targets);
+            feed.publish(RepositoryEvent.Type.SOURCE_DELETED, deleted, null);
+        }
+        return deleted;
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        synchronized (lockOf(target.getName())) {
+            Repository located = locate(target.getName());
+            if (located == null)
+                return null;
+
+            TargetImage deleted = located.deleteTarget(target);
+            this.targetShards.remove(target.getName(), located);
+            if (deleted != null)
+                feed.publish(RepositoryEvent.Type.TARGET_DELETED, null, deleted);
+            return deleted;
+        }
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        final Repository shard = shardOf(source.getName());
+        List<TargetImage> deleted = shard.deleteTargets(source);
+        for (TargetImage target : deleted)
+            this.targetShards.remove(target.getName(), shard);
+        feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, source, deleted);
+        return deleted;
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        final Repository fromShard = shardOf(from.getName());
+        final Repository toShard = shardOf(to.getName());
+        final List<TargetImage> moved;
+        if (fromShard == toShard) {
+            moved = fromShard.moveTargets(from, to, targets);
+        } else {
+            if (!hasSource(fromShard, from.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", from));
+            if (!hasSource(toShard, to.getName()))
+                throw new NotFoundException(String.format("unknown source nogroup.inpaint.image: %s", to));
+            final Map<String, TargetImage> existing = new LinkedHashMap<>();
+            for (TargetImage target : targets) {
+                SourceImage assigned;
+                try {
+                    assigned = fromShard.readSource(target);
+                } catch (NotFoundException e) {
+                    assigned = null;
+                }
+                if (assigned == null || !assigned.getName().equals(from.getName()))
+                    throw new NotFoundException(String.format("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image: target [%s], source [%s]",
+                            target, from));
+                existing.put(target.getName(), fromShard.readTarget(target.getName()));
+            }
+            // fail before anything is deleted when a target cannot be created on the other shard
+            for (TargetImage target : existing.values())
+                if (hasTarget(toShard, target.getName()))
+                    throw new AlreadyExistsException(String.format("duplicate target nogroup.inpaint.image on shard of source nogroup.inpaint.image: target [%s], source [%s]",
+                            target, to));
+
+            // shards are persisted independently, a move across them is a delete on one and a create on the other;
+            // each target is moved or restored on its own, the move as a whole is not atomic and a failure
+            // leaves the targets before it moved
+            moved = new ArrayList<>(existing.size());
+            for (TargetImage target : existing.values())
+                synchronized (lockOf(target.getName())) {
+                    fromShard.deleteTarget(target);
+                    try {
+                        toShard.createTarget(to, target);
+                    } catch (RuntimeException e) {
+                        fromShard.createTarget(from, target);
+                        feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, to, moved);
+                        throw e;
+                    }
+                    this.targetShards.put(target.getName(), toShard);
+                    moved.add(target);
+                }
+        }
+        feed.publishAll(RepositoryEvent.Type.TARGET_MOVED, to, moved);
+        return moved;
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        // targets live on the shard of their source, so an orphan is always swept by its own shard
+        final List<TargetImage> swept = new ArrayList<>();
+        for (Repository shard : shards) {
+            List<TargetImage> orphans = shard.sweepOrphans();
+            for (TargetImage target : orphans)
+                this.targetShards.remove(target.getName(), shard);
+            swept.addAll(orphans);
+        }
+        feed.publishAll(RepositoryEvent.Type.TARGET_DELETED, null, swept);
+        return swept;
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    @Override
+    public void close() {
+        // shards belong to whoever opened them, ofFiles shards are registry instances released with FileRepository.evict
+        feed.close();
+    }
+
+    public List<Repository> getShards() {
+        return shards;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ShardedRepository that = (ShardedRepository) o;
+        return Objects.equals(shards, that.shards);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(shards);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ShardedRepository{");
+        sb.append("shards=").append(shards);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,13 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+public interface SnapshotFormat {
+    String getName();
+
+    void write(InMemoryRepository repository, OutputStream out) throws IOException;
+
+    InMemoryRepository read(InputStream in) throws IOException;
+}
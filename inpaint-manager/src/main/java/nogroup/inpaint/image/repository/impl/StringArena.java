@@ -0,0 +1,131 @@
+package nogroup.inpaint.image.repository.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+class StringArena {
+    static final long NULL = -1;
+    private final int chunkSize;
+    private final List<ByteBuffer> chunks;
+    private ByteBuffer current;
+    private long bytes;
+    private long garbage;
+
+    StringArena(int chunkSize) {
+        this.chunkSize = chunkSize;
+        this.chunks = new ArrayList<>();
+    }
+
+    private long reserve(int size) {
+        if (current == null || current.remaining() < size) {
+            current = ByteBuffer.allocateDirect(Math.max(chunkSize, size)).order(ByteOrder.nativeOrder());
+            chunks.add(current);
+        }
+        long ref = ((long) (chunks.size() - 1) << 32) | current.position();
+        bytes += size;
+        return ref;
+    }
+
+    private ByteBuffer view(long ref) {
+        ByteBuffer view = chunks.get((int) (ref >>> 32)).duplicate().order(ByteOrder.nativeOrder());
+        view.position((int) ref);
+        return view;
+    }
+
+    long put(String value) {
+        if (value == null)
+            return NULL;
+        byte[] encoded = value.getBytes(StandardCharsets.UTF_8);
+        long ref = reserve(Integer.BYTES + encoded.length);
+        current.putInt(encoded.length).put(encoded);
+        return ref;
+    }
+
+    String get(long ref) {
+        if (ref == NULL)
+            return null;
+        ByteBuffer view = view(ref);
+        byte[] encoded = new byte[view.getInt()];
+        view.get(encoded);
+        return new String(encoded, StandardCharsets.UTF_8);
+    }
+
+    long putList(List<String> values) {
+        if (values == null)
+            return NULL;
+        final byte[][] encoded = new byte[values.size()][];
+        int size = Integer.BYTES;
+        for (int i = 0; i < encoded.length; i++) {
+            String value = values.get(i);
+            encoded[i] = value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+            size += Integer.BYTES + (encoded[i] == null ? 0 : encoded[i].length);
+        }
+        long ref = reserve(size);
+        current.putInt(encoded.length);
+        for (byte[] value : encoded) {
+            if (value == null) {
+                current.putInt(-1);
+            } else {
+                current.putInt(value.length).put(value);
+            }
+        }
+        return ref;
+    }
+
+    List<String> getList(long ref) {
+        if (ref == NULL)
+            return null;
+        ByteBuffer view = view(ref);
+        final int count = view.getInt();
+        final List<String> values = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            int length = view.getInt();
+            if (length < 0) {
+                values.add(null);
+                continue;
+            }
+            byte[] encoded = new byte[length];
+            view.get(encoded);
+            values.add(new String(encoded, StandardCharsets.UTF_8));
+        }
+        return values;
+    }
+
+    void free(long ref) {
+        if (ref == NULL)
+            return;
+        garbage += Integer.BYTES + view(ref).getInt();
+    }
+
+    void freeList(long ref) {
+        if (ref == NULL)
+            return;
+        ByteBuffer view = view(ref);
+        final int count = view.getInt();
+        long size = Integer.BYTES;
+        for (int i = 0; i < count; i++) {
+            int length = Math.max(0, view.getInt());
+            view.position(view.position() + length);
+            size += Integer.BYTES + length;
+        }
+        garbage += size;
+    }
+
+    long getBytes() {
+        return bytes;
+    }
+
+    long getGarbage() {
+        return garbage;
+    }
+
+    long getCapacity() {
+        long capacity = 0;
+        for (ByteBuffer chunk : chunks)
+            capacity += chunk.capacity();
+        return capacity;
+    }
+}
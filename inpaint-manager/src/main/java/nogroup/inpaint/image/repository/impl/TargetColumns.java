@@ -0,0 +1,218 @@
+package nogroup.inpaint.image.repository.impl;
+
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+public class TargetColumns {
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final Checkpoint[] checkpoints = Checkpoint.values();
+    private static final Sampler[] samplers = Sampler.values();
+
+    private final Map<String, Integer> ids;
+    private final ReadWriteLock lock;
+    private String[] names;
+    private int[] widths;
+    private int[] heights;
+    private int[] ratings;
+    private byte[] samplerOrdinals;
+    private byte[] checkpointOrdinals;
+    private int size;
+
+    TargetColumns() {
+        this.ids = new HashMap<>();
+        this.lock = new ReentrantReadWriteLock();
+        allocate(INITIAL_CAPACITY);
+    }
+
+    private void allocate(int capacity) {
+        this.names = names == null ? new String[capacity] : Arrays.copyOf(names, capacity);
+        this.widths = widths == null ? new int[capacity] : Arrays.copyOf(widths, capacity);
+        this.heights = heights == null ? new int[capacity] : Arrays.copyOf(heights, capacity);
+        this.ratings = ratings == null ? new int[capacity] : Arrays.copyOf(ratings, capacity);
+        this.samplerOrdinals = samplerOrdinals == null ? new byte[capacity] : Arrays.copyOf(samplerOrdinals, capacity);
+        this.checkpointOrdinals = checkpointOrdinals == null ? new byte[capacity] : Arrays.copyOf(checkpointOrdinals, capacity);
+    }
+
+    private void move(int from, int to) {
+        names[to] = names[from];
+        widths[to] = widths[from];
+        heights[to] = heights[from];
+        ratings[to] = ratings[from];
+        samplerOrdinals[to] = samplerOrdinals[from];
+        checkpointOrdinals[to] = checkpointOrdinals[from];
+        ids.put(names[to], to);
+    }
+
+    void put(TargetImage target) {
+        lock.writeLock().lock();
+        try {
+            Integer id = ids.get(target.getName());
+            if (id == null) {
+                if (size == names.length)
+                    allocate(size * 2);
+                id = size++;
+                ids.put(target.getName(), id);
+                names[id] = target.getName();
+            }
+            widths[id] = target.getWidth();
+            heights[id] = target.getHeight();
+            ratings[id] = target.getRating();
+            samplerOrdinals[id] = (byte) target.getSampler().ordinal();
+            checkpointOrdinals[id] = (byte) target.getCheckpoint().ordinal();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    void remove(String name) {
+        lock.writeLock().lock();
+        try {
+            Integer id = ids.remove(name);
+            if (id == null)
+                return;
+            // the last row fills the gap so that the columns stay dense
+            int last = --size;
+            if (id != last)
+                move(last, id);
+            names[last] = null;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private interface RangeScan {
+        int[] scan(int from, int to);
+    }
+
+    private int[] split(int buckets, RangeScan scan) {
+        if (size < PARALLEL_THRESHOLD)
+            return scan.scan(0, size);
+
+        final int splits = Math.max(1, Math.min(size / PARALLEL_THRESHOLD, Runtime.getRuntime().availableProcessors()));
+        final int step = (size + splits - 1) / splits;
+        final int total = size;
+        return IntStream.range(0, splits)
+                .parallel()
+                .mapToObj(split -> scan.scan(split * step, Math.min(total, (split + 1) * step)))
+                .reduce(new int[buckets], (left, right) -> {
+                    int[] merged = new int[buckets];
+                    for (int i = 0; i < buckets; i++)
+                        merged[i] = left[i] + right[i];
+                    return merged;
+                });
+    }
+
+    private int[] histogram(byte[] keys, int buckets, int minRating, int maxRating) {
+        final int[] ratings = this.ratings;
+        return split(buckets, (from, to) -> {
+            final int[] counts = new int[buckets];
+            for (int i = from; i < to; i++) {
+                int rating = ratings[i];
+                if (rating >= minRating && rating <= maxRating)
+                    counts[keys[i]]++;
+            }
+            return counts;
+        });
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int count(int minRating, int maxRating) {
+        int count = 0;
+        for (int checkpointCount : countByCheckpoint(minRating, maxRating).values())
+            count += checkpointCount;
+        return count;
+    }
+
+    public Map<Checkpoint, Integer> countByCheckpoint(int minRating, int maxRating) {
+        lock.readLock().lock();
+        try {
+            final int[] counts = histogram(checkpointOrdinals, checkpoints.length, minRating, maxRating);
+            final Map<Checkpoint, Integer> result = new EnumMap<>(Checkpoint.class);
+            for (Checkpoint checkpoint : checkpoints)
+                result.put(checkpoint, counts[checkpoint.ordinal()]);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Sampler, Integer> countBySampler(int minRating, int maxRating) {
+        lock.readLock().lock();
+        try {
+            final int[] counts = histogram(samplerOrdinals, samplers.length, minRating, maxRating);
+            final Map<Sampler, Integer> result = new EnumMap<>(Sampler.class);
+            for (Sampler sampler : samplers)
+                result.put(sampler, counts[sampler.ordinal()]);
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<Checkpoint, Double> averageRatingByCheckpoint() {
+        lock.readLock().lock();
+        try {
+            final int[] ratings = this.ratings;
+            final byte[] keys = this.checkpointOrdinals;
+            final int buckets = checkpoints.length;
+            // sums and counts share one array: [sum_0, ..., sum_n, count_0, ..., count_n]
+            final int[] sums = split(buckets * 2, (from, to) -> {
+                final int[] partial = new int[buckets * 2];
+                for (int i = from; i < to; i++) {
+                    partial[keys[i]] += ratings[i];
+                    partial[buckets + keys[i]]++;
+                }
+                return partial;
+            });
+            final Map<Checkpoint, Double> result = new EnumMap<>(Checkpoint.class);
+            for (Checkpoint checkpoint : checkpoints) {
+                int count = sums[buckets + checkpoint.ordinal()];
+                if (count > 0)
+                    result.put(checkpoint, (double) sums[checkpoint.ordinal()] / count);
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<String> select(int minRating, int maxRating, Checkpoint checkpoint) {
+        lock.readLock().lock();
+        try {
+            final List<String> selected = new ArrayList<>();
+            final int ordinal = checkpoint == null ? -1 : checkpoint.ordinal();
+            for (int i = 0; i < size; i++) {
+                int rating = ratings[i];
+                if (rating >= minRating && rating <= maxRating && (ordinal < 0 || checkpointOrdinals[i] == ordinal))
+                    selected.add(names[i]);
+            }
+            return selected;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TargetColumns{");
+        sb.append("size=").append(size());
+        sb.append(", capacity=").append(names.length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+public class DefaultRepositoryMetrics implements RepositoryMetrics {
+    private final LongAdder[] calls;
+    private final LongAdder[][] errors;
+    private final LatencyHistogram[] latencies;
+    private final LongAdder persists;
+    private final LongAdder persistedBytes;
+    private final LatencyHistogram persistLatency;
+
+    public DefaultRepositoryMetrics() {
+        int operations = RepositoryOperation.values().length;
+        calls = new LongAdder[operations];
+        errors = new LongAdder[operations][RepositoryError.values().length];
+        latencies = new LatencyHistogram[operations];
+        for (int i = 0; i < operations; i++) {
+            calls[i] = new LongAdder();
+            latencies[i] = new LatencyHistogram();
+            for (int j = 0; j < errors[i].length; j++)
+                errors[i][j] = new LongAdder();
+        }
+        persists = new LongAdder();
+        persistedBytes = new LongAdder();
+        persistLatency = new LatencyHistogram();
+    }
+
+    @Override
+    public void recordCall(RepositoryOperation operation, long nanos) {
+        calls[operation.ordinal()].increment();
+        latencies[operation.ordinal()].record(nanos);
+    }
+
+    @Override
+    public void recordError(RepositoryOperation operation, RepositoryError error, long nanos) {
+        recordCall(operation, nanos);
+        errors[operation.ordinal()][error.ordinal()].increment();
+    }
+
+    @Override
+    public void onPersist(long bytes, long nanos) {
+        persists.increment();
+        persistedBytes.add(bytes);
+        persistLatency.record(nanos);
+    }
+
+    public long getCalls(RepositoryOperation operation) {
+        return calls[operation.ordinal()].sum();
+    }
+
+    public long getErrors(RepositoryOperation operation, RepositoryError error) {
+        return errors[operation.ordinal()][error.ordinal()].sum();
+    }
+
+    public LatencyHistogram getLatency(RepositoryOperation operation) {
+        return latencies[operation.ordinal()];
+    }
+
+    public long getPersists() {
+        return persists.sum();
+    }
+
+    public long getPersistedBytes() {
+        return persistedBytes.sum();
+    }
+
+    public LatencyHistogram getPersistLatency() {
+        return persistLatency;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("DefaultRepositoryMetrics{");
+        for (RepositoryOperation operation : RepositoryOperation.values())
+            sb.append(operation).append('=').append(getCalls(operation)).append(", ");
+        sb.append("persists=").append(getPersists());
+        sb.append(", persistedBytes=").append(getPersistedBytes());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,328 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+public class InstrumentedRepository implements Repository {
+    private final Repository repository;
+    private final RepositoryMetrics metrics;
+
+    public InstrumentedRepository(Repository repository, RepositoryMetrics metrics) {
+        this.repository = repository;
+        this.metrics = metrics;
+    }
+
+    private RuntimeException failed(RepositoryOperation operation, long started, RuntimeException e) {
+        metrics.recordError(operation, RepositoryError.of(e), System.nanoTime() - started);
+        return e;
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.createSource(source);
+            metrics.recordCall(RepositoryOperation.CREATE_SOURCE, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.CREATE_SOURCE, started, e);
+        }
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            TargetImage result = repository.createTarget(source, target);
+            metrics.recordCall(RepositoryOperation.CREATE_TARGET, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.CREATE_TARGET, started, e);
+        }
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        final long started = System.nanoTime();
+        try {
+            List<SourceImage> result = repository.createSources(sources);
+            metrics.recordCall(RepositoryOperation.CREATE_SOURCES, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.CREATE_SOURCES, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.createTargets(source, targets);
+            metrics.recordCall(RepositoryOperation.CREATE_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.CREATE_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.readSource(target);
+            metrics.recordCall(RepositoryOperation.READ_SOURCE_BY_TARGET, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SOURCE_BY_TARGET, started, e);
+        }
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.readSource(name);
+            metrics.recordCall(RepositoryOperation.READ_SOURCE_BY_NAME, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SOURCE_BY_NAME, started, e);
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        final long started = System.nanoTime();
+        try {
+            Set<SourceImage> result = repository.readSources();
+            metrics.recordCall(RepositoryOperation.READ_SOURCES, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SOURCES, started, e);
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        final long started = System.nanoTime();
+        try {
+            Set<SourceImage> result = repository.readSourcesByContentHash(contentHash);
+            metrics.recordCall(RepositoryOperation.READ_SOURCES_BY_CONTENT_HASH, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SOURCES_BY_CONTENT_HASH, started, e);
+        }
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        final long started = System.nanoTime();
+        try {
+            Set<SourceImage> result = repository.readSourcesByTag(tag);
+            metrics.recordCall(RepositoryOperation.READ_SOURCES_BY_TAG, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SOURCES_BY_TAG, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.readTargets(source);
+            metrics.recordCall(RepositoryOperation.READ_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            TargetImage result = repository.readTarget(name);
+            metrics.recordCall(RepositoryOperation.READ_TARGET, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_TARGET, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.readSimilarTargets(target, maxDistance);
+            metrics.recordCall(RepositoryOperation.READ_SIMILAR_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SIMILAR_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.readSimilarTargets(hash, maxDistance);
+            metrics.recordCall(RepositoryOperation.READ_SIMILAR_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.READ_SIMILAR_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.updateSource(source);
+            metrics.recordCall(RepositoryOperation.UPDATE_SOURCE, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.UPDATE_SOURCE, started, e);
+        }
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<SourceImage> result = repository.updateSources(sources);
+            metrics.recordCall(RepositoryOperation.UPDATE_SOURCES, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.UPDATE_SOURCES, started, e);
+        }
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            TargetImage result = repository.updateTarget(target);
+            metrics.recordCall(RepositoryOperation.UPDATE_TARGET, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.UPDATE_TARGET, started, e);
+        }
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.deleteSource(source);
+            metrics.recordCall(RepositoryOperation.DELETE_SOURCE, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.DELETE_SOURCE, started, e);
+        }
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        final long started = System.nanoTime();
+        try {
+            SourceImage result = repository.deleteSourceCascade(source);
+            metrics.recordCall(RepositoryOperation.DELETE_SOURCE_CASCADE, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.DELETE_SOURCE_CASCADE, started, e);
+        }
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        final long started = System.nanoTime();
+        try {
+            TargetImage result = repository.deleteTarget(target);
+            metrics.recordCall(RepositoryOperation.DELETE_TARGET, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.DELETE_TARGET, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.deleteTargets(source);
+            metrics.recordCall(RepositoryOperation.DELETE_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.DELETE_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.moveTargets(from, to, targets);
+            metrics.recordCall(RepositoryOperation.MOVE_TARGETS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.MOVE_TARGETS, started, e);
+        }
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        final long started = System.nanoTime();
+        try {
+            List<TargetImage> result = repository.sweepOrphans();
+            metrics.recordCall(RepositoryOperation.SWEEP_ORPHANS, System.nanoTime() - started);
+            return result;
+        } catch (RuntimeException e) {
+            throw failed(RepositoryOperation.SWEEP_ORPHANS, started, e);
+        }
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return repository.subscribe(subscriber, capacity, overflow);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public RepositoryMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        InstrumentedRepository that = (InstrumentedRepository) o;
+        return Objects.equals(repository, that.repository);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(repository);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InstrumentedRepository{");
+        sb.append("repository=").append(repository);
+        sb.append(", metrics=").append(metrics);
+        sb.append('}');
+        return sb.toString();
+    }
+}
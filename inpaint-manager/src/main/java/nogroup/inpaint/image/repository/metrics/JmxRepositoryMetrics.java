@@ -0,0 +1,97 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+public class JmxRepositoryMetrics extends DefaultRepositoryMetrics implements RepositoryMetricsMXBean {
+    public final static String domain = "nogroup.inpaint";
+
+    private ObjectName objectName;
+
+    public static JmxRepositoryMetrics register(String name) {
+        JmxRepositoryMetrics metrics = new JmxRepositoryMetrics();
+        try {
+            ObjectName objectName = new ObjectName(domain, "name", ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if (server.isRegistered(objectName))
+                server.unregisterMBean(objectName);
+            server.registerMBean(metrics, objectName);
+            metrics.objectName = objectName;
+        } catch (JMException e) {
+            throw new IllegalArgumentException(String.format("unable to register repository metrics [%s]", name), e);
+        }
+        return metrics;
+    }
+
+    public void unregister() {
+        if (objectName == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+        } catch (JMException e) {
+            e.printStackTrace();
+        }
+        objectName = null;
+    }
+
+    public ObjectName getObjectName() {
+        return objectName;
+    }
+
+    private static Map<String, Long> byOperation(ToLongFunction<RepositoryOperation> value) {
+        final Map<String, Long> values = new TreeMap<>();
+        for (RepositoryOperation operation : RepositoryOperation.values())
+            values.put(operation.name(), value.applyAsLong(operation));
+        return values;
+    }
+
+    @Override
+    public Map<String, Long> getCallCounts() {
+        return byOperation(this::getCalls);
+    }
+
+    @Override
+    public Map<String, Long> getNotFoundCounts() {
+        return byOperation(operation -> getErrors(operation, RepositoryError.NOT_FOUND));
+    }
+
+    @Override
+    public Map<String, Long> getAlreadyExistsCounts() {
+        return byOperation(operation -> getErrors(operation, RepositoryError.ALREADY_EXISTS));
+    }
+
+    @Override
+    public Map<String, Long> getOtherErrorCounts() {
+        return byOperation(operation -> getErrors(operation, RepositoryError.OTHER));
+    }
+
+    @Override
+    public Map<String, Long> getMeanLatencyNanos() {
+        return byOperation(operation -> getLatency(operation).getMeanNanos());
+    }
+
+    @Override
+    public Map<String, Long> getP99LatencyNanos() {
+        return byOperation(operation -> getLatency(operation).getPercentileNanos(99));
+    }
+
+    @Override
+    public long getPersistCount() {
+        return getPersists();
+    }
+
+    @Override
+    public long getMeanPersistNanos() {
+        return getPersistLatency().getMeanNanos();
+    }
+
+    @Override
+    public long getP99PersistNanos() {
+        return getPersistLatency().getPercentileNanos(99);
+    }
+}
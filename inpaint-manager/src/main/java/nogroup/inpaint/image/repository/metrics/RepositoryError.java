@@ -0,0 +1,18 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+
+public enum RepositoryError {
+    NOT_FOUND,
+    ALREADY_EXISTS,
+    OTHER;
+
+    public static RepositoryError of(Throwable throwable) {
+        if (throwable instanceof NotFoundException)
+            return NOT_FOUND;
+        if (throwable instanceof AlreadyExistsException)
+            return ALREADY_EXISTS;
+        return OTHER;
+    }
+}
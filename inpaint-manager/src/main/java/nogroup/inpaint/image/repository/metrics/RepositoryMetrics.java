@@ -0,0 +1,9 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import nogroup.inpaint.image.repository.PersistenceListener;
+
+public interface RepositoryMetrics extends PersistenceListener {
+    void recordCall(RepositoryOperation operation, long nanos);
+
+    void recordError(RepositoryOperation operation, RepositoryError error, long nanos);
+}
@@ -0,0 +1,25 @@
+package nogroup.inpaint.image.repository.metrics;
+
+import java.util.Map;
+
+public interface RepositoryMetricsMXBean {
+    Map<String, Long> getCallCounts();
+
+    Map<String, Long> getNotFoundCounts();
+
+    Map<String, Long> getAlreadyExistsCounts();
+
+    Map<String, Long> getOtherErrorCounts();
+
+    Map<String, Long> getMeanLatencyNanos();
+
+    Map<String, Long> getP99LatencyNanos();
+
+    long getPersistCount();
+
+    long getPersistedBytes();
+
+    long getMeanPersistNanos();
+
+    long getP99PersistNanos();
+}
@@ -0,0 +1,25 @@
+package nogroup.inpaint.image.repository.metrics;
+
+public enum RepositoryOperation {
+    CREATE_SOURCE,
+    CREATE_TARGET,
+    CREATE_SOURCES,
+    CREATE_TARGETS,
+    READ_SOURCE_BY_TARGET,
+    READ_SOURCE_BY_NAME,
+    READ_SOURCES,
+    READ_SOURCES_BY_CONTENT_HASH,
+    READ_SOURCES_BY_TAG,
+    READ_TARGETS,
+    READ_TARGET,
+    READ_SIMILAR_TARGETS,
+    UPDATE_SOURCE,
+    UPDATE_SOURCES,
+    UPDATE_TARGET,
+    DELETE_SOURCE,
+    DELETE_SOURCE_CASCADE,
+    DELETE_TARGET,
+    DELETE_TARGETS,
+    MOVE_TARGETS,
+    SWEEP_ORPHANS,
+}
@@ -0,0 +1,102 @@
+package nogroup.inpaint.image.repository.replication;
+
+import nogroup.inpaint.image.repository.impl.Mutation;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class JournalBatch {
+    private final long generation;
+    private final long offset;
+    private final long leaderOffset;
+    private final byte[] snapshot;
+    private final List<Mutation> mutations;
+
+    public JournalBatch(long generation, long offset, long leaderOffset, byte[] snapshot, List<Mutation> mutations) {
+        this.generation = generation;
+        this.offset = offset;
+        this.leaderOffset = leaderOffset;
+        this.snapshot = snapshot;
+        this.mutations = Collections.unmodifiableList(mutations);
+    }
+
+    public void write(DataOutputStream out) throws IOException {
+        out.writeLong(generation);
+        out.writeLong(offset);
+        out.writeLong(leaderOffset);
+        out.writeInt(snapshot == null ? -1 : snapshot.length);
+        if (snapshot != null)
+            out.write(snapshot);
+        out.writeInt(mutations.size());
+        for (Mutation mutation : mutations) {
+            byte[] encoded = mutation.encode();
+            out.writeInt(encoded.length);
+            out.write(encoded);
+        }
+        out.flush();
+    }
+
+    public static JournalBatch read(DataInputStream in) throws IOException {
+        long generation = in.readLong();
+        long offset = in.readLong();
+        long leaderOffset = in.readLong();
+        int snapshotLength = in.readInt();
+        byte[] snapshot = null;
+        if (snapshotLength >= 0) {
+            snapshot = new byte[snapshotLength];
+            in.readFully(snapshot);
+        }
+        int count = in.readInt();
+        List<Mutation> mutations = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            byte[] encoded = new byte[in.readInt()];
+            in.readFully(encoded);
+            mutations.add(Mutation.decode(encoded));
+        }
+        return new JournalBatch(generation, offset, leaderOffset, snapshot, mutations);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLeaderOffset() {
+        return leaderOffset;
+    }
+
+    public byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    public List<Mutation> getMutations() {
+        return mutations;
+    }
+
+    public boolean isSnapshot() {
+        return snapshot != null;
+    }
+
+    public boolean isCaughtUp() {
+        return offset >= leaderOffset;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("JournalBatch{");
+        sb.append("generation=").append(generation);
+        sb.append(", offset=").append(offset);
+        sb.append(", leaderOffset=").append(leaderOffset);
+        sb.append(", snapshot=").append(snapshot == null ? -1 : snapshot.length);
+        sb.append(", mutations=").append(mutations.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
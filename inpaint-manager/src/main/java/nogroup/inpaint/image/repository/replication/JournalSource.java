@@ -0,0 +1,7 @@
+package nogroup.inpaint.image.repository.replication;
+
+import java.io.IOException;
+
+public interface JournalSource {
+    JournalBatch ship(long generation, long offset, int maxEntries) throws IOException;
+}
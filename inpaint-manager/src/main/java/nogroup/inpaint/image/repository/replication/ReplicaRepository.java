@@ -0,0 +1,302 @@
+package nogroup.inpaint.image.repository.replication;
+
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.EventFeed;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JavaSerializationSnapshotFormat;
+import nogroup.inpaint.image.repository.impl.Mutation;
+import nogroup.inpaint.image.repository.impl.SnapshotFormat;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicaRepository implements Repository, Closeable {
+    private static final int BATCH_SIZE = 1024;
+    private final JournalSource source;
+    private final SnapshotFormat format;
+    private final LongAdder appliedMutations;
+    private final LongAdder bootstraps;
+    private final LongAdder failures;
+    private final EventFeed feed;
+    private volatile InMemoryRepository inMemRepo;
+    private volatile long generation;
+    private volatile long offset;
+    private volatile long leaderOffset;
+    private volatile long caughtUpMillis;
+    private final AtomicReference<ScheduledExecutorService> poller;
+
+    public ReplicaRepository(JournalSource source) {
+        this(source, new JavaSerializationSnapshotFormat());
+    }
+
+    public ReplicaRepository(JournalSource source, SnapshotFormat format) {
+        this.source = source;
+        this.format = format;
+        this.appliedMutations = new LongAdder();
+        this.bootstraps = new LongAdder();
+        this.failures = new LongAdder();
+        this.feed = new EventFeed(true);
+        this.inMemRepo = new InMemoryRepository();
+        this.inMemRepo.setFeed(feed);
+        this.poller = new AtomicReference<>();
+        this.generation = -1;
+        this.caughtUpMillis = System.currentTimeMillis();
+    }
+
+    public boolean sync() throws IOException {
+        // the mutations applied below publish through the replica's own feed, delivered once the monitor is released
+        try {
+            return apply();
+        } finally {
+            feed.flush();
+        }
+    }
+
+    private synchronized boolean apply() throws IOException {
+        JournalBatch batch;
+        try {
+            batch = source.ship(generation, offset, BATCH_SIZE);
+        } catch (IOException e) {
+            failures.increment();
+            throw e;
+        }
+        if (batch.isSnapshot()) {
+            InMemoryRepository repository = format.read(new ByteArrayInputStream(batch.getSnapshot()));
+            repository.setFeed(feed);
+            inMemRepo = repository;
+            bootstraps.increment();
+        }
+        for (Mutation mutation : batch.getMutations()) {
+            try {
+                mutation.apply(inMemRepo);
+            } catch (IllegalArgumentException e) {
+                // the replica no longer matches the leader, the next sync starts over from a snapshot
+                failures.increment();
+                generation = -1;
+                throw new IllegalStateException(String.format("replica diverged from leader at generation %d, offset %d: %s",
+                        batch.getGeneration(), offset, mutation), e);
+            }
+            appliedMutations.increment();
+        }
+        generation = batch.getGeneration();
+        offset = batch.getOffset();
+        leaderOffset = batch.getLeaderOffset();
+        if (batch.isCaughtUp())
+            caughtUpMillis = System.currentTimeMillis();
+        return batch.isCaughtUp();
+    }
+
+    public void catchUp() throws IOException {
+        while (!sync()) ;
+    }
+
+    public void start(long pollMillis) {
+        ScheduledExecutorService poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "replica-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        if (!this.poller.compareAndSet(null, poller)) {
+            poller.shutdown();
+            return;
+        }
+        poller.scheduleWithFixedDelay(() -> {
+            try {
+                catchUp();
+            } catch (IOException | RuntimeException e) {
+                e.printStackTrace();
+            }
+        }, 0, pollMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void close() throws IOException {
+        // sync() holds the monitor while it waits on the leader, closing the source first lets it return
+        ScheduledExecutorService poller = this.poller.getAndSet(null);
+        if (poller != null)
+            poller.shutdownNow();
+        if (source instanceof Closeable)
+            ((Closeable) source).close();
+        if (poller != null) {
+            try {
+                poller.awaitTermination(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        feed.close();
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return feed.subscribe(subscriber, capacity, overflow);
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getLagBytes() {
+        return Math.max(0, leaderOffset - offset);
+    }
+
+    public long getLagMillis() {
+        return getLagBytes() == 0 ? 0 : System.currentTimeMillis() - caughtUpMillis;
+    }
+
+    public long getAppliedMutations() {
+        return appliedMutations.sum();
+    }
+
+    public long getBootstraps() {
+        return bootstraps.sum();
+    }
+
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("read-only replica, write to the leader instead");
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        throw readOnly();
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        return inMemRepo.readSource(target);
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        return inMemRepo.readSource(name);
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        return inMemRepo.readSources();
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        return inMemRepo.readSourcesByContentHash(contentHash);
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        return inMemRepo.readSourcesByTag(tag);
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        return inMemRepo.readTargets(source);
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        return inMemRepo.readTarget(name);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        return inMemRepo.readSimilarTargets(target, maxDistance);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        return inMemRepo.readSimilarTargets(hash, maxDistance);
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        throw readOnly();
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        throw readOnly();
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        throw readOnly();
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        throw readOnly();
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        throw readOnly();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ReplicaRepository{");
+        sb.append("source=").append(source);
+        sb.append(", generation=").append(generation);
+        sb.append(", offset=").append(offset);
+        sb.append(", leaderOffset=").append(leaderOffset);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,117 @@
+package nogroup.inpaint.image.repository.replication;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+
+public class ReplicationServer implements Closeable {
+    private final JournalSource source;
+    private final ServerSocket serverSocket;
+    private final ExecutorService executor;
+    private final Set<Socket> followers;
+    private final LongAdder shippedBatches;
+
+    public ReplicationServer(JournalSource source, int port) throws IOException {
+        this(source, InetAddress.getLoopbackAddress(), port);
+    }
+
+    public ReplicationServer(JournalSource source, InetAddress bindAddress, int port) throws IOException {
+        this.source = source;
+        this.serverSocket = new ServerSocket();
+        // followers are not authenticated, listening beyond loopback has to be asked for
+        this.serverSocket.bind(new InetSocketAddress(bindAddress, port));
+        this.executor = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "replication-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.followers = ConcurrentHashMap.newKeySet();
+        this.shippedBatches = new LongAdder();
+    }
+
+    public ReplicationServer start() {
+        executor.execute(this::accept);
+        return this;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                followers.add(socket);
+                executor.execute(() -> serve(socket));
+            } catch (SocketException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket ignored = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()))) {
+            while (true) {
+                long generation;
+                try {
+                    generation = in.readLong();
+                } catch (EOFException e) {
+                    return;
+                }
+                long offset = in.readLong();
+                int maxEntries = in.readInt();
+                source.ship(generation, offset, maxEntries).write(out);
+                shippedBatches.increment();
+            }
+        } catch (SocketException e) {
+            // the follower went away or the server is closing
+        } catch (IOException | RuntimeException e) {
+            e.printStackTrace();
+        } finally {
+            followers.remove(socket);
+        }
+    }
+
+    public InetAddress getAddress() {
+        return serverSocket.getInetAddress();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public int getFollowers() {
+        return followers.size();
+    }
+
+    public long getShippedBatches() {
+        return shippedBatches.sum();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        for (Socket follower : followers)
+            follower.close();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ReplicationServer{");
+        sb.append("address=").append(getAddress());
+        sb.append(", port=").append(getPort());
+        sb.append(", followers=").append(getFollowers());
+        sb.append('}');
+        return sb.toString();
+    }
+}
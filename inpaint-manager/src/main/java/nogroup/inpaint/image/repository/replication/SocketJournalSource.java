@@ -0,0 +1,84 @@
+package nogroup.inpaint.image.repository.replication;
+
+import java.io.*;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+
+public class SocketJournalSource implements JournalSource, Closeable {
+    private static final int CONNECT_TIMEOUT = 5000;
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+    private final String host;
+    private final int port;
+    private final int readTimeout;
+    private volatile Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out;
+
+    public SocketJournalSource(String host, int port) {
+        this(host, port, DEFAULT_READ_TIMEOUT);
+    }
+
+    public SocketJournalSource(String host, int port, int readTimeout) {
+        this.host = host;
+        this.port = port;
+        this.readTimeout = readTimeout;
+    }
+
+    private void connect() throws IOException {
+        Socket socket = new Socket();
+        socket.connect(new InetSocketAddress(host, port), CONNECT_TIMEOUT);
+        socket.setTcpNoDelay(true);
+        // a stalled leader fails the call instead of holding the caller forever
+        socket.setSoTimeout(readTimeout);
+        in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        this.socket = socket;
+    }
+
+    private void disconnect(Socket socket) throws IOException {
+        try {
+            socket.close();
+        } finally {
+            if (this.socket == socket)
+                this.socket = null;
+        }
+    }
+
+    @Override
+    public synchronized JournalBatch ship(long generation, long offset, int maxEntries) throws IOException {
+        Socket socket = this.socket;
+        if (socket == null || socket.isClosed()) {
+            connect();
+            socket = this.socket;
+        }
+        try {
+            out.writeLong(generation);
+            out.writeLong(offset);
+            out.writeInt(maxEntries);
+            out.flush();
+            return JournalBatch.read(in);
+        } catch (IOException e) {
+            // drop the connection, the next call reconnects
+            disconnect(socket);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        // not synchronized, closing the socket is what unblocks a ship() waiting on the leader
+        Socket socket = this.socket;
+        if (socket != null)
+            disconnect(socket);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("SocketJournalSource{");
+        sb.append("host='").append(host).append('\'');
+        sb.append(", port=").append(port);
+        sb.append(", readTimeout=").append(readTimeout);
+        sb.append('}');
+        return sb.toString();
+    }
+}
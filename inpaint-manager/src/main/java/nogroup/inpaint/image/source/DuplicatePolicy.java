@@ -0,0 +1,6 @@
+package nogroup.inpaint.image.source;
+
+public enum DuplicatePolicy {
+    COLLAPSE,
+    LINK
+}
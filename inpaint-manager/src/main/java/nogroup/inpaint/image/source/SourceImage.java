@@ -8,21 +8,34 @@ import java.util.List;
 import java.util.Objects;
 
 public class SourceImage extends Image implements Serializable {
+    // pinned to the value computed before content hashes, snapshots written earlier stay readable
+    private static final long serialVersionUID = -8405977259739178440L;
     private final List<String> tags;
+    private final String contentHash;
 
     public SourceImage(String name, String description, int width, int height, List<String> tags) {
-        super(name, description, width, height);
+        this(name, description, width, height, null, tags, null);
+    }
+
+    public SourceImage(String name, String description, int width, int height, Long perceptualHash, List<String> tags, String contentHash) {
+        super(name, description, width, height, perceptualHash);
         this.tags = tags;
+        this.contentHash = contentHash;
     }
 
     public List<String> getTags() {
         return tags;
     }
 
+    public String getContentHash() {
+        return contentHash;
+    }
+
     @Override
     public SourceImageBuilder toBuilder() {
         SourceImageBuilder builder = new SourceImageBuilder(this.name)
-                .tags(new ArrayList<>(this.tags));
+                .tags(new ArrayList<>(this.tags))
+                .contentHash(this.contentHash);
         fillBuilder(builder);
         return builder;
     }
@@ -38,12 +51,12 @@ public class SourceImage extends Image implements Serializable {
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         SourceImage that = (SourceImage) o;
-        return Objects.equals(tags, that.tags);
+        return Objects.equals(tags, that.tags) && Objects.equals(contentHash, that.contentHash);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), tags);
+        return Objects.hash(super.hashCode(), tags, contentHash);
     }
 
     @Override
@@ -53,7 +66,9 @@ public class SourceImage extends Image implements Serializable {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(hasPerceptualHash() ? perceptualHash : null);
         sb.append(", tags=").append(tags);
+        sb.append(", contentHash='").append(contentHash).append('\'');
         sb.append('}');
         return sb.toString();
     }
@@ -8,6 +8,7 @@ import java.util.Objects;
 
 public class SourceImageBuilder extends ImageBuilder {
     private List<String> tags;
+    private String contentHash;
 
     public SourceImageBuilder(String name) {
         super(name);
@@ -28,6 +29,16 @@ public class SourceImageBuilder extends ImageBuilder {
         return (SourceImageBuilder) super.height(height);
     }
 
+    @Override
+    public SourceImageBuilder perceptualHash(Long perceptualHash) {
+        return (SourceImageBuilder) super.perceptualHash(perceptualHash);
+    }
+
+    public SourceImageBuilder contentHash(String contentHash) {
+        this.contentHash = contentHash;
+        return this;
+    }
+
     public SourceImageBuilder tags(List<String> tags) {
         this.tags = tags;
         return this;
@@ -48,7 +59,7 @@ public class SourceImageBuilder extends ImageBuilder {
         if (tags == null)
             tags = new ArrayList<>();
 
-        return new SourceImage(name, description, width, height, tags);
+        return new SourceImage(name, description, width, height, perceptualHash, tags, contentHash);
     }
 
     @Override
@@ -57,12 +68,12 @@ public class SourceImageBuilder extends ImageBuilder {
         if (o == null || getClass() != o.getClass()) return false;
         if (!super.equals(o)) return false;
         SourceImageBuilder that = (SourceImageBuilder) o;
-        return Objects.equals(tags, that.tags);
+        return Objects.equals(tags, that.tags) && Objects.equals(contentHash, that.contentHash);
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(super.hashCode(), tags);
+        return Objects.hash(super.hashCode(), tags, contentHash);
     }
 
     @Override
@@ -72,7 +83,9 @@ public class SourceImageBuilder extends ImageBuilder {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(perceptualHash);
         sb.append(", tags=").append(tags);
+        sb.append(", contentHash='").append(contentHash).append('\'');
         sb.append('}');
         return sb.toString();
     }
@@ -0,0 +1,99 @@
+package nogroup.inpaint.image.source;
+
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.hash.XxHash64;
+import nogroup.inpaint.image.repository.Repository;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.Set;
+
+public class SourceImageIngestor {
+    private final Repository repository;
+    private final DuplicatePolicy policy;
+    private final boolean perceptual;
+
+    public SourceImageIngestor(Repository repository) {
+        this(repository, DuplicatePolicy.COLLAPSE, false);
+    }
+
+    public SourceImageIngestor(Repository repository, DuplicatePolicy policy, boolean perceptual) {
+        this.repository = repository;
+        this.policy = policy;
+        this.perceptual = perceptual;
+    }
+
+    public SourceImageBuilder describe(Path file) throws IllegalArgumentException, IOException {
+        if (!Files.isRegularFile(file))
+            throw new IllegalArgumentException("not a file: " + file);
+
+        SourceImageBuilder builder = new SourceImageBuilder(file.toString())
+                .contentHash(XxHash64.toHex(XxHash64.hash(file)));
+
+        if (perceptual) {
+            BufferedImage image = ImageIO.read(file.toFile());
+            if (image == null)
+                throw new IOException("unsupported image: " + file);
+            return builder.width(image.getWidth())
+                    .height(image.getHeight())
+                    .perceptualHash(PerceptualHash.dHash(image));
+        }
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            Iterator<ImageReader> readers = in == null ? null : ImageIO.getImageReaders(in);
+            if (readers == null || !readers.hasNext())
+                throw new IOException("unsupported image: " + file);
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                return builder.width(reader.getWidth(0)).height(reader.getHeight(0));
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public SourceImage ingest(Path file) throws IllegalArgumentException, IOException {
+        SourceImage source = describe(file).build();
+
+        if (policy == DuplicatePolicy.COLLAPSE) {
+            Set<SourceImage> duplicates = repository.readSourcesByContentHash(source.getContentHash());
+            if (!duplicates.isEmpty())
+                return duplicates.stream()
+                        .min(Comparator.comparing(SourceImage::getName))
+                        .get();
+        }
+
+        SourceImage created = repository.createSource(source);
+        return created != null ? created : repository.readSource(source.getName());
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public DuplicatePolicy getPolicy() {
+        return policy;
+    }
+
+    public boolean isPerceptual() {
+        return perceptual;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("SourceImageIngestor{");
+        sb.append("repository=").append(repository);
+        sb.append(", policy=").append(policy);
+        sb.append(", perceptual=").append(perceptual);
+        sb.append('}');
+        return sb.toString();
+    }
+}
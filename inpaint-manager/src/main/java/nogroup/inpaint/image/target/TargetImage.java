@@ -7,12 +7,18 @@ import java.io.Serializable;
 import java.util.Objects;
 
 public class TargetImage extends Image implements Serializable {
+    // pinned to the value computed before perceptual hashes, snapshots written earlier stay readable
+    private static final long serialVersionUID = 5512530318909139374L;
     private final int rating;
     private final Sampler sampler;
     private final Checkpoint checkpoint;
 
     public TargetImage(String name, String description, int width, int height, int rating, Sampler sampler, Checkpoint checkpoint) {
-        super(name, description, width, height);
+        this(name, description, width, height, null, rating, sampler, checkpoint);
+    }
+
+    public TargetImage(String name, String description, int width, int height, Long perceptualHash, int rating, Sampler sampler, Checkpoint checkpoint) {
+        super(name, description, width, height, perceptualHash);
         this.rating = rating;
         this.sampler = sampler;
         this.checkpoint = checkpoint;
@@ -66,6 +72,7 @@ public class TargetImage extends Image implements Serializable {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(hasPerceptualHash() ? perceptualHash : null);
         sb.append(", rating=").append(rating);
         sb.append(", sampler=").append(sampler);
         sb.append(", checkpoint=").append(checkpoint);
@@ -28,6 +28,11 @@ public class TargetImageBuilder extends ImageBuilder {
         return (TargetImageBuilder) super.height(height);
     }
 
+    @Override
+    public TargetImageBuilder perceptualHash(Long perceptualHash) {
+        return (TargetImageBuilder) super.perceptualHash(perceptualHash);
+    }
+
     public TargetImageBuilder rating(int rating) {
         this.rating = rating;
         return this;
@@ -50,7 +55,7 @@ public class TargetImageBuilder extends ImageBuilder {
         if (checkpoint == null)
             checkpoint = Checkpoint.SD;
 
-        return new TargetImage(name, description, width, height, rating, sampler, checkpoint);
+        return new TargetImage(name, description, width, height, perceptualHash, rating, sampler, checkpoint);
     }
 
     @Override
@@ -74,6 +79,7 @@ public class TargetImageBuilder extends ImageBuilder {
         sb.append(", description='").append(description).append('\'');
         sb.append(", width=").append(width);
         sb.append(", height=").append(height);
+        sb.append(", perceptualHash=").append(perceptualHash);
         sb.append(", rating=").append(rating);
         sb.append(", sampler=").append(sampler);
         sb.append(", checkpoint=").append(checkpoint);
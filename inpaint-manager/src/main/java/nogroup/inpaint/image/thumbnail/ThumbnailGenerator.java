@@ -0,0 +1,106 @@
+package nogroup.inpaint.image.thumbnail;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.stream.ImageInputStream;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+
+public class ThumbnailGenerator {
+    public static final int DEFAULT_SIZE = 256;
+    public static final String DEFAULT_FORMAT = "jpeg";
+
+    private final int size;
+    private final String format;
+
+    public ThumbnailGenerator() {
+        this(DEFAULT_SIZE, DEFAULT_FORMAT);
+    }
+
+    public ThumbnailGenerator(int size, String format) {
+        if (size < 1)
+            throw new IllegalArgumentException(String.format("wrong thumbnail size: %d", size));
+        if (!ImageIO.getImageWritersByFormatName(format).hasNext())
+            throw new IllegalArgumentException(String.format("unsupported thumbnail format: %s", format));
+        this.size = size;
+        this.format = format;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public String getFormat() {
+        return format;
+    }
+
+    public BufferedImage decode(Path file) throws IOException {
+        if (!Files.isRegularFile(file))
+            throw new IllegalArgumentException("not a file: " + file);
+
+        try (ImageInputStream in = ImageIO.createImageInputStream(file.toFile())) {
+            if (in == null)
+                throw new IOException("unable to open image: " + file);
+            Iterator<ImageReader> readers = ImageIO.getImageReaders(in);
+            if (!readers.hasNext())
+                throw new IOException("no image reader for: " + file);
+
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(in, true, true);
+                int width = reader.getWidth(0);
+                int height = reader.getHeight(0);
+
+                // decode only every n-th pixel, but keep at least `size` pixels on the longer side
+                int step = Math.max(1, Math.max(width, height) / size);
+                ImageReadParam param = reader.getDefaultReadParam();
+                param.setSourceSubsampling(step, step, 0, 0);
+
+                return reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        }
+    }
+
+    public BufferedImage scale(BufferedImage image) {
+        double ratio = Math.min(1.0, (double) size / Math.max(image.getWidth(), image.getHeight()));
+        int width = Math.max(1, (int) Math.round(image.getWidth() * ratio));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * ratio));
+
+        int type = "png".equalsIgnoreCase(format) ? BufferedImage.TYPE_INT_ARGB : BufferedImage.TYPE_INT_RGB;
+        BufferedImage scaled = new BufferedImage(width, height, type);
+        Graphics2D graphics = scaled.createGraphics();
+        try {
+            graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            graphics.drawImage(image, 0, 0, width, height, null);
+        } finally {
+            graphics.dispose();
+        }
+        return scaled;
+    }
+
+    public byte[] generate(Path file) throws IOException {
+        BufferedImage thumbnail = scale(decode(file));
+        try (ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+            if (!ImageIO.write(thumbnail, format, bos))
+                throw new IOException(String.format("unable to encode thumbnail of [%s] as %s", file, format));
+            return bos.toByteArray();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ThumbnailGenerator{");
+        sb.append("size=").append(size);
+        sb.append(", format='").append(format).append('\'');
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,195 @@
+package nogroup.inpaint.image.thumbnail;
+
+import nogroup.inpaint.image.hash.XxHash64;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ThumbnailStore implements Closeable {
+    public final static String filename = "images-thumbnails.dat";
+    private final static int minCapacity = 64 * 1024;
+
+    private final Path file;
+    private final FileChannel channel;
+    private final Map<String, Entry> index;
+    private volatile MappedByteBuffer mapped;
+    private long capacity;
+    private long end;
+
+    private ThumbnailStore(Path file, FileChannel channel) {
+        this.file = file;
+        this.channel = channel;
+        this.index = new ConcurrentHashMap<>();
+    }
+
+    public static ThumbnailStore open(String dataDir) throws IllegalArgumentException, IOException {
+        Path dir = Paths.get(dataDir);
+        if (!Files.isDirectory(dir))
+            throw new IllegalArgumentException(String.format("not a dir: %s", dataDir));
+
+        Path file = Paths.get(dataDir, filename);
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+        ThumbnailStore store = new ThumbnailStore(file, channel);
+        try {
+            store.init();
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+        return store;
+    }
+
+    private void init() throws IOException {
+        long size = channel.size();
+        if (size > Integer.MAX_VALUE)
+            throw new IOException(String.format("thumbnail store is too large: %s (%d bytes)", file, size));
+
+        mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+        int position = 0;
+        while (position + Integer.BYTES <= size) {
+            // the mapping grows ahead of the records, a zero name length marks the end of the written ones
+            int nameLength = mapped.getInt(position);
+            long dataPosition = (long) position + Integer.BYTES + nameLength + Integer.BYTES;
+            if (nameLength <= 0 || dataPosition > size)
+                break;
+            int dataLength = mapped.getInt((int) dataPosition - Integer.BYTES);
+            if (dataLength < 0 || dataPosition + dataLength > size)
+                break;
+
+            byte[] name = new byte[nameLength];
+            ByteBuffer nameBuffer = mapped.duplicate();
+            nameBuffer.position(position + Integer.BYTES);
+            nameBuffer.get(name);
+
+            index.put(new String(name, StandardCharsets.UTF_8), new Entry((int) dataPosition, dataLength));
+            position = (int) dataPosition + dataLength;
+        }
+
+        // drop the unused tail and a partially written record, if any
+        if (position < size)
+            channel.truncate(position);
+        end = position;
+        mapped = null;
+        ensureCapacity(position);
+    }
+
+    private void ensureCapacity(long required) throws IOException {
+        if (mapped != null && required <= capacity)
+            return;
+        long grown = Math.max(minCapacity, capacity);
+        while (grown < required)
+            grown *= 2;
+        grown = Math.min(grown, Integer.MAX_VALUE);
+        // slices handed out earlier keep the previous mapping alive, it is never unmapped explicitly
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, grown);
+        capacity = grown;
+    }
+
+    public synchronized ByteBuffer put(String name, byte[] data) throws IOException {
+        if (name == null || name.isEmpty())
+            throw new IllegalArgumentException("no name provided");
+
+        byte[] encodedName = name.getBytes(StandardCharsets.UTF_8);
+        long recordLength = Integer.BYTES + encodedName.length + Integer.BYTES + data.length;
+        if (end + recordLength > Integer.MAX_VALUE)
+            throw new IOException(String.format("thumbnail store is full: %s", file));
+
+        ensureCapacity(end + recordLength);
+        int position = (int) end;
+        ByteBuffer record = mapped.duplicate();
+        record.position(position + Integer.BYTES);
+        record.put(encodedName).putInt(data.length).put(data);
+        // the name length goes last, a record cut short by a crash still reads as the end of the store
+        mapped.putInt(position, encodedName.length);
+
+        Entry entry = new Entry((int) (end + recordLength - data.length), data.length);
+        end = end + recordLength;
+        index.put(name, entry);
+
+        return slice(entry);
+    }
+
+    public ByteBuffer get(String name) {
+        Entry entry = index.get(name);
+        if (entry == null)
+            return null;
+        return slice(entry);
+    }
+
+    public String etag(String name) {
+        Entry entry = index.get(name);
+        if (entry == null)
+            return null;
+        // records are never rewritten in place, the hash of an entry is computed once
+        String etag = entry.etag;
+        if (etag == null) {
+            ByteBuffer data = slice(entry);
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            entry.etag = etag = XxHash64.toHex(XxHash64.hash(bytes));
+        }
+        return etag;
+    }
+
+    public boolean contains(String name) {
+        return index.containsKey(name);
+    }
+
+    public Set<String> names() {
+        return Collections.unmodifiableSet(index.keySet());
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    private ByteBuffer slice(Entry entry) {
+        ByteBuffer buffer = mapped.duplicate();
+        buffer.position(entry.offset);
+        buffer.limit(entry.offset + entry.length);
+        return buffer.slice().asReadOnlyBuffer();
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        mapped.force();
+        channel.close();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ThumbnailStore{");
+        sb.append("file=").append(file);
+        sb.append(", size=").append(index.size());
+        sb.append(", bytes=").append(end);
+        sb.append('}');
+        return sb.toString();
+    }
+
+    private static class Entry {
+        final int offset;
+        final int length;
+        volatile String etag;
+
+        Entry(int offset, int length) {
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+}
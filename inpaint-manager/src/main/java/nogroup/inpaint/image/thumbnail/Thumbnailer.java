@@ -0,0 +1,117 @@
+package nogroup.inpaint.image.thumbnail;
+
+import nogroup.inpaint.image.Image;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class Thumbnailer implements Closeable {
+    private final ThumbnailGenerator generator;
+    private final ThumbnailStore store;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Map<String, CompletableFuture<ByteBuffer>> inFlight;
+
+    public Thumbnailer(ThumbnailGenerator generator, ThumbnailStore store) {
+        this(generator, store, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors()), true);
+    }
+
+    public Thumbnailer(ThumbnailGenerator generator, ThumbnailStore store, ExecutorService executor) {
+        this(generator, store, executor, false);
+    }
+
+    private Thumbnailer(ThumbnailGenerator generator, ThumbnailStore store, ExecutorService executor, boolean ownsExecutor) {
+        this.generator = generator;
+        this.store = store;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.inFlight = new ConcurrentHashMap<>();
+    }
+
+    public ByteBuffer getThumbnail(Image image) {
+        return store.get(image.getName());
+    }
+
+    public CompletableFuture<ByteBuffer> submit(Image image) {
+        final String name = image.getName();
+        ByteBuffer existing = store.get(name);
+        if (existing != null)
+            return CompletableFuture.completedFuture(existing);
+
+        // concurrent submissions of one image share a single generation
+        final CompletableFuture<ByteBuffer> created = new CompletableFuture<>();
+        final CompletableFuture<ByteBuffer> running = inFlight.putIfAbsent(name, created);
+        if (running != null)
+            return running;
+
+        try {
+            CompletableFuture.supplyAsync(() -> {
+                try {
+                    ByteBuffer stored = store.get(name);
+                    return stored != null ? stored : store.put(name, generator.generate(Paths.get(name)));
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, executor).whenComplete((thumbnail, throwable) -> {
+                inFlight.remove(name, created);
+                if (throwable != null)
+                    created.completeExceptionally(throwable);
+                else
+                    created.complete(thumbnail);
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(name, created);
+            throw e;
+        }
+        return created;
+    }
+
+    public CompletableFuture<Void> submitAll(Collection<? extends Image> images) {
+        List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>(images.size());
+        for (Image image : images)
+            futures.add(submit(image));
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0]));
+    }
+
+    public ThumbnailGenerator getGenerator() {
+        return generator;
+    }
+
+    public ThumbnailStore getStore() {
+        return store;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the store is owned by the caller, only a pool created here is shut down
+        if (!ownsExecutor)
+            return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("Thumbnailer{");
+        sb.append("generator=").append(generator);
+        sb.append(", store=").append(store);
+        sb.append('}');
+        return sb.toString();
+    }
+}
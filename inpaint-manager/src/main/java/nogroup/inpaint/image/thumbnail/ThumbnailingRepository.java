@@ -0,0 +1,189 @@
+package nogroup.inpaint.image.thumbnail;
+
+import nogroup.inpaint.image.Image;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.events.RepositorySubscriber;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+
+public class ThumbnailingRepository implements Repository {
+    private final Repository repository;
+    private final Thumbnailer thumbnailer;
+
+    public ThumbnailingRepository(Repository repository, Thumbnailer thumbnailer) {
+        this.repository = repository;
+        this.thumbnailer = thumbnailer;
+    }
+
+    private void schedule(Image image) {
+        if (image == null)
+            return;
+        thumbnailer.submit(image).exceptionally(throwable -> {
+            throwable.printStackTrace();
+            return null;
+        });
+    }
+
+    @Override
+    public SourceImage createSource(SourceImage source) throws AlreadyExistsException {
+        SourceImage result = repository.createSource(source);
+        schedule(result);
+        return result;
+    }
+
+    @Override
+    public TargetImage createTarget(SourceImage source, TargetImage target) throws AlreadyExistsException, NotFoundException {
+        TargetImage result = repository.createTarget(source, target);
+        schedule(result);
+        return result;
+    }
+
+    @Override
+    public List<SourceImage> createSources(Collection<SourceImage> sources) {
+        List<SourceImage> result = repository.createSources(sources);
+        for (SourceImage source : result)
+            schedule(source);
+        return result;
+    }
+
+    @Override
+    public List<TargetImage> createTargets(SourceImage source, Collection<TargetImage> targets) throws NotFoundException {
+        List<TargetImage> result = repository.createTargets(source, targets);
+        for (TargetImage target : result)
+            schedule(target);
+        return result;
+    }
+
+    @Override
+    public SourceImage readSource(TargetImage target) throws NotFoundException {
+        return repository.readSource(target);
+    }
+
+    @Override
+    public SourceImage readSource(String name) throws NotFoundException {
+        return repository.readSource(name);
+    }
+
+    @Override
+    public Set<SourceImage> readSources() {
+        return repository.readSources();
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByContentHash(String contentHash) {
+        return repository.readSourcesByContentHash(contentHash);
+    }
+
+    @Override
+    public Set<SourceImage> readSourcesByTag(String tag) {
+        return repository.readSourcesByTag(tag);
+    }
+
+    @Override
+    public List<TargetImage> readTargets(SourceImage source) throws NotFoundException {
+        return repository.readTargets(source);
+    }
+
+    @Override
+    public TargetImage readTarget(String name) throws NotFoundException {
+        return repository.readTarget(name);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(TargetImage target, int maxDistance) throws NotFoundException {
+        return repository.readSimilarTargets(target, maxDistance);
+    }
+
+    @Override
+    public List<TargetImage> readSimilarTargets(long hash, int maxDistance) {
+        return repository.readSimilarTargets(hash, maxDistance);
+    }
+
+    @Override
+    public SourceImage updateSource(SourceImage source) throws NotFoundException {
+        return repository.updateSource(source);
+    }
+
+    @Override
+    public List<SourceImage> updateSources(Collection<SourceImage> sources) throws NotFoundException {
+        return repository.updateSources(sources);
+    }
+
+    @Override
+    public TargetImage updateTarget(TargetImage target) throws NotFoundException {
+        return repository.updateTarget(target);
+    }
+
+    @Override
+    public SourceImage deleteSource(SourceImage source) {
+        return repository.deleteSource(source);
+    }
+
+    @Override
+    public SourceImage deleteSourceCascade(SourceImage source) {
+        return repository.deleteSourceCascade(source);
+    }
+
+    @Override
+    public TargetImage deleteTarget(TargetImage target) {
+        return repository.deleteTarget(target);
+    }
+
+    @Override
+    public List<TargetImage> deleteTargets(SourceImage source) throws NotFoundException {
+        return repository.deleteTargets(source);
+    }
+
+    @Override
+    public List<TargetImage> moveTargets(SourceImage from, SourceImage to, TargetImage... targets) throws NotFoundException {
+        return repository.moveTargets(from, to, targets);
+    }
+
+    @Override
+    public List<TargetImage> sweepOrphans() {
+        return repository.sweepOrphans();
+    }
+
+    @Override
+    public Subscription subscribe(RepositorySubscriber subscriber, int capacity, Subscription.Overflow overflow) {
+        return repository.subscribe(subscriber, capacity, overflow);
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public Thumbnailer getThumbnailer() {
+        return thumbnailer;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        ThumbnailingRepository that = (ThumbnailingRepository) o;
+        return Objects.equals(repository, that.repository);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(repository);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("ThumbnailingRepository{");
+        sb.append("repository=").append(repository);
+        sb.append(", thumbnailer=").append(thumbnailer);
+        sb.append('}');
+        return sb.toString();
+    }
+}
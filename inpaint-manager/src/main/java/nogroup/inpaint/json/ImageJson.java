@@ -0,0 +1,114 @@
+package nogroup.inpaint.json;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class ImageJson {
+    private ImageJson() {
+    }
+
+    public static JsonWriter write(JsonWriter writer, SourceImage source) throws IOException {
+        writer.beginObject()
+                .name("name").value(source.getName())
+                .name("description").value(source.getDescription())
+                .name("width").value(source.getWidth())
+                .name("height").value(source.getHeight())
+                .name("perceptualHash").value(source.hasPerceptualHash() ? source.getPerceptualHash() : null)
+                .name("contentHash").value(source.getContentHash())
+                .name("tags").beginArray();
+        if (source.getTags() != null)
+            for (String tag : source.getTags())
+                writer.value(tag);
+        return writer.endArray().endObject();
+    }
+
+    public static JsonWriter write(JsonWriter writer, TargetImage target) throws IOException {
+        return writer.beginObject()
+                .name("name").value(target.getName())
+                .name("description").value(target.getDescription())
+                .name("width").value(target.getWidth())
+                .name("height").value(target.getHeight())
+                .name("perceptualHash").value(target.hasPerceptualHash() ? target.getPerceptualHash() : null)
+                .name("rating").value(target.getRating())
+                .name("sampler").value(target.getSampler() == null ? null : target.getSampler().name())
+                .name("checkpoint").value(target.getCheckpoint() == null ? null : target.getCheckpoint().name())
+                .endObject();
+    }
+
+    public static String toJson(SourceImage source) {
+        StringWriter out = new StringWriter();
+        try {
+            write(new JsonWriter(out), source);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    public static String toJson(TargetImage target) {
+        StringWriter out = new StringWriter();
+        try {
+            write(new JsonWriter(out), target);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return out.toString();
+    }
+
+    public static SourceImage readSource(Map<String, Object> json) throws IllegalArgumentException {
+        SourceImageBuilder builder = new SourceImageBuilder(string(json, "name", true))
+                .description(string(json, "description", false))
+                .width((int) number(json, "width"))
+                .height((int) number(json, "height"))
+                .perceptualHash(json.get("perceptualHash") == null ? null : number(json, "perceptualHash"))
+                .contentHash(string(json, "contentHash", false));
+        Object tags = json.get("tags");
+        if (tags instanceof List) {
+            List<String> names = new ArrayList<>();
+            for (Object tag : (List<?>) tags)
+                names.add(String.valueOf(tag));
+            builder.tags(names);
+        }
+        return builder.build();
+    }
+
+    public static TargetImage readTarget(Map<String, Object> json) throws IllegalArgumentException {
+        String sampler = string(json, "sampler", false);
+        String checkpoint = string(json, "checkpoint", false);
+        return new TargetImageBuilder(string(json, "name", true))
+                .description(string(json, "description", false))
+                .width((int) number(json, "width"))
+                .height((int) number(json, "height"))
+                .perceptualHash(json.get("perceptualHash") == null ? null : number(json, "perceptualHash"))
+                .rating((int) number(json, "rating"))
+                .sampler(sampler == null ? null : Sampler.valueOf(sampler))
+                .checkpoint(checkpoint == null ? null : Checkpoint.valueOf(checkpoint))
+                .build();
+    }
+
+    private static String string(Map<String, Object> json, String name, boolean required) {
+        Object value = json.get(name);
+        if (value == null && required)
+            throw new IllegalArgumentException(String.format("missing \"%s\": %s", name, json));
+        return value == null ? null : value.toString();
+    }
+
+    private static long number(Map<String, Object> json, String name) {
+        Object value = json.get(name);
+        if (value == null)
+            return 0;
+        if (!(value instanceof Number))
+            throw new IllegalArgumentException(String.format("\"%s\" is not a number: %s", name, value));
+        return ((Number) value).longValue();
+    }
+}
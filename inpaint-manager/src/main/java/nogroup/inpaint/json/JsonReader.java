@@ -0,0 +1,201 @@
+package nogroup.inpaint.json;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class JsonReader {
+    private final String json;
+    private int position;
+
+    public JsonReader(String json) {
+        this.json = json;
+    }
+
+    public static Object parse(String json) throws IllegalArgumentException {
+        JsonReader reader = new JsonReader(json);
+        Object value = reader.read();
+        reader.skipWhitespace();
+        if (reader.position != json.length())
+            throw reader.error("trailing characters");
+        return value;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Map<String, Object> parseObject(String json) throws IllegalArgumentException {
+        Object value = parse(json);
+        if (!(value instanceof Map))
+            throw new IllegalArgumentException(String.format("not a JSON object: %s", json));
+        return (Map<String, Object>) value;
+    }
+
+    public Object read() throws IllegalArgumentException {
+        skipWhitespace();
+        if (position == json.length())
+            throw error("unexpected end of input");
+        char c = json.charAt(position);
+        switch (c) {
+            case '{':
+                return readObject();
+            case '[':
+                return readArray();
+            case '"':
+                return readString();
+            case 't':
+                return literal("true", Boolean.TRUE);
+            case 'f':
+                return literal("false", Boolean.FALSE);
+            case 'n':
+                return literal("null", null);
+            default:
+                if (c == '-' || (c >= '0' && c <= '9'))
+                    return readNumber();
+                throw error(String.format("unexpected '%s'", c));
+        }
+    }
+
+    private Map<String, Object> readObject() {
+        Map<String, Object> object = new LinkedHashMap<>();
+        position++;
+        skipWhitespace();
+        if (consume('}'))
+            return object;
+        do {
+            skipWhitespace();
+            if (position == json.length() || json.charAt(position) != '"')
+                throw error("expected a name");
+            String name = readString();
+            skipWhitespace();
+            if (!consume(':'))
+                throw error("expected ':'");
+            object.put(name, read());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume('}'))
+            throw error("expected ',' or '}'");
+        return object;
+    }
+
+    private List<Object> readArray() {
+        List<Object> array = new ArrayList<>();
+        position++;
+        skipWhitespace();
+        if (consume(']'))
+            return array;
+        do {
+            array.add(read());
+            skipWhitespace();
+        } while (consume(','));
+        if (!consume(']'))
+            throw error("expected ',' or ']'");
+        return array;
+    }
+
+    private String readString() {
+        position++;
+        StringBuilder sb = null;
+        int from = position;
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c == '"') {
+                String value = sb == null ? json.substring(from, position) : sb.append(json, from, position).toString();
+                position++;
+                return value;
+            }
+            if (c != '\\') {
+                position++;
+                continue;
+            }
+            if (sb == null)
+                sb = new StringBuilder();
+            sb.append(json, from, position);
+            if (++position == json.length())
+                break;
+            char escaped = json.charAt(position++);
+            switch (escaped) {
+                case '"':
+                case '\\':
+                case '/':
+                    sb.append(escaped);
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'u':
+                    if (position + 4 > json.length())
+                        throw error("truncated unicode escape");
+                    try {
+                        sb.append((char) Integer.parseInt(json.substring(position, position + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw error("invalid unicode escape");
+                    }
+                    position += 4;
+                    break;
+                default:
+                    throw error(String.format("invalid escape '\\%s'", escaped));
+            }
+            from = position;
+        }
+        throw error("unterminated string");
+    }
+
+    private Number readNumber() {
+        int from = position;
+        boolean decimal = false;
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c == '.' || c == 'e' || c == 'E')
+                decimal = true;
+            else if (!(c == '-' || c == '+' || (c >= '0' && c <= '9')))
+                break;
+            position++;
+        }
+        String number = json.substring(from, position);
+        try {
+            return decimal ? (Number) Double.parseDouble(number) : (Number) Long.parseLong(number);
+        } catch (NumberFormatException e) {
+            throw error(String.format("invalid number: %s", number));
+        }
+    }
+
+    private Object literal(String literal, Object value) {
+        if (!json.startsWith(literal, position))
+            throw error(String.format("expected '%s'", literal));
+        position += literal.length();
+        return value;
+    }
+
+    private boolean consume(char c) {
+        if (position < json.length() && json.charAt(position) == c) {
+            position++;
+            return true;
+        }
+        return false;
+    }
+
+    private void skipWhitespace() {
+        while (position < json.length()) {
+            char c = json.charAt(position);
+            if (c != ' ' && c != '\t' && c != '\n' && c != '\r')
+                return;
+            position++;
+        }
+    }
+
+    private IllegalArgumentException error(String message) {
+        return new IllegalArgumentException(String.format("%s at %d", message, position));
+    }
+}
@@ -0,0 +1,178 @@
+package nogroup.inpaint.json;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Arrays;
+
+public class JsonWriter implements Closeable, Flushable {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private final Writer out;
+    // per nesting level: whether the next value must be preceded by a comma
+    private boolean[] separators;
+    private char[] scopes;
+    private int depth;
+    private boolean afterName;
+
+    public JsonWriter(Writer out) {
+        this.out = out;
+        this.separators = new boolean[16];
+        this.scopes = new char[16];
+    }
+
+    private void beforeValue() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0 && scopes[depth] == '{')
+            throw new IllegalStateException("value without a name");
+        separate();
+    }
+
+    private void separate() throws IOException {
+        if (depth > 0) {
+            if (separators[depth])
+                out.write(',');
+            separators[depth] = true;
+        }
+    }
+
+    private JsonWriter open(char bracket) throws IOException {
+        beforeValue();
+        out.write(bracket);
+        if (++depth == separators.length) {
+            separators = Arrays.copyOf(separators, depth * 2);
+            scopes = Arrays.copyOf(scopes, depth * 2);
+        }
+        separators[depth] = false;
+        scopes[depth] = bracket;
+        return this;
+    }
+
+    private JsonWriter close(char opening, char bracket) throws IOException {
+        if (depth == 0 || afterName || scopes[depth] != opening)
+            throw new IllegalStateException(String.format("unexpected '%s'", bracket));
+        depth--;
+        out.write(bracket);
+        return this;
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        return open('{');
+    }
+
+    public JsonWriter endObject() throws IOException {
+        return close('{', '}');
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        return open('[');
+    }
+
+    public JsonWriter endArray() throws IOException {
+        return close('[', ']');
+    }
+
+    public JsonWriter name(String name) throws IOException {
+        if (afterName || depth == 0 || scopes[depth] != '{')
+            throw new IllegalStateException(String.format("unexpected name: %s", name));
+        separate();
+        string(name);
+        out.write(':');
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null)
+            return nullValue();
+        beforeValue();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beforeValue();
+        out.write(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(Long value) throws IOException {
+        if (value == null)
+            return nullValue();
+        return value(value.longValue());
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        if (Double.isNaN(value) || Double.isInfinite(value))
+            throw new IllegalArgumentException(String.format("not a JSON number: %s", value));
+        beforeValue();
+        out.write(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beforeValue();
+        out.write(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beforeValue();
+        out.write("null");
+        return this;
+    }
+
+    private void string(String value) throws IOException {
+        out.write('"');
+        int from = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c >= 0x20 && c != '"' && c != '\\')
+                continue;
+            out.write(value, from, i - from);
+            from = i + 1;
+            switch (c) {
+                case '"':
+                    out.write("\\\"");
+                    break;
+                case '\\':
+                    out.write("\\\\");
+                    break;
+                case '\n':
+                    out.write("\\n");
+                    break;
+                case '\r':
+                    out.write("\\r");
+                    break;
+                case '\t':
+                    out.write("\\t");
+                    break;
+                default:
+                    out.write("\\u");
+                    out.write(HEX[(c >> 12) & 0xf]);
+                    out.write(HEX[(c >> 8) & 0xf]);
+                    out.write(HEX[(c >> 4) & 0xf]);
+                    out.write(HEX[c & 0xf]);
+            }
+        }
+        out.write(value, from, value.length() - from);
+        out.write('"');
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+}
@@ -0,0 +1,67 @@
+package nogroup.inpaint.json;
+
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+public class NdjsonExporter {
+    public static final String FORMAT = "inpaint-ndjson";
+    public static final int VERSION = 1;
+    private final Repository repository;
+
+    public NdjsonExporter(Repository repository) {
+        this.repository = repository;
+    }
+
+    public long export(Path file) throws IOException {
+        try (Writer out = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(file), StandardCharsets.UTF_8), 1 << 16)) {
+            return export(out);
+        }
+    }
+
+    public long export(Writer out) throws IOException {
+        JsonWriter writer = new JsonWriter(out);
+        writer.beginObject().name("format").value(FORMAT).name("version").value(VERSION).endObject();
+        out.write('\n');
+        long records = 0;
+        for (SourceImage source : repository.readSources()) {
+            List<TargetImage> targets;
+            try {
+                targets = repository.readTargets(source);
+            } catch (NotFoundException e) {
+                // deleted while exporting
+                continue;
+            }
+            writer.beginObject().name("type").value("source").name("source");
+            ImageJson.write(writer, source).endObject();
+            out.write('\n');
+            for (TargetImage target : targets) {
+                writer.beginObject().name("type").value("target").name("source").value(source.getName()).name("target");
+                ImageJson.write(writer, target).endObject();
+                out.write('\n');
+            }
+            records += 1 + targets.size();
+        }
+        writer.flush();
+        return records;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("NdjsonExporter{");
+        sb.append("repository=").append(repository);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,276 @@
+package nogroup.inpaint.json;
+
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+public class NdjsonImporter {
+    public static final int DEFAULT_BATCH_SIZE = 512;
+    private static final String TARGET_PREFIX = "{\"type\":\"target\"";
+    private final Repository repository;
+    private final int threads;
+    private final int batchSize;
+
+    public NdjsonImporter(Repository repository) {
+        this(repository, Runtime.getRuntime().availableProcessors(), DEFAULT_BATCH_SIZE);
+    }
+
+    public NdjsonImporter(Repository repository, int threads, int batchSize) {
+        if (threads < 1 || batchSize < 1)
+            throw new IllegalArgumentException(String.format("invalid threads %d or batch size %d", threads, batchSize));
+        this.repository = repository;
+        this.threads = threads;
+        this.batchSize = batchSize;
+    }
+
+    public static class Result {
+        private final long sources;
+        private final long targets;
+        private final long skipped;
+
+        Result(long sources, long targets, long skipped) {
+            this.sources = sources;
+            this.targets = targets;
+            this.skipped = skipped;
+        }
+
+        public long getSources() {
+            return sources;
+        }
+
+        public long getTargets() {
+            return targets;
+        }
+
+        public long getSkipped() {
+            return skipped;
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder sb = new StringBuilder("Result{");
+            sb.append("sources=").append(sources);
+            sb.append(", targets=").append(targets);
+            sb.append(", skipped=").append(skipped);
+            sb.append('}');
+            return sb.toString();
+        }
+    }
+
+    private static class Line {
+        private final long number;
+        private final String json;
+
+        Line(long number, String json) {
+            this.number = number;
+            this.json = json;
+        }
+    }
+
+    private class Import {
+        private final LongAdder sources = new LongAdder();
+        private final LongAdder targets = new LongAdder();
+        private final LongAdder skipped = new LongAdder();
+        // targets whose source was still being created by another batch
+        private final Queue<Line> deferred = new ConcurrentLinkedQueue<>();
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+        private void batch(List<Line> lines) {
+            // sources and the targets of each source go to the repository as one bulk create each
+            List<SourceImage> batchSources = new ArrayList<>();
+            Map<String, List<Line>> targetLines = new LinkedHashMap<>();
+            Map<String, List<TargetImage>> batchTargets = new LinkedHashMap<>();
+            for (Line line : lines) {
+                Map<String, Object> record = parse(line);
+                if ("source".equals(record.get("type"))) {
+                    batchSources.add(ImageJson.readSource(object(line, record, "source")));
+                } else {
+                    String source = sourceName(line, record);
+                    targetLines.computeIfAbsent(source, name -> new ArrayList<>()).add(line);
+                    batchTargets.computeIfAbsent(source, name -> new ArrayList<>()).add(ImageJson.readTarget(object(line, record, "target")));
+                }
+            }
+            if (!batchSources.isEmpty()) {
+                int created = repository.createSources(batchSources).size();
+                sources.add(created);
+                skipped.add(batchSources.size() - created);
+            }
+            for (Map.Entry<String, List<TargetImage>> entry : batchTargets.entrySet())
+                if (!createTargets(entry.getKey(), entry.getValue()))
+                    deferred.addAll(targetLines.get(entry.getKey()));
+        }
+
+        private boolean createTargets(String source, List<TargetImage> batchTargets) {
+            try {
+                int created = repository.createTargets(new SourceImageBuilder(source).build(), batchTargets).size();
+                targets.add(created);
+                skipped.add(batchTargets.size() - created);
+            } catch (NotFoundException e) {
+                return false;
+            }
+            return true;
+        }
+    }
+
+    private static String sourceName(Line line, Map<String, Object> record) {
+        if (!"target".equals(record.get("type")))
+            throw invalid(line, "unknown record type");
+        Object source = record.get("source");
+        if (!(source instanceof String))
+            throw invalid(line, "target without a source");
+        return (String) source;
+    }
+
+    public Result importFrom(Path file) throws IOException {
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            return importFrom(in);
+        }
+    }
+
+    public Result importFrom(Reader reader) throws IOException {
+        BufferedReader in = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader, 1 << 16);
+        Import state = new Import();
+        // bounds the lines held in memory to a few batches per worker however large the input is
+        int permits = threads * 2;
+        Semaphore inFlight = new Semaphore(permits);
+        ExecutorService executor = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "ndjson-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            List<Line> batch = new ArrayList<>(batchSize);
+            long number = 0;
+            String json;
+            while ((json = in.readLine()) != null && state.failure.get() == null) {
+                number++;
+                if (json.trim().isEmpty())
+                    continue;
+                if (number == 1 && json.startsWith("{\"format\"")) {
+                    header(new Line(number, json));
+                    continue;
+                }
+                // cut batches in front of a source so that sources usually share a batch with their targets
+                if (batch.size() >= batchSize && !json.startsWith(TARGET_PREFIX)) {
+                    submit(executor, inFlight, state, batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+                batch.add(new Line(number, json));
+            }
+            if (!batch.isEmpty())
+                submit(executor, inFlight, state, batch);
+            inFlight.acquire(permits);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("import interrupted");
+        } finally {
+            executor.shutdownNow();
+        }
+        rethrow(state.failure.get());
+
+        Map<String, Line> firstLines = new LinkedHashMap<>();
+        Map<String, List<TargetImage>> deferred = new LinkedHashMap<>();
+        for (Line line : state.deferred) {
+            Map<String, Object> record = parse(line);
+            String source = sourceName(line, record);
+            firstLines.putIfAbsent(source, line);
+            deferred.computeIfAbsent(source, name -> new ArrayList<>()).add(ImageJson.readTarget(object(line, record, "target")));
+        }
+        for (Map.Entry<String, List<TargetImage>> entry : deferred.entrySet())
+            if (!state.createTargets(entry.getKey(), entry.getValue()))
+                throw invalid(firstLines.get(entry.getKey()), "source not found");
+
+        return new Result(state.sources.sum(), state.targets.sum(), state.skipped.sum());
+    }
+
+    private static void submit(ExecutorService executor, Semaphore inFlight, Import state, List<Line> batch) throws InterruptedException {
+        inFlight.acquire();
+        executor.execute(() -> {
+            try {
+                state.batch(batch);
+            } catch (Throwable e) {
+                state.failure.compareAndSet(null, e);
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static void rethrow(Throwable failure) throws IOException {
+        if (failure == null)
+            return;
+        if (failure instanceof IOException)
+            throw (IOException) failure;
+        if (failure instanceof RuntimeException)
+            throw (RuntimeException) failure;
+        if (failure instanceof Error)
+            throw (Error) failure;
+        throw new IOException(failure);
+    }
+
+    private static void header(Line line) {
+        Map<String, Object> header = parse(line);
+        if (!NdjsonExporter.FORMAT.equals(header.get("format")))
+            throw invalid(line, "unknown format");
+        Object version = header.get("version");
+        if (!(version instanceof Number) || ((Number) version).intValue() > NdjsonExporter.VERSION)
+            throw invalid(line, "unsupported version");
+    }
+
+    private static Map<String, Object> parse(Line line) {
+        try {
+            return JsonReader.parseObject(line.json);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(String.format("line %d: %s", line.number, e.getMessage()), e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> object(Line line, Map<String, Object> record, String name) {
+        Object value = record.get(name);
+        if (!(value instanceof Map))
+            throw invalid(line, String.format("missing \"%s\"", name));
+        return (Map<String, Object>) value;
+    }
+
+    private static IllegalArgumentException invalid(Line line, String message) {
+        return new IllegalArgumentException(String.format("line %d: %s", line.number, message));
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    public int getThreads() {
+        return threads;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("NdjsonImporter{");
+        sb.append("repository=").append(repository);
+        sb.append(", threads=").append(threads);
+        sb.append(", batchSize=").append(batchSize);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,218 @@
+package nogroup.inpaint.service;
+
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+
+import java.awt.image.BufferedImage;
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+public class AsyncInpaintManagerService implements Closeable {
+    private final InpaintManagerService service;
+    private final ExecutorService executor;
+    private final boolean ownsExecutor;
+    private final Map<String, CompletableFuture<?>> tails;
+    private CompletableFuture<?> barrier;
+
+    public AsyncInpaintManagerService(InpaintManagerService service) {
+        this(service, defaultExecutor(), true);
+    }
+
+    public AsyncInpaintManagerService(InpaintManagerService service, ExecutorService executor) {
+        this(service, executor, false);
+    }
+
+    private AsyncInpaintManagerService(InpaintManagerService service, ExecutorService executor, boolean ownsExecutor) {
+        this.service = service;
+        this.executor = executor;
+        this.ownsExecutor = ownsExecutor;
+        this.tails = new ConcurrentHashMap<>();
+    }
+
+    public static ExecutorService defaultExecutor() {
+        try {
+            // virtual threads are only available since JDK 21, the module itself targets JDK 8
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> task) {
+        return CompletableFuture.supplyAsync(task, executor);
+    }
+
+    private <T> CompletableFuture<T> submitOrdered(SourceImage source, Supplier<T> task) {
+        return submitOrdered(Collections.singletonList(source), task);
+    }
+
+    private <T> CompletableFuture<T> submitOrdered(Collection<SourceImage> sources, Supplier<T> task) {
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final List<CompletableFuture<?>> previous = new ArrayList<>();
+        final Set<String> keys = new LinkedHashSet<>();
+        for (SourceImage source : sources)
+            keys.add(source.getName());
+        synchronized (tails) {
+            for (String key : keys) {
+                CompletableFuture<?> tail = tails.put(key, result);
+                if (tail != null)
+                    previous.add(tail);
+            }
+            if (barrier != null)
+                previous.add(barrier);
+        }
+        schedule(result, previous, task);
+
+        for (String key : keys)
+            result.whenComplete((value, throwable) -> tails.remove(key, result));
+        return result;
+    }
+
+    private <T> CompletableFuture<T> submitBarrier(Supplier<T> task) {
+        // the sources a tag rename or merge touches are only known once it runs,
+        // so it waits for everything queued before it and everything queued after it waits for it
+        final CompletableFuture<T> result = new CompletableFuture<>();
+        final List<CompletableFuture<?>> previous;
+        synchronized (tails) {
+            previous = new ArrayList<>(tails.values());
+            if (barrier != null)
+                previous.add(barrier);
+            barrier = result;
+        }
+        schedule(result, previous, task);
+
+        result.whenComplete((value, throwable) -> {
+            synchronized (tails) {
+                if (barrier == result)
+                    barrier = null;
+            }
+        });
+        return result;
+    }
+
+    private <T> void schedule(CompletableFuture<T> result, List<CompletableFuture<?>> previous, Supplier<T> task) {
+        final Runnable run = () -> {
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        };
+        if (previous.isEmpty()) {
+            try {
+                executor.execute(run);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        } else {
+            CompletableFuture.allOf(previous.toArray(new CompletableFuture<?>[0]))
+                    .whenCompleteAsync((value, throwable) -> run.run(), executor)
+                    .whenComplete((value, throwable) -> {
+                        if (throwable != null)
+                            result.completeExceptionally(throwable);
+                    });
+        }
+    }
+
+    public CompletableFuture<List<SourceImage>> loadSources(String dir) {
+        return submit(() -> service.loadSources(dir));
+    }
+
+    public CompletableFuture<List<TargetImage>> loadTargets(String dir) {
+        return submit(() -> service.loadTargets(dir));
+    }
+
+    public CompletableFuture<List<BufferedImage>> loadImages(String dir) {
+        return submit(() -> service.loadImages(dir));
+    }
+
+    public CompletableFuture<Boolean> assign(SourceImage source, TargetImage target) {
+        return submitOrdered(source, () -> service.assign(source, target));
+    }
+
+    public CompletableFuture<Boolean> reassign(SourceImage source, TargetImage target) {
+        return submitOrdered(source, () -> service.reassign(source, target));
+    }
+
+    public CompletableFuture<Void> deassign(SourceImage source, TargetImage target) {
+        return submitOrdered(source, () -> {
+            service.deassign(source, target);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> assignAll(SourceImage source, TargetImage... targets) {
+        return submitOrdered(source, () -> service.assignAll(source, targets));
+    }
+
+    public CompletableFuture<Boolean> reassignAll(SourceImage source, TargetImage... targets) {
+        return submitOrdered(source, () -> service.reassignAll(source, targets));
+    }
+
+    public CompletableFuture<Void> deassignAll(SourceImage source, TargetImage... targets) {
+        return submitOrdered(source, () -> {
+            service.deassignAll(source, targets);
+            return null;
+        });
+    }
+
+    public CompletableFuture<Boolean> setTags(SourceImage source, String... tags) {
+        return submitOrdered(source, () -> service.setTags(source, tags));
+    }
+
+    public CompletableFuture<Integer> addTags(Collection<SourceImage> sources, String... tags) {
+        return submitOrdered(sources, () -> service.addTags(sources, tags));
+    }
+
+    public CompletableFuture<Integer> removeTags(Collection<SourceImage> sources, String... tags) {
+        return submitOrdered(sources, () -> service.removeTags(sources, tags));
+    }
+
+    public CompletableFuture<Integer> renameTag(String from, String to) {
+        return submitBarrier(() -> service.renameTag(from, to));
+    }
+
+    public CompletableFuture<Integer> mergeTags(String into, String... tags) {
+        return submitBarrier(() -> service.mergeTags(into, tags));
+    }
+
+    public CompletableFuture<Boolean> addDescription(SourceImage source, String description) {
+        return submitOrdered(source, () -> service.addDescription(source, description));
+    }
+
+    public CompletableFuture<Boolean> addDescription(TargetImage target, String description) {
+        return submit(() -> service.addDescription(target, description));
+    }
+
+    public CompletableFuture<Boolean> setSampler(TargetImage target, Sampler sampler) {
+        return submit(() -> service.setSampler(target, sampler));
+    }
+
+    public InpaintManagerService getService() {
+        return service;
+    }
+
+    @Override
+    public void close() {
+        if (!ownsExecutor)
+            return;
+        executor.shutdown();
+        try {
+            executor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("AsyncInpaintManagerService{");
+        sb.append("service=").append(service);
+        sb.append(", pending=").append(tails.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -1,15 +1,19 @@
 package nogroup.inpaint.service;
 
 import nogroup.inpaint.image.Image;
+import nogroup.inpaint.image.ImageIterator;
 import nogroup.inpaint.image.source.SourceImage;
 import nogroup.inpaint.image.target.Checkpoint;
 import nogroup.inpaint.image.target.Sampler;
 import nogroup.inpaint.image.target.TargetImage;
 
 import java.awt.image.BufferedImage;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.Executor;
 
 public interface InpaintManagerService {
 
@@ -19,6 +23,14 @@ public interface InpaintManagerService {
 
     List<BufferedImage> loadImages(String dir);
 
+    default ImageIterator iterateImages(String dir) throws IOException {
+        return ImageIterator.of(dir);
+    }
+
+    default ImageIterator iterateImages(String dir, int prefetch, Executor executor) throws IOException {
+        return ImageIterator.of(dir, prefetch, executor);
+    }
+
     boolean assign(SourceImage source, TargetImage target);
 
     boolean reassign(SourceImage source, TargetImage target);
@@ -33,6 +45,14 @@ public interface InpaintManagerService {
 
     boolean setTags(SourceImage source, String... tags);
 
+    int addTags(Collection<SourceImage> sources, String... tags);
+
+    int removeTags(Collection<SourceImage> sources, String... tags);
+
+    int renameTag(String from, String to);
+
+    int mergeTags(String into, String... tags);
+
     boolean addDescription(SourceImage source, String description);
 
     boolean addDescription(TargetImage source, String description);
@@ -45,5 +65,5 @@ public interface InpaintManagerService {
         return new ArrayList<>(Arrays.asList(Sampler.values()));
     }
 
-    boolean setSampler
+    boolean setSampler(TargetImage target, Sampler sampler);
 }
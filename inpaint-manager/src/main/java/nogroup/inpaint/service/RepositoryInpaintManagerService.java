@@ -0,0 +1,244 @@
+package nogroup.inpaint.service;
+
+import nogroup.inpaint.image.ImageIterator;
+import nogroup.inpaint.image.hash.PerceptualHash;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageIngestor;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.function.Consumer;
+
+public class RepositoryInpaintManagerService implements InpaintManagerService {
+    private final Repository repository;
+    private final SourceImageIngestor ingestor;
+
+    public RepositoryInpaintManagerService(Repository repository) {
+        this(repository, new SourceImageIngestor(repository));
+    }
+
+    public RepositoryInpaintManagerService(Repository repository, SourceImageIngestor ingestor) {
+        this.repository = repository;
+        this.ingestor = ingestor;
+    }
+
+    public Repository getRepository() {
+        return repository;
+    }
+
+    static List<Path> listImages(String dir) {
+        Path path = Paths.get(dir);
+        if (!Files.isDirectory(path))
+            throw new IllegalArgumentException(String.format("not a dir: %s", dir));
+
+        final List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(path, ImageIterator::isImage)) {
+            for (Path file : stream)
+                files.add(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Collections.sort(files);
+        return files;
+    }
+
+    @Override
+    public List<SourceImage> loadSources(String dir) {
+        final List<SourceImage> sources = new ArrayList<>();
+        for (Path file : listImages(dir)) {
+            try {
+                sources.add(ingestor.ingest(file));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return sources;
+    }
+
+    @Override
+    public List<TargetImage> loadTargets(String dir) {
+        final List<TargetImage> targets = new ArrayList<>();
+        for (Path file : listImages(dir)) {
+            try {
+                BufferedImage image = ImageIO.read(file.toFile());
+                if (image == null)
+                    throw new IOException("unsupported image: " + file);
+                targets.add(new TargetImageBuilder(file.toString())
+                        .width(image.getWidth())
+                        .height(image.getHeight())
+                        .perceptualHash(PerceptualHash.dHash(image))
+                        .build());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return targets;
+    }
+
+    @Override
+    public List<BufferedImage> loadImages(String dir) {
+        final List<BufferedImage> images = new ArrayList<>();
+        try (ImageIterator iterator = iterateImages(dir)) {
+            while (iterator.hasNext())
+                images.add(iterator.next());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return images;
+    }
+
+    @Override
+    public boolean assign(SourceImage source, TargetImage target) {
+        return repository.createTarget(source, target) != null;
+    }
+
+    @Override
+    public boolean reassign(SourceImage source, TargetImage target) {
+        return reassignAll(source, target);
+    }
+
+    @Override
+    public void deassign(SourceImage source, TargetImage target) {
+        if (repository.readSource(target).getName().equals(source.getName()))
+            repository.deleteTarget(target);
+    }
+
+    @Override
+    public boolean assignAll(SourceImage source, TargetImage... targets) {
+        boolean changed = false;
+        for (TargetImage target : targets)
+            changed |= assign(source, target);
+        return changed;
+    }
+
+    @Override
+    public boolean reassignAll(SourceImage source, TargetImage... targets) {
+        // unchanged targets are moved in one call per current owner, the rest are deleted and created again
+        final Map<String, List<TargetImage>> moves = new LinkedHashMap<>();
+        final List<TargetImage> replaced = new ArrayList<>();
+        for (TargetImage target : targets) {
+            try {
+                SourceImage assigned = repository.readSource(target);
+                if (assigned.getName().equals(source.getName()))
+                    continue;
+                if (repository.readTarget(target.getName()).equals(target)) {
+                    moves.computeIfAbsent(assigned.getName(), name -> new ArrayList<>()).add(target);
+                    continue;
+                }
+            } catch (NotFoundException ignored) {
+            }
+            replaced.add(target);
+        }
+
+        boolean changed = false;
+        for (Map.Entry<String, List<TargetImage>> move : moves.entrySet())
+            changed |= !repository.moveTargets(repository.readSource(move.getKey()), source,
+                    move.getValue().toArray(new TargetImage[0])).isEmpty();
+        for (TargetImage target : replaced) {
+            repository.deleteTarget(target);
+            changed |= assign(source, target);
+        }
+        return changed;
+    }
+
+    @Override
+    public void deassignAll(SourceImage source, TargetImage... targets) {
+        for (TargetImage target : targets)
+            deassign(source, target);
+    }
+
+    @Override
+    public boolean setTags(SourceImage source, String... tags) {
+        return repository.updateSource(repository.readSource(source.getName()).toBuilder()
+                .tags(new ArrayList<>(new LinkedHashSet<>(Arrays.asList(tags))))
+                .build()) != null;
+    }
+
+    private int editTags(Collection<SourceImage> selection, Consumer<Set<String>> edit) {
+        final Map<String, SourceImage> edited = new LinkedHashMap<>();
+        for (SourceImage selected : selection) {
+            SourceImage source = repository.readSource(selected.getName());
+            List<String> current = source.getTags() == null ? Collections.emptyList() : source.getTags();
+            Set<String> tags = new LinkedHashSet<>(current);
+            edit.accept(tags);
+            if (!new ArrayList<>(tags).equals(current))
+                edited.put(source.getName(), source.toBuilder().tags(new ArrayList<>(tags)).build());
+        }
+        return edited.isEmpty() ? 0 : repository.updateSources(edited.values()).size();
+    }
+
+    @Override
+    public int addTags(Collection<SourceImage> sources, String... tags) {
+        return editTags(sources, current -> current.addAll(Arrays.asList(tags)));
+    }
+
+    @Override
+    public int removeTags(Collection<SourceImage> sources, String... tags) {
+        return editTags(sources, current -> current.removeAll(Arrays.asList(tags)));
+    }
+
+    @Override
+    public int renameTag(String from, String to) {
+        return mergeTags(to, from);
+    }
+
+    @Override
+    public int mergeTags(String into, String... tags) {
+        final Set<String> merged = new HashSet<>(Arrays.asList(tags));
+        merged.remove(into);
+        final Map<String, SourceImage> selection = new HashMap<>();
+        for (String tag : merged)
+            for (SourceImage source : repository.readSourcesByTag(tag))
+                selection.put(source.getName(), source);
+
+        // the replacement keeps the position of the first merged tag
+        return editTags(selection.values(), current -> {
+            final List<String> replaced = new ArrayList<>(current.size());
+            for (String tag : current)
+                replaced.add(merged.contains(tag) ? into : tag);
+            current.clear();
+            current.addAll(replaced);
+        });
+    }
+
+    @Override
+    public boolean addDescription(SourceImage source, String description) {
+        return repository.updateSource(repository.readSource(source.getName()).toBuilder()
+                .description(description)
+                .build()) != null;
+    }
+
+    @Override
+    public boolean addDescription(TargetImage source, String description) {
+        return repository.updateTarget(repository.readTarget(source.getName()).toBuilder()
+                .description(description)
+                .build()) != null;
+    }
+
+    @Override
+    public boolean setSampler(TargetImage target, Sampler sampler) {
+        return repository.updateTarget(repository.readTarget(target.getName()).toBuilder()
+                .sampler(sampler)
+                .build()) != null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("RepositoryInpaintManagerService{");
+        sb.append("repository=").append(repository);
+        sb.append('}');
+        return sb.toString();
+    }
+}
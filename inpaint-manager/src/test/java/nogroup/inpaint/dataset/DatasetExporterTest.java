@@ -0,0 +1,135 @@
+package nogroup.inpaint.dataset;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+class DatasetExporterTest {
+    private Path dir;
+    private InMemoryRepository repository;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        dir = Files.createTempDirectory("dataset");
+        repository = new InMemoryRepository();
+        SourceImage portrait = repository.createSource(new SourceImageBuilder("portrait").addTag("portrait").description("a face").build());
+        SourceImage landscape = repository.createSource(new SourceImageBuilder("landscape").addTag("landscape").build());
+        for (int i = 0; i < 10; i++) {
+            Path image = dir.resolve("image-" + i + ".png");
+            byte[] bytes = new byte[1000 + i];
+            Arrays.fill(bytes, (byte) i);
+            Files.write(image, bytes);
+            repository.createTarget(i < 8 ? portrait : landscape, new TargetImageBuilder(image.toString())
+                    .rating(i % 5)
+                    .description(i % 2 == 0 ? "caption " + i : null)
+                    .sampler(i == 4 ? Sampler.EULER : Sampler.EULER_A)
+                    .checkpoint(Checkpoint.SD)
+                    .build());
+        }
+        repository.createTarget(portrait, new TargetImageBuilder(dir.resolve("missing.png").toString()).rating(4).build());
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            files.sorted(Comparator.reverseOrder()).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    private static Map<String, byte[]> readTar(Path file) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        byte[] tar = Files.readAllBytes(file);
+        Assertions.assertEquals(0, tar.length % 512);
+        int offset = 0;
+        while (tar[offset] != 0) {
+            String name = new String(tar, offset, 100, StandardCharsets.UTF_8).trim().replace("\u0000", "");
+            int size = Integer.parseInt(new String(tar, offset + 124, 11, StandardCharsets.US_ASCII), 8);
+            long checksum = 0;
+            for (int i = 0; i < 512; i++)
+                checksum += i >= 148 && i < 156 ? ' ' : tar[offset + i] & 0xff;
+            Assertions.assertEquals(checksum, Long.parseLong(new String(tar, offset + 148, 6, StandardCharsets.US_ASCII), 8));
+            entries.put(name, Arrays.copyOfRange(tar, offset + 512, offset + 512 + size));
+            offset += 512 + (size + 511) / 512 * 512;
+        }
+        return entries;
+    }
+
+    private static Map<String, byte[]> readZip(Path file) throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        try (InputStream in = Files.newInputStream(file); ZipInputStream zip = new ZipInputStream(in)) {
+            ZipEntry entry;
+            while ((entry = zip.getNextEntry()) != null) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                byte[] buffer = new byte[4096];
+                int read;
+                while ((read = zip.read(buffer)) != -1)
+                    out.write(buffer, 0, read);
+                entries.put(entry.getName(), out.toByteArray());
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void tarShards() throws IOException {
+        DatasetExporter.Result result = new DatasetExporter(repository, DatasetFormat.TAR, 2500, 3)
+                .export(new DatasetQuery().minRating(2).tag("portrait"), dir.resolve("out"), "train");
+        // ratings 2, 3, 4 among the first 8 images: 2, 3, 4, 7
+        Assertions.assertEquals(4, result.getSamples());
+        Assertions.assertEquals(1, result.getMissing());
+        Assertions.assertEquals(2, result.getShards().size());
+
+        Map<String, byte[]> entries = new HashMap<>();
+        for (Path shard : result.getShards()) {
+            Assertions.assertTrue(shard.getFileName().toString().matches("train-0000[01]\\.tar"));
+            entries.putAll(readTar(shard));
+        }
+        Assertions.assertEquals(8, entries.size());
+        Set<String> captions = new HashSet<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet())
+            if (entry.getKey().endsWith(".txt"))
+                captions.add(new String(entry.getValue(), StandardCharsets.UTF_8));
+            else
+                Assertions.assertTrue(entry.getKey().endsWith(".png"));
+        Assertions.assertEquals(new HashSet<>(Arrays.asList("caption 2", "caption 4", "a face")), captions);
+        byte[] image = entries.get("000000000.png");
+        Assertions.assertEquals(1002, image.length);
+        Assertions.assertEquals(2, image[0]);
+    }
+
+    @Test
+    void zipShards() throws IOException {
+        DatasetExporter.Result result = new DatasetExporter(repository, DatasetFormat.ZIP, 1L << 20, 2)
+                .export(new DatasetQuery().sampler(Sampler.EULER_A).checkpoint(Checkpoint.SD).minRating(4), dir.resolve("out"), "train");
+        // rating 4 is images 4 and 9, image 4 uses another sampler
+        Assertions.assertEquals(1, result.getSamples());
+        Assertions.assertEquals(1, result.getShards().size());
+        Map<String, byte[]> entries = readZip(result.getShards().get(0));
+        Assertions.assertEquals(Arrays.asList("000000000.png", "000000000.txt"), new ArrayList<>(entries.keySet()));
+        Assertions.assertEquals(1009, entries.get("000000000.png").length);
+        Assertions.assertEquals("", new String(entries.get("000000000.txt"), StandardCharsets.UTF_8));
+        try (ZipFile zip = new ZipFile(result.getShards().get(0).toFile())) {
+            for (ZipEntry entry : Collections.list(zip.entries()))
+                Assertions.assertEquals(ZipEntry.STORED, entry.getMethod());
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package nogroup.inpaint.image;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ImageIteratorTest {
+    private static Path image(Path dir, String name, int width) throws IOException {
+        Path file = dir.resolve(name);
+        ImageIO.write(new BufferedImage(width, 10, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return file;
+    }
+
+    private static void deleteDir(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    void prefetchKeepsOrder() throws IOException {
+        Path dir = Files.createTempDirectory("test-images-dir_");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Path> files = new ArrayList<>();
+            for (int i = 0; i < 12; i++)
+                files.add(image(dir, String.format("image-%02d.png", i), 10 + i));
+
+            AtomicBoolean closed = new AtomicBoolean();
+            List<Integer> widths = new ArrayList<>();
+            ImageIterator iterator = new ImageIterator(files.iterator(), () -> closed.set(true), 3, executor);
+            while (iterator.hasNext())
+                widths.add(iterator.next().getWidth());
+
+            List<Integer> expected = new ArrayList<>();
+            for (int i = 0; i < 12; i++)
+                expected.add(10 + i);
+            Assertions.assertEquals(expected, widths);
+            Assertions.assertTrue(closed.get());
+            Assertions.assertThrows(NoSuchElementException.class, iterator::next);
+        } finally {
+            executor.shutdownNow();
+            deleteDir(dir);
+        }
+    }
+
+    @Test
+    void filtersByExtension() throws IOException {
+        Path dir = Files.createTempDirectory("test-images-dir_");
+        try {
+            image(dir, "a.png", 10);
+            image(dir, "b.JPG", 10);
+            Files.write(dir.resolve("notes.txt"), new byte[]{1});
+            Files.createDirectory(dir.resolve("nested.png"));
+
+            int count = 0;
+            try (ImageIterator iterator = ImageIterator.of(dir.toString())) {
+                while (iterator.hasNext()) {
+                    iterator.next();
+                    count++;
+                }
+            }
+            Assertions.assertEquals(2, count);
+            Assertions.assertThrows(IllegalArgumentException.class, () -> ImageIterator.of(dir.resolve("notes.txt").toString()));
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    @Test
+    void closeCancelsPending() throws IOException {
+        Path dir = Files.createTempDirectory("test-images-dir_");
+        try {
+            List<Path> files = Arrays.asList(image(dir, "a.png", 10), image(dir, "b.png", 10), image(dir, "c.png", 10));
+            // nothing ever runs, every prefetched image stays pending
+            List<Runnable> queued = new ArrayList<>();
+            AtomicBoolean closed = new AtomicBoolean();
+            ImageIterator iterator = new ImageIterator(files.iterator(), () -> closed.set(true), 2, queued::add);
+            Assertions.assertEquals(2, queued.size());
+            Assertions.assertFalse(closed.get());
+
+            CompletableFuture<BufferedImage> first = iterator.nextAsync();
+            Assertions.assertEquals(3, queued.size());
+            iterator.close();
+            Assertions.assertTrue(closed.get());
+            Assertions.assertFalse(iterator.hasNext());
+            Assertions.assertFalse(first.isCancelled());
+
+            queued.get(0).run();
+            Assertions.assertEquals(10, first.join().getWidth());
+        } finally {
+            deleteDir(dir);
+        }
+    }
+}
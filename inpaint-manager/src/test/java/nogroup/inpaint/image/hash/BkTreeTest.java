@@ -0,0 +1,68 @@
+package nogroup.inpaint.image.hash;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+class BkTreeTest {
+    @Test
+    void search() {
+        BkTree tree = new BkTree();
+        tree.add(0L, "zero");
+        tree.add(0xFFL, "ff");
+        tree.add(0xFEL, "fe");
+        tree.add(0xFEL, "fe-copy");
+        tree.add(0xFEL, "fe");
+        Assertions.assertEquals(4, tree.size());
+
+        Map<String, Integer> expected = new HashMap<>();
+        expected.put("ff", 1);
+        expected.put("fe", 0);
+        expected.put("fe-copy", 0);
+        Assertions.assertEquals(expected, tree.search(0xFEL, 1));
+        Assertions.assertEquals(1, tree.search(0L, 6).size());
+        Assertions.assertEquals(0, tree.search(0L, 6).get("zero"));
+        Assertions.assertEquals(4, tree.search(0L, 8).size());
+    }
+
+    @Test
+    void remove() {
+        BkTree tree = new BkTree();
+        tree.add(0xF0L, "root");
+        tree.add(0xF1L, "child");
+        Assertions.assertTrue(tree.remove(0xF0L, "root"));
+        Assertions.assertFalse(tree.remove(0xF0L, "root"));
+        Assertions.assertFalse(tree.remove(0xF3L, "child"));
+        Assertions.assertEquals(1, tree.size());
+        Assertions.assertEquals(1, tree.search(0xF0L, 1).size());
+
+        tree.clear();
+        Assertions.assertEquals(0, tree.size());
+        Assertions.assertTrue(tree.search(0xF0L, 64).isEmpty());
+    }
+
+    @Test
+    void matchesLinearScan() {
+        Random random = new Random(42);
+        long[] hashes = new long[2000];
+        BkTree tree = new BkTree();
+        for (int i = 0; i < hashes.length; i++) {
+            // a few flipped bits away from a handful of centers, so searches have hits
+            hashes[i] = (random.nextInt(8) * 0x0101010101010101L) ^ (1L << random.nextInt(64)) ^ (1L << random.nextInt(64));
+            tree.add(hashes[i], "hash-" + i);
+        }
+
+        for (int query = 0; query < 50; query++) {
+            long hash = hashes[random.nextInt(hashes.length)] ^ (1L << random.nextInt(64));
+            int maxDistance = random.nextInt(10);
+            Map<String, Integer> expected = new HashMap<>();
+            for (int i = 0; i < hashes.length; i++)
+                if (PerceptualHash.distance(hash, hashes[i]) <= maxDistance)
+                    expected.put("hash-" + i, PerceptualHash.distance(hash, hashes[i]));
+            Assertions.assertEquals(expected, tree.search(hash, maxDistance));
+        }
+    }
+}
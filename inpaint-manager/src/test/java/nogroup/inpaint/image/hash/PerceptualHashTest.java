@@ -0,0 +1,37 @@
+package nogroup.inpaint.image.hash;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+class PerceptualHashTest {
+    private static BufferedImage gradient(int width, int height, boolean descending) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        for (int x = 0; x < width; x++) {
+            int level = 255 * (descending ? width - 1 - x : x) / (width - 1);
+            for (int y = 0; y < height; y++)
+                image.setRGB(x, y, new Color(level, level, level).getRGB());
+        }
+        return image;
+    }
+
+    @Test
+    void dHash() {
+        BufferedImage solid = new BufferedImage(32, 32, BufferedImage.TYPE_INT_RGB);
+        Assertions.assertEquals(0L, PerceptualHash.dHash(solid));
+        Assertions.assertEquals(0L, PerceptualHash.dHash(gradient(90, 80, false)));
+        Assertions.assertEquals(-1L, PerceptualHash.dHash(gradient(90, 80, true)));
+        Assertions.assertEquals(PerceptualHash.dHash(gradient(90, 80, true)), PerceptualHash.dHash(gradient(450, 400, true)));
+    }
+
+    @Test
+    void distance() {
+        Assertions.assertEquals(0, PerceptualHash.distance(0xF0L, 0xF0L));
+        Assertions.assertEquals(1, PerceptualHash.distance(0xFFL, 0xFEL));
+        Assertions.assertEquals(8, PerceptualHash.distance(0L, 0xFFL));
+        Assertions.assertEquals(64, PerceptualHash.distance(0L, -1L));
+        Assertions.assertEquals(PerceptualHash.distance(0x1234L, 0x4321L), PerceptualHash.distance(0x4321L, 0x1234L));
+    }
+}
@@ -0,0 +1,30 @@
+package nogroup.inpaint.image.hash;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+class XxHash64Test {
+    @Test
+    void knownValues() {
+        Assertions.assertEquals(0xEF46DB3751D8E999L, XxHash64.hash(new byte[0]));
+        Assertions.assertEquals(0xD24EC4F1A98C6E5BL, XxHash64.hash("a".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(0x44BC2CF5AD770999L, XxHash64.hash("abc".getBytes(StandardCharsets.UTF_8)));
+        Assertions.assertEquals(0xFBCEA83C8A378BF1L,
+                XxHash64.hash("Nobody inspects the spammish repetition".getBytes(StandardCharsets.UTF_8)));
+    }
+
+    @Test
+    void streaming() {
+        byte[] data = new byte[1000];
+        for (int i = 0; i < data.length; i++)
+            data[i] = (byte) (i * 31);
+
+        XxHash64 hash = new XxHash64();
+        for (int offset = 0; offset < data.length; offset += 7)
+            hash.update(data, offset, Math.min(7, data.length - offset));
+
+        Assertions.assertEquals(XxHash64.hash(data), hash.digest());
+    }
+}
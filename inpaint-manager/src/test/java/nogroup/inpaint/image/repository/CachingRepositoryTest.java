@@ -0,0 +1,146 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.cache.CacheStats;
+import nogroup.inpaint.image.repository.cache.CachingRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+class CachingRepositoryTest extends RepositoryTest {
+    static RepositoryFactory cachingFactory() {
+        return new RepositoryFactory() {
+            @Override
+            public Repository create(RepositoryImpl implType, Object... args) throws IOException {
+                return cache(super.create(implType, args));
+            }
+        };
+    }
+
+    @Test
+    void createSource() {
+        RepositoryTest.createSource(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void createTargets() {
+        RepositoryTest.createTargets(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void createInBulk() {
+        RepositoryTest.createInBulk(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSourceByTarget() {
+        RepositoryTest.readSourceByTarget(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSourceByName() {
+        RepositoryTest.readSourceByName(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSources() {
+        RepositoryTest.readSources(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSourcesByContentHash() {
+        RepositoryTest.readSourcesByContentHash(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readTargets() {
+        RepositoryTest.readTargets(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readTarget() {
+        RepositoryTest.readTarget(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSimilarTargets() {
+        RepositoryTest.readSimilarTargets(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void updateSource() {
+        RepositoryTest.updateSource(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSourcesByTag() {
+        RepositoryTest.readSourcesByTag(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void updateSources() {
+        RepositoryTest.updateSources(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void updateTarget() {
+        RepositoryTest.updateTarget(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteSource() {
+        RepositoryTest.deleteSource(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteSourceCascade() {
+        RepositoryTest.deleteSourceCascade(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteTarget() {
+        RepositoryTest.deleteTarget(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteTargets() {
+        RepositoryTest.deleteTargets(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void moveTargets() {
+        RepositoryTest.moveTargets(cachingFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void stats() throws IOException {
+        RepositoryFactory factory = new RepositoryFactory();
+        Repository backend = factory.create(RepositoryImpl.IN_MEMORY);
+        CachingRepository repository = factory.cache(backend, 2, 60_000, 60_000);
+        SourceImage source = new SourceImageBuilder(sourceImageName(0)).build();
+
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readSource(sourceImageName(0)));
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readSource(sourceImageName(0)));
+        repository.createSource(source);
+        Assertions.assertEquals(source, repository.readSource(sourceImageName(0)));
+        Assertions.assertEquals(source, repository.readSource(sourceImageName(0)));
+
+        backend.updateSource(source.toBuilder().description("changed behind the cache").build());
+        Assertions.assertEquals(source, repository.readSource(sourceImageName(0)));
+        repository.updateSource(source.toBuilder().description("changed through the cache").build());
+        Assertions.assertEquals("changed through the cache", repository.readSource(sourceImageName(0)).getDescription());
+
+        repository.createTarget(source, new TargetImageBuilder(targetImageName(0, 0)).build());
+        repository.createTarget(source, new TargetImageBuilder(targetImageName(0, 1)).build());
+        repository.readTargets(source);
+        repository.readTargets(source);
+
+        CacheStats stats = repository.getStats();
+        Assertions.assertEquals(1, stats.getNegativeHits());
+        Assertions.assertTrue(stats.getHits() >= 3);
+        Assertions.assertTrue(stats.getInvalidations() > 0);
+    }
+}
@@ -1,13 +1,28 @@
 package nogroup.inpaint.image.repository;
 
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import nogroup.inpaint.service.InpaintManagerService;
+import nogroup.inpaint.service.RepositoryInpaintManagerService;
+import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Comparator;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.*;
 
 class FileRepositoryTest extends RepositoryTest {
     static String getTempDir() {
@@ -22,6 +37,15 @@ class FileRepositoryTest extends RepositoryTest {
     static void deleteTempDir(String dir) {
         Path pathToBeDeleted = Paths.get(dir);
         try {
+            Files.walk(pathToBeDeleted)
+                    .filter(Files::isDirectory)
+                    .forEach(path -> {
+                        try {
+                            FileRepository.evict(path.toString());
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    });
             Files.walk(pathToBeDeleted)
                     .sorted(Comparator.reverseOrder())
                     .map(Path::toFile)
@@ -31,6 +55,234 @@ class FileRepositoryTest extends RepositoryTest {
         }
     }
 
+    static Process startWriter(String dir, String prefix, int count, boolean compact) throws IOException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        return new ProcessBuilder(java, "-cp", System.getProperty("java.class.path"),
+                FileRepositoryWriter.class.getName(), dir, prefix, Integer.toString(count), Boolean.toString(compact))
+                .inheritIO()
+                .start();
+    }
+
+    @Test
+    void multiProcess() throws IOException, InterruptedException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+
+        Process writer = startWriter(tempDir, "child", 200, false);
+        for (int i = 0; i < 200; i++)
+            repository.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+        Assertions.assertTrue(writer.waitFor(60, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, writer.exitValue());
+
+        Assertions.assertEquals(400, repository.readSources().size());
+        SourceImage child = repository.readSource("child source image #199");
+        Assertions.assertEquals(1, repository.readTargets(child).size());
+
+        long generation = repository.getGeneration();
+        Process compacting = startWriter(tempDir, "compacting", 10, true);
+        Assertions.assertTrue(compacting.waitFor(60, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, compacting.exitValue());
+
+        Assertions.assertEquals(410, repository.readSources().size());
+        Assertions.assertTrue(repository.getGeneration() > generation);
+        Assertions.assertEquals(12, Files.size(repository.getJournalFile()));
+
+        repository.reset();
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void baselineSnapshot() throws IOException {
+        String tempDir = getTempDir();
+        try (InputStream in = FileRepositoryTest.class.getResourceAsStream("/snapshots/baseline/images-repository.dat")) {
+            Files.copy(in, Paths.get(tempDir, "images-repository.dat"));
+        }
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(2, repository.readSources().size());
+        SourceImage source = repository.readSource("source-0.png");
+        Assertions.assertEquals("first", source.getDescription());
+        Assertions.assertEquals(Arrays.asList("portrait", "outdoor"), source.getTags());
+        Assertions.assertNull(source.getContentHash());
+        Assertions.assertEquals(Collections.singletonList(source), new ArrayList<>(repository.readSourcesByTag("outdoor")));
+
+        TargetImage target = repository.readTarget("target-0-0.png");
+        Assertions.assertEquals(4, target.getRating());
+        Assertions.assertEquals(Sampler.EULER, target.getSampler());
+        Assertions.assertEquals(Checkpoint.URPM, target.getCheckpoint());
+        Assertions.assertEquals(source, repository.readSource(target));
+        Assertions.assertEquals(2, repository.readTargets(source).size());
+        Assertions.assertEquals(1, repository.readTargets(repository.readSource("source-1.png")).size());
+
+        SourceImage created = repository.createSource(new SourceImageBuilder(sourceImageName(2)).build());
+        repository.createTarget(created, new TargetImageBuilder(targetImageName(2, 0)).build());
+        repository.compact();
+        FileRepository.evict(tempDir);
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(3, reopened.readSources().size());
+        Assertions.assertEquals(created, reopened.readSource(reopened.readTarget(targetImageName(2, 0))));
+        Assertions.assertEquals(Sampler.EULER_A, reopened.readTarget("target-1-0.png").getSampler());
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void tornTail() throws IOException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        for (int i = 0; i < 3; i++)
+            repository.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+        Path journal = repository.getJournalFile();
+        FileRepository.evict(tempDir);
+
+        // the last entry loses its final bytes, as if the process died halfway through the write
+        long size = Files.size(journal);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.truncate(size - 5);
+        }
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(2, reopened.readSources().size());
+        Assertions.assertThrows(NotFoundException.class, () -> reopened.readSource(sourceImageName(2)));
+
+        // the next append replaces the torn bytes instead of landing behind them
+        reopened.createSource(new SourceImageBuilder(sourceImageName(3)).build());
+        FileRepository.evict(tempDir);
+        try (FileChannel channel = FileChannel.open(journal, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{0, 0, 0, 1}), Files.size(journal));
+        }
+        repository = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(3, repository.readSources().size());
+        Assertions.assertNotNull(repository.readSource(sourceImageName(3)));
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void registry() throws IOException, InterruptedException, ExecutionException {
+        String tempDir = getTempDir();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<FileRepository>> futures = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String dataDir = i % 2 == 0 ? tempDir : tempDir + File.separator + "." + File.separator;
+            futures.add(executor.submit(() -> FileRepository.getInstance(dataDir)));
+        }
+        Set<FileRepository> opened = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Future<FileRepository> future : futures)
+            opened.add(future.get());
+        executor.shutdown();
+        Assertions.assertEquals(1, opened.size());
+
+        FileRepository repository = opened.iterator().next();
+        repository.createSource(new SourceImageBuilder(sourceImageName(0)).build());
+        repository.close();
+        Assertions.assertThrows(IllegalStateException.class, repository::readSources);
+
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertNotSame(repository, reopened);
+        Assertions.assertEquals(1, reopened.readSources().size());
+        Assertions.assertTrue(FileRepository.evict(tempDir));
+        Assertions.assertFalse(FileRepository.evict(tempDir));
+
+        Assertions.assertThrows(IllegalArgumentException.class,
+                () -> FileRepository.getInstance(tempDir + File.separator + "missing"));
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void bulkTags() throws IOException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        List<SourceImage> sources = new ArrayList<>();
+        for (int i = 0; i < 50; i++)
+            sources.add(repository.createSource(new SourceImageBuilder(sourceImageName(i)).addTag(i % 2 == 0 ? "even" : "odd").build()));
+        List<Long> persisted = new ArrayList<>();
+        repository.setPersistenceListener((bytes, nanos) -> persisted.add(bytes));
+
+        InpaintManagerService service = new RepositoryInpaintManagerService(repository);
+        Assertions.assertEquals(50, service.addTags(sources, "curated", "even"));
+        Assertions.assertEquals(0, service.addTags(sources, "curated"));
+        Assertions.assertEquals(1, persisted.size());
+        Assertions.assertEquals(50, repository.readSourcesByTag("curated").size());
+        Assertions.assertEquals(Arrays.asList("odd", "curated", "even"), repository.readSource(sourceImageName(1)).getTags());
+
+        Assertions.assertEquals(50, service.renameTag("curated", "approved"));
+        Assertions.assertTrue(repository.readSourcesByTag("curated").isEmpty());
+        Assertions.assertEquals(Arrays.asList("odd", "approved", "even"), repository.readSource(sourceImageName(1)).getTags());
+
+        Assertions.assertEquals(50, service.mergeTags("parity", "odd", "even"));
+        Assertions.assertEquals(Arrays.asList("parity", "approved"), repository.readSource(sourceImageName(1)).getTags());
+        Assertions.assertEquals(25, service.removeTags(new ArrayList<>(repository.readSourcesByTag("parity")).subList(0, 25), "parity"));
+        Assertions.assertEquals(4, persisted.size());
+
+        FileRepository.evict(tempDir);
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(25, reopened.readSourcesByTag("parity").size());
+        Assertions.assertEquals(50, reopened.readSourcesByTag("approved").size());
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void regroupTargets() throws IOException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        SourceImage from = repository.createSource(new SourceImageBuilder(sourceImageName(0)).build());
+        SourceImage to = repository.createSource(new SourceImageBuilder(sourceImageName(1)).build());
+        List<TargetImage> targets = new ArrayList<>();
+        for (int i = 0; i < 100; i++)
+            targets.add(repository.createTarget(from, new TargetImageBuilder(targetImageName(0, i)).build()));
+        List<Long> persisted = new ArrayList<>();
+        repository.setPersistenceListener((bytes, nanos) -> persisted.add(bytes));
+
+        InpaintManagerService service = new RepositoryInpaintManagerService(repository);
+        Assertions.assertTrue(service.reassignAll(to, targets.subList(0, 60).toArray(new TargetImage[0])));
+        Assertions.assertFalse(service.reassignAll(to, targets.subList(0, 60).toArray(new TargetImage[0])));
+        Assertions.assertEquals(1, persisted.size());
+        Assertions.assertEquals(40, repository.readTargets(from).size());
+        Assertions.assertEquals(targets.subList(0, 60), repository.readTargets(to));
+        Assertions.assertEquals(to, repository.readSource(targets.get(0)));
+
+        FileRepository.evict(tempDir);
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(targets.subList(0, 60), reopened.readTargets(to));
+        reopened.compact();
+        FileRepository.evict(tempDir);
+        reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(to, reopened.readSource(targets.get(59)));
+        Assertions.assertEquals(from, reopened.readSource(targets.get(60)));
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void cascadeDeleteAndSweep() throws IOException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        List<SourceImage> sources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sources.add(repository.createSource(new SourceImageBuilder(sourceImageName(i)).build()));
+            for (int j = 0; j < 10; j++)
+                repository.createTarget(sources.get(i), new TargetImageBuilder(targetImageName(i, j)).build());
+        }
+        List<Long> persisted = new ArrayList<>();
+        repository.setPersistenceListener((bytes, nanos) -> persisted.add(bytes));
+
+        Assertions.assertEquals(sources.get(0), repository.deleteSourceCascade(sources.get(0)));
+        Assertions.assertNull(repository.deleteSourceCascade(sources.get(0)));
+        Assertions.assertEquals(1, persisted.size());
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readTarget(targetImageName(0, 0)));
+
+        // a plain delete leaves its targets behind until the next compaction
+        repository.deleteSource(sources.get(1));
+        Assertions.assertNotNull(repository.readTarget(targetImageName(1, 0)));
+        Assertions.assertEquals(10, repository.compact().size());
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readTarget(targetImageName(1, 0)));
+
+        FileRepository.evict(tempDir);
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(1, reopened.readSources().size());
+        Assertions.assertEquals(10, reopened.readTargets(sources.get(2)).size());
+        Assertions.assertThrows(NotFoundException.class, () -> reopened.readTarget(targetImageName(0, 9)));
+        Assertions.assertThrows(NotFoundException.class, () -> reopened.readTarget(targetImageName(1, 9)));
+        Assertions.assertTrue(reopened.compact().isEmpty());
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void createSource() {
         String tempDir = getTempDir();
@@ -45,6 +297,31 @@ class FileRepositoryTest extends RepositoryTest {
         deleteTempDir(tempDir);
     }
 
+    @Test
+    void createInBulk() {
+        String tempDir = getTempDir();
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void bulkCreatesReplayFromJournal() throws IOException {
+        String tempDir = getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        List<SourceImage> sources = repository.createSources(Arrays.asList(
+                new SourceImageBuilder(sourceImageName(0)).build(),
+                new SourceImageBuilder(sourceImageName(1)).build()));
+        List<TargetImage> targets = repository.createTargets(sources.get(1), Arrays.asList(
+                new TargetImageBuilder(targetImageName(1, 0)).build(),
+                new TargetImageBuilder(targetImageName(1, 1)).build()));
+        FileRepository.evict(tempDir);
+
+        FileRepository reopened = FileRepository.getInstance(tempDir);
+        Assertions.assertEquals(sources, new ArrayList<>(reopened.readSources()));
+        Assertions.assertEquals(targets, reopened.readTargets(sources.get(1)));
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void readSourceByTarget() {
         String tempDir = getTempDir();
@@ -66,6 +343,13 @@ class FileRepositoryTest extends RepositoryTest {
         deleteTempDir(tempDir);
     }
 
+    @Test
+    void readSourcesByContentHash() {
+        String tempDir = getTempDir();
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void readTargets() {
         String tempDir = getTempDir();
@@ -80,6 +364,20 @@ class FileRepositoryTest extends RepositoryTest {
         deleteTempDir(tempDir);
     }
 
+    @Test
+    void readSimilarTargets() {
+        String tempDir = getTempDir();
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() {
+        String tempDir = getTempDir();
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void updateSource() {
         String tempDir = getTempDir();
@@ -87,6 +385,20 @@ class FileRepositoryTest extends RepositoryTest {
         deleteTempDir(tempDir);
     }
 
+    @Test
+    void readSourcesByTag() {
+        String tempDir = getTempDir();
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void updateSources() {
+        String tempDir = getTempDir();
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void updateTarget() {
         String tempDir = getTempDir();
@@ -101,6 +413,20 @@ class FileRepositoryTest extends RepositoryTest {
         deleteTempDir(tempDir);
     }
 
+    @Test
+    void sweepOrphans() {
+        String tempDir = getTempDir();
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
+    @Test
+    void deleteSourceCascade() {
+        String tempDir = getTempDir();
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
+
     @Test
     void deleteTarget() {
         String tempDir = getTempDir();
@@ -114,4 +440,11 @@ class FileRepositoryTest extends RepositoryTest {
         RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
         deleteTempDir(tempDir);
     }
+
+    @Test
+    void moveTargets() {
+        String tempDir = getTempDir();
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.FILE, tempDir);
+        deleteTempDir(tempDir);
+    }
 }
\ No newline at end of file
@@ -0,0 +1,23 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+
+import java.io.IOException;
+
+public class FileRepositoryWriter {
+    public static void main(String[] args) throws IOException {
+        FileRepository repository = FileRepository.getInstance(args[0]);
+        String prefix = args[1];
+        int count = Integer.parseInt(args[2]);
+        for (int i = 0; i < count; i++) {
+            String name = String.format("%s source image #%d", prefix, i);
+            repository.createSource(new SourceImageBuilder(name).build());
+            repository.createTarget(new SourceImageBuilder(name).build(),
+                    new TargetImageBuilder(String.format("target image #0 of %s", name)).build());
+        }
+        if (args.length > 3 && Boolean.parseBoolean(args[3]))
+            repository.compact();
+    }
+}
@@ -14,6 +14,11 @@ class InMemoryRepositoryTest extends RepositoryTest {
         RepositoryTest.createTargets(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
 
+    @Test
+    void createInBulk() {
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
     @Test
     void readSourceByTarget() {
         RepositoryTest.readSourceByTarget(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
@@ -29,6 +34,11 @@ class InMemoryRepositoryTest extends RepositoryTest {
         RepositoryTest.readSources(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
 
+    @Test
+    void readSourcesByContentHash() {
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
     @Test
     void readTargets() {
         RepositoryTest.readTargets(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
@@ -39,11 +49,31 @@ class InMemoryRepositoryTest extends RepositoryTest {
         RepositoryTest.readTarget(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
 
+    @Test
+    void readSimilarTargets() {
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() {
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
     @Test
     void updateSource() {
         RepositoryTest.updateSource(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
 
+    @Test
+    void readSourcesByTag() {
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void updateSources() {
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
     @Test
     void updateTarget() {
         RepositoryTest.updateTarget(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
@@ -54,6 +84,16 @@ class InMemoryRepositoryTest extends RepositoryTest {
         RepositoryTest.deleteSource(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
 
+    @Test
+    void sweepOrphans() {
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteSourceCascade() {
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
+
     @Test
     void deleteTarget() {
         RepositoryTest.deleteTarget(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
@@ -63,4 +103,9 @@ class InMemoryRepositoryTest extends RepositoryTest {
     void deleteTargets() {
         RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
     }
+
+    @Test
+    void moveTargets() {
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.IN_MEMORY);
+    }
 }
\ No newline at end of file
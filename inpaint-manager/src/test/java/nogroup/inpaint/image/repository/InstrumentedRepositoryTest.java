@@ -0,0 +1,81 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.metrics.DefaultRepositoryMetrics;
+import nogroup.inpaint.image.repository.metrics.RepositoryError;
+import nogroup.inpaint.image.repository.metrics.RepositoryOperation;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+class InstrumentedRepositoryTest extends RepositoryTest {
+    static RepositoryFactory instrumentedFactory(DefaultRepositoryMetrics metrics) {
+        return new RepositoryFactory() {
+            @Override
+            public Repository create(RepositoryImpl implType, Object... args) throws IOException {
+                return instrument(super.create(implType, args), metrics);
+            }
+        };
+    }
+
+    @Test
+    void createSource() {
+        RepositoryTest.createSource(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void createTargets() {
+        RepositoryTest.createTargets(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readSourceByTarget() {
+        RepositoryTest.readSourceByTarget(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void readTargets() {
+        RepositoryTest.readTargets(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void updateTarget() {
+        RepositoryTest.updateTarget(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void deleteTargets() {
+        RepositoryTest.deleteTargets(instrumentedFactory(new DefaultRepositoryMetrics()), RepositoryImpl.IN_MEMORY);
+    }
+
+    @Test
+    void metrics() {
+        DefaultRepositoryMetrics metrics = new DefaultRepositoryMetrics();
+        RepositoryTest.readTarget(instrumentedFactory(metrics), RepositoryImpl.IN_MEMORY);
+
+        Assertions.assertEquals(2, metrics.getCalls(RepositoryOperation.READ_TARGET));
+        Assertions.assertEquals(1, metrics.getErrors(RepositoryOperation.READ_TARGET, RepositoryError.NOT_FOUND));
+        Assertions.assertEquals(0, metrics.getErrors(RepositoryOperation.CREATE_TARGET, RepositoryError.ALREADY_EXISTS));
+        Assertions.assertEquals(2 * 3 * 3, metrics.getCalls(RepositoryOperation.CREATE_TARGET));
+        Assertions.assertEquals(2, metrics.getLatency(RepositoryOperation.READ_TARGET).getCount());
+    }
+
+    @Test
+    void persistenceMetrics() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        DefaultRepositoryMetrics metrics = new DefaultRepositoryMetrics();
+        RepositoryFactory factory = new RepositoryFactory();
+        Repository repository = factory.instrument(factory.create(RepositoryImpl.FILE, tempDir), metrics);
+
+        repository.createSource(new SourceImageBuilder(sourceImageName(0)).build());
+        Assertions.assertThrows(AlreadyExistsException.class,
+                () -> repository.createSource(new SourceImageBuilder(sourceImageName(0)).width(1).build()));
+        FileRepositoryTest.deleteTempDir(tempDir);
+
+        Assertions.assertEquals(1, metrics.getPersists());
+        Assertions.assertTrue(metrics.getPersistedBytes() > 0);
+        Assertions.assertEquals(2, metrics.getCalls(RepositoryOperation.CREATE_SOURCE));
+        Assertions.assertEquals(1, metrics.getErrors(RepositoryOperation.CREATE_SOURCE, RepositoryError.ALREADY_EXISTS));
+    }
+}
@@ -0,0 +1,244 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.JdbcRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.function.IntFunction;
+
+class JdbcRepositoryTest extends RepositoryTest {
+    static void close(String dir) throws IOException {
+        JdbcRepository.getInstance(dir).close();
+        FileRepositoryTest.deleteTempDir(dir);
+    }
+
+    @Test
+    void createSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createSource(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void createTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createTargets(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void createInBulk() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourceByTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByTarget(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourceByName() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByName(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSources() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSources(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourcesByContentHash() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTargets(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTarget(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSimilarTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSource(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourcesByTag() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateSources() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateTarget(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSource(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void sweepOrphans() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteSourceCascade() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTarget(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void moveTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.JDBC, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void reopen() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        SourceImage source = new SourceImageBuilder(sourceImageName(0))
+                .tags(Arrays.asList("b", "a", "c"))
+                .contentHash("00ff")
+                .build();
+        TargetImage[] targets = {
+                new TargetImageBuilder(targetImageName(0, 2)).rating(3).build(),
+                new TargetImageBuilder(targetImageName(0, 0)).perceptualHash(7L).build(),
+                new TargetImageBuilder(targetImageName(0, 1)).build(),
+        };
+
+        JdbcRepository repository = JdbcRepository.getInstance(tempDir);
+        repository.createSource(source);
+        for (TargetImage target : targets)
+            repository.createTarget(source, target);
+        repository.close();
+
+        JdbcRepository reopened = JdbcRepository.getInstance(tempDir);
+        Assertions.assertNotSame(repository, reopened);
+        Assertions.assertEquals(source, reopened.readSource(sourceImageName(0)));
+        Assertions.assertEquals(Arrays.asList(targets), reopened.readTargets(source));
+        close(tempDir);
+    }
+
+    @Test
+    void concurrentCreate() throws IOException, InterruptedException, ExecutionException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        JdbcRepository repository = JdbcRepository.getInstance(tempDir);
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < 20; i++) {
+            SourceImage source = new SourceImageBuilder(sourceImageName(i)).build();
+            TargetImage target = new TargetImageBuilder(targetImageName(i, 0)).build();
+            // identical records race to a single create, the others see it and return null
+            Assertions.assertEquals(1, race(executor, threads, n -> repository.createSource(source)));
+            Assertions.assertEquals(1, race(executor, threads, n -> repository.createTarget(source, target)));
+            // differing records leave one winner and duplicates for the rest
+            SourceImage other = new SourceImageBuilder(sourceImageName(i + 100)).build();
+            ExecutionException e = Assertions.assertThrows(ExecutionException.class,
+                    () -> race(executor, threads, n -> repository.createSource(other.toBuilder().description("#" + n).build())));
+            Assertions.assertTrue(e.getCause() instanceof AlreadyExistsException, e::toString);
+        }
+        executor.shutdown();
+        Assertions.assertEquals(40, repository.readSources().size());
+        close(tempDir);
+    }
+
+    private static int race(ExecutorService executor, int threads, IntFunction<Object> create) throws InterruptedException, ExecutionException {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Object>> futures = new ArrayList<>();
+        for (int n = 0; n < threads; n++) {
+            int thread = n;
+            futures.add(executor.submit(() -> {
+                start.await();
+                return create.apply(thread);
+            }));
+        }
+        start.countDown();
+        int created = 0;
+        ExecutionException failure = null;
+        for (Future<Object> future : futures)
+            try {
+                if (future.get() != null)
+                    created++;
+            } catch (ExecutionException e) {
+                failure = e;
+            }
+        if (failure != null)
+            throw failure;
+        return created;
+    }
+}
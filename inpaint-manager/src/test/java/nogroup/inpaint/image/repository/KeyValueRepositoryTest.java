@@ -0,0 +1,212 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.KeyValueRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+class KeyValueRepositoryTest extends RepositoryTest {
+    static void close(String dir) throws IOException {
+        KeyValueRepository.getInstance(dir).close();
+        FileRepositoryTest.deleteTempDir(dir);
+    }
+
+    @Test
+    void createSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createSource(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void createTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createTargets(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void createInBulk() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourceByTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByTarget(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourceByName() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByName(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSources() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSources(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourcesByContentHash() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTargets(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTarget(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSimilarTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSource(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void readSourcesByTag() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateSources() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void updateTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateTarget(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteSource() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSource(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void sweepOrphans() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteSourceCascade() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteTarget() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTarget(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void deleteTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void moveTargets() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.KEY_VALUE, tempDir);
+        close(tempDir);
+    }
+
+    @Test
+    void reopen() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        SourceImage source = new SourceImageBuilder(sourceImageName(0))
+                .tags(Arrays.asList("b", "a", "c"))
+                .contentHash("00ff")
+                .build();
+        TargetImage[] targets = {
+                new TargetImageBuilder(targetImageName(0, 2)).rating(3).build(),
+                new TargetImageBuilder(targetImageName(0, 0)).perceptualHash(7L).build(),
+                new TargetImageBuilder(targetImageName(0, 1)).build(),
+        };
+
+        KeyValueRepository repository = KeyValueRepository.getInstance(tempDir);
+        repository.createSource(source);
+        for (TargetImage target : targets)
+            repository.createTarget(source, target);
+        repository.close();
+
+        KeyValueRepository reopened = KeyValueRepository.getInstance(tempDir);
+        Assertions.assertNotSame(repository, reopened);
+        Assertions.assertEquals(source, reopened.readSource(sourceImageName(0)));
+        Assertions.assertEquals(Arrays.asList(targets), reopened.readTargets(source));
+        close(tempDir);
+    }
+
+    @Test
+    void longStrings() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        char[] filler = new char[100 * 1024];
+        Arrays.fill(filler, '\u00e9');
+        String description = new String(filler);
+        SourceImage source = new SourceImageBuilder(sourceImageName(0)).description(description).addTag(description).build();
+        TargetImage target = new TargetImageBuilder(targetImageName(0, 0)).description(description).build();
+
+        KeyValueRepository repository = KeyValueRepository.getInstance(tempDir);
+        repository.createSource(source);
+        repository.createTarget(source, target);
+        repository.close();
+
+        KeyValueRepository reopened = KeyValueRepository.getInstance(tempDir);
+        Assertions.assertEquals(source, reopened.readSource(sourceImageName(0)));
+        Assertions.assertEquals(target, reopened.readTarget(targetImageName(0, 0)));
+        close(tempDir);
+    }
+}
@@ -0,0 +1,228 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.OffHeapRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+
+class OffHeapRepositoryTest extends RepositoryTest {
+
+    @Test
+    void createSource() {
+        RepositoryTest.createSource(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void createTargets() {
+        RepositoryTest.createTargets(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void createInBulk() {
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSourceByTarget() {
+        RepositoryTest.readSourceByTarget(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSourceByName() {
+        RepositoryTest.readSourceByName(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSources() {
+        RepositoryTest.readSources(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSourcesByContentHash() {
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readTargets() {
+        RepositoryTest.readTargets(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readTarget() {
+        RepositoryTest.readTarget(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSimilarTargets() {
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() {
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void updateSource() {
+        RepositoryTest.updateSource(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void readSourcesByTag() {
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void updateSources() {
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void updateTarget() {
+        RepositoryTest.updateTarget(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void deleteSource() {
+        RepositoryTest.deleteSource(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void sweepOrphansContract() {
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void deleteSourceCascade() {
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void deleteTarget() {
+        RepositoryTest.deleteTarget(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void deleteTargets() {
+        RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void moveTargets() {
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.OFF_HEAP);
+    }
+
+    @Test
+    void growth() {
+        OffHeapRepository repository = new OffHeapRepository();
+        int sourcesCount = 5000;
+        int targetsCount = 8;
+        for (int i = 0; i < sourcesCount; i++) {
+            SourceImage source = new SourceImageBuilder(sourceImageName(i)).addTag("tag " + i % 7).build();
+            repository.createSource(source);
+            for (int j = 0; j < targetsCount; j++)
+                repository.createTarget(source, new TargetImageBuilder(targetImageName(i, j))
+                        .rating(j).sampler(Sampler.values()[j % Sampler.values().length]).build());
+        }
+
+        for (int i = 0; i < sourcesCount; i += 2)
+            repository.deleteTargets(repository.readSource(sourceImageName(i)));
+        for (int i = 0; i < sourcesCount; i += 2) {
+            SourceImage source = repository.readSource(sourceImageName(i));
+            repository.createTarget(source, new TargetImageBuilder(targetImageName(i, targetsCount)).build());
+        }
+
+        Assertions.assertEquals(sourcesCount, repository.readSources().size());
+        for (int i = 0; i < sourcesCount; i++) {
+            SourceImage source = repository.readSource(sourceImageName(i));
+            Assertions.assertEquals("tag " + i % 7, source.getTags().get(0));
+            List<TargetImage> targets = repository.readTargets(source);
+            if (i % 2 == 0) {
+                Assertions.assertEquals(1, targets.size());
+                Assertions.assertEquals(targetImageName(i, targetsCount), targets.get(0).getName());
+            } else {
+                Assertions.assertEquals(targetsCount, targets.size());
+                for (int j = 0; j < targetsCount; j++)
+                    Assertions.assertEquals(j, targets.get(j).getRating());
+            }
+        }
+        Assertions.assertTrue(repository.getOffHeapBytes() > repository.getStringBytes());
+    }
+
+    @Test
+    void contentHashAndTagIndexes() {
+        OffHeapRepository repository = new OffHeapRepository();
+        int sourcesCount = 3000;
+        for (int i = 0; i < sourcesCount; i++)
+            repository.createSource(new SourceImageBuilder(sourceImageName(i))
+                    .contentHash("hash " + i % 10).tags(Arrays.asList("tag " + i % 7, "all")).build());
+        Assertions.assertEquals(sourcesCount / 10, repository.readSourcesByContentHash("hash 3").size());
+        Assertions.assertEquals(sourcesCount, repository.readSourcesByTag("all").size());
+
+        for (int i = 0; i < sourcesCount; i += 2)
+            repository.updateSource(repository.readSource(sourceImageName(i)).toBuilder()
+                    .contentHash(null).tags(Collections.singletonList("even")).build());
+        for (int i = 1; i < sourcesCount; i += 6)
+            repository.deleteSource(new SourceImageBuilder(sourceImageName(i)).build());
+
+        Assertions.assertEquals(sourcesCount / 2, repository.readSourcesByTag("even").size());
+        Assertions.assertEquals(sourcesCount / 2 - sourcesCount / 6, repository.readSourcesByTag("all").size());
+        for (SourceImage source : repository.readSourcesByContentHash("hash 3")) {
+            Assertions.assertEquals("hash 3", source.getContentHash());
+            Assertions.assertNotEquals(1, Integer.parseInt(source.getName().replaceAll("\\D", "")) % 6);
+        }
+        Assertions.assertEquals(sourcesCount / 10 * 2 / 3, repository.readSourcesByContentHash("hash 3").size());
+        Assertions.assertTrue(repository.readSourcesByContentHash("hash 4").isEmpty());
+        Assertions.assertTrue(repository.readSourcesByTag("missing").isEmpty());
+    }
+
+    @Test
+    void reclaimsStrings() {
+        OffHeapRepository repository = new OffHeapRepository();
+        SourceImage source = repository.createSource(new SourceImageBuilder(sourceImageName(0)).addTag("tag").build());
+        TargetImage target = repository.createTarget(source, new TargetImageBuilder(targetImageName(0, 0)).build());
+
+        char[] filler = new char[1024];
+        for (int i = 0; i < 4096; i++) {
+            Arrays.fill(filler, (char) ('a' + i % 26));
+            String description = new String(filler);
+            repository.updateSource(source.toBuilder().description(description).build());
+            repository.updateTarget(target.toBuilder().description(description).build());
+        }
+        // 8 MB were written, only the latest descriptions are live
+        Assertions.assertTrue(repository.getStringBytes() < 4 * 1024 * 1024, () -> "strings not reclaimed: " + repository.getStringBytes());
+        Assertions.assertEquals(Collections.singletonList("tag"), repository.readSource(sourceImageName(0)).getTags());
+        Assertions.assertEquals(new String(filler), repository.readSource(sourceImageName(0)).getDescription());
+        Assertions.assertEquals(new String(filler), repository.readTarget(targetImageName(0, 0)).getDescription());
+        Assertions.assertEquals(source.getName(), repository.readSource(target).getName());
+    }
+
+    @Test
+    void sweepOrphans() {
+        OffHeapRepository repository = new OffHeapRepository();
+        List<SourceImage> sources = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            sources.add(repository.createSource(new SourceImageBuilder(sourceImageName(i)).build()));
+            for (int j = 0; j < 2; j++)
+                repository.createTarget(sources.get(i), new TargetImageBuilder(targetImageName(i, j)).build());
+        }
+        repository.deleteSource(sources.get(1));
+        Assertions.assertNotNull(repository.readTarget(targetImageName(1, 0)));
+
+        Assertions.assertEquals(Arrays.asList(
+                new TargetImageBuilder(targetImageName(1, 0)).build(),
+                new TargetImageBuilder(targetImageName(1, 1)).build()), repository.sweepOrphans());
+        Assertions.assertTrue(repository.sweepOrphans().isEmpty());
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readTarget(targetImageName(1, 0)));
+        Assertions.assertEquals(2, repository.readTargets(sources.get(2)).size());
+
+        repository.createSource(sources.get(1));
+        Assertions.assertNotNull(repository.createTarget(sources.get(1), new TargetImageBuilder(targetImageName(1, 0)).build()));
+    }
+}
@@ -0,0 +1,183 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.repository.impl.Mutation;
+import nogroup.inpaint.image.repository.replication.JournalBatch;
+import nogroup.inpaint.image.repository.replication.ReplicaRepository;
+import nogroup.inpaint.image.repository.replication.ReplicationServer;
+import nogroup.inpaint.image.repository.replication.SocketJournalSource;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+class ReplicationTest extends RepositoryTest {
+    private static void write(Repository repository, int from, int to) {
+        for (int i = from; i < to; i++) {
+            SourceImage source = new SourceImageBuilder(sourceImageName(i)).build();
+            repository.createSource(source);
+            repository.createTarget(source, new TargetImageBuilder(targetImageName(i, 0)).build());
+        }
+    }
+
+    @Test
+    void journalShipping() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository leader = FileRepository.getInstance(tempDir);
+        ReplicaRepository replica = new ReplicaRepository(leader);
+
+        write(leader, 0, 10);
+        replica.catchUp();
+        Assertions.assertEquals(1, replica.getBootstraps());
+        Assertions.assertEquals(leader.readSources(), replica.readSources());
+        Assertions.assertEquals(0, replica.getLagBytes());
+
+        write(leader, 10, 20);
+        leader.deleteSource(leader.readSource(sourceImageName(0)));
+        replica.sync();
+        Assertions.assertEquals(21, replica.getAppliedMutations());
+        Assertions.assertEquals(leader.readSources(), replica.readSources());
+        Assertions.assertEquals(1, replica.readTargets(replica.readSource(sourceImageName(19))).size());
+
+        leader.compact();
+        write(leader, 20, 25);
+        replica.catchUp();
+        Assertions.assertEquals(2, replica.getBootstraps());
+        Assertions.assertEquals(leader.readSources(), replica.readSources());
+
+        Assertions.assertThrows(UnsupportedOperationException.class,
+                () -> replica.createSource(new SourceImageBuilder(sourceImageName(99)).build()));
+
+        replica.close();
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void divergedReplica() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository leader = FileRepository.getInstance(tempDir);
+        write(leader, 0, 10);
+        AtomicBoolean diverge = new AtomicBoolean();
+        ReplicaRepository replica = new ReplicaRepository((generation, offset, maxEntries) -> {
+            if (!diverge.getAndSet(false))
+                return leader.ship(generation, offset, maxEntries);
+            // a target of a source the replica does not know cannot be applied
+            Mutation mutation = new Mutation(Mutation.Type.CREATE_TARGET, new SourceImageBuilder(sourceImageName(99)).build(),
+                    new TargetImageBuilder(targetImageName(99, 0)).build());
+            return new JournalBatch(generation, offset, offset, null, Collections.singletonList(mutation));
+        });
+        replica.catchUp();
+        Assertions.assertEquals(1, replica.getBootstraps());
+
+        diverge.set(true);
+        Assertions.assertThrows(IllegalStateException.class, replica::sync);
+        Assertions.assertEquals(1, replica.getFailures());
+        Assertions.assertEquals(-1, replica.getGeneration());
+
+        write(leader, 10, 15);
+        replica.catchUp();
+        Assertions.assertEquals(2, replica.getBootstraps());
+        Assertions.assertEquals(leader.readSources(), replica.readSources());
+
+        replica.close();
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void socketShipping() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository leader = FileRepository.getInstance(tempDir);
+        write(leader, 0, 50);
+
+        try (ReplicationServer server = new ReplicationServer(leader, 0).start();
+             ReplicaRepository replica = new ReplicaRepository(new SocketJournalSource("localhost", server.getPort()))) {
+            replica.start(10);
+            write(leader, 50, 100);
+
+            // the last source arrives one mutation before its target
+            long deadline = System.currentTimeMillis() + 10000;
+            while ((replica.readSources().size() < 100 || replica.readTargets(replica.readSource(sourceImageName(99))).isEmpty())
+                    && System.currentTimeMillis() < deadline)
+                Thread.sleep(10);
+
+            Assertions.assertEquals(leader.readSources(), replica.readSources());
+            Assertions.assertEquals(leader.readTargets(leader.readSource(sourceImageName(99))),
+                    replica.readTargets(replica.readSource(sourceImageName(99))));
+            Assertions.assertEquals(1, server.getFollowers());
+            Assertions.assertTrue(server.getShippedBatches() > 0);
+        }
+
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void replicaEvents() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository leader = FileRepository.getInstance(tempDir);
+        try (ReplicaRepository replica = new ReplicaRepository(leader)) {
+            replica.catchUp();
+            List<RepositoryEvent> received = new CopyOnWriteArrayList<>();
+            replica.subscribe(received::addAll);
+
+            // mutations applied by sync() are published like local writes on the leader
+            write(leader, 0, 5);
+            replica.catchUp();
+            long deadline = System.currentTimeMillis() + 10000;
+            while (received.size() < 10 && System.currentTimeMillis() < deadline)
+                Thread.sleep(5);
+            Assertions.assertEquals(10, received.size());
+            Assertions.assertEquals(RepositoryEvent.Type.SOURCE_CREATED, received.get(0).getType());
+            Assertions.assertEquals(RepositoryEvent.Type.TARGET_ASSIGNED, received.get(1).getType());
+        }
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void stalledLeader() throws IOException, InterruptedException {
+        try (ServerSocket leader = new ServerSocket()) {
+            leader.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            SocketJournalSource source = new SocketJournalSource("localhost", leader.getLocalPort(), 200);
+            ReplicaRepository replica = new ReplicaRepository(source);
+            Assertions.assertThrows(SocketTimeoutException.class, replica::sync);
+
+            // close() must not wait for the monitor held by a sync() blocked on the leader
+            SocketJournalSource blocking = new SocketJournalSource("localhost", leader.getLocalPort(), 0);
+            ReplicaRepository blocked = new ReplicaRepository(blocking);
+            Thread syncing = new Thread(() -> {
+                try {
+                    blocked.sync();
+                } catch (IOException ignored) {
+                }
+            });
+            syncing.start();
+            try (Socket ignored = leader.accept()) {
+                Thread.sleep(100);
+                blocked.close();
+                syncing.join(5000);
+                Assertions.assertFalse(syncing.isAlive());
+            }
+        }
+    }
+
+    @Test
+    void serverBindsLoopback() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        try (ReplicationServer server = new ReplicationServer(FileRepository.getInstance(tempDir), 0)) {
+            Assertions.assertEquals(InetAddress.getLoopbackAddress(), server.getAddress());
+        }
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+}
@@ -0,0 +1,190 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.events.RepositoryEvent;
+import nogroup.inpaint.image.repository.events.Subscription;
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JdbcRepository;
+import nogroup.inpaint.image.repository.impl.KeyValueRepository;
+import nogroup.inpaint.image.repository.impl.OffHeapRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.stream.Collectors;
+
+class RepositoryEventsTest extends RepositoryTest {
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (!condition.getAsBoolean() && System.currentTimeMillis() < deadline)
+            Thread.sleep(5);
+        Assertions.assertTrue(condition.getAsBoolean());
+    }
+
+    private static void events(Repository repository) throws InterruptedException {
+        List<RepositoryEvent> received = new CopyOnWriteArrayList<>();
+        Subscription subscription = repository.subscribe(received::addAll);
+
+        SourceImage source = new SourceImageBuilder(sourceImageName(0)).build();
+        TargetImage target = new TargetImageBuilder(targetImageName(0, 0)).build();
+        repository.createSource(source);
+        repository.createSource(source);
+        repository.createTarget(source, target);
+        repository.createTarget(source, new TargetImageBuilder(targetImageName(0, 1)).build());
+        repository.updateTarget(new TargetImageBuilder(targetImageName(0, 0)).rating(5).build());
+        repository.deleteTargets(source);
+        repository.deleteSource(source);
+
+        await(() -> received.size() == 7);
+        Assertions.assertEquals(Arrays.asList(
+                        RepositoryEvent.Type.SOURCE_CREATED,
+                        RepositoryEvent.Type.TARGET_ASSIGNED,
+                        RepositoryEvent.Type.TARGET_ASSIGNED,
+                        RepositoryEvent.Type.TARGET_UPDATED,
+                        RepositoryEvent.Type.TARGET_DELETED,
+                        RepositoryEvent.Type.TARGET_DELETED,
+                        RepositoryEvent.Type.SOURCE_DELETED),
+                received.stream().map(RepositoryEvent::getType).collect(Collectors.toList()));
+        Assertions.assertEquals(source, received.get(1).getSource());
+        Assertions.assertEquals(target, received.get(1).getTarget());
+        for (int i = 1; i < received.size(); i++)
+            Assertions.assertTrue(received.get(i).getSequence() > received.get(i - 1).getSequence());
+
+        subscription.close();
+        repository.createSource(new SourceImageBuilder(sourceImageName(1)).build());
+        Thread.sleep(20);
+        Assertions.assertEquals(7, received.size());
+        Assertions.assertEquals(7, subscription.getDelivered());
+    }
+
+    @Test
+    void events() throws InterruptedException {
+        events(new InMemoryRepository());
+    }
+
+    @Test
+    void offHeapEvents() throws InterruptedException {
+        events(new OffHeapRepository());
+    }
+
+    @Test
+    void keyValueEvents() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        events(KeyValueRepository.getInstance(tempDir));
+        KeyValueRepositoryTest.close(tempDir);
+    }
+
+    @Test
+    void jdbcEvents() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        events(JdbcRepository.getInstance(tempDir));
+        JdbcRepositoryTest.close(tempDir);
+    }
+
+    @Test
+    void backpressure() throws InterruptedException {
+        Repository repository = new InMemoryRepository();
+        List<RepositoryEvent> blocked = new CopyOnWriteArrayList<>();
+        Subscription blocking = repository.subscribe(events -> {
+            blocked.addAll(events);
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 4, Subscription.Overflow.BLOCK);
+
+        CountDownLatch release = new CountDownLatch(1);
+        Subscription dropping = repository.subscribe(events -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 8, Subscription.Overflow.DROP);
+
+        for (int i = 0; i < 200; i++)
+            repository.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+
+        await(() -> blocked.size() == 200);
+        Assertions.assertEquals(0, blocking.getDropped());
+        Assertions.assertEquals(4, blocking.getCapacity());
+
+        Assertions.assertTrue(dropping.getDropped() > 0);
+        release.countDown();
+        await(() -> dropping.getDelivered() + dropping.getDropped() == 200);
+
+        blocking.close();
+        dropping.close();
+    }
+
+    @Test
+    void fileRepositoryEvents() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        List<RepositoryEvent> received = new CopyOnWriteArrayList<>();
+        repository.subscribe(received::addAll);
+
+        repository.createSource(new SourceImageBuilder(sourceImageName(0)).build());
+        Process writer = FileRepositoryTest.startWriter(tempDir, "child", 10, false);
+        Assertions.assertTrue(writer.waitFor(60, TimeUnit.SECONDS));
+        Assertions.assertEquals(0, writer.exitValue());
+
+        // changes made by the other process are published once this process tails the journal
+        Assertions.assertEquals(11, repository.readSources().size());
+        await(() -> received.size() == 21);
+        List<RepositoryEvent.Type> types = new ArrayList<>();
+        for (RepositoryEvent event : received)
+            types.add(event.getType());
+        Assertions.assertEquals(11, types.stream().filter(RepositoryEvent.Type.SOURCE_CREATED::equals).count());
+        Assertions.assertEquals(10, types.stream().filter(RepositoryEvent.Type.TARGET_ASSIGNED::equals).count());
+
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void fileRepositoryDeliversOutsideLock() throws IOException, InterruptedException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        FileRepository repository = FileRepository.getInstance(tempDir);
+        CountDownLatch release = new CountDownLatch(1);
+        Subscription subscription = repository.subscribe(events -> {
+            try {
+                release.await(10, TimeUnit.SECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, 1, Subscription.Overflow.BLOCK);
+
+        // the first writer parks on the full subscriber, the second one still commits
+        Thread first = new Thread(() -> {
+            for (int i = 0; i < 50; i++)
+                repository.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+        });
+        first.start();
+        await(() -> first.getState() == Thread.State.TIMED_WAITING);
+        int committed = repository.readSources().size();
+        Thread second = new Thread(() -> repository.createSource(new SourceImageBuilder(sourceImageName(50)).build()));
+        second.start();
+        await(() -> repository.readSources().size() == committed + 1);
+
+        release.countDown();
+        first.join(10000);
+        second.join(10000);
+        Assertions.assertFalse(first.isAlive());
+        Assertions.assertFalse(second.isAlive());
+        await(() -> subscription.getDelivered() == 51);
+        subscription.close();
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+}
@@ -2,6 +2,9 @@ package nogroup.inpaint.image.repository;
 
 import nogroup.inpaint.image.repository.impl.FileRepository;
 import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JdbcRepository;
+import nogroup.inpaint.image.repository.impl.KeyValueRepository;
+import nogroup.inpaint.image.repository.impl.ShardedRepository;
 import nogroup.inpaint.image.source.SourceImage;
 import nogroup.inpaint.image.source.SourceImageBuilder;
 import nogroup.inpaint.image.target.TargetImage;
@@ -63,16 +66,26 @@ public class RepositoryTest {
         return populatedRepo(map, repository);
     }
 
+    protected static void reset(Repository repository) throws IOException {
+        if (repository instanceof FileRepository)
+            ((FileRepository) repository).reset();
+        if (repository instanceof JdbcRepository)
+            ((JdbcRepository) repository).reset();
+        if (repository instanceof KeyValueRepository)
+            ((KeyValueRepository) repository).reset();
+        if (repository instanceof ShardedRepository)
+            for (Repository shard : ((ShardedRepository) repository).getShards())
+                reset(shard);
+    }
+
     protected static Supplier<Repository> populatedRepo(Map<SourceImage, TargetImage[]> map, Repository repository) {
         return () -> {
             if (map == null)
                 return repository;
-            if (repository instanceof FileRepository) {
-                try {
-                    ((FileRepository) repository).reset();
-                } catch (IOException e) {
-                    e.printStackTrace();
-                }
+            try {
+                reset(repository);
+            } catch (IOException e) {
+                e.printStackTrace();
             }
             for (Map.Entry<SourceImage, TargetImage[]> entry : map.entrySet()) {
                 if (entry.getKey() == null)
@@ -324,6 +337,37 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void createInBulk(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        Repository repository = populatedRepo(1, 1).get();
+        SourceImage existing = new SourceImageBuilder(sourceImageName(0)).build();
+        List<SourceImage> sources = Arrays.asList(
+                existing,
+                existing.toBuilder().description("changed").build(),
+                new SourceImageBuilder(sourceImageName(1)).addTag("bulk").build(),
+                new SourceImageBuilder(sourceImageName(2)).build(),
+                new SourceImageBuilder(sourceImageName(1)).build());
+
+        // names already taken are skipped, whatever their content
+        Assertions.assertEquals(Arrays.asList(sources.get(2), sources.get(3)), repository.createSources(sources));
+        Assertions.assertEquals(3, repository.readSources().size());
+        Assertions.assertEquals(Collections.singletonList("bulk"), repository.readSource(sourceImageName(1)).getTags());
+        Assertions.assertTrue(repository.createSources(sources).isEmpty());
+
+        List<TargetImage> targets = Arrays.asList(
+                new TargetImageBuilder(targetImageName(0, 0)).build(),
+                new TargetImageBuilder(targetImageName(1, 0)).rating(3).build(),
+                new TargetImageBuilder(targetImageName(1, 1)).build());
+        Assertions.assertEquals(targets.subList(1, 3), repository.createTargets(sources.get(2), targets));
+        Assertions.assertEquals(targets.subList(1, 3), repository.readTargets(sources.get(2)));
+        Assertions.assertEquals(existing, repository.readSource(targets.get(0)));
+        Assertions.assertTrue(repository.createTargets(sources.get(2), targets).isEmpty());
+        Assertions.assertThrows(NotFoundException.class,
+                () -> repository.createTargets(new SourceImageBuilder(sourceImageName(9)).build(), targets));
+    }
+
     static void readSourceByTarget(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
         RepositoryTest.factory = factory;
         RepositoryTest.impl = impl;
@@ -468,6 +512,70 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void readSourcesByContentHash(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final String contentHash;
+            final List<SourceImage> sources;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected, String contentHash, List<SourceImage> sources) {
+                super(name, repositorySupplier, throwable, expected);
+                this.contentHash = contentHash;
+                this.sources = sources;
+            }
+
+            @Override
+            protected void mainPart() {
+                Set<SourceImage> sources = this.repository.readSourcesByContentHash(this.contentHash);
+                Assertions.assertEquals(new HashSet<>(this.sources), sources);
+            }
+
+            @Override
+            protected void finallyPart() {
+            }
+        }
+
+        Map<SourceImage, TargetImage[]> hashed = new HashMap<>();
+        hashed.put(new SourceImageBuilder(sourceImageName(0)).contentHash("aaaa").build(), new TargetImage[]{});
+        hashed.put(new SourceImageBuilder(sourceImageName(1)).contentHash("aaaa").build(), new TargetImage[]{});
+        hashed.put(new SourceImageBuilder(sourceImageName(2)).contentHash("bbbb").build(), new TargetImage[]{});
+        hashed.put(new SourceImageBuilder(sourceImageName(3)).build(), new TargetImage[]{});
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("read duplicated sources by content hash",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        "aaaa",
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).contentHash("aaaa").build(),
+                                new SourceImageBuilder(sourceImageName(1)).contentHash("aaaa").build()
+                        )
+                ),
+                new Testcase("read single source by content hash",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        "bbbb",
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(2)).contentHash("bbbb").build()
+                        )
+                ),
+                new Testcase("read sources by unknown content hash",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        "cccc",
+                        Arrays.asList()
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
     static void readTargets(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
         RepositoryTest.factory = factory;
         RepositoryTest.impl = impl;
@@ -569,6 +677,97 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void readSimilarTargets(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final TargetImage target;
+            final int maxDistance;
+            final List<TargetImage> similar;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected, TargetImage target, int maxDistance, List<TargetImage> similar) {
+                super(name, repositorySupplier, throwable, expected);
+                this.target = target;
+                this.maxDistance = maxDistance;
+                this.similar = similar;
+            }
+
+            @Override
+            protected void mainPart() {
+                List<TargetImage> similar = this.repository.readSimilarTargets(this.target, this.maxDistance);
+                Assertions.assertEquals(this.similar, similar);
+            }
+
+            @Override
+            protected void finallyPart() {
+            }
+        }
+
+        Map<SourceImage, TargetImage[]> hashed = new HashMap<>();
+        hashed.put(new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                new TargetImageBuilder(targetImageName(0, 0)).perceptualHash(0xFFL).build(),
+                new TargetImageBuilder(targetImageName(0, 1)).perceptualHash(0xFEL).build(),
+                new TargetImageBuilder(targetImageName(0, 2)).perceptualHash(0xF0F0L).build(),
+        });
+        hashed.put(new SourceImageBuilder(sourceImageName(1)).build(), new TargetImage[]{
+                new TargetImageBuilder(targetImageName(1, 0)).perceptualHash(0xFCL).build(),
+                new TargetImageBuilder(targetImageName(1, 1)).build(),
+                new TargetImageBuilder(targetImageName(1, 2)).perceptualHash(0L).build(),
+        });
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("read similar targets",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        new TargetImageBuilder(targetImageName(0, 0)).build(),
+                        2,
+                        Arrays.asList(
+                                new TargetImageBuilder(targetImageName(0, 1)).perceptualHash(0xFEL).build(),
+                                new TargetImageBuilder(targetImageName(1, 0)).perceptualHash(0xFCL).build()
+                        )
+                ),
+                new Testcase("read exactly similar targets",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        new TargetImageBuilder(targetImageName(0, 0)).build(),
+                        0,
+                        Arrays.asList()
+                ),
+                new Testcase("read similar targets of not hashed target",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        new TargetImageBuilder(targetImageName(1, 1)).build(),
+                        64,
+                        Arrays.asList()
+                ),
+                new Testcase("read similar targets of zero hashed target",
+                        populatedRepo(hashed),
+                        null,
+                        null,
+                        new TargetImageBuilder(targetImageName(1, 2)).build(),
+                        6,
+                        Arrays.asList(
+                                new TargetImageBuilder(targetImageName(1, 0)).perceptualHash(0xFCL).build()
+                        )
+                ),
+                new Testcase("read similar targets of unknown target",
+                        populatedRepo(hashed),
+                        new NotFoundException("unknown target nogroup.inpaint.image:"),
+                        null,
+                        new TargetImageBuilder(targetImageName(2, 0)).build(),
+                        2,
+                        null
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
     static void updateSource(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
         RepositoryTest.factory = factory;
         RepositoryTest.impl = impl;
@@ -629,6 +828,136 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void readSourcesByTag(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final String tag;
+            final List<SourceImage> sources;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected, String tag, List<SourceImage> sources) {
+                super(name, repositorySupplier, throwable, expected);
+                this.tag = tag;
+                this.sources = sources;
+            }
+
+            @Override
+            protected void mainPart() {
+                Set<SourceImage> sources = this.repository.readSourcesByTag(this.tag);
+                Assertions.assertEquals(new HashSet<>(this.sources), sources);
+            }
+
+            @Override
+            protected void finallyPart() {
+            }
+        }
+
+        Map<SourceImage, TargetImage[]> tagged = new HashMap<>();
+        tagged.put(new SourceImageBuilder(sourceImageName(0)).addTag("portrait").addTag("dark").build(), new TargetImage[]{});
+        tagged.put(new SourceImageBuilder(sourceImageName(1)).addTag("portrait").build(), new TargetImage[]{});
+        tagged.put(new SourceImageBuilder(sourceImageName(2)).build(), new TargetImage[]{});
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("read sources by shared tag",
+                        populatedRepo(tagged),
+                        null,
+                        null,
+                        "portrait",
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).addTag("portrait").addTag("dark").build(),
+                                new SourceImageBuilder(sourceImageName(1)).addTag("portrait").build()
+                        )
+                ),
+                new Testcase("read sources by single tag",
+                        populatedRepo(tagged),
+                        null,
+                        null,
+                        "dark",
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).addTag("portrait").addTag("dark").build()
+                        )
+                ),
+                new Testcase("read sources by unknown tag",
+                        populatedRepo(tagged),
+                        null,
+                        null,
+                        "landscape",
+                        Arrays.asList()
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
+    static void updateSources(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final List<SourceImage> sources;
+            final List<SourceImage> updatedSources;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected, List<SourceImage> sources, List<SourceImage> updatedSources) {
+                super(name, repositorySupplier, throwable, expected);
+                this.sources = sources;
+                this.updatedSources = updatedSources;
+            }
+
+            @Override
+            protected void mainPart() {
+                List<SourceImage> updatedSources = this.repository.updateSources(this.sources);
+                Assertions.assertEquals(new HashSet<>(this.updatedSources), new HashSet<>(updatedSources));
+                for (SourceImage source : updatedSources)
+                    for (String tag : source.getTags())
+                        Assertions.assertTrue(this.repository.readSourcesByTag(tag).contains(source));
+            }
+
+            @Override
+            protected void finallyPart() {
+                equalFinallyPart();
+            }
+        }
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("update sources",
+                        populatedRepo(3),
+                        null,
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).addTag("a").build(), new TargetImage[]{}},
+                                {new SourceImageBuilder(sourceImageName(1)).addTag("a").addTag("b").build(), new TargetImage[]{}},
+                                {new SourceImageBuilder(sourceImageName(2)).build(), new TargetImage[]{}}
+                        }),
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).addTag("a").build(),
+                                new SourceImageBuilder(sourceImageName(1)).addTag("a").addTag("b").build(),
+                                new SourceImageBuilder(sourceImageName(2)).build()
+                        ),
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).addTag("a").build(),
+                                new SourceImageBuilder(sourceImageName(1)).addTag("a").addTag("b").build()
+                        )
+                ),
+                new Testcase("update sources with unknown source",
+                        populatedRepo(2),
+                        new NotFoundException("unknown source nogroup.inpaint.image:"),
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{}},
+                                {new SourceImageBuilder(sourceImageName(1)).build(), new TargetImage[]{}}
+                        }),
+                        Arrays.asList(
+                                new SourceImageBuilder(sourceImageName(0)).addTag("a").build(),
+                                new SourceImageBuilder(sourceImageName(2)).addTag("a").build()
+                        ),
+                        null
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
     static void updateTarget(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
         RepositoryTest.factory = factory;
         RepositoryTest.impl = impl;
@@ -747,6 +1076,72 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void deleteSourceCascade(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final SourceImage source;
+            final SourceImage deletedSource;
+            final List<TargetImage> deletedTargets;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected,
+                            SourceImage source, SourceImage deletedSource, List<TargetImage> deletedTargets) {
+                super(name, repositorySupplier, throwable, expected);
+                this.source = source;
+                this.deletedSource = deletedSource;
+                this.deletedTargets = deletedTargets;
+            }
+
+            @Override
+            protected void mainPart() {
+                SourceImage deletedSource = this.repository.deleteSourceCascade(this.source);
+                Assertions.assertEquals(this.deletedSource, deletedSource);
+                for (TargetImage target : this.deletedTargets)
+                    Assertions.assertThrows(NotFoundException.class, () -> this.repository.readTarget(target.getName()));
+            }
+
+            @Override
+            protected void finallyPart() {
+                equalFinallyPart();
+            }
+        }
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("delete source with its targets",
+                        populatedRepo(2, 2),
+                        null,
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(1)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(1, 0)).build(),
+                                        new TargetImageBuilder(targetImageName(1, 1)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        Arrays.asList(
+                                new TargetImageBuilder(targetImageName(0, 0)).build(),
+                                new TargetImageBuilder(targetImageName(0, 1)).build()
+                        )
+                ),
+                new Testcase("delete unknown source with its targets",
+                        populatedRepo(1, 1),
+                        null,
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(0, 0)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(1)).build(),
+                        null,
+                        Collections.emptyList()
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
     static void deleteTarget(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
         RepositoryTest.factory = factory;
         RepositoryTest.impl = impl;
@@ -870,6 +1265,119 @@ public class RepositoryTest {
             testcase.run();
     }
 
+    static void moveTargets(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        class Testcase extends BaseTestcase {
+            final SourceImage from;
+            final SourceImage to;
+            final TargetImage[] targets;
+            final List<TargetImage> movedTargets;
+
+            public Testcase(String name, Supplier<Repository> repositorySupplier, Throwable throwable, Repository expected,
+                            SourceImage from, SourceImage to, TargetImage[] targets, List<TargetImage> movedTargets) {
+                super(name, repositorySupplier, throwable, expected);
+                this.from = from;
+                this.to = to;
+                this.targets = targets;
+                this.movedTargets = movedTargets;
+            }
+
+            @Override
+            protected void mainPart() {
+                List<TargetImage> movedTargets = this.repository.moveTargets(this.from, this.to, this.targets);
+                Assertions.assertEquals(this.movedTargets, movedTargets);
+                for (TargetImage target : movedTargets)
+                    Assertions.assertEquals(this.to, this.repository.readSource(target));
+            }
+
+            @Override
+            protected void finallyPart() {
+                equalFinallyPart();
+            }
+        }
+
+        Testcase[] testcases = new Testcase[]{
+                new Testcase("move targets",
+                        populatedRepo(2, 3),
+                        null,
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(0, 1)).build()
+                                }},
+                                {new SourceImageBuilder(sourceImageName(1)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(1, 0)).build(),
+                                        new TargetImageBuilder(targetImageName(1, 1)).build(),
+                                        new TargetImageBuilder(targetImageName(1, 2)).build(),
+                                        new TargetImageBuilder(targetImageName(0, 2)).build(),
+                                        new TargetImageBuilder(targetImageName(0, 0)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new SourceImageBuilder(sourceImageName(1)).build(),
+                        new TargetImage[]{
+                                new TargetImageBuilder(targetImageName(0, 2)).build(),
+                                new TargetImageBuilder(targetImageName(0, 0)).build(),
+                                new TargetImageBuilder(targetImageName(0, 2)).build()
+                        },
+                        Arrays.asList(
+                                new TargetImageBuilder(targetImageName(0, 2)).build(),
+                                new TargetImageBuilder(targetImageName(0, 0)).build()
+                        )
+                ),
+                new Testcase("move targets within the same source",
+                        populatedRepo(1, 2),
+                        null,
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(0, 0)).build(),
+                                        new TargetImageBuilder(targetImageName(0, 1)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new TargetImage[]{new TargetImageBuilder(targetImageName(0, 0)).build()},
+                        Collections.emptyList()
+                ),
+                new Testcase("move targets not assigned to the source",
+                        populatedRepo(2, 1),
+                        new NotFoundException("target nogroup.inpaint.image not assigned to source nogroup.inpaint.image:"),
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(0, 0)).build()
+                                }},
+                                {new SourceImageBuilder(sourceImageName(1)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(1, 0)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new SourceImageBuilder(sourceImageName(1)).build(),
+                        new TargetImage[]{
+                                new TargetImageBuilder(targetImageName(0, 0)).build(),
+                                new TargetImageBuilder(targetImageName(1, 0)).build()
+                        },
+                        null
+                ),
+                new Testcase("move targets to unknown source",
+                        populatedRepo(1, 1),
+                        new NotFoundException("unknown source nogroup.inpaint.image:"),
+                        expectedRepo(new Object[][]{
+                                {new SourceImageBuilder(sourceImageName(0)).build(), new TargetImage[]{
+                                        new TargetImageBuilder(targetImageName(0, 0)).build()
+                                }}
+                        }),
+                        new SourceImageBuilder(sourceImageName(0)).build(),
+                        new SourceImageBuilder(sourceImageName(1)).build(),
+                        new TargetImage[]{new TargetImageBuilder(targetImageName(0, 0)).build()},
+                        null
+                ),
+        };
+
+        for (Testcase testcase : testcases)
+            testcase.run();
+    }
+
     protected static abstract class BaseTestcase implements Runnable {
         final String name;
         final Supplier<Repository> repositorySupplier;
@@ -949,4 +1457,74 @@ public class RepositoryTest {
             }
         }
     }
+
+    static void sweepOrphans(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        Repository repository = populatedRepo(3, 2).get();
+        repository.deleteSource(new SourceImageBuilder(sourceImageName(1)).build());
+        Assertions.assertNotNull(repository.readTarget(targetImageName(1, 0)));
+
+        Assertions.assertEquals(new HashSet<>(Arrays.asList(
+                        new TargetImageBuilder(targetImageName(1, 0)).build(),
+                        new TargetImageBuilder(targetImageName(1, 1)).build())),
+                new HashSet<>(repository.sweepOrphans()));
+        Assertions.assertTrue(repository.sweepOrphans().isEmpty());
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readTarget(targetImageName(1, 0)));
+        Assertions.assertEquals(2, repository.readTargets(new SourceImageBuilder(sourceImageName(2)).build()).size());
+    }
+
+    static void readSimilarTargetsByHash(RepositoryFactory factory, RepositoryImpl impl, Object... args) {
+        RepositoryTest.factory = factory;
+        RepositoryTest.impl = impl;
+        RepositoryTest.args = args;
+        Random random = new Random(42);
+        long[] centers = {0L, -1L, 0x0123456789ABCDEFL, 0xF0F0F0F00F0F0F0FL};
+        Map<String, Long> hashes = new HashMap<>();
+        Map<SourceImage, TargetImage[]> map = new HashMap<>();
+        for (int i = 0; i < 20; i++) {
+            TargetImage[] targets = new TargetImage[10];
+            for (int j = 0; j < targets.length; j++) {
+                long hash = centers[random.nextInt(centers.length)];
+                for (int k = random.nextInt(24); k > 0; k--)
+                    hash ^= 1L << random.nextInt(Long.SIZE);
+                hashes.put(targetImageName(i, j), hash);
+                targets[j] = new TargetImageBuilder(targetImageName(i, j)).perceptualHash(hash).build();
+            }
+            map.put(new SourceImageBuilder(sourceImageName(i)).build(), targets);
+        }
+        Repository repository = populatedRepo(map).get();
+        assertSimilarTargets(repository, hashes, centers, random);
+
+        for (int i = 0; i < 20; i += 3)
+            repository.deleteTarget(new TargetImageBuilder(targetImageName(i, 0)).build());
+        for (int i = 0; i < 20; i += 2) {
+            TargetImage target = repository.readTarget(targetImageName(i, 1));
+            long hash = target.getPerceptualHash() ^ 0xFFFFL;
+            repository.updateTarget(target.toBuilder().perceptualHash(hash).build());
+            hashes.put(target.getName(), hash);
+        }
+        for (int i = 0; i < 20; i += 3)
+            hashes.remove(targetImageName(i, 0));
+        assertSimilarTargets(repository, hashes, centers, random);
+    }
+
+    private static void assertSimilarTargets(Repository repository, Map<String, Long> hashes, long[] centers, Random random) {
+        for (int maxDistance : new int[]{0, 3, 4, 9, 15, 16, 24}) {
+            for (long center : centers) {
+                long hash = center ^ (1L << random.nextInt(Long.SIZE));
+                List<String> expected = hashes.entrySet().stream()
+                        .filter(entry -> Long.bitCount(entry.getValue() ^ hash) <= maxDistance)
+                        .sorted(Comparator.<Map.Entry<String, Long>>comparingInt(entry -> Long.bitCount(entry.getValue() ^ hash))
+                                .thenComparing(Map.Entry::getKey))
+                        .map(Map.Entry::getKey)
+                        .collect(Collectors.toList());
+                List<String> similar = repository.readSimilarTargets(hash, maxDistance).stream()
+                        .map(TargetImage::getName)
+                        .collect(Collectors.toList());
+                Assertions.assertEquals(expected, similar, "distance " + maxDistance);
+            }
+        }
+    }
 }
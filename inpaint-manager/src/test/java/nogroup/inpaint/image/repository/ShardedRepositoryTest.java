@@ -0,0 +1,293 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.ShardedRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+class ShardedRepositoryTest extends RepositoryTest {
+
+    @Test
+    void createSource() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createSource(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void createTargets() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createTargets(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void createInBulk() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.createInBulk(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSourceByTarget() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByTarget(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSourceByName() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourceByName(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSources() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSources(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSourcesByContentHash() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByContentHash(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readTargets() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTargets(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readTarget() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readTarget(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSimilarTargets() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargets(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSimilarTargetsByHash() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSimilarTargetsByHash(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void updateSource() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSource(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void readSourcesByTag() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.readSourcesByTag(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void updateSources() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateSources(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void updateTarget() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.updateTarget(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void deleteSource() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSource(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void sweepOrphans() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.sweepOrphans(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void deleteSourceCascade() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteSourceCascade(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void deleteTarget() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTarget(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void deleteTargets() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.deleteTargets(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void moveTargets() {
+        String tempDir = FileRepositoryTest.getTempDir();
+        RepositoryTest.moveTargets(new RepositoryFactory(), RepositoryImpl.SHARDED, tempDir, 3);
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+
+    @Test
+    void placement() {
+        List<Repository> shards = Arrays.asList(new InMemoryRepository(), new InMemoryRepository(), new InMemoryRepository());
+        ShardedRepository repository = new ShardedRepository(shards);
+        for (int i = 0; i < 300; i++) {
+            SourceImage source = new SourceImageBuilder(sourceImageName(i)).build();
+            repository.createSource(source);
+            repository.createTarget(source, new TargetImageBuilder(targetImageName(i, 0)).build());
+        }
+
+        int total = 0;
+        for (Repository shard : shards) {
+            int count = shard.readSources().size();
+            Assertions.assertTrue(count > 50, () -> "unbalanced shard: " + count);
+            for (SourceImage source : shard.readSources())
+                Assertions.assertEquals(1, shard.readTargets(source).size());
+            total += count;
+        }
+        Assertions.assertEquals(300, total);
+
+        ShardedRepository reopened = new ShardedRepository(shards);
+        for (int i = 0; i < 300; i++)
+            Assertions.assertEquals(sourceImageName(i), reopened.readSource(new TargetImageBuilder(targetImageName(i, 0)).build()).getName());
+
+        SourceImage other = new SourceImageBuilder(sourceImageName(1)).build();
+        TargetImage taken = new TargetImageBuilder(targetImageName(0, 0)).build();
+        Assertions.assertThrows(AlreadyExistsException.class, () -> repository.createTarget(other, taken));
+    }
+
+    @Test
+    void routesTargetsWithoutFanOut() {
+        final Map<Repository, Integer> lookups = new ConcurrentHashMap<>();
+        List<Repository> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            shards.add(new InMemoryRepository() {
+                @Override
+                public TargetImage readTarget(String name) {
+                    lookups.merge(this, 1, Integer::sum);
+                    return super.readTarget(name);
+                }
+            });
+        ShardedRepository populated = new ShardedRepository(shards);
+        for (int i = 0; i < 30; i++) {
+            SourceImage source = populated.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+            populated.createTarget(source, new TargetImageBuilder(targetImageName(i, 0)).build());
+        }
+
+        // a fresh instance indexes the targets from the shards it is given
+        ShardedRepository repository = new ShardedRepository(shards);
+        lookups.clear();
+        for (int i = 0; i < 30; i++) {
+            TargetImage target = repository.readTarget(targetImageName(i, 0));
+            Assertions.assertEquals(sourceImageName(i), repository.readSource(target).getName());
+            repository.updateTarget(target.toBuilder().rating(5).build());
+            Assertions.assertEquals(target.getName(), repository.deleteTarget(target).getName());
+        }
+        int total = 0;
+        for (int count : lookups.values())
+            total += count;
+        Assertions.assertEquals(30, total);
+    }
+
+    @Test
+    void crossShardMoveKeepsTargetsOnFailure() {
+        final Set<String> failing = new HashSet<>();
+        List<Repository> shards = new ArrayList<>();
+        for (int i = 0; i < 3; i++)
+            shards.add(new InMemoryRepository() {
+                @Override
+                public TargetImage createTarget(SourceImage source, TargetImage target) {
+                    if (failing.contains(source.getName() + "/" + target.getName()))
+                        throw new IllegalStateException("shard unavailable");
+                    return super.createTarget(source, target);
+                }
+            });
+        ShardedRepository repository = new ShardedRepository(shards);
+        for (int i = 0; i < 10; i++) {
+            SourceImage source = repository.createSource(new SourceImageBuilder(sourceImageName(i)).build());
+            for (int j = 0; j < 2; j++)
+                repository.createTarget(source, new TargetImageBuilder(targetImageName(i, j)).build());
+        }
+        SourceImage from = repository.readSource(sourceImageName(0));
+        Repository fromShard = null;
+        for (Repository shard : shards)
+            if (shard.readSources().contains(from))
+                fromShard = shard;
+        SourceImage to = null;
+        Repository toShard = null;
+        for (int i = 1; to == null; i++)
+            for (Repository shard : shards)
+                if (shard != fromShard && shard.readSources().contains(repository.readSource(sourceImageName(i)))) {
+                    to = repository.readSource(sourceImageName(i));
+                    toShard = shard;
+                }
+        TargetImage first = repository.readTarget(targetImageName(0, 0));
+        TargetImage second = repository.readTarget(targetImageName(0, 1));
+
+        // a target the other shard already holds fails the move before anything is deleted
+        toShard.createTarget(to, second);
+        SourceImage target = to;
+        Assertions.assertThrows(AlreadyExistsException.class, () -> repository.moveTargets(from, target, first, second));
+        Assertions.assertEquals(from, repository.readSource(first));
+        Assertions.assertEquals(from, repository.readSource(second));
+        toShard.deleteTarget(second);
+
+        // a failed create restores the target on its own shard
+        failing.add(to.getName() + "/" + second.getName());
+        Assertions.assertThrows(IllegalStateException.class, () -> repository.moveTargets(from, target, first, second));
+        Assertions.assertEquals(to, repository.readSource(first));
+        Assertions.assertEquals(from, repository.readSource(second));
+        Assertions.assertEquals(Collections.singletonList(second), repository.readTargets(from));
+    }
+
+    @Test
+    void closeKeepsSharedShardsOpen() throws IOException {
+        String tempDir = FileRepositoryTest.getTempDir();
+        ShardedRepository repository = ShardedRepository.ofFiles(tempDir, 2);
+        SourceImage source = repository.createSource(new SourceImageBuilder(sourceImageName(0)).build());
+        repository.close();
+
+        FileRepository shard = (FileRepository) repository.getShards().get(0);
+        Assertions.assertSame(shard, FileRepository.getInstance(Paths.get(tempDir, "shard-0").toString()));
+        Assertions.assertNotNull(shard.readSources());
+        Assertions.assertEquals(source, ShardedRepository.ofFiles(tempDir, 2).readSource(source.getName()));
+        FileRepositoryTest.deleteTempDir(tempDir);
+    }
+}
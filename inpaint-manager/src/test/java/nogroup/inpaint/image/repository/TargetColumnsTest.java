@@ -0,0 +1,90 @@
+package nogroup.inpaint.image.repository;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.repository.impl.JavaSerializationSnapshotFormat;
+import nogroup.inpaint.image.repository.impl.TargetColumns;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Map;
+
+class TargetColumnsTest {
+    private static TargetImage target(int index) {
+        return new TargetImageBuilder(String.format("target image #%d", index))
+                .rating(index % 5)
+                .sampler(Sampler.values()[index % Sampler.values().length])
+                .checkpoint(Checkpoint.values()[index % Checkpoint.values().length])
+                .build();
+    }
+
+    private static void assertScans(InMemoryRepository repository, int expectedSize) {
+        TargetColumns columns = repository.getTargetColumns();
+        Assertions.assertEquals(expectedSize, columns.size());
+
+        int[] byCheckpoint = new int[Checkpoint.values().length];
+        int[] bySampler = new int[Sampler.values().length];
+        int highRated = 0;
+        for (SourceImage source : repository.readSources())
+            for (TargetImage target : repository.readTargets(source)) {
+                if (target.getRating() >= 3) {
+                    byCheckpoint[target.getCheckpoint().ordinal()]++;
+                    bySampler[target.getSampler().ordinal()]++;
+                    highRated++;
+                }
+            }
+
+        Map<Checkpoint, Integer> checkpoints = columns.countByCheckpoint(3, Integer.MAX_VALUE);
+        for (Checkpoint checkpoint : Checkpoint.values())
+            Assertions.assertEquals(byCheckpoint[checkpoint.ordinal()], checkpoints.get(checkpoint));
+        Map<Sampler, Integer> samplers = columns.countBySampler(3, Integer.MAX_VALUE);
+        for (Sampler sampler : Sampler.values())
+            Assertions.assertEquals(bySampler[sampler.ordinal()], samplers.get(sampler));
+        Assertions.assertEquals(highRated, columns.count(3, Integer.MAX_VALUE));
+        Assertions.assertEquals(highRated, columns.select(3, Integer.MAX_VALUE, null).size());
+    }
+
+    @Test
+    void scans() throws IOException {
+        InMemoryRepository repository = new InMemoryRepository();
+        int sourcesCount = 20_000;
+        int targetsCount = 8;
+        for (int i = 0; i < sourcesCount; i++) {
+            SourceImage source = new SourceImageBuilder(String.format("source image #%d", i)).build();
+            repository.createSource(source);
+            for (int j = 0; j < targetsCount; j++)
+                repository.createTarget(source, target(i * targetsCount + j));
+        }
+        assertScans(repository, sourcesCount * targetsCount);
+
+        for (int i = 0; i < sourcesCount; i += 2)
+            repository.deleteTargets(repository.readSource(String.format("source image #%d", i)));
+        for (int i = 1; i < sourcesCount; i += 4)
+            for (int j = 0; j < targetsCount; j++)
+                repository.updateTarget(target(i * targetsCount + j).toBuilder().rating(4).build());
+        assertScans(repository, sourcesCount * targetsCount / 2);
+
+        Map<Checkpoint, Double> averages = repository.getTargetColumns().averageRatingByCheckpoint();
+        Assertions.assertEquals(Checkpoint.values().length, averages.size());
+
+        ByteArrayOutputStream bos = new ByteArrayOutputStream();
+        new JavaSerializationSnapshotFormat().write(repository, bos);
+        InMemoryRepository restored = new JavaSerializationSnapshotFormat().read(new ByteArrayInputStream(bos.toByteArray()));
+        assertScans(restored, sourcesCount * targetsCount / 2);
+        Assertions.assertEquals(averages, restored.getTargetColumns().averageRatingByCheckpoint());
+
+        for (SourceImage source : repository.readSources())
+            repository.deleteTargets(source);
+        Assertions.assertEquals(0, repository.getTargetColumns().size());
+        Assertions.assertEquals(Arrays.asList(), repository.getTargetColumns().select(0, Integer.MAX_VALUE, Checkpoint.SD));
+    }
+}
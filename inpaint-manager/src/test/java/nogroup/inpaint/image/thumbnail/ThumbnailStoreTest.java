@@ -0,0 +1,109 @@
+package nogroup.inpaint.image.thumbnail;
+
+import nogroup.inpaint.image.hash.XxHash64;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+
+class ThumbnailStoreTest {
+    static byte[] toArray(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    static void deleteDir(Path dir) throws IOException {
+        Files.walk(dir)
+                .sorted(Comparator.reverseOrder())
+                .map(Path::toFile)
+                .forEach(File::delete);
+    }
+
+    @Test
+    void generate() throws IOException {
+        Path dir = Files.createTempDirectory("test-thumbnail-dir_");
+        try {
+            Path file = dir.resolve("image.png");
+            ImageIO.write(new BufferedImage(1000, 500, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+
+            byte[] thumbnail = new ThumbnailGenerator(100, "png").generate(file);
+            BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(thumbnail));
+
+            Assertions.assertEquals(100, decoded.getWidth());
+            Assertions.assertEquals(50, decoded.getHeight());
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    @Test
+    void putAndReopen() throws IOException {
+        Path dir = Files.createTempDirectory("test-thumbnail-dir_");
+        try {
+            byte[] first = new byte[]{1, 2, 3};
+            byte[] second = new byte[]{4, 5};
+            byte[] replaced = new byte[]{6};
+
+            try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+                Assertions.assertArrayEquals(first, toArray(store.put("first", first)));
+                store.put("second", second);
+                Assertions.assertEquals(XxHash64.toHex(XxHash64.hash(second)), store.etag("second"));
+                store.put("second", replaced);
+                Assertions.assertEquals(XxHash64.toHex(XxHash64.hash(replaced)), store.etag("second"));
+                Assertions.assertNull(store.etag("unknown"));
+                Assertions.assertNull(store.get("unknown"));
+                Assertions.assertArrayEquals(first, toArray(store.get("first")));
+                Assertions.assertArrayEquals(replaced, toArray(store.get("second")));
+            }
+
+            try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+                Assertions.assertEquals(2, store.size());
+                Assertions.assertArrayEquals(first, toArray(store.get("first")));
+                Assertions.assertArrayEquals(replaced, toArray(store.get("second")));
+                Assertions.assertTrue(store.get("first").isReadOnly());
+            }
+        } finally {
+            deleteDir(dir);
+        }
+    }
+
+    @Test
+    void growAndReopen() throws IOException {
+        Path dir = Files.createTempDirectory("test-thumbnail-dir_");
+        try {
+            byte[] data = new byte[10 * 1024];
+            try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+                for (int i = 0; i < 100; i++) {
+                    data[0] = (byte) i;
+                    store.put("image-" + i, data);
+                }
+                Assertions.assertEquals(42, store.get("image-42").get(0));
+                Assertions.assertThrows(IllegalArgumentException.class, () -> store.put("", data));
+            }
+            // the file is mapped ahead of the records, the zero tail must not be read back as records
+            Assertions.assertTrue(Files.size(dir.resolve(ThumbnailStore.filename)) > 100L * data.length);
+
+            try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+                Assertions.assertEquals(100, store.size());
+                Assertions.assertEquals(99, store.get("image-99").get(0));
+                Assertions.assertEquals(data.length, store.get("image-0").remaining());
+                store.put("image-100", data);
+            }
+
+            try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+                Assertions.assertEquals(101, store.size());
+            }
+        } finally {
+            deleteDir(dir);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package nogroup.inpaint.image.thumbnail;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class ThumbnailingRepositoryTest {
+    private static Path image(Path dir, String name) throws IOException {
+        Path file = dir.resolve(name);
+        ImageIO.write(new BufferedImage(400, 200, BufferedImage.TYPE_INT_RGB), "png", file.toFile());
+        return file;
+    }
+
+    @Test
+    void thumbnailsOnCreate() throws IOException {
+        Path dir = Files.createTempDirectory("test-thumbnail-dir_");
+        try (ThumbnailStore store = ThumbnailStore.open(dir.toString());
+             Thumbnailer thumbnailer = new Thumbnailer(new ThumbnailGenerator(50, "png"), store)) {
+            ThumbnailingRepository repository = new ThumbnailingRepository(new InMemoryRepository(), thumbnailer);
+            SourceImage source = repository.createSource(new SourceImageBuilder(image(dir, "source.png").toString()).build());
+            TargetImage target = repository.createTarget(source, new TargetImageBuilder(image(dir, "target.png").toString()).build());
+
+            Assertions.assertNotNull(thumbnailer.submit(source).join());
+            Assertions.assertNotNull(thumbnailer.submit(target).join());
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertNull(repository.createSource(source));
+            Assertions.assertEquals(2, store.size());
+            Assertions.assertEquals(source, repository.readSource(target));
+        } finally {
+            ThumbnailStoreTest.deleteDir(dir);
+        }
+    }
+
+    @Test
+    void concurrentSubmissionsGenerateOnce() throws Exception {
+        Path dir = Files.createTempDirectory("test-thumbnail-dir_");
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (ThumbnailStore store = ThumbnailStore.open(dir.toString())) {
+            Path file = image(dir, "image.png");
+            CountDownLatch release = new CountDownLatch(1);
+            AtomicInteger generated = new AtomicInteger();
+            ThumbnailGenerator generator = new ThumbnailGenerator(50, "png") {
+                @Override
+                public byte[] generate(Path file) throws IOException {
+                    generated.incrementAndGet();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    return super.generate(file);
+                }
+            };
+            Thumbnailer thumbnailer = new Thumbnailer(generator, store, executor);
+            SourceImage image = new SourceImageBuilder(file.toString()).build();
+            List<CompletableFuture<ByteBuffer>> futures = new ArrayList<>();
+            for (int i = 0; i < 8; i++)
+                futures.add(thumbnailer.submit(image));
+            release.countDown();
+            for (CompletableFuture<ByteBuffer> future : futures)
+                Assertions.assertNotNull(future.get(10, TimeUnit.SECONDS));
+
+            Assertions.assertEquals(1, generated.get());
+            Assertions.assertEquals(1, store.size());
+            thumbnailer.close();
+            Assertions.assertFalse(executor.isShutdown());
+            Assertions.assertNotNull(store.get(file.toString()));
+        } finally {
+            executor.shutdownNow();
+            ThumbnailStoreTest.deleteDir(dir);
+        }
+    }
+}
@@ -0,0 +1,42 @@
+package nogroup.inpaint.json;
+
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+class JsonWriterTest {
+    @Test
+    void write() throws IOException {
+        StringWriter out = new StringWriter();
+        new JsonWriter(out).beginObject()
+                .name("string").value("quote \" backslash \\ newline \n control \u0001")
+                .name("numbers").beginArray().value(1).value(-2L).value(0.5).endArray()
+                .name("empty").beginObject().endObject()
+                .name("nested").beginArray().beginArray().endArray().beginObject().name("null").nullValue().endObject().endArray()
+                .name("flag").value(true)
+                .endObject();
+        Assertions.assertEquals("{\"string\":\"quote \\\" backslash \\\\ newline \\n control \\u0001\"," +
+                "\"numbers\":[1,-2,0.5],\"empty\":{},\"nested\":[[],{\"null\":null}],\"flag\":true}", out.toString());
+
+        Assertions.assertThrows(IllegalStateException.class, () -> new JsonWriter(new StringWriter()).beginArray().name("name"));
+        Assertions.assertThrows(IllegalStateException.class, () -> new JsonWriter(new StringWriter()).beginObject().value(1));
+        Assertions.assertThrows(IllegalStateException.class, () -> new JsonWriter(new StringWriter()).beginArray().endObject());
+    }
+
+    @Test
+    void images() {
+        Assertions.assertEquals("{\"name\":\"source\",\"description\":null,\"width\":2,\"height\":3,\"perceptualHash\":null," +
+                        "\"contentHash\":\"00ff\",\"tags\":[\"a\",\"b\"]}",
+                ImageJson.toJson(new SourceImageBuilder("source").width(2).height(3).contentHash("00ff").addTag("a").addTag("b").build()));
+        Assertions.assertEquals("{\"name\":\"target\",\"description\":\"text\",\"width\":0,\"height\":0,\"perceptualHash\":7," +
+                        "\"rating\":4,\"sampler\":\"EULER\",\"checkpoint\":\"" + Checkpoint.values()[0].name() + "\"}",
+                ImageJson.toJson(new TargetImageBuilder("target").description("text").perceptualHash(7L).rating(4)
+                        .sampler(Sampler.EULER).checkpoint(Checkpoint.values()[0]).build()));
+    }
+}
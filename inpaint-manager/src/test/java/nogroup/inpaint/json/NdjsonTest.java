@@ -0,0 +1,85 @@
+package nogroup.inpaint.json;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+class NdjsonTest {
+    @Test
+    void parse() {
+        Map<String, Object> json = JsonReader.parseObject(" {\"a\": [1, -2.5e1, true, null], \"b\" : {\"c\":\"\\u00e9\\n\\\"\"}} ");
+        Assertions.assertEquals(Arrays.asList(1L, -25.0, true, null), json.get("a"));
+        Assertions.assertEquals("\u00e9\n\"", ((Map<?, ?>) json.get("b")).get("c"));
+
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JsonReader.parse("{\"a\":1,}"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JsonReader.parse("[1] 2"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JsonReader.parse("\"open"));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> JsonReader.parseObject("[]"));
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        InMemoryRepository repository = new InMemoryRepository();
+        for (int i = 0; i < 100; i++) {
+            SourceImage source = repository.createSource(new SourceImageBuilder("source-" + i).width(i).height(2 * i)
+                    .contentHash(Integer.toHexString(i)).addTag("tag-" + i % 3).description(i % 2 == 0 ? null : "\"quoted\"\n").build());
+            for (int j = 0; j < i % 4; j++)
+                repository.createTarget(source, new TargetImageBuilder("target-" + i + "-" + j).rating(j).perceptualHash(-1L - j)
+                        .sampler(Sampler.EULER).build());
+        }
+
+        StringWriter out = new StringWriter();
+        Assertions.assertEquals(100 + 150, new NdjsonExporter(repository).export(out));
+        String ndjson = out.toString();
+        Assertions.assertEquals(251, ndjson.split("\n").length);
+
+        InMemoryRepository imported = new InMemoryRepository();
+        NdjsonImporter.Result result = new NdjsonImporter(imported, 4, 7).importFrom(new StringReader(ndjson));
+        Assertions.assertEquals(100, result.getSources());
+        Assertions.assertEquals(150, result.getTargets());
+        Assertions.assertEquals(0, result.getSkipped());
+        Assertions.assertEquals(repository.readSources(), imported.readSources());
+        for (SourceImage source : repository.readSources())
+            Assertions.assertEquals(repository.readTargets(source), imported.readTargets(source));
+
+        result = new NdjsonImporter(imported, 2, 16).importFrom(new StringReader(ndjson));
+        Assertions.assertEquals(0, result.getSources() + result.getTargets());
+        Assertions.assertEquals(250, result.getSkipped());
+    }
+
+    @Test
+    void outOfOrder() throws IOException {
+        String ndjson = "{\"type\":\"target\",\"source\":\"late\",\"target\":{\"name\":\"t\",\"rating\":3}}\n" +
+                "\n" +
+                "{\"type\":\"source\",\"source\":{\"name\":\"late\",\"width\":8}}\n";
+        InMemoryRepository imported = new InMemoryRepository();
+        NdjsonImporter.Result result = new NdjsonImporter(imported, 2, 1).importFrom(new StringReader(ndjson));
+        Assertions.assertEquals(1, result.getTargets());
+        List<?> targets = imported.readTargets(imported.readSource("late"));
+        Assertions.assertEquals(1, targets.size());
+        Assertions.assertEquals(3, imported.readTarget("t").getRating());
+    }
+
+    @Test
+    void invalid() {
+        InMemoryRepository imported = new InMemoryRepository();
+        IllegalArgumentException e = Assertions.assertThrows(IllegalArgumentException.class, () -> new NdjsonImporter(imported, 2, 1)
+                .importFrom(new StringReader("{\"type\":\"source\",\"source\":{\"name\":\"a\"}}\n{\"type\":\"source\",\"source\":{\"name\":\n")));
+        Assertions.assertTrue(e.getMessage().startsWith("line 2"), e.getMessage());
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NdjsonImporter(imported)
+                .importFrom(new StringReader("{\"format\":\"" + NdjsonExporter.FORMAT + "\",\"version\":99}\n")));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new NdjsonImporter(imported)
+                .importFrom(new StringReader("{\"type\":\"target\",\"source\":\"missing\",\"target\":{\"name\":\"t\"}}\n")));
+    }
+}
@@ -0,0 +1,149 @@
+package nogroup.inpaint.service;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+class AsyncInpaintManagerServiceTest {
+    @Test
+    void submitOrdered() throws Exception {
+        final CountDownLatch firstStarted = new CountDownLatch(1);
+        final CountDownLatch releaseFirst = new CountDownLatch(1);
+        final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+        RepositoryInpaintManagerService service = new RepositoryInpaintManagerService(new InMemoryRepository()) {
+            @Override
+            public boolean assign(SourceImage source, TargetImage target) {
+                calls.add("start " + target.getName());
+                if (target.getName().equals("first")) {
+                    firstStarted.countDown();
+                    try {
+                        releaseFirst.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                boolean assigned = super.assign(source, target);
+                calls.add("end " + target.getName());
+                return assigned;
+            }
+        };
+        SourceImage source = service.getRepository().createSource(new SourceImageBuilder("source").build());
+        SourceImage other = service.getRepository().createSource(new SourceImageBuilder("other").build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (AsyncInpaintManagerService async = new AsyncInpaintManagerService(service, executor)) {
+            CompletableFuture<Boolean> first = async.assign(source, new TargetImageBuilder("first").build());
+            Assertions.assertTrue(firstStarted.await(10, TimeUnit.SECONDS));
+            CompletableFuture<Boolean> second = async.assign(source, new TargetImageBuilder("second").build());
+            // another source is not held up by the blocked one
+            Assertions.assertTrue(async.assign(other, new TargetImageBuilder("third").build()).get(10, TimeUnit.SECONDS));
+            Assertions.assertFalse(second.isDone());
+
+            releaseFirst.countDown();
+            Assertions.assertTrue(second.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(first.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertTrue(calls.indexOf("end first") < calls.indexOf("start second"));
+        Assertions.assertEquals(Arrays.asList("first", "second"), names(service.getRepository().readTargets(source)));
+    }
+
+    @Test
+    void submitOrderedAfterFailure() throws Exception {
+        RepositoryInpaintManagerService service = new RepositoryInpaintManagerService(new InMemoryRepository());
+        SourceImage source = service.getRepository().createSource(new SourceImageBuilder("source").build());
+        TargetImage target = new TargetImageBuilder("target").build();
+
+        try (AsyncInpaintManagerService async = new AsyncInpaintManagerService(service)) {
+            CompletableFuture<Boolean> first = async.assign(source, target);
+            CompletableFuture<Boolean> duplicate = async.assign(source, target.toBuilder().description("changed").build());
+            CompletableFuture<Void> deassigned = async.deassign(source, target);
+            Assertions.assertTrue(first.get(10, TimeUnit.SECONDS));
+            Assertions.assertThrows(ExecutionException.class, () -> duplicate.get(10, TimeUnit.SECONDS));
+            deassigned.get(10, TimeUnit.SECONDS);
+        }
+        Assertions.assertTrue(service.getRepository().readTargets(source).isEmpty());
+    }
+
+    @Test
+    void tagEditsOrdered() throws Exception {
+        final CountDownLatch setStarted = new CountDownLatch(1);
+        final CountDownLatch releaseSet = new CountDownLatch(1);
+        RepositoryInpaintManagerService service = new RepositoryInpaintManagerService(new InMemoryRepository()) {
+            @Override
+            public boolean setTags(SourceImage source, String... tags) {
+                if (source.getName().equals("source")) {
+                    setStarted.countDown();
+                    try {
+                        releaseSet.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return super.setTags(source, tags);
+            }
+        };
+        SourceImage source = service.getRepository().createSource(new SourceImageBuilder("source").build());
+        SourceImage other = service.getRepository().createSource(new SourceImageBuilder("other").build());
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (AsyncInpaintManagerService async = new AsyncInpaintManagerService(service, executor)) {
+            CompletableFuture<Boolean> set = async.setTags(source, "a");
+            Assertions.assertTrue(setStarted.await(10, TimeUnit.SECONDS));
+            CompletableFuture<Integer> added = async.addTags(Arrays.asList(source, other), "b");
+            // a rename touches sources found only when it runs, so it waits for everything queued before it
+            CompletableFuture<Integer> renamed = async.renameTag("b", "c");
+            CompletableFuture<Boolean> reset = async.setTags(other, "d");
+            Assertions.assertFalse(added.isDone());
+            Assertions.assertFalse(renamed.isDone());
+            Assertions.assertFalse(reset.isDone());
+
+            releaseSet.countDown();
+            Assertions.assertTrue(set.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, added.get(10, TimeUnit.SECONDS));
+            Assertions.assertEquals(2, renamed.get(10, TimeUnit.SECONDS));
+            Assertions.assertTrue(reset.get(10, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdown();
+        }
+        Assertions.assertEquals(Arrays.asList("a", "c"), service.getRepository().readSource("source").getTags());
+        Assertions.assertEquals(Collections.singletonList("d"), service.getRepository().readSource("other").getTags());
+    }
+
+    @Test
+    void defaultExecutor() throws Exception {
+        boolean virtualThreads;
+        try {
+            Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            virtualThreads = true;
+        } catch (NoSuchMethodException e) {
+            virtualThreads = false;
+        }
+
+        ExecutorService executor = AsyncInpaintManagerService.defaultExecutor();
+        try {
+            Thread thread = executor.submit(Thread::currentThread).get(10, TimeUnit.SECONDS);
+            if (virtualThreads)
+                Assertions.assertEquals(Boolean.TRUE, Thread.class.getMethod("isVirtual").invoke(thread));
+            else
+                Assertions.assertTrue(executor instanceof ThreadPoolExecutor);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private static List<String> names(List<TargetImage> targets) {
+        final List<String> names = new ArrayList<>();
+        for (TargetImage target : targets)
+            names.add(target.getName());
+        return names;
+    }
+}
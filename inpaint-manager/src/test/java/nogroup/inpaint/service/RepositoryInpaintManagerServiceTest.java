@@ -0,0 +1,97 @@
+package nogroup.inpaint.service;
+
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+class RepositoryInpaintManagerServiceTest {
+    private Repository repository;
+    private InpaintManagerService service;
+    private SourceImage first;
+    private SourceImage second;
+
+    @BeforeEach
+    void setUp() {
+        repository = new InMemoryRepository();
+        service = new RepositoryInpaintManagerService(repository);
+        first = repository.createSource(new SourceImageBuilder("first").build());
+        second = repository.createSource(new SourceImageBuilder("second").build());
+    }
+
+    @Test
+    void assign() {
+        TargetImage target = new TargetImageBuilder("target").rating(3).build();
+        Assertions.assertTrue(service.assign(first, target));
+        Assertions.assertFalse(service.assign(first, target));
+        Assertions.assertEquals(first, repository.readSource(target));
+        Assertions.assertThrows(NotFoundException.class,
+                () -> service.assign(new SourceImageBuilder("unknown").build(), new TargetImageBuilder("other").build()));
+    }
+
+    @Test
+    void deassign() {
+        TargetImage target = new TargetImageBuilder("target").build();
+        service.assign(first, target);
+
+        // deassigning from a source the target is not assigned to leaves it alone
+        service.deassign(second, target);
+        Assertions.assertEquals(first, repository.readSource(target));
+
+        service.deassign(first, target);
+        Assertions.assertThrows(NotFoundException.class, () -> repository.readTarget("target"));
+        Assertions.assertTrue(repository.readTargets(first).isEmpty());
+    }
+
+    @Test
+    void reassign() {
+        TargetImage target = new TargetImageBuilder("target").rating(3).build();
+        service.assign(first, target);
+
+        Assertions.assertTrue(service.reassign(second, target));
+        Assertions.assertFalse(service.reassign(second, target));
+        Assertions.assertEquals(second, repository.readSource(target));
+        Assertions.assertTrue(repository.readTargets(first).isEmpty());
+
+        // a changed target is replaced rather than moved
+        TargetImage changed = target.toBuilder().rating(5).build();
+        Assertions.assertTrue(service.reassign(first, changed));
+        Assertions.assertEquals(changed, repository.readTarget("target"));
+        Assertions.assertEquals(first, repository.readSource(changed));
+
+        TargetImage unassigned = new TargetImageBuilder("unassigned").build();
+        Assertions.assertTrue(service.reassign(second, unassigned));
+        Assertions.assertEquals(second, repository.readSource(unassigned));
+    }
+
+    @Test
+    void reassignAll() {
+        TargetImage[] targets = new TargetImage[4];
+        for (int i = 0; i < targets.length; i++)
+            targets[i] = new TargetImageBuilder("target-" + i).build();
+        service.assignAll(first, targets[0], targets[1]);
+        service.assignAll(second, targets[2]);
+
+        SourceImage third = repository.createSource(new SourceImageBuilder("third").build());
+        Assertions.assertTrue(service.reassignAll(third, targets));
+        Assertions.assertFalse(service.reassignAll(third, targets));
+        Assertions.assertEquals(Arrays.asList(targets), repository.readTargets(third));
+        Assertions.assertTrue(repository.readTargets(first).isEmpty());
+        Assertions.assertTrue(repository.readTargets(second).isEmpty());
+
+        service.deassignAll(third, targets[0], targets[3]);
+        Assertions.assertEquals(Arrays.asList(targets[1], targets[2]), repository.readTargets(third));
+        service.deassignAll(first, targets[1]);
+        Assertions.assertEquals(Arrays.asList(targets[1], targets[2]), repository.readTargets(third));
+        Assertions.assertEquals(Collections.emptyList(), repository.readTargets(first));
+    }
+}
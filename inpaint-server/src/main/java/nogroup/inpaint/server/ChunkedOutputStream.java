@@ -0,0 +1,65 @@
+package nogroup.inpaint.server;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+class ChunkedOutputStream extends OutputStream {
+    private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private boolean closed;
+
+    ChunkedOutputStream(WritableByteChannel channel, int chunkSize) {
+        this.channel = channel;
+        this.buffer = ByteBuffer.allocate(chunkSize);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (!buffer.hasRemaining())
+            flushChunk();
+        buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (!buffer.hasRemaining())
+                flushChunk();
+            int count = Math.min(len, buffer.remaining());
+            buffer.put(b, off, count);
+            off += count;
+            len -= count;
+        }
+    }
+
+    private void flushChunk() throws IOException {
+        if (buffer.position() == 0)
+            return;
+        buffer.flip();
+        byte[] size = Integer.toHexString(buffer.remaining()).getBytes(StandardCharsets.ISO_8859_1);
+        HttpServer.writeFully(channel, ByteBuffer.wrap(size));
+        HttpServer.writeFully(channel, ByteBuffer.wrap(CRLF));
+        HttpServer.writeFully(channel, buffer);
+        HttpServer.writeFully(channel, ByteBuffer.wrap(CRLF));
+        buffer.clear();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        flushChunk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed)
+            return;
+        closed = true;
+        flushChunk();
+        HttpServer.writeFully(channel, ByteBuffer.wrap(LAST_CHUNK));
+    }
+}
@@ -0,0 +1,14 @@
+package nogroup.inpaint.server;
+
+public class HttpException extends RuntimeException {
+    private final int status;
+
+    public HttpException(int status, String message) {
+        super(message);
+        this.status = status;
+    }
+
+    public int getStatus() {
+        return status;
+    }
+}
@@ -0,0 +1,7 @@
+package nogroup.inpaint.server;
+
+import java.io.IOException;
+
+public interface HttpHandler {
+    HttpResponse handle(HttpRequest request) throws IOException;
+}
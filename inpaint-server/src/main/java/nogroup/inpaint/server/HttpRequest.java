@@ -0,0 +1,85 @@
+package nogroup.inpaint.server;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class HttpRequest {
+    private final String method;
+    private final String path;
+    private final String version;
+    private final Map<String, List<String>> query;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final Map<String, String> pathParams;
+
+    public HttpRequest(String method, String path, String version, Map<String, List<String>> query, Map<String, String> headers, byte[] body) {
+        this(method, path, version, query, headers, body, Collections.emptyMap());
+    }
+
+    private HttpRequest(String method, String path, String version, Map<String, List<String>> query, Map<String, String> headers, byte[] body,
+                        Map<String, String> pathParams) {
+        this.method = method;
+        this.path = path;
+        this.version = version;
+        this.query = query;
+        this.headers = headers;
+        this.body = body;
+        this.pathParams = pathParams;
+    }
+
+    HttpRequest withPathParams(Map<String, String> pathParams) {
+        return new HttpRequest(method, path, version, query, headers, body, pathParams);
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public String getPath() {
+        return path;
+    }
+
+    public String getVersion() {
+        return version;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public String getParam(String name) {
+        List<String> values = query.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0);
+    }
+
+    public List<String> getParams(String name) {
+        return query.getOrDefault(name, Collections.emptyList());
+    }
+
+    public String getPathParam(String name) {
+        return pathParams.get(name);
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getBodyAsString() {
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("HttpRequest{");
+        sb.append("method='").append(method).append('\'');
+        sb.append(", path='").append(path).append('\'');
+        sb.append(", query=").append(query);
+        sb.append(", body=").append(body.length);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,158 @@
+package nogroup.inpaint.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class HttpResponse {
+    public static final String JSON = "application/json; charset=utf-8";
+    public static final String TEXT = "text/plain; charset=utf-8";
+    private static final int CHUNK_SIZE = 16 * 1024;
+
+    public interface Body extends Closeable {
+        long length();
+
+        void writeTo(WritableByteChannel channel) throws IOException;
+
+        @Override
+        default void close() throws IOException {
+        }
+    }
+
+    public interface StreamingBody {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private final int status;
+    private final Map<String, String> headers;
+    private final Body body;
+
+    private HttpResponse(int status, Body body) {
+        this.status = status;
+        this.headers = new LinkedHashMap<>();
+        this.body = body;
+    }
+
+    public static HttpResponse status(int status) {
+        return buffer(status, null, ByteBuffer.allocate(0));
+    }
+
+    public static HttpResponse bytes(int status, String contentType, byte[] data) {
+        return buffer(status, contentType, ByteBuffer.wrap(data));
+    }
+
+    public static HttpResponse text(int status, String text) {
+        return bytes(status, TEXT, text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HttpResponse json(int status, String json) {
+        return bytes(status, JSON, json.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HttpResponse buffer(int status, String contentType, ByteBuffer data) {
+        final ByteBuffer buffer = data.duplicate();
+        HttpResponse response = new HttpResponse(status, new Body() {
+            @Override
+            public long length() {
+                return buffer.remaining();
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel channel) throws IOException {
+                HttpServer.writeFully(channel, buffer.duplicate());
+            }
+        });
+        if (contentType != null)
+            response.header("Content-Type", contentType);
+        return response;
+    }
+
+    public static HttpResponse file(Path file, String contentType) throws IOException {
+        final FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        final long size = channel.size();
+        HttpResponse response = new HttpResponse(200, new Body() {
+            @Override
+            public long length() {
+                return size;
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel target) throws IOException {
+                // the kernel copies the file straight into the socket
+                long position = 0;
+                while (position < size)
+                    position += channel.transferTo(position, size - position, target);
+            }
+
+            @Override
+            public void close() throws IOException {
+                channel.close();
+            }
+        });
+        response.header("Content-Type", contentType);
+        response.etag(String.format("%x-%x", size, Files.getLastModifiedTime(file).toMillis()));
+        return response;
+    }
+
+    public static HttpResponse stream(String contentType, StreamingBody streamingBody) {
+        HttpResponse response = new HttpResponse(200, new Body() {
+            @Override
+            public long length() {
+                return -1;
+            }
+
+            @Override
+            public void writeTo(WritableByteChannel channel) throws IOException {
+                try (OutputStream out = new ChunkedOutputStream(channel, CHUNK_SIZE)) {
+                    streamingBody.write(out);
+                }
+            }
+        });
+        response.header("Content-Type", contentType);
+        return response;
+    }
+
+    public HttpResponse header(String name, String value) {
+        headers.put(name, value);
+        return this;
+    }
+
+    public HttpResponse etag(String tag) {
+        return header("ETag", "\"" + tag + "\"");
+    }
+
+    public int getStatus() {
+        return status;
+    }
+
+    public String getHeader(String name) {
+        return headers.get(name);
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public Body getBody() {
+        return body;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("HttpResponse{");
+        sb.append("status=").append(status);
+        sb.append(", headers=").append(headers);
+        sb.append(", length=").append(body.length());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,378 @@
+package nogroup.inpaint.server;
+
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.URLDecoder;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+public class HttpServer implements Closeable {
+    private static final int MAX_LINE = 8 * 1024;
+    private static final int MAX_HEADERS = 100;
+    private static final int MAX_BODY = 16 * 1024 * 1024;
+    private static final int IDLE_TIMEOUT = 30000;
+    private static final Map<Integer, String> reasons = new HashMap<>();
+
+    static {
+        reasons.put(200, "OK");
+        reasons.put(201, "Created");
+        reasons.put(204, "No Content");
+        reasons.put(304, "Not Modified");
+        reasons.put(400, "Bad Request");
+        reasons.put(404, "Not Found");
+        reasons.put(405, "Method Not Allowed");
+        reasons.put(409, "Conflict");
+        reasons.put(411, "Length Required");
+        reasons.put(413, "Payload Too Large");
+        reasons.put(431, "Request Header Fields Too Large");
+        reasons.put(500, "Internal Server Error");
+    }
+
+    private static class Route {
+        private final String method;
+        private final String[] segments;
+        private final HttpHandler handler;
+
+        private Route(String method, String pattern, HttpHandler handler) {
+            this.method = method;
+            this.segments = split(pattern);
+            this.handler = handler;
+        }
+
+        private Map<String, String> match(String[] path) {
+            if (path.length != segments.length)
+                return null;
+            final Map<String, String> params = new HashMap<>();
+            for (int i = 0; i < segments.length; i++) {
+                if (segments[i].startsWith("{") && segments[i].endsWith("}"))
+                    params.put(segments[i].substring(1, segments[i].length() - 1), path[i]);
+                else if (!segments[i].equals(path[i]))
+                    return null;
+            }
+            return params;
+        }
+    }
+
+    private final ServerSocketChannel serverChannel;
+    private final ExecutorService executor;
+    private final List<Route> routes;
+    private final Set<SocketChannel> connections;
+    private Thread acceptor;
+
+    public HttpServer(int port) throws IOException {
+        this(port, defaultExecutor());
+    }
+
+    public HttpServer(int port, ExecutorService executor) throws IOException {
+        this(InetAddress.getLoopbackAddress(), port, executor);
+    }
+
+    public HttpServer(InetAddress bindAddress, int port) throws IOException {
+        this(bindAddress, port, defaultExecutor());
+    }
+
+    public HttpServer(InetAddress bindAddress, int port, ExecutorService executor) throws IOException {
+        this.serverChannel = ServerSocketChannel.open();
+        // there is no authentication, listening beyond loopback has to be asked for
+        this.serverChannel.bind(new InetSocketAddress(bindAddress, port));
+        this.executor = executor;
+        this.routes = new CopyOnWriteArrayList<>();
+        this.connections = ConcurrentHashMap.newKeySet();
+    }
+
+    public static ExecutorService defaultExecutor() {
+        // a virtual thread per connection where the runtime has them, platform threads otherwise
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(runnable -> {
+                Thread thread = new Thread(runnable, "http-worker");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    public HttpServer route(String method, String pattern, HttpHandler handler) {
+        routes.add(new Route(method, pattern, handler));
+        return this;
+    }
+
+    public synchronized HttpServer start() {
+        if (acceptor != null)
+            return this;
+        acceptor = new Thread(this::accept, "http-acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        return this;
+    }
+
+    public InetAddress getAddress() {
+        return serverChannel.socket().getInetAddress();
+    }
+
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public int getConnections() {
+        return connections.size();
+    }
+
+    private void accept() {
+        while (serverChannel.isOpen()) {
+            try {
+                SocketChannel channel = serverChannel.accept();
+                connections.add(channel);
+                executor.execute(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        try (SocketChannel ignored = channel) {
+            channel.socket().setTcpNoDelay(true);
+            channel.socket().setSoTimeout(IDLE_TIMEOUT);
+            // reads go through the socket adaptor so that the idle timeout applies, writes go to the channel
+            InputStream in = new BufferedInputStream(channel.socket().getInputStream());
+            boolean keepAlive = true;
+            while (keepAlive) {
+                HttpRequest request;
+                try {
+                    request = readRequest(in);
+                } catch (HttpException e) {
+                    write(channel, null, error(e.getStatus(), e.getMessage()), false);
+                    return;
+                }
+                if (request == null)
+                    return;
+                keepAlive = isKeepAlive(request);
+                write(channel, request, dispatch(request), keepAlive);
+            }
+        } catch (SocketTimeoutException | ClosedChannelException e) {
+            // idle connection or server shutdown
+        } catch (IOException e) {
+            if (channel.isOpen())
+                e.printStackTrace();
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    private static boolean isKeepAlive(HttpRequest request) {
+        String connection = request.getHeader("connection");
+        if ("HTTP/1.0".equals(request.getVersion()))
+            return "keep-alive".equalsIgnoreCase(connection);
+        return !"close".equalsIgnoreCase(connection);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream(128);
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0)
+                return line.size() == 0 ? null : line.toString("ISO-8859-1");
+            if (line.size() == MAX_LINE)
+                throw new HttpException(431, "line too long");
+            line.write(b);
+        }
+        String result = line.toString("ISO-8859-1");
+        return result.endsWith("\r") ? result.substring(0, result.length() - 1) : result;
+    }
+
+    static String[] split(String path) {
+        final List<String> segments = new ArrayList<>();
+        for (String segment : path.split("/"))
+            if (!segment.isEmpty())
+                segments.add(segment);
+        return segments.toArray(new String[0]);
+    }
+
+    static String decodePath(String segment) {
+        final ByteArrayOutputStream decoded = new ByteArrayOutputStream(segment.length());
+        for (int i = 0; i < segment.length(); i++) {
+            char c = segment.charAt(i);
+            if (c == '%' && i + 2 < segment.length()) {
+                decoded.write(Integer.parseInt(segment.substring(i + 1, i + 3), 16));
+                i += 2;
+            } else {
+                // the request line is read as ISO-8859-1, so every char is one raw byte
+                decoded.write(c & 0xff);
+            }
+        }
+        return new String(decoded.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, List<String>> parseQuery(String query) throws UnsupportedEncodingException {
+        final Map<String, List<String>> params = new LinkedHashMap<>();
+        if (query == null || query.isEmpty())
+            return params;
+        for (String pair : query.split("&")) {
+            if (pair.isEmpty())
+                continue;
+            int separator = pair.indexOf('=');
+            String name = URLDecoder.decode(separator < 0 ? pair : pair.substring(0, separator), "UTF-8");
+            String value = separator < 0 ? "" : URLDecoder.decode(pair.substring(separator + 1), "UTF-8");
+            params.computeIfAbsent(name, key -> new ArrayList<>()).add(value);
+        }
+        return params;
+    }
+
+    private static HttpRequest readRequest(InputStream in) throws IOException {
+        String requestLine = readLine(in);
+        while (requestLine != null && requestLine.isEmpty())
+            requestLine = readLine(in);
+        if (requestLine == null)
+            return null;
+        String[] parts = requestLine.split(" ");
+        if (parts.length != 3)
+            throw new HttpException(400, String.format("malformed request line: %s", requestLine));
+
+        final Map<String, String> headers = new HashMap<>();
+        String line;
+        while ((line = readLine(in)) != null && !line.isEmpty()) {
+            if (headers.size() > MAX_HEADERS)
+                throw new HttpException(431, "too many headers");
+            int separator = line.indexOf(':');
+            if (separator <= 0)
+                throw new HttpException(400, String.format("malformed header: %s", line));
+            headers.put(line.substring(0, separator).trim().toLowerCase(Locale.ROOT), line.substring(separator + 1).trim());
+        }
+
+        if (headers.containsKey("transfer-encoding"))
+            throw new HttpException(411, "chunked request bodies are not supported");
+        int length = 0;
+        if (headers.containsKey("content-length")) {
+            try {
+                length = Integer.parseInt(headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                throw new HttpException(400, String.format("malformed content length: %s", headers.get("content-length")));
+            }
+        }
+        if (length < 0 || length > MAX_BODY)
+            throw new HttpException(413, String.format("body too large: %d", length));
+        byte[] body = new byte[length];
+        new DataInputStream(in).readFully(body);
+
+        String target = parts[1];
+        int question = target.indexOf('?');
+        String path = question < 0 ? target : target.substring(0, question);
+        String query = question < 0 ? null : target.substring(question + 1);
+        return new HttpRequest(parts[0].toUpperCase(Locale.ROOT), path, parts[2], parseQuery(query), headers, body);
+    }
+
+    private static HttpResponse error(int status, String message) {
+        return HttpResponse.text(status, message == null ? reasons.getOrDefault(status, "") : message);
+    }
+
+    HttpResponse dispatch(HttpRequest request) {
+        final String[] raw = split(request.getPath());
+        final String[] path = new String[raw.length];
+        try {
+            for (int i = 0; i < raw.length; i++)
+                path[i] = decodePath(raw[i]);
+        } catch (NumberFormatException e) {
+            return error(400, String.format("malformed path: %s", request.getPath()));
+        }
+        final String method = "HEAD".equals(request.getMethod()) ? "GET" : request.getMethod();
+        boolean pathMatched = false;
+        for (Route route : routes) {
+            Map<String, String> params = route.match(path);
+            if (params == null)
+                continue;
+            pathMatched = true;
+            if (!route.method.equals(method))
+                continue;
+            try {
+                return route.handler.handle(request.withPathParams(params));
+            } catch (HttpException e) {
+                return error(e.getStatus(), e.getMessage());
+            } catch (IOException | RuntimeException e) {
+                // the details stay in the server log, they are not for the client
+                e.printStackTrace();
+                return error(500, null);
+            }
+        }
+        return pathMatched ? error(405, null) : error(404, null);
+    }
+
+    private static boolean notModified(HttpRequest request, HttpResponse response) {
+        String etag = response.getHeader("ETag");
+        String ifNoneMatch = request == null ? null : request.getHeader("if-none-match");
+        if (etag == null || ifNoneMatch == null || response.getStatus() != 200)
+            return false;
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/"))
+                tag = tag.substring(2);
+            if (tag.equals("*") || tag.equals(etag))
+                return true;
+        }
+        return false;
+    }
+
+    private static void write(SocketChannel channel, HttpRequest request, HttpResponse response, boolean keepAlive) throws IOException {
+        try (HttpResponse.Body body = response.getBody()) {
+            final boolean notModified = notModified(request, response);
+            final int status = notModified ? 304 : response.getStatus();
+            final boolean withBody = !notModified && status != 204 && (request == null || !"HEAD".equals(request.getMethod()));
+
+            final StringBuilder head = new StringBuilder(256);
+            head.append("HTTP/1.1 ").append(status).append(' ').append(reasons.getOrDefault(status, "Unknown")).append("\r\n");
+            for (Map.Entry<String, String> header : response.getHeaders().entrySet())
+                head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+            if (!notModified && status != 204) {
+                if (body.length() >= 0)
+                    head.append("Content-Length: ").append(body.length()).append("\r\n");
+                else if (withBody)
+                    head.append("Transfer-Encoding: chunked\r\n");
+            }
+            if (!keepAlive)
+                head.append("Connection: close\r\n");
+            head.append("\r\n");
+            writeFully(channel, ByteBuffer.wrap(head.toString().getBytes(StandardCharsets.ISO_8859_1)));
+
+            if (withBody)
+                body.writeTo(channel);
+        }
+    }
+
+    static void writeFully(WritableByteChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining())
+            channel.write(buffer);
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverChannel.close();
+        for (SocketChannel connection : connections)
+            connection.close();
+        executor.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("HttpServer{");
+        sb.append("address=").append(getAddress());
+        sb.append(", port=").append(getPort());
+        sb.append(", routes=").append(routes.size());
+        sb.append(", connections=").append(connections.size());
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,244 @@
+package nogroup.inpaint.server;
+
+import nogroup.inpaint.image.hash.XxHash64;
+import nogroup.inpaint.image.repository.AlreadyExistsException;
+import nogroup.inpaint.image.repository.NotFoundException;
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.source.SourceImage;
+import nogroup.inpaint.image.target.Checkpoint;
+import nogroup.inpaint.image.target.Sampler;
+import nogroup.inpaint.image.target.TargetImage;
+import nogroup.inpaint.image.target.TargetImageBuilder;
+import nogroup.inpaint.image.thumbnail.ThumbnailStore;
+import nogroup.inpaint.json.ImageJson;
+import nogroup.inpaint.json.JsonWriter;
+import nogroup.inpaint.service.InpaintManagerService;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+public class InpaintApi {
+    private static final Map<String, String> imageTypes = new HashMap<>();
+
+    static {
+        imageTypes.put("png", "image/png");
+        imageTypes.put("jpg", "image/jpeg");
+        imageTypes.put("jpeg", "image/jpeg");
+        imageTypes.put("gif", "image/gif");
+        imageTypes.put("bmp", "image/bmp");
+        imageTypes.put("webp", "image/webp");
+    }
+
+    private interface JsonBody {
+        void write(JsonWriter writer) throws IOException;
+    }
+
+    private final Repository repository;
+    private final InpaintManagerService service;
+    private final ThumbnailStore thumbnails;
+    private final Path imageRoot;
+
+    public InpaintApi(Repository repository, InpaintManagerService service) {
+        this(repository, service, null, null);
+    }
+
+    public InpaintApi(Repository repository, InpaintManagerService service, ThumbnailStore thumbnails) {
+        this(repository, service, thumbnails, null);
+    }
+
+    public InpaintApi(Repository repository, InpaintManagerService service, ThumbnailStore thumbnails, Path imageRoot) {
+        this.repository = repository;
+        this.service = service;
+        this.thumbnails = thumbnails;
+        this.imageRoot = imageRoot == null ? null : imageRoot.toAbsolutePath().normalize();
+    }
+
+    public HttpServer register(HttpServer server) {
+        return server
+                .route("GET", "/sources", mapped(this::listSources))
+                .route("GET", "/sources/{name}", mapped(request -> json(writer -> ImageJson.write(writer, source(request)))))
+                .route("GET", "/sources/{name}/targets", mapped(this::listTargets))
+                .route("GET", "/sources/{name}/image", mapped(request -> image(source(request).getName())))
+                .route("GET", "/sources/{name}/thumbnail", mapped(request -> thumbnail(source(request).getName())))
+                .route("PUT", "/sources/{name}/tags", mapped(this::setTags))
+                .route("PUT", "/sources/{name}/description", mapped(this::describeSource))
+                .route("POST", "/sources/{name}/targets/{target}", mapped(this::assign))
+                .route("DELETE", "/sources/{name}/targets/{target}", mapped(this::deassign))
+                .route("GET", "/targets/{target}", mapped(request -> json(writer -> ImageJson.write(writer, target(request)))))
+                .route("GET", "/targets/{target}/source", mapped(request -> json(writer -> ImageJson.write(writer, repository.readSource(target(request))))))
+                .route("GET", "/targets/{target}/image", mapped(request -> image(target(request).getName())))
+                .route("GET", "/targets/{target}/thumbnail", mapped(request -> thumbnail(target(request).getName())))
+                .route("PUT", "/targets/{target}/description", mapped(this::describeTarget))
+                .route("PUT", "/targets/{target}/sampler", mapped(this::setSampler))
+                .route("GET", "/checkpoints", mapped(request -> json(writer -> names(writer, service.getCheckpoints()))))
+                .route("GET", "/samplers", mapped(request -> json(writer -> names(writer, service.getSamplers()))));
+    }
+
+    private static HttpHandler mapped(HttpHandler handler) {
+        return request -> {
+            try {
+                return handler.handle(request);
+            } catch (NotFoundException e) {
+                throw new HttpException(404, e.getMessage());
+            } catch (AlreadyExistsException e) {
+                throw new HttpException(409, e.getMessage());
+            } catch (IllegalArgumentException e) {
+                throw new HttpException(400, e.getMessage());
+            }
+        };
+    }
+
+    private static HttpResponse json(JsonBody body) throws IOException {
+        return json(200, body);
+    }
+
+    private static HttpResponse json(int status, JsonBody body) throws IOException {
+        final StringWriter out = new StringWriter();
+        body.write(new JsonWriter(out));
+        final byte[] bytes = out.toString().getBytes(StandardCharsets.UTF_8);
+        return HttpResponse.bytes(status, HttpResponse.JSON, bytes).etag(XxHash64.toHex(XxHash64.hash(bytes)));
+    }
+
+    private static void names(JsonWriter writer, List<? extends Enum<?>> values) throws IOException {
+        writer.beginArray();
+        for (Enum<?> value : values)
+            writer.value(value.name());
+        writer.endArray();
+    }
+
+    private SourceImage source(HttpRequest request) {
+        return repository.readSource(request.getPathParam("name"));
+    }
+
+    private TargetImage target(HttpRequest request) {
+        return repository.readTarget(request.getPathParam("target"));
+    }
+
+    private HttpResponse listSources(HttpRequest request) {
+        final String tag = request.getParam("tag");
+        final String contentHash = request.getParam("contentHash");
+        // the narrower filter goes to the repository index, the other one is checked per source
+        final Collection<SourceImage> sources = contentHash != null ? repository.readSourcesByContentHash(contentHash)
+                : tag != null ? repository.readSourcesByTag(tag) : repository.readSources();
+        // the listing can be large, it is written straight to the connection instead of being built in memory first
+        return HttpResponse.stream(HttpResponse.JSON, out -> {
+            JsonWriter writer = new JsonWriter(new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 8192));
+            writer.beginArray();
+            for (SourceImage source : sources)
+                if (tag == null || (source.getTags() != null && source.getTags().contains(tag)))
+                    ImageJson.write(writer, source);
+            writer.endArray();
+            writer.flush();
+        });
+    }
+
+    private HttpResponse listTargets(HttpRequest request) throws IOException {
+        final List<TargetImage> targets = repository.readTargets(source(request));
+        return json(writer -> {
+            writer.beginArray();
+            for (TargetImage target : targets)
+                ImageJson.write(writer, target);
+            writer.endArray();
+        });
+    }
+
+    private HttpResponse image(String name) throws IOException {
+        // image names come from the repository, only files below the configured root are ever served
+        if (imageRoot == null)
+            throw new HttpException(404, String.format("no image root to serve from: %s", name));
+        final Path file = imageRoot.resolve(name).normalize();
+        if (!file.startsWith(imageRoot) || !Files.isRegularFile(file)
+                || !file.toRealPath().startsWith(imageRoot.toRealPath()))
+            throw new HttpException(404, String.format("no image file: %s", name));
+        final String fileName = file.getFileName().toString();
+        final String extension = fileName.substring(fileName.lastIndexOf('.') + 1).toLowerCase(Locale.ROOT);
+        return HttpResponse.file(file, imageTypes.getOrDefault(extension, "application/octet-stream"));
+    }
+
+    private HttpResponse thumbnail(String name) {
+        // the tag is read first, a thumbnail replaced in between pairs newer bytes with an older tag and is fetched again
+        final String etag = thumbnails == null ? null : thumbnails.etag(name);
+        final ByteBuffer thumbnail = thumbnails == null ? null : thumbnails.get(name);
+        if (etag == null || thumbnail == null)
+            throw new HttpException(404, String.format("no thumbnail: %s", name));
+        final boolean jpeg = thumbnail.remaining() > 1 && (thumbnail.get(0) & 0xff) == 0xff && (thumbnail.get(1) & 0xff) == 0xd8;
+        return HttpResponse.buffer(200, jpeg ? "image/jpeg" : "image/png", thumbnail).etag(etag);
+    }
+
+    private HttpResponse setTags(HttpRequest request) throws IOException {
+        final SourceImage source = source(request);
+        service.setTags(source, request.getParams("tag").toArray(new String[0]));
+        return json(writer -> ImageJson.write(writer, repository.readSource(source.getName())));
+    }
+
+    private HttpResponse describeSource(HttpRequest request) throws IOException {
+        final SourceImage source = source(request);
+        service.addDescription(source, request.getBodyAsString());
+        return json(writer -> ImageJson.write(writer, repository.readSource(source.getName())));
+    }
+
+    private HttpResponse describeTarget(HttpRequest request) throws IOException {
+        final TargetImage target = target(request);
+        service.addDescription(target, request.getBodyAsString());
+        return json(writer -> ImageJson.write(writer, repository.readTarget(target.getName())));
+    }
+
+    private HttpResponse setSampler(HttpRequest request) throws IOException {
+        final TargetImage target = target(request);
+        final String sampler = request.getParam("value");
+        if (sampler == null)
+            throw new HttpException(400, "no sampler provided");
+        service.setSampler(target, Sampler.valueOf(sampler));
+        return json(writer -> ImageJson.write(writer, repository.readTarget(target.getName())));
+    }
+
+    private TargetImage describedTarget(HttpRequest request) {
+        final String name = request.getPathParam("target");
+        try {
+            return repository.readTarget(name);
+        } catch (NotFoundException e) {
+            if (name.contains("/") || name.contains("\\") || name.contains(".."))
+                throw new HttpException(400, String.format("target name must be a plain file name: %s", name));
+            return new TargetImageBuilder(name)
+                    .width(intParam(request, "width"))
+                    .height(intParam(request, "height"))
+                    .rating(intParam(request, "rating"))
+                    .sampler(request.getParam("sampler") == null ? null : Sampler.valueOf(request.getParam("sampler")))
+                    .checkpoint(request.getParam("checkpoint") == null ? null : Checkpoint.valueOf(request.getParam("checkpoint")))
+                    .build();
+        }
+    }
+
+    private static int intParam(HttpRequest request, String name) {
+        String value = request.getParam(name);
+        return value == null ? 0 : Integer.parseInt(value);
+    }
+
+    private HttpResponse assign(HttpRequest request) throws IOException {
+        final SourceImage source = source(request);
+        final TargetImage target = describedTarget(request);
+        final boolean changed = Boolean.parseBoolean(request.getParam("reassign"))
+                ? service.reassign(source, target)
+                : service.assign(source, target);
+        return json(changed ? 201 : 200, writer -> ImageJson.write(writer, repository.readTarget(target.getName())));
+    }
+
+    private HttpResponse deassign(HttpRequest request) {
+        service.deassign(source(request), target(request));
+        return HttpResponse.status(204);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("InpaintApi{");
+        sb.append("repository=").append(repository);
+        sb.append(", service=").append(service);
+        sb.append(", imageRoot=").append(imageRoot);
+        sb.append('}');
+        return sb.toString();
+    }
+}
@@ -0,0 +1,32 @@
+package nogroup.inpaint.server;
+
+import nogroup.inpaint.image.repository.Repository;
+import nogroup.inpaint.image.repository.impl.FileRepository;
+import nogroup.inpaint.image.thumbnail.ThumbnailStore;
+import nogroup.inpaint.service.RepositoryInpaintManagerService;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+public class InpaintServer {
+    private static final int DEFAULT_PORT = 8080;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        if (args.length < 1) {
+            System.err.println("usage: InpaintServer <data dir> [port] [thumbnails dir] [images dir] [bind address]");
+            System.exit(1);
+        }
+        Repository repository = FileRepository.getInstance(args[0]);
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PORT;
+        ThumbnailStore thumbnails = args.length > 2 && !args[2].isEmpty() ? ThumbnailStore.open(args[2]) : null;
+        Path images = args.length > 3 && !args[3].isEmpty() ? Paths.get(args[3]) : null;
+        InetAddress bindAddress = args.length > 4 ? InetAddress.getByName(args[4]) : InetAddress.getLoopbackAddress();
+
+        HttpServer server = new HttpServer(bindAddress, port);
+        new InpaintApi(repository, new RepositoryInpaintManagerService(repository), thumbnails, images).register(server).start();
+        System.out.printf("serving %s on %s:%d%n", args[0], server.getAddress().getHostAddress(), server.getPort());
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,167 @@
+package nogroup.inpaint.server;
+
+import nogroup.inpaint.image.repository.impl.InMemoryRepository;
+import nogroup.inpaint.image.source.SourceImageBuilder;
+import nogroup.inpaint.service.RepositoryInpaintManagerService;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InpaintServerTest {
+    private InMemoryRepository repository;
+    private HttpServer server;
+    private Path images;
+    private Path image;
+    private Path outside;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        images = Files.createTempDirectory("images");
+        image = Files.write(images.resolve("source.png"), new byte[]{(byte) 0x89, 'P', 'N', 'G', 1, 2, 3, 4});
+        outside = Files.createTempFile("outside", ".png");
+        repository = new InMemoryRepository();
+        repository.createSource(new SourceImageBuilder(image.getFileName().toString()).width(512).height(512).addTag("portrait").build());
+        repository.createSource(new SourceImageBuilder("other.png").width(64).height(64).build());
+        repository.createSource(new SourceImageBuilder("../" + outside.getFileName()).build());
+        repository.createSource(new SourceImageBuilder(outside.toString()).build());
+        server = new HttpServer(0);
+        new InpaintApi(repository, new RepositoryInpaintManagerService(repository), null, images).register(server).start();
+    }
+
+    @AfterEach
+    public void tearDown() throws IOException {
+        server.close();
+        Files.deleteIfExists(image);
+        Files.deleteIfExists(images);
+        Files.deleteIfExists(outside);
+    }
+
+    private HttpURLConnection open(String method, String path) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL("http://localhost:" + server.getPort() + path).openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String body(HttpURLConnection connection) throws IOException {
+        try (InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream() : connection.getErrorStream()) {
+            if (in == null)
+                return "";
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1)
+                out.write(buffer, 0, read);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    private static String path(String name) throws IOException {
+        return URLEncoder.encode(name, "UTF-8").replace("+", "%20");
+    }
+
+    @Test
+    public void listSources() throws IOException {
+        HttpURLConnection connection = open("GET", "/sources");
+        assertEquals(200, connection.getResponseCode());
+        String json = body(connection);
+        assertTrue(json.startsWith("["));
+        assertTrue(json.contains("\"other.png\""));
+
+        connection = open("GET", "/sources?tag=portrait");
+        json = body(connection);
+        assertTrue(json.contains("\"portrait\""));
+        assertFalse(json.contains("\"other.png\""));
+    }
+
+    @Test
+    public void sourceWithETag() throws IOException {
+        HttpURLConnection connection = open("GET", "/sources/other.png");
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(body(connection).contains("\"width\":64"));
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        connection = open("GET", "/sources/other.png");
+        connection.setRequestProperty("If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+
+        assertEquals(404, open("GET", "/sources/missing.png").getResponseCode());
+        assertEquals(404, open("GET", "/nothing").getResponseCode());
+        assertEquals(405, open("DELETE", "/sources").getResponseCode());
+    }
+
+    @Test
+    public void internalErrorsHideDetails() throws IOException {
+        server.route("GET", "/failing", request -> {
+            throw new IllegalStateException("repository query failed: jdbc:h2:/data/secret");
+        });
+        HttpURLConnection connection = open("GET", "/failing");
+        assertEquals(500, connection.getResponseCode());
+        assertEquals("Internal Server Error", body(connection));
+    }
+
+    @Test
+    public void image() throws IOException {
+        HttpURLConnection connection = open("GET", "/sources/" + path(image.getFileName().toString()) + "/image");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("image/png", connection.getContentType());
+        assertEquals(8, connection.getContentLengthLong());
+        body(connection);
+
+        assertEquals(404, open("GET", "/sources/other.png/image").getResponseCode());
+        assertEquals(404, open("GET", "/sources/other.png/thumbnail").getResponseCode());
+    }
+
+    @Test
+    public void imagesStayBelowRoot() throws IOException {
+        assertEquals(InetAddress.getLoopbackAddress(), server.getAddress());
+        assertEquals(404, open("GET", "/sources/" + path("../" + outside.getFileName()) + "/image").getResponseCode());
+        assertEquals(404, open("GET", "/sources/" + path(outside.toString()) + "/image").getResponseCode());
+        assertEquals(400, open("POST", "/sources/other.png/targets/" + path("../escape.png")).getResponseCode());
+        assertEquals(400, open("POST", "/sources/other.png/targets/" + path("nested/escape.png")).getResponseCode());
+        assertTrue(repository.readTargets(repository.readSource("other.png")).isEmpty());
+    }
+
+    @Test
+    public void assignAndTags() throws IOException {
+        HttpURLConnection connection = open("POST", "/sources/other.png/targets/target.png?width=64&height=64&sampler=EULER");
+        assertEquals(201, connection.getResponseCode());
+        assertTrue(body(connection).contains("\"sampler\":\"EULER\""));
+        assertEquals("other.png", repository.readSource(repository.readTarget("target.png")).getName());
+
+        connection = open("GET", "/sources/other.png/targets");
+        assertTrue(body(connection).contains("\"target.png\""));
+        connection = open("GET", "/targets/target.png/source");
+        assertTrue(body(connection).contains("\"other.png\""));
+
+        connection = open("PUT", "/sources/other.png/description");
+        connection.setDoOutput(true);
+        try (OutputStream out = connection.getOutputStream()) {
+            out.write("a landscape".getBytes(StandardCharsets.UTF_8));
+        }
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("a landscape", repository.readSource("other.png").getDescription());
+
+        connection = open("PUT", "/sources/other.png/tags?tag=a&tag=b");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(2, repository.readSource("other.png").getTags().size());
+
+        assertEquals(400, open("PUT", "/targets/target.png/sampler?value=NOPE").getResponseCode());
+        assertEquals(204, open("DELETE", "/sources/other.png/targets/target.png").getResponseCode());
+        assertEquals(404, open("GET", "/targets/target.png").getResponseCode());
+    }
+}